@@ -0,0 +1,124 @@
+// Generates a large content package below src/main/jcr_root (deterministically, so that the measurements are comparable with the baseline).
+// All replication metadata is valid, therefore the measured time is spent on visiting and checking nodes and not on reporting violations.
+File jcrRoot = new File(basedir, 'src/main/jcr_root')
+jcrRoot.deleteDir()
+
+final int SITES = 10
+final int TEMPLATES_PER_SITE = 200
+final int POLICIES_PER_SITE = 300
+final int MODELS_PER_SITE = 100
+final int FIELDS_PER_MODEL = 10
+final int CONTENT_BRANCHING = 4
+final int CONTENT_DEPTH = 7
+
+final String NAMESPACES = 'xmlns:sling="http://sling.apache.org/jcr/sling/1.0" xmlns:cq="http://www.day.com/jcr/cq/1.0" xmlns:jcr="http://www.jcp.org/jcr/1.0" xmlns:nt="http://www.jcp.org/jcr/nt/1.0"'
+final String MODIFIED = 'jcr:lastModified="{Date}2022-01-01T00:00:00.000+01:00"'
+final String REPLICATED = 'cq:lastReplicationAction="Activate" cq:lastReplicated="{Date}2023-01-01T00:00:00.000+01:00" ' +
+        'cq:lastReplicationAction_preview="Activate" cq:lastReplicated_preview="{Date}2023-01-01T00:00:00.000+01:00"'
+int nodes = 0
+
+def writeDocView = { String path, CharSequence content ->
+    File file = new File(jcrRoot, path + '/.content.xml')
+    file.parentFile.mkdirs()
+    file.setText('<?xml version="1.0" encoding="UTF-8"?>\n' + content, 'UTF-8')
+}
+
+for (int site = 0; site < SITES; site++) {
+    String sitePath = "conf/perf/site${site}"
+    writeDocView(sitePath, "<jcr:root ${NAMESPACES} jcr:primaryType=\"sling:Folder\"/>\n")
+    nodes++
+
+    // editable templates (with structure, initial content and policy mappings)
+    for (int template = 0; template < TEMPLATES_PER_SITE; template++) {
+        StringBuilder xml = new StringBuilder("<jcr:root ${NAMESPACES} jcr:primaryType=\"cq:Template\">\n")
+        xml << "    <jcr:content jcr:primaryType=\"cq:PageContent\" ${MODIFIED} ${REPLICATED} status=\"enabled\"/>\n"
+        xml << "    <structure jcr:primaryType=\"cq:Page\">\n"
+        xml << "        <jcr:content jcr:primaryType=\"cq:PageContent\" ${MODIFIED} ${REPLICATED} sling:resourceType=\"perf/components/page\">\n"
+        xml << "            <root jcr:primaryType=\"nt:unstructured\" sling:resourceType=\"perf/components/container\">\n"
+        for (int component = 0; component < 5; component++) {
+            xml << "                <component${component} jcr:primaryType=\"nt:unstructured\" sling:resourceType=\"perf/components/text\" editable=\"{Boolean}true\"/>\n"
+        }
+        xml << "            </root>\n        </jcr:content>\n    </structure>\n"
+        xml << "    <initial jcr:primaryType=\"cq:Page\">\n"
+        xml << "        <jcr:content jcr:primaryType=\"cq:PageContent\" sling:resourceType=\"perf/components/page\">\n"
+        xml << "            <root jcr:primaryType=\"nt:unstructured\" sling:resourceType=\"perf/components/container\"/>\n"
+        xml << "        </jcr:content>\n    </initial>\n"
+        xml << "    <policies jcr:primaryType=\"cq:Page\">\n"
+        xml << "        <jcr:content jcr:primaryType=\"nt:unstructured\" ${MODIFIED} ${REPLICATED} cq:policy=\"perf/components/page/policy0\" sling:resourceType=\"wcm/core/components/policies/mappings\">\n"
+        xml << "            <root jcr:primaryType=\"nt:unstructured\" cq:policy=\"perf/components/container/policy0\" sling:resourceType=\"wcm/core/components/policies/mapping\"/>\n"
+        xml << "        </jcr:content>\n    </policies>\n"
+        xml << "</jcr:root>\n"
+        writeDocView("${sitePath}/settings/wcm/templates/template${template}", xml)
+        nodes += 16
+    }
+
+    // content policies (grouped by component)
+    StringBuilder policies = new StringBuilder("<jcr:root ${NAMESPACES} jcr:primaryType=\"cq:Page\">\n    <perf jcr:primaryType=\"nt:unstructured\">\n        <components jcr:primaryType=\"nt:unstructured\">\n")
+    nodes += 3
+    for (int component = 0; component < POLICIES_PER_SITE / 10; component++) {
+        policies << "            <component${component} jcr:primaryType=\"nt:unstructured\">\n"
+        nodes++
+        for (int policy = 0; policy < 10; policy++) {
+            policies << "                <policy${policy} jcr:primaryType=\"nt:unstructured\" jcr:title=\"Policy ${policy}\" ${MODIFIED} sling:resourceType=\"wcm/core/components/policy/policy\">\n"
+            policies << "                    <jcr:content jcr:primaryType=\"nt:unstructured\" ${REPLICATED}/>\n"
+            policies << "                </policy${policy}>\n"
+            nodes += 2
+        }
+        policies << "            </component${component}>\n"
+    }
+    policies << "        </components>\n    </perf>\n</jcr:root>\n"
+    writeDocView("${sitePath}/settings/wcm/policies", policies)
+
+    // content fragment models
+    for (int model = 0; model < MODELS_PER_SITE; model++) {
+        StringBuilder xml = new StringBuilder("<jcr:root ${NAMESPACES} jcr:primaryType=\"cq:Template\">\n")
+        xml << "    <jcr:content jcr:primaryType=\"cq:PageContent\" cq:lastModified=\"{Date}2022-01-01T00:00:00.000+01:00\" ${REPLICATED} "
+        xml << "jcr:title=\"Model ${model}\" sling:resourceType=\"dam/cfm/models/console/components/data/entity/default\">\n"
+        xml << "        <model jcr:primaryType=\"cq:PageContent\">\n            <cq:dialog jcr:primaryType=\"nt:unstructured\">\n"
+        xml << "                <content jcr:primaryType=\"nt:unstructured\">\n                    <items jcr:primaryType=\"nt:unstructured\">\n"
+        for (int field = 0; field < FIELDS_PER_MODEL; field++) {
+            xml << "                        <field${field} jcr:primaryType=\"nt:unstructured\" name=\"field${field}\" metaType=\"text-single\" valueType=\"string\"/>\n"
+        }
+        xml << "                    </items>\n                </content>\n            </cq:dialog>\n        </model>\n    </jcr:content>\n</jcr:root>\n"
+        writeDocView("${sitePath}/settings/dam/cfm/models/model${model}", xml)
+        nodes += 6 + FIELDS_PER_MODEL
+    }
+}
+
+// deep content tree: the upper levels in separate files, the lower levels inlined into the file of their ancestor
+def appendPages
+appendPages = { StringBuilder xml, int depth, String indent ->
+    if (depth >= CONTENT_DEPTH) {
+        return
+    }
+    for (int child = 0; child < CONTENT_BRANCHING; child++) {
+        xml << "${indent}<page${child} jcr:primaryType=\"cq:Page\">\n"
+        xml << "${indent}    <jcr:content jcr:primaryType=\"cq:PageContent\" jcr:title=\"Page ${depth}-${child}\" sling:resourceType=\"perf/components/page\">\n"
+        xml << "${indent}        <text jcr:primaryType=\"nt:unstructured\" sling:resourceType=\"perf/components/text\" text=\"Lorem ipsum\"/>\n"
+        xml << "${indent}    </jcr:content>\n"
+        nodes += 3
+        appendPages(xml, depth + 1, indent + '    ')
+        xml << "${indent}</page${child}>\n"
+    }
+}
+def writePages
+writePages = { String path, int depth ->
+    StringBuilder xml = new StringBuilder("<jcr:root ${NAMESPACES} jcr:primaryType=\"cq:Page\">\n")
+    xml << "    <jcr:content jcr:primaryType=\"cq:PageContent\" jcr:title=\"Page\" sling:resourceType=\"perf/components/page\"/>\n"
+    nodes += 2
+    if (depth < 3) {
+        xml << "</jcr:root>\n"
+        writeDocView(path, xml)
+        for (int child = 0; child < CONTENT_BRANCHING; child++) {
+            writePages("${path}/page${child}", depth + 1)
+        }
+    } else {
+        appendPages(xml, depth, '    ')
+        xml << "</jcr:root>\n"
+        writeDocView(path, xml)
+    }
+}
+writePages('content/perf', 0)
+
+println "Generated ${nodes} nodes below ${jcrRoot}"
+return true
@@ -0,0 +1,44 @@
+import groovy.json.JsonSlurper
+
+String buildLog = new File(basedir, 'build.log').text
+assert buildLog.contains('BUILD SUCCESS') : 'Build failed'
+
+File metricsFile = new File(basedir, 'target/replication-metadata-metrics.jsonl')
+assert metricsFile.isFile() : 'Metrics file not found'
+List<String> lines = metricsFile.readLines('UTF-8')
+assert lines.size() == 1 : "Expected metrics of exactly one package but found ${lines.size()}"
+def metrics = new JsonSlurper().parseText(lines[0])
+assert metrics.nodes >= 100000 : "Expected at least 100000 nodes but validated only ${metrics.nodes}"
+assert metrics.violations.values().sum() == 0 : "Unexpected violations ${metrics.violations}"
+
+Map<String, Long> measured = [
+    validationMillis: Math.round((metrics.validateNanos + metrics.validateEndNanos) / 1_000_000d),
+    wallClockMillis: Math.round(metrics.wallClockNanos / 1_000_000d),
+    peakHeapMegabytes: Math.round(metrics.peakHeapBytes / (1024 * 1024d))
+]
+println "Validated ${metrics.nodes} nodes: ${measured}"
+
+// the project is cloned to target/it, the baseline is updated in the source directory
+File sourceBaselineFile = new File(basedir, '../../../src/it/performance/baseline.properties')
+if (Boolean.getBoolean('performance.updateBaseline')) {
+    String baseline = sourceBaselineFile.getText('UTF-8')
+    measured.each { key, value -> baseline = baseline.replaceFirst("(?m)^${key}=.*\$", "${key}=${value}") }
+    sourceBaselineFile.setText(baseline, 'UTF-8')
+    println "Updated baseline ${sourceBaselineFile.canonicalPath}"
+    return true
+}
+
+Properties baseline = new Properties()
+new File(basedir, 'baseline.properties').withInputStream { baseline.load(it) }
+double tolerance = Double.parseDouble(System.getProperty('performance.tolerance', baseline.getProperty('tolerance')))
+List<String> regressions = []
+measured.each { key, value ->
+    long baselineValue = Long.parseLong(baseline.getProperty(key))
+    long limit = Math.round(baselineValue * (1 + tolerance))
+    println "${key}: ${value} (baseline ${baselineValue}, limit ${limit})"
+    if (value > limit) {
+        regressions << "${key} regressed to ${value} (baseline ${baselineValue}, tolerance ${tolerance})"
+    }
+}
+assert regressions.isEmpty() : regressions.join(', ')
+return true
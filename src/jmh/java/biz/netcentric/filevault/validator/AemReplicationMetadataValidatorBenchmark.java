@@ -0,0 +1,126 @@
+/*-
+ * #%L
+ * AEM Replication Metadata Validator
+ * %%
+ * Copyright (C) 2024 Cognizant Netcentric
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package biz.netcentric.filevault.validator;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jackrabbit.vault.util.DocViewNode2;
+import org.apache.jackrabbit.vault.validation.spi.NodeContext;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessageSeverity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the throughput of {@link AemReplicationMetadataValidator} in nodes per second.
+ * One operation is one node (i.e. one call to {@code validate} and one call to {@code validateEnd}), so running with {@code -prof gc}
+ * reports the bytes allocated per node in metric {@code gc.alloc.rate.norm}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class AemReplicationMetadataValidatorBenchmark {
+
+    /** the number of nodes validated per benchmark method invocation */
+    static final int NODES_PER_INVOCATION = 1000;
+
+    /** the rule sets to compare */
+    public enum RuleSetType {
+        DEFAULT, LARGE_CUSTOM
+    }
+
+    @Param
+    public SyntheticPackage.Shape shape;
+
+    @Param
+    public RuleSetType ruleSet;
+
+    @Param({ "1000000" })
+    public int nodeCount;
+
+    private DocViewNode2[] nodes;
+    private NodeContext[] nodeContexts;
+    private boolean[] isEnd;
+    private ValidatorConfiguration configuration;
+    private AemReplicationMetadataValidator validator;
+    private int position;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // the /conf shape is mostly relevant, so a smaller tree is sufficiently representative
+        SyntheticPackage syntheticPackage = new SyntheticPackage(shape, shape == SyntheticPackage.Shape.CONF ? Math.min(nodeCount, 100_000) : nodeCount);
+        nodes = syntheticPackage.getNodes();
+        nodeContexts = syntheticPackage.getNodeContexts();
+        isEnd = syntheticPackage.getIsEnd();
+        configuration = AemReplicationMetadataValidatorFactory.createConfiguration(createOptions(ruleSet));
+        validator = new AemReplicationMetadataValidator(ValidationMessageSeverity.ERROR, configuration);
+        position = 0;
+    }
+
+    static Map<String, String> createOptions(RuleSetType ruleSetType) {
+        Map<String, String> options = new HashMap<>();
+        if (ruleSetType == RuleSetType.LARGE_CUSTOM) {
+            StringBuilder includes = new StringBuilder();
+            // 25 patterns in the style typically found in customer projects
+            for (int i = 0; i < 5; i++) {
+                includes.append(".*/settings/wcm/templates/[^/]*/structure").append(i).append("[cq:Page],");
+                includes.append(".*/settings/wcm/policies/tenant").append(i).append("/.*[wcm/core/components/policy/policy],");
+                includes.append("/conf/tenant").append(i).append("/.*/settings/cloudconfigs/.*[cq:Page],");
+                includes.append("/(apps|conf)/tenant").append(i).append("/.*/jcr:content[site/components/segment").append(i).append("],");
+                includes.append(".*/settings/dam/cfm/models/tenant").append(i).append("/.*[dam/cfm/models/console/components/data/entity/default];comparisonDate=CQ_MODIFIED_CREATED_OR_CURRENT,");
+            }
+            includes.append(".*/settings/wcm/templates/[^/]*[cq:Template],");
+            includes.append(".*/settings/wcm/templates/[^/]*/structure[cq:Page],");
+            includes.append(".*/settings/wcm/templates/[^/]*/policies[cq:Page],");
+            includes.append(".*/settings/wcm/policies/.*[wcm/core/components/policy/policy]");
+            options.put("includedNodePathPatternsAndTypes", includes.toString());
+            options.put("agentNames", "publish,preview");
+        }
+        return options;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NODES_PER_INVOCATION)
+    public void validateNodes(Blackhole blackhole) {
+        int startedNodes = 0;
+        while (startedNodes < NODES_PER_INVOCATION) {
+            if (isEnd[position]) {
+                blackhole.consume(validator.validateEnd(nodes[position], nodeContexts[position], false));
+            } else {
+                blackhole.consume(validator.validate(nodes[position], nodeContexts[position], false));
+                startedNodes++;
+            }
+            if (++position == nodes.length) {
+                // start with the next package
+                position = 0;
+                validator = new AemReplicationMetadataValidator(ValidationMessageSeverity.ERROR, configuration);
+            }
+        }
+    }
+}
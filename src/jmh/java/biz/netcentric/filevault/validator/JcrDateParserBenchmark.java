@@ -0,0 +1,100 @@
+/*-
+ * #%L
+ * AEM Replication Metadata Validator
+ * %%
+ * Copyright (C) 2024 Cognizant Netcentric
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package biz.netcentric.filevault.validator;
+
+import java.util.Calendar;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+
+import org.apache.jackrabbit.util.ISO8601;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares parsing JCR date values via the JCR value factory (as done originally) with {@link JcrDateParser}.
+ * One operation is parsing one date value.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class JcrDateParserBenchmark {
+
+    static final int VALUES_PER_INVOCATION = 1000;
+
+    /** the number of distinct date values, low numbers are typical for tool-generated packages */
+    @Param({ "1", "16", "10000" })
+    public int distinctValues;
+
+    private String[] values;
+    private JcrDateParser dateParser;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        String[] distinct = new String[distinctValues];
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("GMT+01:00"));
+        for (int i = 0; i < distinctValues; i++) {
+            calendar.setTimeInMillis(1_600_000_000_000L + (long) (random.nextDouble() * 100_000_000_000L));
+            distinct[i] = ISO8601.format(calendar);
+        }
+        values = new String[VALUES_PER_INVOCATION];
+        for (int i = 0; i < values.length; i++) {
+            // new string instances, as created by the DocView parser
+            values[i] = new String(distinct[random.nextInt(distinctValues)]);
+        }
+        dateParser = new JcrDateParser();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES_PER_INVOCATION)
+    public void valueFactory(Blackhole blackhole) throws RepositoryException {
+        for (String value : values) {
+            blackhole.consume(NameConstants.VALUE_FACTORY.createValue(value, PropertyType.DATE).getDate().getTimeInMillis());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES_PER_INVOCATION)
+    public void jcrDateParserWithoutCache(Blackhole blackhole) {
+        for (String value : values) {
+            blackhole.consume(JcrDateParser.parseFast(value));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES_PER_INVOCATION)
+    public void jcrDateParser(Blackhole blackhole) throws RepositoryException {
+        for (String value : values) {
+            blackhole.consume(dateParser.parse(value));
+        }
+    }
+}
@@ -0,0 +1,254 @@
+/*-
+ * #%L
+ * AEM Replication Metadata Validator
+ * %%
+ * Copyright (C) 2024 Cognizant Netcentric
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package biz.netcentric.filevault.validator;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import javax.jcr.NamespaceException;
+
+import org.apache.jackrabbit.spi.Name;
+import org.apache.jackrabbit.spi.commons.conversion.IllegalNameException;
+import org.apache.jackrabbit.vault.util.DocViewNode2;
+import org.apache.jackrabbit.vault.util.DocViewProperty2;
+import org.apache.jackrabbit.vault.validation.spi.NodeContext;
+import org.apache.jackrabbit.vault.validation.spi.util.NodeContextImpl;
+
+/**
+ * A synthetic stream of DocView node events (start and end of each node in document order) as emitted by the FileVault validation framework.
+ * Node instances with identical properties are shared to keep the memory footprint low, only the node contexts (i.e. paths) are unique.
+ */
+public final class SyntheticPackage {
+
+    private static final String JCR_URI = "http://www.jcp.org/jcr/1.0";
+    private static final String SLING_URI = "http://sling.apache.org/jcr/sling/1.0";
+    private static final Path FILE_PATH = Paths.get(".content.xml");
+    private static final Path BASE_PATH = Paths.get("");
+    private static final String LAST_MODIFIED = "{Date}2022-01-01T00:00:00.000+01:00";
+    private static final String LAST_REPLICATED = "{Date}2022-01-02T00:00:00.000+01:00";
+
+    /** the shape of the generated tree */
+    public enum Shape {
+        /** deep /conf tree with many editable templates, policies and content fragment models (mostly relevant nodes) */
+        CONF,
+        /** deep /content tree with pages, components and assets (only irrelevant nodes) */
+        CONTENT
+    }
+
+    private final List<DocViewNode2> nodes = new ArrayList<>();
+    private final List<NodeContext> nodeContexts = new ArrayList<>();
+    private final List<Boolean> isEnd = new ArrayList<>();
+    private int nodeCount;
+
+    private final DocViewNode2 folder = node("folder", "jcr:primaryType", "sling:Folder");
+    private final DocViewNode2 template = node("template", "jcr:primaryType", "cq:Template");
+    private final DocViewNode2 page = node("page", "jcr:primaryType", "cq:Page");
+    private final DocViewNode2 publishedPageContent = node("jcr:content", "jcr:primaryType", "cq:PageContent", "sling:resourceType", "site/components/page",
+            "jcr:lastModified", LAST_MODIFIED, "cq:lastReplicated", LAST_REPLICATED, "cq:lastReplicationAction", "Activate");
+    private final DocViewNode2 pageContent = node("jcr:content", "jcr:primaryType", "cq:PageContent", "sling:resourceType", "site/components/page",
+            "jcr:lastModified", LAST_MODIFIED, "jcr:title", "Some page title", "cq:template", "/conf/site/settings/wcm/templates/t1");
+    private final DocViewNode2 container = node("root", "jcr:primaryType", "nt:unstructured", "sling:resourceType", "wcm/foundation/components/responsivegrid");
+    private final DocViewNode2 component = node("component", "jcr:primaryType", "nt:unstructured", "sling:resourceType", "site/components/text",
+            "text", "<p>Lorem ipsum dolor sit amet</p>", "textIsRich", "{Boolean}true");
+    private final DocViewNode2 policy = node("policy", "jcr:primaryType", "nt:unstructured", "sling:resourceType", "wcm/core/components/policy/policy",
+            "jcr:lastModified", LAST_MODIFIED, "jcr:title", "Policy");
+    private final DocViewNode2 publishedContent = node("jcr:content", "jcr:primaryType", "nt:unstructured",
+            "cq:lastReplicated", LAST_REPLICATED, "cq:lastReplicationAction", "Activate");
+    private final DocViewNode2 contentFragmentModelContent = node("jcr:content", "jcr:primaryType", "cq:PageContent", "sling:resourceType", "dam/cfm/models/console/components/data/entity/default",
+            "cq:lastModified", LAST_MODIFIED, "cq:lastReplicated", LAST_REPLICATED, "cq:lastReplicationAction", "Activate");
+    private final DocViewNode2 asset = node("asset.jpg", "jcr:primaryType", "dam:Asset");
+    private final DocViewNode2 assetContent = node("jcr:content", "jcr:primaryType", "dam:AssetContent");
+    private final DocViewNode2 rendition = node("cq5dam.thumbnail.48.48.png", "jcr:primaryType", "nt:file");
+
+    /**
+     *
+     * @param shape the shape of the tree
+     * @param minNodeCount the minimum number of nodes to generate
+     */
+    SyntheticPackage(Shape shape, int minNodeCount) {
+        switch (shape) {
+            case CONF:
+                generateConf(minNodeCount);
+                break;
+            case CONTENT:
+                generateContent(minNodeCount);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported shape " + shape);
+        }
+    }
+
+    private void generateConf(int minNodeCount) {
+        start(folder, "/conf");
+        for (int site = 0; nodeCount < minNodeCount; site++) {
+            String sitePath = "/conf/site" + site;
+            start(folder, sitePath);
+            start(folder, sitePath + "/settings");
+            start(folder, sitePath + "/settings/wcm");
+            start(folder, sitePath + "/settings/wcm/templates");
+            for (int i = 0; i < 20; i++) {
+                String templatePath = sitePath + "/settings/wcm/templates/template" + i;
+                start(template, templatePath);
+                leaf(publishedPageContent, templatePath + "/jcr:content");
+                for (String child : new String[] { "structure", "policies", "initial" }) {
+                    start(page, templatePath + "/" + child);
+                    start(child.equals("initial") ? pageContent : publishedPageContent, templatePath + "/" + child + "/jcr:content");
+                    start(container, templatePath + "/" + child + "/jcr:content/root");
+                    for (int j = 0; j < 5; j++) {
+                        leaf(component, templatePath + "/" + child + "/jcr:content/root/component" + j);
+                    }
+                    end(2);
+                    end(1);
+                }
+                end(1);
+            }
+            end(1);
+            start(folder, sitePath + "/settings/wcm/policies");
+            for (int i = 0; i < 20; i++) {
+                String componentPath = sitePath + "/settings/wcm/policies/site/components/component" + i;
+                start(folder, componentPath);
+                for (int j = 0; j < 5; j++) {
+                    start(policy, componentPath + "/policy" + j);
+                    leaf(publishedContent, componentPath + "/policy" + j + "/jcr:content");
+                    end(1);
+                }
+                end(1);
+            }
+            end(1);
+            end(1);
+            start(folder, sitePath + "/settings/dam");
+            start(folder, sitePath + "/settings/dam/cfm");
+            start(folder, sitePath + "/settings/dam/cfm/models");
+            for (int i = 0; i < 10; i++) {
+                String modelPath = sitePath + "/settings/dam/cfm/models/model" + i;
+                start(template, modelPath);
+                start(contentFragmentModelContent, modelPath + "/jcr:content");
+                leaf(container, modelPath + "/jcr:content/model");
+                end(2);
+            }
+            end(3);
+            end(2);
+        }
+        end(1);
+    }
+
+    private void generateContent(int minNodeCount) {
+        start(folder, "/content");
+        start(folder, "/content/dam");
+        for (int i = 0; nodeCount < minNodeCount / 4; i++) {
+            String assetPath = "/content/dam/site/asset" + i + ".jpg";
+            start(asset, assetPath);
+            start(assetContent, assetPath + "/jcr:content");
+            start(folder, assetPath + "/jcr:content/renditions");
+            leaf(rendition, assetPath + "/jcr:content/renditions/cq5dam.thumbnail.48.48.png");
+            end(3);
+        }
+        end(1);
+        start(page, "/content/site");
+        for (int i = 0; nodeCount < minNodeCount; i++) {
+            String languagePath = "/content/site/language" + i;
+            start(page, languagePath);
+            leaf(pageContent, languagePath + "/jcr:content");
+            for (int j = 0; j < 10; j++) {
+                String pagePath = languagePath + "/page" + j;
+                start(page, pagePath);
+                start(pageContent, pagePath + "/jcr:content");
+                start(container, pagePath + "/jcr:content/root");
+                for (int k = 0; k < 10; k++) {
+                    start(container, pagePath + "/jcr:content/root/container" + k);
+                    leaf(component, pagePath + "/jcr:content/root/container" + k + "/component");
+                    end(1);
+                }
+                end(3);
+            }
+            end(1);
+        }
+        end(2);
+    }
+
+    private final List<Integer> openNodes = new ArrayList<>();
+
+    private void start(DocViewNode2 node, String path) {
+        openNodes.add(nodes.size());
+        nodes.add(node);
+        nodeContexts.add(new NodeContextImpl(path, FILE_PATH, BASE_PATH));
+        isEnd.add(false);
+        nodeCount++;
+    }
+
+    private void end(int levels) {
+        for (int i = 0; i < levels; i++) {
+            int startIndex = openNodes.remove(openNodes.size() - 1);
+            nodes.add(nodes.get(startIndex));
+            nodeContexts.add(nodeContexts.get(startIndex));
+            isEnd.add(true);
+        }
+    }
+
+    private void leaf(DocViewNode2 node, String path) {
+        start(node, path);
+        end(1);
+    }
+
+    int getNodeCount() {
+        return nodeCount;
+    }
+
+    DocViewNode2[] getNodes() {
+        return nodes.toArray(new DocViewNode2[0]);
+    }
+
+    NodeContext[] getNodeContexts() {
+        return nodeContexts.toArray(new NodeContext[0]);
+    }
+
+    boolean[] getIsEnd() {
+        boolean[] result = new boolean[isEnd.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = isEnd.get(i);
+        }
+        return result;
+    }
+
+    static DocViewNode2 node(String name, String... propertyNamesAndValues) {
+        Collection<DocViewProperty2> properties = new ArrayList<>();
+        for (int i = 0; i < propertyNamesAndValues.length; i += 2) {
+            try {
+                properties.add(DocViewProperty2.parse(toName(propertyNamesAndValues[i]), propertyNamesAndValues[i + 1]));
+            } catch (IllegalNameException | NamespaceException e) {
+                throw new IllegalArgumentException("Invalid property value " + propertyNamesAndValues[i + 1], e);
+            }
+        }
+        return new DocViewNode2(toName(name), properties);
+    }
+
+    private static Name toName(String qualifiedName) {
+        String[] prefixAndLocalName = qualifiedName.split(":", 2);
+        if (prefixAndLocalName.length == 1) {
+            return NameConstants.NAME_FACTORY.create("", qualifiedName);
+        }
+        switch (prefixAndLocalName[0]) {
+            case "jcr":
+                return NameConstants.NAME_FACTORY.create(JCR_URI, prefixAndLocalName[1]);
+            case "sling":
+                return NameConstants.NAME_FACTORY.create(SLING_URI, prefixAndLocalName[1]);
+            case "cq":
+                return NameConstants.NAME_FACTORY.create(NameConstants.CQ_NAMESPACE_URI, prefixAndLocalName[1]);
+            default:
+                throw new IllegalArgumentException("Unknown prefix in " + qualifiedName);
+        }
+    }
+}
@@ -12,12 +12,12 @@
  */
 package biz.netcentric.filevault.validator;
 
-import java.util.ArrayDeque;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Iterator;
-import java.util.Optional;
-import java.util.Queue;
+import java.util.List;
 import java.util.Set;
 
 import javax.jcr.RepositoryException;
@@ -33,110 +33,350 @@ import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Validates the replication metadata of the nodes of a single package.
+ * <p>
+ * An instance is not thread-safe and must only be used for one validation run (i.e. one package), which is how FileVault uses it.
+ * Any number of instances may run concurrently (e.g. in a parallel Maven build) though: the state shared between instances is either immutable
+ * ({@link ValidatorConfiguration}) or thread-safe without blocking validation ({@link AggregatedMetrics}, {@link ViolationReport}, {@link ValidationCache}).
+ */
 public class AemReplicationMetadataValidator implements DocumentViewXmlValidator {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(AemReplicationMetadataValidator.class);
 
     private final @NotNull ValidationMessageSeverity validationMessageSeverity;
-    private final @NotNull Collection<TypeSettings> includedTypesSettings;
-    private final @NotNull Collection<TypeSettings> excludedTypesSettings;
+    private final @NotNull RuleSet ruleSet;
     private final boolean strictLastModificationCheck;
-    private final @NotNull Set<@NotNull String> agentNames;
-    private Queue<NodeMetadata> relevantNodeMetadata = Collections.asLifoQueue(new ArrayDeque<>());
+    private final @NotNull List<AgentPropertyNames> agentPropertyNames;
+    private final @NotNull RuleSet.RuleMatcher ruleMatcher;
+    /** one parser per validation run, so that the current date is the same for all nodes of a package */
+    private final @NotNull JcrDateParser dateParser;
+    /** reused for all relevant nodes */
+    private final @NotNull PropertyNameIndex.PropertyScan propertyScan;
+    /** stack of the currently open relevant nodes (the last element is the innermost one), accessed via index to prevent iterator allocations */
+    private final @NotNull List<NodeMetadata> relevantNodeMetadata = new ArrayList<>();
+    private final @NotNull RootPaths rootPaths;
+    /** the nesting depth of the current node within the package (1 for the first node) */
+    private int currentNodeDepth;
+    /** the depth of the outermost node of the current subtree located below one of the {@link #rootPaths} (0 if outside) */
+    private int rootSubtreeDepth;
+    /** the depth of the outermost node of the current subtree being skipped as it is located outside of all {@link #rootPaths} (0 if none is skipped) */
+    private int prunedSubtreeDepth;
+    private final @NotNull ValidationMetrics metrics;
+    private final @Nullable RuleProfiler profiler;
+    private final @Nullable Path metricsFile;
+    /** limits the emitted violations, {@code null} in case all violations should be emitted */
+    private final @Nullable ViolationAggregator violationAggregator;
+    /** the time when this validator has been created in nanoseconds (only used for the metrics) */
+    private final long startNanos = System.nanoTime();
+    /** the id of the validated package (only used for the metrics and the report) */
+    private final @Nullable String packageId;
+    /** the report into which all violations are streamed, {@code null} if not configured or already closed */
+    private @Nullable ViolationReport report;
+    /** the fixes for the violations found so far, {@code null} unless {@link #collectFixes(long)} has been called */
+    private @Nullable List<ReplicationMetadataFix> fixes;
+    /** the replication date used for fixes in epoch milliseconds */
+    private long fixDate;
+    /** the cache in which the violations of this sub package are stored by {@link #done()}, {@code null} unless {@link #recordResults(SubpackageResultCache, String)} has been called */
+    private @Nullable SubpackageResultCache resultCache;
+    private @Nullable String subpackageFingerprint;
+    /** all violations found so far, {@code null} unless {@link #recordResults(SubpackageResultCache, String)} has been called */
+    private @Nullable List<SubpackageResultCache.CachedMessage> recordedMessages;
 
     public AemReplicationMetadataValidator(@NotNull ValidationMessageSeverity validationMessageSeverity, @NotNull Collection<TypeSettings> includedTypesSettings,
             @NotNull Collection<TypeSettings> excludedTypesSettings, boolean strictLastModificationDateCheck, @NotNull Set<@NotNull String> agentNames) {
+        this(validationMessageSeverity, new ValidatorConfiguration(includedTypesSettings, excludedTypesSettings, strictLastModificationDateCheck, agentNames));
+    }
+
+    AemReplicationMetadataValidator(@NotNull ValidationMessageSeverity validationMessageSeverity, @NotNull ValidatorConfiguration configuration) {
+        this(validationMessageSeverity, configuration, null);
+    }
+
+    AemReplicationMetadataValidator(@NotNull ValidationMessageSeverity validationMessageSeverity, @NotNull ValidatorConfiguration configuration,
+            @Nullable String packageId) {
         this.validationMessageSeverity = validationMessageSeverity;
-        this.includedTypesSettings = includedTypesSettings;
-        this.excludedTypesSettings = excludedTypesSettings;
-        this.strictLastModificationCheck = strictLastModificationDateCheck;
-        this.agentNames = agentNames;
+        this.ruleSet = configuration.getRuleSet();
+        this.profiler = configuration.isProfilingPathPatterns() ? new RuleProfiler(ruleSet) : null;
+        this.ruleMatcher = ruleSet.createMatcher(profiler);
+        this.dateParser = new JcrDateParser();
+        this.propertyScan = configuration.getPropertyNameIndex().createScan();
+        this.strictLastModificationCheck = configuration.isStrictLastModificationDateCheck();
+        this.agentPropertyNames = configuration.getAgentPropertyNames();
+        this.rootPaths = configuration.getRootPaths();
+        this.metrics = new ValidationMetrics(ruleSet, profiler);
+        this.metricsFile = configuration.getMetricsFile();
+        this.packageId = packageId;
+        this.violationAggregator = configuration.getMaxViolationsPerGroup() > 0 ? new ViolationAggregator(configuration.getMaxViolationsPerGroup(), ruleSet) : null;
+        Path reportFile = configuration.getReportFile();
+        if (reportFile != null) {
+            try {
+                this.report = ViolationReport.open(reportFile, configuration.getReportFormat());
+            } catch (IOException e) {
+                LOGGER.warn("Could not open report {}: {}", reportFile, e.getMessage());
+            }
+        }
     }
 
     @Nullable
     public Collection<ValidationMessage> done() {
-        return null;
+        metrics.regexEvaluations = ruleMatcher.getRegexEvaluations();
+        metrics.wallClockNanos = System.nanoTime() - startNanos;
+        metrics.peakHeapBytes = ValidationMetrics.getPeakHeapBytes();
+        AggregatedMetrics.JVM.add(metrics);
+        LOGGER.info("Replication metadata validation{}: {}", packageId != null ? " of " + packageId : "", metrics.toSummary());
+        LOGGER.debug("Replication metadata validation totals of this JVM: {}", AggregatedMetrics.JVM.toSummary());
+        if (profiler != null) {
+            LOGGER.info("{}", profiler.toReport());
+        }
+        if (metricsFile != null) {
+            try {
+                metrics.appendTo(metricsFile, packageId);
+            } catch (IOException e) {
+                LOGGER.warn("Could not write metrics to {}: {}", metricsFile, e.getMessage());
+            }
+        }
+        closeReport();
+        Collection<ValidationMessage> summaries = getViolationSummaries();
+        if (summaries.isEmpty()) {
+            summaries = null;
+        }
+        // the summaries are not recorded, as they are recreated when replaying the recorded violations
+        if (resultCache != null && subpackageFingerprint != null && recordedMessages != null) {
+            resultCache.put(subpackageFingerprint, recordedMessages);
+        }
+        return summaries;
+    }
+
+    /**
+     * Releases the report (if there is one). Called by {@link #done()}, only needs to be called explicitly in case {@link #done()} is not called.
+     */
+    void closeReport() {
+        if (report != null) {
+            try {
+                report.close();
+            } catch (IOException e) {
+                LOGGER.warn("Could not complete report: {}", e.getMessage());
+            }
+            report = null;
+        }
+    }
+
+    /**
+     * Streams the given violations into the report (if there is one).
+     * @param messages the violations (may be {@code null})
+     * @param nodeContext the context of the current node
+     * @param ruleIndex the index of the rule which made the node relevant or {@link RuleSet#NO_MATCH}
+     */
+    private void writeReport(@Nullable Collection<ValidationMessage> messages, @NotNull NodeContext nodeContext, int ruleIndex) {
+        if (report == null || messages == null || messages.isEmpty()) {
+            return;
+        }
+        int line = 0;
+        int column = 0;
+        if (nodeContext instanceof PositionedNodeContext) {
+            line = ((PositionedNodeContext) nodeContext).getLine();
+            column = ((PositionedNodeContext) nodeContext).getColumn();
+        }
+        TypeSettings rule = ruleIndex != RuleSet.NO_MATCH ? ruleSet.getRule(ruleIndex) : null;
+        try {
+            for (ValidationMessage message : messages) {
+                report.write(packageId, message, nodeContext.getNodePath(), nodeContext.getFilePath(), line, column, rule);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Could not write violations to report, stop reporting: {}", e.getMessage());
+            closeReport();
+        }
+    }
+
+    private void recordMessages(@Nullable Collection<ValidationMessage> messages, @NotNull NodeContext nodeContext, int ruleIndex) {
+        if (recordedMessages != null) {
+            SubpackageResultCache.record(recordedMessages, messages, nodeContext, ruleIndex);
+        }
+    }
+
+    /**
+     * Collects a {@link ReplicationMetadataFix} for each node whose violations can be resolved by changing its replication metadata.
+     * As the violations are supposed to be fixed, they are no longer written to the report.
+     * @param fixDate the replication date to set in epoch milliseconds (unless the comparison date of a node is newer)
+     */
+    void collectFixes(long fixDate) {
+        this.fixes = new ArrayList<>();
+        this.fixDate = fixDate;
+        closeReport();
+    }
+
+    /**
+     * Called by {@link #done()}, only needs to be called explicitly in case {@link #done()} is not called.
+     * @return the summaries of the violations which have not been emitted due to option {@code maxViolationsPerGroup} (see {@link ViolationAggregator})
+     */
+    @NotNull Collection<ValidationMessage> getViolationSummaries() {
+        return violationAggregator != null ? violationAggregator.createSummaries(validationMessageSeverity) : Collections.emptyList();
+    }
+
+    /**
+     * Records all violations, so that they are stored in the given cache at the end of the validation and reused for identical sub packages.
+     * @param resultCache the cache
+     * @param subpackageFingerprint the fingerprint of the validated sub package (see {@link SubpackageResultCache#createFingerprint(Path, String)})
+     */
+    void recordResults(@NotNull SubpackageResultCache resultCache, @NotNull String subpackageFingerprint) {
+        this.resultCache = resultCache;
+        this.subpackageFingerprint = subpackageFingerprint;
+        this.recordedMessages = new ArrayList<>();
+    }
+
+    /**
+     * Replays the violations of an identical sub package validated before instead of visiting its nodes.
+     * They are treated like the violations found while visiting the nodes, i.e. they are counted in the metrics, streamed into the report
+     * and limited by option {@code maxViolationsPerGroup}.
+     * @param cachedMessages the violations returned by {@link SubpackageResultCache#get(String)}
+     * @return the emitted violations including the summaries returned by {@link #done()} (or {@code null} if there are none)
+     */
+    @Nullable Collection<ValidationMessage> replay(@NotNull List<SubpackageResultCache.CachedMessage> cachedMessages) {
+        List<ValidationMessage> emittedMessages = new ArrayList<>();
+        for (SubpackageResultCache.CachedMessage cachedMessage : cachedMessages) {
+            Collection<ValidationMessage> messages = Collections.singletonList(cachedMessage.toValidationMessage(agentPropertyNames));
+            int ruleIndex = cachedMessage.getRuleIndex();
+            metrics.addViolations(messages);
+            writeReport(messages, cachedMessage.toNodeContext(), ruleIndex);
+            emittedMessages.addAll(violationAggregator != null && ruleIndex != RuleSet.NO_MATCH ? violationAggregator.limit(messages, ruleIndex) : messages);
+        }
+        Collection<ValidationMessage> summaries = done();
+        if (summaries != null) {
+            emittedMessages.addAll(summaries);
+        }
+        return emittedMessages.isEmpty() ? null : emittedMessages;
+    }
+
+    /**
+     *
+     * @return the fixes collected so far (empty unless {@link #collectFixes(long)} has been called)
+     */
+    @NotNull List<ReplicationMetadataFix> getFixes() {
+        return fixes != null ? fixes : Collections.emptyList();
+    }
+
+    @NotNull ValidationMetrics getMetrics() {
+        metrics.regexEvaluations = ruleMatcher.getRegexEvaluations();
+        return metrics;
     }
 
     /**
-     * Returns the node metadata this node path refers to (might be belonging to the parent, in case this node has name "jcr:content")
+     * Returns the node metadata this node path refers to (might be belonging to the parent, in case this node has name "jcr:content").
+     * Must not allocate any objects for irrelevant nodes.
      * @param nodePath
      * @param node
-     * @return the node metadata or empty if not relevant
+     * @return the node metadata or {@code null} if not relevant
      */
-    private Optional<NodeMetadata> getNodeMetadata(@NotNull String nodePath, @NotNull DocViewNode2 node) {
-        NodeMetadata currentMetadata = relevantNodeMetadata.peek();
-        if (currentMetadata != null && (
-                nodePath.equals(currentMetadata.getPath()) ||
-                nodePath.equals(currentMetadata.getPath()  + "/" + NameConstants.QUALIFIED_NAME_JCR_CONTENT))) {
-            return Optional.of(currentMetadata);
-        }
-        // first check includes, then excludes, first match returning relevant metadata wins
-        boolean isExclude = false;
-        Optional<NodeMetadata> newMetadata = includedTypesSettings.stream()
-                .map(e -> getNodeMetadata(false, nodePath, node, e))
-                .filter(Optional::isPresent) // only interested in first result returning new metadata
-                .map(Optional::get)
-                .findFirst();
-        if (!newMetadata.isPresent()) {
-            newMetadata = excludedTypesSettings.stream()
-                    .map(e -> getNodeMetadata(true, nodePath, node, e))
-                    .filter(Optional::isPresent) // only interested in first result returning new metadata
-                    .map(Optional::get)
-                    .findFirst();
-            isExclude = true;
-        }
-        if (newMetadata.isPresent()) {
-            LOGGER.debug("Potential {} {}", isExclude ? "excludedNodePathPatternAndType" : "includedNodePathPatternAndType", newMetadata.get());
-        }
-        return newMetadata;
-        
-    }
-
-    private Optional<NodeMetadata> getNodeMetadata(boolean isExclude, @NotNull String nodePath, @NotNull DocViewNode2 node, @NotNull TypeSettings typeSettings) {
-        if (!typeSettings.matches(nodePath, node)) {
-            return Optional.empty();
+    private @Nullable NodeMetadata getNodeMetadata(@NotNull String nodePath, @NotNull DocViewNode2 node) {
+        NodeMetadata currentMetadata = peekRelevantNodeMetadata();
+        if (currentMetadata != null && currentMetadata.isPathOrContentChildPath(nodePath)) {
+            return currentMetadata;
+        }
+        // first check includes, then excludes, first match wins
+        int ruleIndex = ruleMatcher.match(nodePath, node);
+        if (ruleIndex == RuleSet.NO_MATCH) {
+            return null;
+        }
+        metrics.ruleHits[ruleIndex]++;
+        boolean isExclude = ruleSet.isExcluded(ruleIndex);
+        TypeSettings typeSettings = ruleSet.getRule(ruleIndex);
+        LOGGER.debug("Potential {} {}", isExclude ? "excludedNodePathPatternAndType" : "includedNodePathPatternAndType", typeSettings);
+        String actualPrimaryType = DocViewNodes.getPrimaryType(node);
+        NodeMetadata newMetadata;
+        if (NameConstants.NT_CQ_PAGE.equals(actualPrimaryType) || NameConstants.NT_CQ_TEMPLATE.equals(actualPrimaryType)) {
+            LOGGER.debug("Waiting for jcr:content below {}", nodePath);
+            // completed at the end of the first child node (usually jcr:content) or at the end of the current node in case it has no children
+            newMetadata = new NodeMetadata(isExclude, nodePath + "/" + NameConstants.QUALIFIED_NAME_JCR_CONTENT, currentNodeDepth + 1, typeSettings.getComparisonDate(),
+                    ruleIndex);
+            relevantNodeMetadata.add(newMetadata);
+            metrics.openedNodeMetadata++;
+            return null;
         } else {
-            String actualPrimaryType = node.getPrimaryType().orElse("");
-            NodeMetadata currentMetadata;
-            if (NameConstants.NT_CQ_PAGE.equals(actualPrimaryType) || NameConstants.NT_CQ_TEMPLATE.equals(actualPrimaryType)) {
-                LOGGER.debug("Waiting for jcr:content below {}", nodePath);
-                currentMetadata = new NodeMetadata(isExclude, nodePath + "/" + NameConstants.QUALIFIED_NAME_JCR_CONTENT, true, typeSettings.getComparisonDate());
-                relevantNodeMetadata.add(currentMetadata);
-                return Optional.empty();
-            } else {
-                currentMetadata = new NodeMetadata(isExclude, nodePath, false, typeSettings.getComparisonDate());
-                relevantNodeMetadata.add(currentMetadata);
-                return Optional.of(currentMetadata);
-            }
+            newMetadata = new NodeMetadata(isExclude, nodePath, currentNodeDepth, typeSettings.getComparisonDate(), ruleIndex);
+            relevantNodeMetadata.add(newMetadata);
+            metrics.openedNodeMetadata++;
+            return newMetadata;
+        }
+    }
+
+    private @Nullable NodeMetadata peekRelevantNodeMetadata() {
+        int size = relevantNodeMetadata.size();
+        return size == 0 ? null : relevantNodeMetadata.get(size - 1);
+    }
+
+    /**
+     * Determines whether the current node is part of a subtree which cannot contain relevant nodes.
+     * Only the outermost node of each subtree is compared with the root paths.
+     * @param nodePath the path of the current node
+     * @return {@code true} in case the current node can be skipped
+     */
+    private boolean isPruned(@NotNull String nodePath) {
+        if (prunedSubtreeDepth != 0) {
+            return true;
+        }
+        if (rootSubtreeDepth != 0) {
+            return false;
+        }
+        if (rootPaths.contains(nodePath)) {
+            rootSubtreeDepth = currentNodeDepth;
+            return false;
+        }
+        if (rootPaths.isAncestor(nodePath)) {
+            return false;
         }
+        LOGGER.debug("Skipping subtree {} as it is outside of {}", nodePath, rootPaths);
+        prunedSubtreeDepth = currentNodeDepth;
+        return true;
     }
 
     @Override
     @Nullable
     public Collection<ValidationMessage> validate(@NotNull DocViewNode2 node, @NotNull NodeContext nodeContext, boolean isRoot) {
-        // increase node depth level of all current metadata
-        relevantNodeMetadata.forEach(NodeMetadata::increaseCurrentNodeNestingLevel);
+        long start = System.nanoTime();
+        try {
+            Collection<ValidationMessage> messages = validateNode(node, nodeContext);
+            metrics.addViolations(messages);
+            writeReport(messages, nodeContext, RuleSet.NO_MATCH);
+            recordMessages(messages, nodeContext, RuleSet.NO_MATCH);
+            return messages;
+        } finally {
+            metrics.validateNanos += System.nanoTime() - start;
+        }
+    }
+
+    private @Nullable Collection<ValidationMessage> validateNode(@NotNull DocViewNode2 node, @NotNull NodeContext nodeContext) {
+        currentNodeDepth++;
+        metrics.nodes++;
+        if (isPruned(nodeContext.getNodePath())) {
+            metrics.prunedNodes++;
+            return null;
+        }
 
-        Optional<NodeMetadata> optionalCurrentMetadata = getNodeMetadata(nodeContext.getNodePath(), node);
+        NodeMetadata currentMetadata;
+        try {
+            currentMetadata = getNodeMetadata(nodeContext.getNodePath(), node);
+        } catch (PathPatternGuard.StepBudgetExceededException e) {
+            // a broken configuration, therefore always an error
+            return Collections.singletonList(new ValidationMessage(ValidationMessageSeverity.ERROR, e.getMessage()));
+        }
 
         // skipping irrelevant nodes
-        if (!optionalCurrentMetadata.isPresent()) {
+        if (currentMetadata == null) {
             return null;
         }
-        NodeMetadata currentMetadata = optionalCurrentMetadata.get();
         if (currentMetadata.getPath().equals(nodeContext.getNodePath())) {
+            propertyScan.scan(node);
             try {
-                currentMetadata.captureComparisonDate(node);
+                currentMetadata.captureComparisonDate(node, propertyScan, dateParser);
             } catch (IllegalStateException|RepositoryException e) {
                 return Collections.singletonList(new ValidationMessage(validationMessageSeverity, "Invalid last modification date found", e));
             }
-            currentMetadata.captureReplicationMetadata(node, agentNames);
+            currentMetadata.captureReplicationMetadata(propertyScan, dateParser);
         } else if (node.getName().equals(NameConstants.JCR_CONTENT)) {
             // capture replication metadata in jcr:content child node
             String parentNodePath = Text.getRelativeParent(nodeContext.getNodePath(), 1);
             if (currentMetadata.getPath().equals(parentNodePath)) {
-                currentMetadata.captureReplicationMetadata(node, agentNames);
+                currentMetadata.captureReplicationMetadata(propertyScan.scan(node), dateParser, true);
             }
         }
         return null;
@@ -145,19 +385,48 @@ public class AemReplicationMetadataValidator implements DocumentViewXmlValidator
     @Override
     @Nullable
     public Collection<ValidationMessage> validateEnd(@NotNull DocViewNode2 node, @NotNull NodeContext nodeContext, boolean isRoot) {
+        long start = System.nanoTime();
+        try {
+            return validateNodeEnd(nodeContext);
+        } finally {
+            metrics.validateEndNanos += System.nanoTime() - start;
+        }
+    }
+
+    private @Nullable Collection<ValidationMessage> validateNodeEnd(@NotNull NodeContext nodeContext) {
         // Due to https://issues.apache.org/jira/browse/JCRVLT-718? one cannot rely on nodeContext.getNodePath()
-        // therefore rely on NodeMetadata.currentNodeNestingLevel instead
-        
-        Iterator<NodeMetadata> iterator = relevantNodeMetadata.iterator();
-        while (iterator.hasNext()) {
-            NodeMetadata currentMetadata = iterator.next();
-            if (currentMetadata.decreaseCurrentNodeNestingLevel()) {
-                LOGGER.debug("End waiting for jcr:content below {}", currentMetadata.getPath());
-                iterator.remove();
-                return currentMetadata.validate(validationMessageSeverity, agentNames, strictLastModificationCheck);
+        // therefore rely on the node depth instead
+        int nodeDepth = currentNodeDepth--;
+        if (prunedSubtreeDepth != 0) {
+            if (prunedSubtreeDepth == nodeDepth) {
+                prunedSubtreeDepth = 0;
             }
+            return null;
         }
-        return null;
+        if (rootSubtreeDepth == nodeDepth) {
+            rootSubtreeDepth = 0;
+        }
+        // as nodes are properly nested only the innermost metadata may end here
+        NodeMetadata currentMetadata = peekRelevantNodeMetadata();
+        if (currentMetadata == null || !currentMetadata.isEndNode(nodeDepth)) {
+            return null;
+        }
+        LOGGER.debug("End waiting for jcr:content below {}", currentMetadata.getPath());
+        relevantNodeMetadata.remove(relevantNodeMetadata.size() - 1);
+        metrics.closedNodeMetadata++;
+        Collection<ValidationMessage> messages = currentMetadata.validate(validationMessageSeverity, agentPropertyNames, strictLastModificationCheck);
+        // the metrics and the report always cover all violations
+        metrics.addViolations(messages);
+        writeReport(messages, nodeContext, currentMetadata.getRuleIndex());
+        // all violations are recorded as the limit is applied again when replaying them
+        recordMessages(messages, nodeContext, currentMetadata.getRuleIndex());
+        if (fixes != null && !messages.isEmpty()) {
+            ReplicationMetadataFix fix = currentMetadata.createFix(messages, fixDate);
+            if (fix != null) {
+                fixes.add(fix);
+            }
+        }
+        return violationAggregator != null ? violationAggregator.limit(messages, currentMetadata.getRuleIndex()) : messages;
     }
 
 }
@@ -12,14 +12,23 @@
  */
 package biz.netcentric.filevault.validator;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
+import org.apache.jackrabbit.vault.fs.api.PathFilterSet;
+import org.apache.jackrabbit.vault.fs.api.WorkspaceFilter;
+import org.apache.jackrabbit.vault.packaging.PackageId;
 import org.apache.jackrabbit.vault.validation.spi.ValidationContext;
 import org.apache.jackrabbit.vault.validation.spi.Validator;
 import org.apache.jackrabbit.vault.validation.spi.ValidatorFactory;
@@ -27,12 +36,19 @@ import org.apache.jackrabbit.vault.validation.spi.ValidatorSettings;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.kohsuke.MetaInfServices;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.day.cq.wcm.api.NameConstants;
 
+/**
+ * Creates the {@link AemReplicationMetadataValidator}s. Thread-safe, the compiled configurations are cached and shared between all validators.
+ */
 @MetaInfServices
 public class AemReplicationMetadataValidatorFactory implements ValidatorFactory {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(AemReplicationMetadataValidatorFactory.class);
+
     private static final String RESOURCE_TYPE_CONTENT_POLICY = "wcm/core/components/policy/policy";
     // comma-separated list of items in the format "<regex>[<primary-type>]"
     private static final String OPTION_INCLUDED_NODE_PATH_PATTERNS_AND_TYPES = "includedNodePathPatternsAndTypes";
@@ -40,6 +56,22 @@ public class AemReplicationMetadataValidatorFactory implements ValidatorFactory
     private static final String OPTION_EXCLUDED_NODE_PATH_PATTERNS_AND_TYPES = "excludedNodePathPatternsAndTypes";
     private static final String OPTION_STRICT_LAST_MODIFICATION_CHECK = "strictLastModificationDateCheck";
     private static final String OPTION_AGENT_NAMES = "agentNames";
+    // comma-separated list of absolute repository paths
+    private static final String OPTION_ROOT_PATHS = "rootPaths";
+    // file to which the metrics of each validation run are appended in JSON Lines format
+    private static final String OPTION_METRICS_FILE = "metricsFile";
+    // measures the cost of each path pattern and logs a ranked report at the end of each package
+    private static final String OPTION_PROFILE_PATH_PATTERNS = "profilePathPatterns";
+    // the maximum number of steps of a single path pattern evaluation, 0 for unlimited
+    private static final String OPTION_PATH_PATTERN_STEP_BUDGET = "pathPatternStepBudget";
+    // file into which all violations are streamed
+    private static final String OPTION_REPORT_FILE = "reportFile";
+    // either "jsonl" or "sarif", by default derived from the report file's extension
+    private static final String OPTION_REPORT_FORMAT = "reportFormat";
+    // file in which the violations of sub packages are persisted to be reused across builds
+    private static final String OPTION_SUBPACKAGE_CACHE_FILE = "subpackageCacheFile";
+    // the maximum number of violations emitted per rule and violation code, 0 for unlimited
+    private static final String OPTION_MAX_VIOLATIONS_PER_GROUP = "maxViolationsPerGroup";
     private static final String ATTRIBUTE_COMPARISON_DATE = "comparisonDate";
     private static final @NotNull Set<@NotNull String> DEFAULT_AGENT_NAMES = Collections.singleton(ReplicationMetadata.DEFAULT_AGENT_NAME);
     private static final @NotNull Collection<TypeSettings> DEFAULT_INCLUDED_TYPES_SETTINGS = createDefaultIncludedTypesSettings();
@@ -56,9 +88,7 @@ public class AemReplicationMetadataValidatorFactory implements ValidatorFactory
         // mapped content policies (as found by com.day.cq.wcm.core.impl.reference.ContentPolicyReferenceProvider)
         typesSettings.add(new TypeSettings(".*/settings/wcm/policies/.*", RESOURCE_TYPE_CONTENT_POLICY));
         // content fragment models (as found by com.adobe.cq.dam.cfm.impl.search.ContentFragmentReferencePublishProvider)
-        TypeSettings typeSettings = new TypeSettings(".*/settings/dam/cfm/models/.*", RESOURCE_TYPE_CONTENT_FRAGMENT_MODEL_PAGE);
-        typeSettings.setComparisonDatePropery(DateProperty.CQ_MODIFIED_CREATED_OR_CURRENT);
-        typesSettings.add(typeSettings);
+        typesSettings.add(new TypeSettings(".*/settings/dam/cfm/models/.*", RESOURCE_TYPE_CONTENT_FRAGMENT_MODEL_PAGE, DateProperty.CQ_MODIFIED_CREATED_OR_CURRENT));
         // regular context-aware configuration (as found by https://github.com/adobe/aem-core-wcm-components/blob/main/bundles/core/src/main/java/com/adobe/cq/wcm/core/components/internal/services/CaConfigReferenceProvider.java)
         typesSettings.add(new TypeSettings("/(apps|conf)/.*/(sling:configs|settings/cloudconfigs)/.*", NameConstants.NT_PAGE));
         // segment pages (as found by com.day.cq.personalization.impl.TargetedComponentReferenceProvider)
@@ -66,6 +96,9 @@ public class AemReplicationMetadataValidatorFactory implements ValidatorFactory
         return Collections.unmodifiableCollection(typesSettings);
     }
 
+    /** all nodes covered by the default included/excluded types settings are located below one of those paths (even though most default patterns start with ".*") */
+    private static final @NotNull RootPaths DEFAULT_ROOT_PATHS = new RootPaths(Arrays.asList("/apps", "/conf", "/libs"));
+
     private static final @NotNull  Collection<TypeSettings> DEFAULT_EXCLUDED_TYPES_SETTINGS = createDefaultExcludedTypesSettings();
 
     private static Collection<TypeSettings> createDefaultExcludedTypesSettings() {
@@ -74,28 +107,142 @@ public class AemReplicationMetadataValidatorFactory implements ValidatorFactory
         return Collections.unmodifiableCollection(typesSettings);
     }
     
+    /** compiled configurations keyed by the raw option values (the number of distinct configurations within one JVM is usually very low) */
+    private final @NotNull Map<List<String>, ValidatorConfiguration> configurationCache = new ConcurrentHashMap<>();
+
     @Nullable
     public Validator createValidator(@NotNull ValidationContext context, @NotNull ValidatorSettings settings) {
+        ValidatorConfiguration configuration = getConfiguration(settings.getOptions());
+        if (!isPackageRelevant(context.getFilter(), configuration.getRootPaths())) {
+            LOGGER.debug("Skipping package as none of its filter roots intersect {}", configuration.getRootPaths());
+            return null;
+        }
+        return new AemReplicationMetadataValidator(settings.getDefaultSeverity(), configuration, getPackageId(context));
+    }
+
+    private static @Nullable String getPackageId(@NotNull ValidationContext context) {
+        try {
+            PackageId packageId = context.getProperties().getId();
+            if (packageId != null) {
+                return packageId.toString();
+            }
+        } catch (IllegalStateException e) {
+            LOGGER.debug("Could not retrieve package properties", e);
+        }
+        return context.getPackageRootPath() != null ? context.getPackageRootPath().toString() : null;
+    }
+
+    /**
+     * 
+     * @param filter the package's workspace filter
+     * @param rootPaths the root paths of the validator
+     * @return {@code false} in case none of the filter roots intersect any of the root paths (i.e. the package cannot contain any relevant node), otherwise {@code true}
+     */
+    static boolean isPackageRelevant(@NotNull WorkspaceFilter filter, @NotNull RootPaths rootPaths) {
+        List<PathFilterSet> filterSets = filter.getFilterSets();
+        if (rootPaths.isUnrestricted() || filterSets.isEmpty()) {
+            return true;
+        }
+        for (PathFilterSet filterSet : filterSets) {
+            if (rootPaths.intersects(filterSet.getRoot())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 
+     * @param options the raw validator options
+     * @return the compiled configuration for the given options (only compiled once per distinct options)
+     */
+    @NotNull ValidatorConfiguration getConfiguration(@NotNull Map<String, String> options) {
+        List<String> key = Arrays.asList(
+                options.get(OPTION_INCLUDED_NODE_PATH_PATTERNS_AND_TYPES),
+                options.get(OPTION_EXCLUDED_NODE_PATH_PATTERNS_AND_TYPES),
+                options.get(OPTION_STRICT_LAST_MODIFICATION_CHECK),
+                options.get(OPTION_AGENT_NAMES),
+                options.get(OPTION_ROOT_PATHS),
+                options.get(OPTION_METRICS_FILE),
+                options.get(OPTION_PROFILE_PATH_PATTERNS),
+                options.get(OPTION_PATH_PATTERN_STEP_BUDGET),
+                options.get(OPTION_REPORT_FILE),
+                options.get(OPTION_REPORT_FORMAT),
+                options.get(OPTION_SUBPACKAGE_CACHE_FILE),
+                options.get(OPTION_MAX_VIOLATIONS_PER_GROUP));
+        return configurationCache.computeIfAbsent(key, k -> createConfiguration(options));
+    }
+
+    static @NotNull ValidatorConfiguration createConfiguration(@NotNull Map<String, String> options) {
         final @NotNull Collection<TypeSettings> includedTypesSettings;
-        if (settings.getOptions().containsKey(OPTION_INCLUDED_NODE_PATH_PATTERNS_AND_TYPES)) {
-            includedTypesSettings = parseTypesSettings(settings.getOptions().get(OPTION_INCLUDED_NODE_PATH_PATTERNS_AND_TYPES));
+        if (options.containsKey(OPTION_INCLUDED_NODE_PATH_PATTERNS_AND_TYPES)) {
+            includedTypesSettings = parseTypesSettings(options.get(OPTION_INCLUDED_NODE_PATH_PATTERNS_AND_TYPES));
         } else {
             includedTypesSettings = DEFAULT_INCLUDED_TYPES_SETTINGS;
         }
         final @NotNull Collection<TypeSettings> excludedTypesSettings;
-        if (settings.getOptions().containsKey(OPTION_EXCLUDED_NODE_PATH_PATTERNS_AND_TYPES)) {
-            excludedTypesSettings = parseTypesSettings(settings.getOptions().get(OPTION_EXCLUDED_NODE_PATH_PATTERNS_AND_TYPES));
+        if (options.containsKey(OPTION_EXCLUDED_NODE_PATH_PATTERNS_AND_TYPES)) {
+            excludedTypesSettings = parseTypesSettings(options.get(OPTION_EXCLUDED_NODE_PATH_PATTERNS_AND_TYPES));
         } else {
             excludedTypesSettings = DEFAULT_EXCLUDED_TYPES_SETTINGS;
         }
-        boolean strictLastModificationDateCheck = Boolean.parseBoolean(settings.getOptions().get(OPTION_STRICT_LAST_MODIFICATION_CHECK));
+        boolean strictLastModificationDateCheck = Boolean.parseBoolean(options.get(OPTION_STRICT_LAST_MODIFICATION_CHECK));
         final @NotNull Set<@NotNull String> agentNames;
-        if (settings.getOptions().containsKey(OPTION_AGENT_NAMES)) {
-            agentNames = Arrays.stream(settings.getOptions().get(OPTION_AGENT_NAMES).split(",")).map(String::trim).collect(Collectors.toSet());
+        if (options.containsKey(OPTION_AGENT_NAMES)) {
+            agentNames = Arrays.stream(options.get(OPTION_AGENT_NAMES).split(",")).map(String::trim).collect(Collectors.toCollection(LinkedHashSet::new));
         } else {
             agentNames = DEFAULT_AGENT_NAMES;
         }
-        return new AemReplicationMetadataValidator(settings.getDefaultSeverity(), includedTypesSettings, excludedTypesSettings, strictLastModificationDateCheck, agentNames);
+        final @NotNull RootPaths rootPaths;
+        if (options.containsKey(OPTION_ROOT_PATHS)) {
+            rootPaths = new RootPaths(Arrays.asList(options.get(OPTION_ROOT_PATHS).split(",")));
+        } else {
+            // derive from the path patterns (the default patterns are not anchored though)
+            RootPaths includedRootPaths = includedTypesSettings == DEFAULT_INCLUDED_TYPES_SETTINGS ? DEFAULT_ROOT_PATHS : RootPaths.fromTypesSettings(includedTypesSettings);
+            RootPaths excludedRootPaths = excludedTypesSettings == DEFAULT_EXCLUDED_TYPES_SETTINGS ? DEFAULT_ROOT_PATHS : RootPaths.fromTypesSettings(excludedTypesSettings);
+            rootPaths = includedRootPaths.union(excludedRootPaths);
+        }
+        String metricsFile = options.get(OPTION_METRICS_FILE);
+        long pathPatternStepBudget = PathPatternGuard.DEFAULT_STEP_BUDGET;
+        if (options.containsKey(OPTION_PATH_PATTERN_STEP_BUDGET)) {
+            try {
+                pathPatternStepBudget = Long.parseLong(options.get(OPTION_PATH_PATTERN_STEP_BUDGET).trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Option " + OPTION_PATH_PATTERN_STEP_BUDGET + " must be a number but found " + options.get(OPTION_PATH_PATTERN_STEP_BUDGET), e);
+            }
+        }
+        int maxViolationsPerGroup = 0;
+        if (options.containsKey(OPTION_MAX_VIOLATIONS_PER_GROUP)) {
+            try {
+                maxViolationsPerGroup = Integer.parseInt(options.get(OPTION_MAX_VIOLATIONS_PER_GROUP).trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Option " + OPTION_MAX_VIOLATIONS_PER_GROUP + " must be a number but found " + options.get(OPTION_MAX_VIOLATIONS_PER_GROUP), e);
+            }
+            if (maxViolationsPerGroup < 0) {
+                throw new IllegalArgumentException("Option " + OPTION_MAX_VIOLATIONS_PER_GROUP + " must not be negative but found " + maxViolationsPerGroup);
+            }
+        }
+        String reportFileOption = options.get(OPTION_REPORT_FILE);
+        Path reportFile = reportFileOption != null && !reportFileOption.trim().isEmpty() ? Paths.get(reportFileOption.trim()) : null;
+        final ViolationReport.Format reportFormat;
+        String reportFormatOption = options.get(OPTION_REPORT_FORMAT);
+        if (reportFormatOption == null || reportFormatOption.trim().isEmpty()) {
+            reportFormat = reportFile != null ? ViolationReport.Format.fromFileName(reportFile) : ViolationReport.Format.JSON_LINES;
+        } else if (reportFormatOption.trim().equalsIgnoreCase("jsonl")) {
+            reportFormat = ViolationReport.Format.JSON_LINES;
+        } else if (reportFormatOption.trim().equalsIgnoreCase("sarif")) {
+            reportFormat = ViolationReport.Format.SARIF;
+        } else {
+            throw new IllegalArgumentException("Option " + OPTION_REPORT_FORMAT + " must be either \"jsonl\" or \"sarif\" but found " + reportFormatOption);
+        }
+        return new ValidatorConfiguration(includedTypesSettings, excludedTypesSettings, strictLastModificationDateCheck, agentNames, rootPaths,
+                metricsFile != null && !metricsFile.trim().isEmpty() ? Paths.get(metricsFile.trim()) : null,
+                Boolean.parseBoolean(options.get(OPTION_PROFILE_PATH_PATTERNS)), pathPatternStepBudget, reportFile, reportFormat,
+                toPath(options.get(OPTION_SUBPACKAGE_CACHE_FILE)), maxViolationsPerGroup);
+    }
+
+    private static @Nullable Path toPath(@Nullable String option) {
+        return option != null && !option.trim().isEmpty() ? Paths.get(option.trim()) : null;
     }
 
     static @NotNull Collection<TypeSettings> parseTypesSettings(String option) {
@@ -113,19 +260,26 @@ public class AemReplicationMetadataValidatorFactory implements ValidatorFactory
         }
         String pattern = entry.substring(0, startType);
         String type = entry.substring(startType + 1, endType);
-        TypeSettings typeSettings = new TypeSettings(pattern, type);
+        DateProperty comparisonDateProperty = DateProperty.MODIFIED;
         if (endType < entry.length()-1) {
             // type may have additional attributes separated by ";"
             if (entry.charAt(endType+1) != ';') {
                 throw new IllegalArgumentException("Each entry may either end with the type enclosed by \"[\" and \"]\" or some attributes separated by \";\"");
             }
             String attributes = entry.substring(endType+2).trim(); // ignore whitespaces around ";"
-            parseAttributes(typeSettings, attributes);
+            comparisonDateProperty = parseComparisonDateAttribute(attributes, comparisonDateProperty);
         }
-        return typeSettings;
+        return new TypeSettings(pattern, type, comparisonDateProperty);
     }
 
-    static void parseAttributes(TypeSettings typeSettings, String attributes) {
+    /**
+     * 
+     * @param attributes the attributes separated by ";"
+     * @param defaultComparisonDateProperty the comparison date to return in case the attributes don't specify one
+     * @return the comparison date given by the attributes
+     */
+    static DateProperty parseComparisonDateAttribute(String attributes, DateProperty defaultComparisonDateProperty) {
+        DateProperty comparisonDateProperty = defaultComparisonDateProperty;
         for (String attribute : attributes.split(";")) {
             String[] attributePair = attribute.split("=", 2);
             if (attributePair.length != 2) {
@@ -134,11 +288,12 @@ public class AemReplicationMetadataValidatorFactory implements ValidatorFactory
             String attributeName = attributePair[0];
             String attributeValue = attributePair[1];
             if (attributeName.equals(ATTRIBUTE_COMPARISON_DATE)) {
-                typeSettings.setComparisonDatePropery(DateProperty.valueOf(attributeValue));
+                comparisonDateProperty = DateProperty.valueOf(attributeValue);
             } else {
                 throw new IllegalArgumentException("Unsupported attribute with name " + attributeName);
             }
         }
+        return comparisonDateProperty;
     }
     public boolean shouldValidateSubpackages() {
         return true;
@@ -0,0 +1,64 @@
+/*-
+ * #%L
+ * AEM Replication Metadata Validator
+ * %%
+ * Copyright (C) 2024 Cognizant Netcentric
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package biz.netcentric.filevault.validator;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.jackrabbit.spi.Name;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The names of the replication metadata properties for one specific agent.
+ * Immutable and computed only once per configuration.
+ */
+final class AgentPropertyNames {
+
+    // the following are just the local names of properties (without their namespace prefix)
+    private static final String LAST_REPLICATED = "lastReplicated";
+    private static final String LAST_PUBLISHED = "lastPublished";
+    private static final String LAST_REPLICATION_ACTION = "lastReplicationAction";
+
+    private final @NotNull String agentName;
+    /** the names of the properties carrying the last replication date in the order of precedence */
+    private final @NotNull List<Name> lastReplicationDateNames;
+    private final @NotNull Name lastReplicationActionName;
+
+    AgentPropertyNames(@NotNull String agentName) {
+        this.agentName = agentName;
+        // only use agent specific metadata if name is not "publish", replicating logic from com.day.cq.wcm.core.impl.reference.ReferenceReplicationStatusProvider.initReplicationStatusMap() line 67
+        String metadataPropertySuffix = agentName.equals(ReplicationMetadata.DEFAULT_AGENT_NAME) ? "" : ("_" + agentName);
+        this.lastReplicationDateNames = Collections.unmodifiableList(Arrays.asList(
+                NameConstants.NAME_FACTORY.create(NameConstants.CQ_NAMESPACE_URI, LAST_REPLICATED + metadataPropertySuffix),
+                NameConstants.NAME_FACTORY.create(NameConstants.CQ_NAMESPACE_URI, LAST_PUBLISHED + metadataPropertySuffix)));
+        this.lastReplicationActionName = NameConstants.NAME_FACTORY.create(NameConstants.CQ_NAMESPACE_URI, LAST_REPLICATION_ACTION + metadataPropertySuffix);
+    }
+
+    @NotNull String getAgentName() {
+        return agentName;
+    }
+
+    @NotNull List<Name> getLastReplicationDateNames() {
+        return lastReplicationDateNames;
+    }
+
+    @NotNull Name getLastReplicationActionName() {
+        return lastReplicationActionName;
+    }
+
+    @Override
+    public String toString() {
+        return "AgentPropertyNames [agentName=" + agentName + "]";
+    }
+}
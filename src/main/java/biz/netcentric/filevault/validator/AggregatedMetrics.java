@@ -0,0 +1,79 @@
+/*-
+ * #%L
+ * AEM Replication Metadata Validator
+ * %%
+ * Copyright (C) 2024 Cognizant Netcentric
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package biz.netcentric.filevault.validator;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The totals of the {@link ValidationMetrics} of all validator runs within the JVM (e.g. all modules of a parallel Maven build).
+ * <p>
+ * Thread-safe: validators finishing concurrently only add to striped {@link LongAdder}s, i.e. never block each other.
+ * Reading the totals while validators are still running yields a (weakly consistent) intermediate state.
+ */
+final class AggregatedMetrics {
+
+    /** the totals of all validators of this JVM */
+    static final @NotNull AggregatedMetrics JVM = new AggregatedMetrics();
+
+    private final @NotNull LongAdder packages = new LongAdder();
+    private final @NotNull LongAdder nodes = new LongAdder();
+    private final @NotNull LongAdder prunedNodes = new LongAdder();
+    private final @NotNull LongAdder regexEvaluations = new LongAdder();
+    private final @NotNull LongAdder violations = new LongAdder();
+    private final @NotNull LongAdder nanos = new LongAdder();
+
+    void add(@NotNull ValidationMetrics metrics) {
+        packages.increment();
+        nodes.add(metrics.nodes);
+        prunedNodes.add(metrics.prunedNodes);
+        regexEvaluations.add(metrics.regexEvaluations);
+        violations.add(metrics.getViolations());
+        nanos.add(metrics.validateNanos + metrics.validateEndNanos);
+    }
+
+    long getPackages() {
+        return packages.sum();
+    }
+
+    long getNodes() {
+        return nodes.sum();
+    }
+
+    long getPrunedNodes() {
+        return prunedNodes.sum();
+    }
+
+    long getRegexEvaluations() {
+        return regexEvaluations.sum();
+    }
+
+    long getViolations() {
+        return violations.sum();
+    }
+
+    long getNanos() {
+        return nanos.sum();
+    }
+
+    /**
+     *
+     * @return a human readable summary in a single line
+     */
+    @NotNull String toSummary() {
+        return getPackages() + " packages, " + getNodes() + " nodes (" + getPrunedNodes() + " pruned) in "
+                + TimeUnit.NANOSECONDS.toMillis(getNanos()) + " ms, " + getRegexEvaluations() + " regex evaluations, " + getViolations() + " violations";
+    }
+}
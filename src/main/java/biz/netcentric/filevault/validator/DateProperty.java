@@ -12,18 +12,11 @@
  */
 package biz.netcentric.filevault.validator;
 
-import java.util.AbstractMap.SimpleEntry;
 import java.util.Arrays;
-import java.util.Calendar;
 import java.util.Collection;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Optional;
 
 import javax.jcr.Node;
-import javax.jcr.PropertyType;
 import javax.jcr.RepositoryException;
-import javax.jcr.Value;
 
 import org.apache.jackrabbit.vault.util.DocViewNode2;
 import org.apache.jackrabbit.vault.util.DocViewProperty2;
@@ -66,6 +59,11 @@ enum DateProperty {
      */
     CQ_MODIFIED_CREATED_OR_CURRENT(Arrays.asList(PropertyName.PROPERTY_CQ_LAST_MODIFIED, PropertyName.PROPERTY_CQ_CREATED), true);
 
+    /** returned by {@link #extractDate(DocViewNode2, PropertyNameIndex.PropertyScan, JcrDateParser)} in case none of the properties is set */
+    static final long NO_DATE = Long.MIN_VALUE;
+
+    private static final String CURRENT_DATE_LABEL = "current date";
+
     private final boolean useCurrentDateAsLastResort;
     private final Collection<PropertyName> propertyNames;
 
@@ -74,43 +72,59 @@ enum DateProperty {
         this.propertyNames = propertyNames;
     }
 
+    Collection<PropertyName> getPropertyNames() {
+        return propertyNames;
+    }
+
     /**
-     * Extracts a date from a property given by the enum type.
+     * Extracts a date from a property given by the enum type without allocating any objects.
      * @param node the node from which to extract the date
-     * @return the date value from one of the properties specified by this enum together with a label (explaining where the date came from)
+     * @param propertyScan the properties of the given node, receives the label explaining where the date came from (see {@link PropertyNameIndex.PropertyScan#getDateLabel()})
+     * @param dateParser the parser to use for date values (also providing the current date)
+     * @return the date value (in epoch milliseconds) from one of the properties specified by this enum or {@link #NO_DATE}
      * @throws RepositoryException 
      */
-    Optional<Map.Entry<Calendar, String>> extractDate(@NotNull DocViewNode2 node) throws RepositoryException {
-        Map.Entry<Calendar, String> dateAndLabel = extractDate(node, propertyNames).orElse(
-                useCurrentDateAsLastResort ? new SimpleEntry<>(Calendar.getInstance(), "current date") : null);
-        return Optional.ofNullable(dateAndLabel);
-    }
-
-    Optional<Map.Entry<Calendar, String>> extractDate(@NotNull DocViewNode2 node, Collection<PropertyName> propertyNames) throws RepositoryException {
+    long extractDate(@NotNull DocViewNode2 node, @NotNull PropertyNameIndex.PropertyScan propertyScan, @NotNull JcrDateParser dateParser) throws RepositoryException {
         for (PropertyName propertyName : propertyNames) {
-            Optional<Map.Entry<Calendar, String>> dateAndLabel = extractDate(node, propertyName);
-            if (dateAndLabel.isPresent()) {
-                return dateAndLabel;
+            long date = extractDate(node, propertyScan, propertyName, dateParser);
+            if (date != NO_DATE) {
+                return date;
             }
         }
-        return Optional.empty();
+        if (useCurrentDateAsLastResort) {
+            propertyScan.setDateLabel(CURRENT_DATE_LABEL);
+            return dateParser.getCurrentTimeMillis();
+        }
+        propertyScan.setDateLabel(null);
+        return NO_DATE;
+    }
+
+    private static long extractDate(@NotNull DocViewNode2 node, @NotNull PropertyNameIndex.PropertyScan propertyScan, @NotNull PropertyName propertyName,
+            @NotNull JcrDateParser dateParser) throws RepositoryException {
+        DocViewProperty2 property = propertyScan.getProperty(propertyName);
+        if (property != null) {
+            long date = dateParser.parse(property.getStringValue().orElseThrow(() -> new IllegalStateException("No value found in " + propertyName.getName())));
+            propertyScan.setDateLabel(propertyName.getLabel());
+            return date;
+        }
+        // check for auto-created property
+        if (hasAnyType(node, propertyName.getAutoCreatedTypes())) {
+            propertyScan.setDateLabel(propertyName.getAutoCreatedLabel());
+            return dateParser.getCurrentTimeMillis();
+        }
+        return NO_DATE;
     }
 
-    Optional<Map.Entry<Calendar, String>> extractDate(@NotNull DocViewNode2 node, PropertyName propertyName) throws RepositoryException {
-        Map.Entry<Calendar, String> dateAndLabel = null;
-        Optional<DocViewProperty2> property = node.getProperty(propertyName.getName());
-        if (property.isPresent()) {
-            Value propertyValue = NameConstants.VALUE_FACTORY.createValue(property.get().getStringValue().orElseThrow(() -> new IllegalStateException("No value found in " + propertyName.getName())), PropertyType.DATE);
-            dateAndLabel = new SimpleEntry<>(propertyValue.getDate(), property.get().getName().toString());
-        } else {
-            // check for auto-created property
-            Collection<String> types = new HashSet<>();
-            node.getPrimaryType().ifPresent(types::add);
-            types.addAll(node.getMixinTypes());
-            if (propertyName.getAutoCreatedTypes().stream().anyMatch(types::contains)) {
-                dateAndLabel = new SimpleEntry<>(Calendar.getInstance(), "auto created " + propertyName.getName().toString());
+    private static boolean hasAnyType(@NotNull DocViewNode2 node, @NotNull Collection<String> types) {
+        if (types.isEmpty()) {
+            return false;
+        }
+        String primaryType = node.getPrimaryType().orElse(null);
+        for (String type : types) {
+            if (type.equals(primaryType) || node.getMixinTypes().contains(type)) {
+                return true;
             }
         }
-        return Optional.ofNullable(dateAndLabel);
+        return false;
     }
-}
\ No newline at end of file
+}
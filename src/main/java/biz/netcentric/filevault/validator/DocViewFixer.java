@@ -0,0 +1,441 @@
+/*-
+ * #%L
+ * AEM Replication Metadata Validator
+ * %%
+ * Copyright (C) 2024 Cognizant Netcentric
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package biz.netcentric.filevault.validator;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.jackrabbit.spi.Name;
+import org.apache.jackrabbit.util.ISO9075;
+import org.apache.jackrabbit.util.Text;
+import org.apache.jackrabbit.vault.util.PathUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Applies {@link ReplicationMetadataFix}es to a DocView XML file.
+ * Only the start tags of the affected elements are rewritten, all other characters are copied verbatim.
+ * The file is streamed (only the current tag is buffered) into a temporary file which replaces the original file once at least one element has been fixed.
+ * New attributes are appended after the last existing one, separated with the same whitespace as the latter (to keep the formatting of FileVault).
+ * <p>
+ * Only UTF-8 encoded files are supported (which is the only encoding FileVault writes), other files lead to an {@link IOException}.
+ */
+final class DocViewFixer {
+
+    private static final String XMLNS = "xmlns";
+    /** the prefixes used for namespaces which are not yet declared in the file */
+    private static final Map<String, String> DEFAULT_PREFIXES = Collections.singletonMap(NameConstants.CQ_NAMESPACE_URI, "cq");
+
+    private final @NotNull Reader reader;
+    private final @NotNull Writer writer;
+    private final @NotNull String rootNodePath;
+    private final @NotNull Map<String, ReplicationMetadataFix> fixes;
+    /** the paths of the open elements */
+    private final @NotNull Deque<String> paths = new ArrayDeque<>();
+    /** the namespace declarations (prefix to URI) of the open elements */
+    private final @NotNull Deque<Map<String, String>> namespaces = new ArrayDeque<>();
+    /** the current markup (tag, comment, CDATA section or processing instruction) */
+    private final @NotNull StringBuilder markup = new StringBuilder();
+    private int fixedNodes;
+
+    private DocViewFixer(@NotNull Reader reader, @NotNull Writer writer, @NotNull String rootNodePath, @NotNull Map<String, ReplicationMetadataFix> fixes) {
+        this.reader = reader;
+        this.writer = writer;
+        this.rootNodePath = rootNodePath;
+        this.fixes = fixes;
+    }
+
+    /**
+     * Applies the given fixes to the file. Fixes for nodes not contained in the file are ignored.
+     * @param file the DocView XML file
+     * @param rootNodePath the node path of the root element of the file
+     * @param fixes the fixes to apply
+     * @return the number of fixed nodes
+     * @throws IOException in case the file cannot be read or written or is not well-formed
+     */
+    static int fix(@NotNull Path file, @NotNull String rootNodePath, @NotNull Collection<ReplicationMetadataFix> fixes) throws IOException {
+        Map<String, ReplicationMetadataFix> fixesByPath = new HashMap<>();
+        for (ReplicationMetadataFix fix : fixes) {
+            fixesByPath.put(fix.getNodePath(), fix);
+        }
+        Path absoluteFile = file.toAbsolutePath();
+        Path tempFile = Files.createTempFile(absoluteFile.getParent(), absoluteFile.getFileName().toString(), ".tmp");
+        try {
+            final int fixedNodes;
+            // the decoder reports malformed input instead of replacing it
+            try (Reader fileReader = new BufferedReader(new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8.newDecoder()));
+                    Writer fileWriter = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(tempFile), StandardCharsets.UTF_8))) {
+                fixedNodes = new DocViewFixer(fileReader, fileWriter, rootNodePath, fixesByPath).copy();
+            }
+            if (fixedNodes > 0) {
+                copyPermissions(file, tempFile);
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return fixedNodes;
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Temporary files are only accessible by their owner, therefore the permissions of the original file need to be applied before replacing it.
+     * @param source the file whose permissions to copy
+     * @param target the file whose permissions to change
+     * @throws IOException in case the permissions cannot be read or changed
+     */
+    private static void copyPermissions(@NotNull Path source, @NotNull Path target) throws IOException {
+        PosixFileAttributeView targetView = Files.getFileAttributeView(target, PosixFileAttributeView.class);
+        if (targetView != null) {
+            targetView.setPermissions(Files.readAttributes(source, PosixFileAttributes.class).permissions());
+        } else {
+            // e.g. on Windows only the read-only flag is relevant
+            target.toFile().setWritable(Files.isWritable(source));
+        }
+    }
+
+    private int copy() throws IOException {
+        int character;
+        while ((character = reader.read()) != -1) {
+            if (character != '<') {
+                writer.write(character);
+                continue;
+            }
+            markup.setLength(0);
+            markup.append('<');
+            char next = read();
+            if (next == '?') {
+                // processing instruction or XML declaration
+                readUntil("?>", 4);
+            } else if (next == '!') {
+                char type = read();
+                if (type == '-') {
+                    readUntil("-->", 7);
+                } else if (type == '[') {
+                    readUntil("]]>", 12);
+                } else {
+                    // document type declaration (DTDs are not supported anyway)
+                    readUntil(">", 3);
+                }
+            } else if (next == '/') {
+                readUntil(">", 3);
+                paths.pop();
+                namespaces.pop();
+            } else {
+                readStartTag();
+                writer.write(startElement());
+                continue;
+            }
+            writer.append(markup);
+        }
+        return fixedNodes;
+    }
+
+    private char read() throws IOException {
+        int character = reader.read();
+        if (character == -1) {
+            throw new EOFException("Unexpected end of file within " + markup);
+        }
+        markup.append((char) character);
+        return (char) character;
+    }
+
+    private void readUntil(@NotNull String terminator, int minLength) throws IOException {
+        while (markup.length() < minLength || !endsWith(terminator)) {
+            read();
+        }
+    }
+
+    private boolean endsWith(@NotNull String suffix) {
+        int offset = markup.length() - suffix.length();
+        if (offset < 0) {
+            return false;
+        }
+        for (int i = 0; i < suffix.length(); i++) {
+            if (markup.charAt(offset + i) != suffix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void readStartTag() throws IOException {
+        char quote = 0;
+        while (true) {
+            char character = read();
+            if (quote != 0) {
+                if (character == quote) {
+                    quote = 0;
+                }
+            } else if (character == '"' || character == '\'') {
+                quote = character;
+            } else if (character == '>') {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Processes the start tag in {@link #markup}.
+     * @return the (potentially rewritten) start tag
+     */
+    private @NotNull String startElement() throws IOException {
+        StartTag tag = new StartTag(markup);
+        Map<String, String> declarations = Collections.emptyMap();
+        for (Attribute attribute : tag.attributes) {
+            if (attribute.prefix.equals(XMLNS)) {
+                if (declarations.isEmpty()) {
+                    declarations = new HashMap<>();
+                }
+                declarations.put(attribute.localName, attribute.getValue(markup));
+            }
+        }
+        namespaces.push(declarations);
+        String path = getPath(tag.name);
+        ReplicationMetadataFix fix = fixes.get(path);
+        String result = fix != null ? rewrite(tag, fix) : markup.toString();
+        if (tag.isEmptyElement) {
+            namespaces.pop();
+        } else {
+            paths.push(path);
+        }
+        return result;
+    }
+
+    private @NotNull String getPath(@NotNull String qualifiedName) throws IOException {
+        String parentPath = paths.peek();
+        if (parentPath == null) {
+            int colon = qualifiedName.indexOf(':');
+            if (colon > 0 && qualifiedName.substring(colon + 1).equals("root") && Name.NS_JCR_URI.equals(resolvePrefix(qualifiedName.substring(0, colon)))) {
+                return rootNodePath;
+            }
+            parentPath = Text.getRelativeParent(rootNodePath, 1);
+        }
+        // same logic as in JcrRootScanner
+        return PathUtil.append(parentPath, ISO9075.decode(qualifiedName));
+    }
+
+    private @Nullable String resolvePrefix(@NotNull String prefix) {
+        for (Map<String, String> declarations : namespaces) {
+            String uri = declarations.get(prefix);
+            if (uri != null) {
+                return uri;
+            }
+        }
+        return null;
+    }
+
+    private @NotNull String rewrite(@NotNull StartTag tag, @NotNull ReplicationMetadataFix fix) throws IOException {
+        StringBuilder rewrittenTag = new StringBuilder(markup.length() + 256);
+        Set<Name> setProperties = new HashSet<>();
+        int position = 0;
+        for (Attribute attribute : tag.attributes) {
+            Name name = attribute.getName();
+            if (name == null) {
+                continue;
+            }
+            if (fix.getPropertiesToRemove().contains(name)) {
+                rewrittenTag.append(markup, position, attribute.start);
+                position = attribute.end;
+            } else {
+                String value = fix.getPropertiesToSet().get(name);
+                if (value != null) {
+                    rewrittenTag.append(markup, position, attribute.valueStart);
+                    appendEscaped(rewrittenTag, value);
+                    position = attribute.end - 1;
+                    setProperties.add(name);
+                }
+            }
+        }
+        rewrittenTag.append(markup, position, tag.attributesEnd);
+        String separator = tag.attributes.isEmpty() ? " " : tag.attributes.get(tag.attributes.size() - 1).getLeadingWhitespace(markup);
+        for (Map.Entry<Name, String> property : fix.getPropertiesToSet().entrySet()) {
+            if (setProperties.contains(property.getKey())) {
+                continue;
+            }
+            String prefix = getOrDeclarePrefix(property.getKey().getNamespaceURI(), rewrittenTag, separator);
+            rewrittenTag.append(separator).append(prefix).append(':').append(ISO9075.encode(property.getKey().getLocalName())).append("=\"");
+            appendEscaped(rewrittenTag, property.getValue());
+            rewrittenTag.append('"');
+        }
+        rewrittenTag.append(markup, tag.attributesEnd, markup.length());
+        fixedNodes++;
+        return rewrittenTag.toString();
+    }
+
+    private @NotNull String getOrDeclarePrefix(@NotNull String uri, @NotNull StringBuilder rewrittenTag, @NotNull String separator) {
+        for (Map<String, String> declarations : namespaces) {
+            for (Map.Entry<String, String> declaration : declarations.entrySet()) {
+                // the prefix must not be bound to another namespace in an inner scope
+                if (declaration.getValue().equals(uri) && uri.equals(resolvePrefix(declaration.getKey()))) {
+                    return declaration.getKey();
+                }
+            }
+        }
+        String defaultPrefix = DEFAULT_PREFIXES.getOrDefault(uri, "ns");
+        String prefix = defaultPrefix;
+        for (int i = 1; resolvePrefix(prefix) != null; i++) {
+            prefix = defaultPrefix + i;
+        }
+        rewrittenTag.append(separator).append(XMLNS).append(':').append(prefix).append("=\"");
+        appendEscaped(rewrittenTag, uri);
+        rewrittenTag.append('"');
+        Map<String, String> declarations = new HashMap<>(namespaces.pop());
+        declarations.put(prefix, uri);
+        namespaces.push(declarations);
+        return prefix;
+    }
+
+    private static void appendEscaped(@NotNull StringBuilder builder, @NotNull String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char character = value.charAt(i);
+            switch (character) {
+                case '&':
+                    builder.append("&amp;");
+                    break;
+                case '<':
+                    builder.append("&lt;");
+                    break;
+                case '"':
+                    builder.append("&quot;");
+                    break;
+                case '\'':
+                    builder.append("&apos;");
+                    break;
+                default:
+                    builder.append(character);
+            }
+        }
+    }
+
+    /**
+     * The positions of the name and attributes within a start tag.
+     */
+    private final class StartTag {
+        private final @NotNull String name;
+        private final @NotNull List<Attribute> attributes = new ArrayList<>();
+        /** the index after the last attribute (i.e. of the optional whitespace and the closing {@code /> } or {@code >}) */
+        private final int attributesEnd;
+        private final boolean isEmptyElement;
+
+        StartTag(@NotNull CharSequence tag) throws IOException {
+            int length = tag.length();
+            isEmptyElement = tag.charAt(length - 2) == '/';
+            int end = isEmptyElement ? length - 2 : length - 1;
+            int index = 1;
+            while (index < end && !Character.isWhitespace(tag.charAt(index))) {
+                index++;
+            }
+            name = tag.subSequence(1, index).toString();
+            int lastAttributeEnd = index;
+            while (true) {
+                int start = index;
+                while (index < end && Character.isWhitespace(tag.charAt(index))) {
+                    index++;
+                }
+                if (index == end) {
+                    break;
+                }
+                int nameStart = index;
+                while (index < end && tag.charAt(index) != '=' && !Character.isWhitespace(tag.charAt(index))) {
+                    index++;
+                }
+                int nameEnd = index;
+                while (index < end && tag.charAt(index) != '"' && tag.charAt(index) != '\'') {
+                    index++;
+                }
+                if (index == end) {
+                    throw new IOException("Malformed attribute in start tag " + tag);
+                }
+                char quote = tag.charAt(index);
+                int valueStart = ++index;
+                while (index < end && tag.charAt(index) != quote) {
+                    index++;
+                }
+                if (index == end) {
+                    throw new IOException("Malformed attribute in start tag " + tag);
+                }
+                index++;
+                attributes.add(new Attribute(tag.subSequence(nameStart, nameEnd).toString(), start, nameStart, valueStart, index));
+                lastAttributeEnd = index;
+            }
+            attributesEnd = lastAttributeEnd;
+        }
+    }
+
+    /**
+     * The positions of a single attribute within a start tag.
+     */
+    private final class Attribute {
+        private final @NotNull String prefix;
+        private final @NotNull String localName;
+        /** the index of the whitespace preceding the attribute */
+        private final int start;
+        private final int nameStart;
+        private final int valueStart;
+        /** the index after the closing quote */
+        private final int end;
+
+        Attribute(@NotNull String qualifiedName, int start, int nameStart, int valueStart, int end) {
+            int colon = qualifiedName.indexOf(':');
+            this.prefix = colon > 0 ? qualifiedName.substring(0, colon) : "";
+            this.localName = colon > 0 ? qualifiedName.substring(colon + 1) : qualifiedName;
+            this.start = start;
+            this.nameStart = nameStart;
+            this.valueStart = valueStart;
+            this.end = end;
+        }
+
+        @NotNull String getValue(@NotNull CharSequence tag) {
+            // namespace URIs don't contain entities in practice
+            return tag.subSequence(valueStart, end - 1).toString();
+        }
+
+        @NotNull String getLeadingWhitespace(@NotNull CharSequence tag) {
+            return tag.subSequence(start, nameStart).toString();
+        }
+
+        /**
+         *
+         * @return the name or {@code null} for namespace declarations and attributes with an undeclared prefix
+         */
+        @Nullable Name getName() {
+            if (prefix.equals(XMLNS) || (prefix.isEmpty() && localName.equals(XMLNS))) {
+                return null;
+            }
+            String uri = prefix.isEmpty() ? Name.NS_DEFAULT_URI : resolvePrefix(prefix);
+            return uri != null ? NameConstants.NAME_FACTORY.create(uri, ISO9075.decode(localName)) : null;
+        }
+    }
+}
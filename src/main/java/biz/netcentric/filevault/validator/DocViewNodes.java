@@ -0,0 +1,58 @@
+/*-
+ * #%L
+ * AEM Replication Metadata Validator
+ * %%
+ * Copyright (C) 2024 Cognizant Netcentric
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package biz.netcentric.filevault.validator;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.jackrabbit.spi.Name;
+import org.apache.jackrabbit.vault.util.DocViewNode2;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Accessors for {@link DocViewNode2} properties which don't allocate any objects (in contrast to the methods returning {@link java.util.Optional}).
+ * Used in the hot path which is executed for every node.
+ */
+final class DocViewNodes {
+
+    private DocViewNodes() {
+
+    }
+
+    /**
+     *
+     * @param node the node
+     * @param name the property name
+     * @return the first value of the given property or {@code null} in case the property is not set or has no values
+     */
+    static @Nullable String getFirstValue(@NotNull DocViewNode2 node, @NotNull Name name) {
+        Collection<String> values = node.getPropertyValues(name);
+        if (values.isEmpty()) {
+            return null;
+        }
+        if (values instanceof List) {
+            return ((List<String>) values).get(0);
+        }
+        return values.iterator().next();
+    }
+
+    /**
+     *
+     * @param node the node
+     * @return the primary type or {@code null} in case it is not set
+     */
+    static @Nullable String getPrimaryType(@NotNull DocViewNode2 node) {
+        return getFirstValue(node, org.apache.jackrabbit.spi.commons.name.NameConstants.JCR_PRIMARYTYPE);
+    }
+}
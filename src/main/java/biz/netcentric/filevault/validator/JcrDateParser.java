@@ -0,0 +1,177 @@
+/*-
+ * #%L
+ * AEM Replication Metadata Validator
+ * %%
+ * Copyright (C) 2024 Cognizant Netcentric
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package biz.netcentric.filevault.validator;
+
+import java.util.Calendar;
+
+import javax.jcr.ValueFormatException;
+
+import org.apache.jackrabbit.util.ISO8601;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Parses JCR date values (in the format {@code ±YYYY-MM-DDThh:mm:ss.SSSTZD}) into epoch milliseconds.
+ * <p>
+ * The common format {@code YYYY-MM-DDThh:mm:ss.SSS(Z|±hh:mm)} is parsed directly without allocating any objects,
+ * all other values are delegated to {@link ISO8601#parse(String)} (which is also used by the JCR value factory).
+ * As packages often contain the same timestamp many times the last results are memoized in a small direct-mapped cache.
+ * <p>
+ * In addition this provides a snapshot of the current time which is used for all "current date" fallbacks within one validation run.
+ * <p>
+ * Instances are not thread-safe.
+ */
+final class JcrDateParser {
+
+    /** must be a power of two */
+    private static final int CACHE_SIZE = 64;
+
+    /** dates before the Gregorian cutover are treated differently by {@link java.util.GregorianCalendar}, therefore not parsed directly */
+    private static final int MIN_FAST_PATH_YEAR = 1583;
+
+    private static final int[] DAYS_PER_MONTH = { 31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31 };
+
+    private final long currentTimeMillis;
+    private final String[] cachedValues = new String[CACHE_SIZE];
+    private final long[] cachedEpochMillis = new long[CACHE_SIZE];
+
+    JcrDateParser() {
+        this(System.currentTimeMillis());
+    }
+
+    JcrDateParser(long currentTimeMillis) {
+        this.currentTimeMillis = currentTimeMillis;
+    }
+
+    /**
+     *
+     * @return the current time in epoch milliseconds at the point in time this parser has been created
+     */
+    long getCurrentTimeMillis() {
+        return currentTimeMillis;
+    }
+
+    /**
+     *
+     * @param value the date in JCR format
+     * @return the epoch milliseconds
+     * @throws ValueFormatException in case the given value is no valid JCR date
+     */
+    long parse(@NotNull String value) throws ValueFormatException {
+        int cacheIndex = value.hashCode() & (CACHE_SIZE - 1);
+        if (value.equals(cachedValues[cacheIndex])) {
+            return cachedEpochMillis[cacheIndex];
+        }
+        long epochMillis = parseFast(value);
+        if (epochMillis == Long.MIN_VALUE) {
+            Calendar calendar = ISO8601.parse(value);
+            if (calendar == null) {
+                throw new ValueFormatException("Not a valid date format: " + value);
+            }
+            epochMillis = calendar.getTimeInMillis();
+        }
+        cachedValues[cacheIndex] = value;
+        cachedEpochMillis[cacheIndex] = epochMillis;
+        return epochMillis;
+    }
+
+    /**
+     *
+     * @param value the date in JCR format
+     * @return the epoch milliseconds or {@link Long#MIN_VALUE} in case the value does not use the common format
+     */
+    static long parseFast(@NotNull String value) {
+        int length = value.length();
+        if (length != 24 && length != 29) {
+            return Long.MIN_VALUE;
+        }
+        if (value.charAt(4) != '-' || value.charAt(7) != '-' || value.charAt(10) != 'T' || value.charAt(13) != ':' || value.charAt(16) != ':' || value.charAt(19) != '.') {
+            return Long.MIN_VALUE;
+        }
+        int year = parseDigits(value, 0, 4);
+        int month = parseDigits(value, 5, 2);
+        int day = parseDigits(value, 8, 2);
+        int hour = parseDigits(value, 11, 2);
+        int minute = parseDigits(value, 14, 2);
+        int second = parseDigits(value, 17, 2);
+        int millis = parseDigits(value, 20, 3);
+        if (year < MIN_FAST_PATH_YEAR || month < 1 || month > 12 || day < 1 || day > getDaysOfMonth(year, month)
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59 || millis < 0) {
+            return Long.MIN_VALUE;
+        }
+        final int offsetMinutes;
+        char offsetSign = value.charAt(23);
+        if (length == 24) {
+            if (offsetSign != 'Z') {
+                return Long.MIN_VALUE;
+            }
+            offsetMinutes = 0;
+        } else {
+            if ((offsetSign != '+' && offsetSign != '-') || value.charAt(26) != ':') {
+                return Long.MIN_VALUE;
+            }
+            int offsetHours = parseDigits(value, 24, 2);
+            int offsetMinutesOfHour = parseDigits(value, 27, 2);
+            if (offsetHours < 0 || offsetHours > 18 || offsetMinutesOfHour < 0 || offsetMinutesOfHour > 59) {
+                return Long.MIN_VALUE;
+            }
+            offsetMinutes = (offsetSign == '-' ? -1 : 1) * (offsetHours * 60 + offsetMinutesOfHour);
+        }
+        long epochSeconds = getEpochDay(year, month, day) * 86400L + hour * 3600L + (minute - offsetMinutes) * 60L + second;
+        return epochSeconds * 1000L + millis;
+    }
+
+    /**
+     *
+     * @return the non-negative number or -1 in case the given region contains a non-digit character
+     */
+    private static int parseDigits(@NotNull String value, int offset, int length) {
+        int result = 0;
+        for (int i = offset; i < offset + length; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    private static int getDaysOfMonth(int year, int month) {
+        if (month == 2 && isLeapYear(year)) {
+            return 29;
+        }
+        return DAYS_PER_MONTH[month - 1];
+    }
+
+    private static boolean isLeapYear(int year) {
+        return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+    }
+
+    /**
+     * Same algorithm as in {@link java.time.LocalDate#toEpochDay()} (proleptic Gregorian calendar).
+     */
+    private static long getEpochDay(int year, int month, int day) {
+        long total = 365L * year;
+        total += (year + 3) / 4 - (year + 99) / 100 + (year + 399) / 400;
+        total += (367 * month - 362) / 12;
+        total += day - 1;
+        if (month > 2) {
+            total--;
+            if (!isLeapYear(year)) {
+                total--;
+            }
+        }
+        // days from year 0 to 1970
+        return total - 719528L;
+    }
+}
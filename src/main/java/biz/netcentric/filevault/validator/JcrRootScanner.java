@@ -0,0 +1,574 @@
+/*-
+ * #%L
+ * AEM Replication Metadata Validator
+ * %%
+ * Copyright (C) 2024 Cognizant Netcentric
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package biz.netcentric.filevault.validator;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import javax.jcr.NamespaceException;
+import javax.xml.XMLConstants;
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.jackrabbit.spi.Name;
+import org.apache.jackrabbit.spi.commons.conversion.IllegalNameException;
+import org.apache.jackrabbit.util.ISO9075;
+import org.apache.jackrabbit.util.Text;
+import org.apache.jackrabbit.vault.fs.config.ConfigurationException;
+import org.apache.jackrabbit.vault.fs.config.DefaultWorkspaceFilter;
+import org.apache.jackrabbit.vault.fs.io.DocViewParser;
+import org.apache.jackrabbit.vault.util.Constants;
+import org.apache.jackrabbit.vault.util.DocViewNode2;
+import org.apache.jackrabbit.vault.util.DocViewProperty2;
+import org.apache.jackrabbit.vault.util.PathUtil;
+import org.apache.jackrabbit.vault.util.PlatformNameFormat;
+import org.apache.jackrabbit.vault.validation.ValidationViolation;
+import org.apache.jackrabbit.vault.validation.spi.NodeContext;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessage;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessageSeverity;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import biz.netcentric.filevault.validator.PackageScanner.PackageResult;
+
+/**
+ * Validates an unpacked {@code jcr_root} directory (e.g. the sources of a content package) with the {@link AemReplicationMetadataValidator}.
+ * Intended as fast mode for pre-commit checks as it skips the package assembly and the full FileVault validation framework:
+ * <ul>
+ * <li>directories outside of the {@link RootPaths} are not traversed at all,</li>
+ * <li>DocView XML files are stream-parsed with StAX and the properties of a node are only materialized in case its type matches one of the rules
+ * or it is a {@code jcr:content} node (all other nodes only expose their primary and resource type to the validator),</li>
+ * <li>files are parsed concurrently (with one validator instance per file),</li>
+ * <li>optionally the violations of unchanged files are replayed from a {@link ValidationCache}.</li>
+ * </ul>
+ * Optionally the violations can be fixed by patching the replication metadata properties into the DocView XML files (see {@link DocViewFixer}).
+ * The node paths, types and events passed to the validator are the same as the ones emitted by {@link DocViewParser}, therefore the violations are equal to
+ * the ones found when validating the according package (only the message of invalid XML differs).
+ * <p>
+ * Instances are thread-safe.
+ */
+public final class JcrRootScanner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JcrRootScanner.class);
+
+    private static final String EXTENSION_XML = ".xml";
+    /** directories containing the serialization of a file or folder node with additional properties, their names are not valid node names */
+    private static final String EXTENSION_DIR = ".dir";
+    private static final String FILTER_XML_PATH = Constants.META_DIR + "/" + Constants.FILTER_XML;
+    private static final String ATTRIBUTE_TYPE_CDATA = "CDATA";
+    private static final @NotNull Name JCR_PRIMARYTYPE = org.apache.jackrabbit.spi.commons.name.NameConstants.JCR_PRIMARYTYPE;
+
+    /** XML input factories are not guaranteed to be thread-safe */
+    private static final ThreadLocal<XMLInputFactory> XML_INPUT_FACTORY = ThreadLocal.withInitial(JcrRootScanner::createXmlInputFactory);
+
+    private final @NotNull ValidationMessageSeverity severity;
+    private final @NotNull ValidatorConfiguration configuration;
+    private final @NotNull String validatorId;
+    private final int parallelism;
+    private final @Nullable Path cacheFile;
+    private final @NotNull String configurationFingerprint;
+    private final boolean isFixing;
+    /** the replication date set by fixes in epoch milliseconds */
+    private final long fixDate;
+
+    /**
+     *
+     * @param severity the severity of all violations
+     * @param options the validator options (same as for the FileVault Package Maven Plugin)
+     * @param parallelism the number of files being parsed concurrently
+     */
+    public JcrRootScanner(@NotNull ValidationMessageSeverity severity, @NotNull Map<String, String> options, int parallelism) {
+        this(severity, options, parallelism, null);
+    }
+
+    /**
+     *
+     * @param severity the severity of all violations
+     * @param options the validator options (same as for the FileVault Package Maven Plugin)
+     * @param parallelism the number of files being parsed concurrently
+     * @param cacheFile the file in which the violations of each validated file are persisted (to replay them for unchanged files in subsequent scans),
+     * {@code null} to not use a cache
+     */
+    public JcrRootScanner(@NotNull ValidationMessageSeverity severity, @NotNull Map<String, String> options, int parallelism, @Nullable Path cacheFile) {
+        this(severity, options, parallelism, cacheFile, false);
+    }
+
+    /**
+     *
+     * @param severity the severity of all violations
+     * @param options the validator options (same as for the FileVault Package Maven Plugin)
+     * @param parallelism the number of files being parsed concurrently
+     * @param cacheFile the file in which the violations of each validated file are persisted (to replay them for unchanged files in subsequent scans),
+     * {@code null} to not use a cache (the cache is not used when fixing)
+     * @param isFixing {@code true} to fix the violations in the DocView XML files (by setting the replication metadata properties with the current date
+     * or removing them from excluded nodes), in that case only the violations which could not be fixed are returned
+     */
+    public JcrRootScanner(@NotNull ValidationMessageSeverity severity, @NotNull Map<String, String> options, int parallelism, @Nullable Path cacheFile,
+            boolean isFixing) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1 but is " + parallelism);
+        }
+        AemReplicationMetadataValidatorFactory validatorFactory = new AemReplicationMetadataValidatorFactory();
+        this.severity = severity;
+        this.configuration = validatorFactory.getConfiguration(options);
+        this.validatorId = validatorFactory.getId();
+        this.parallelism = parallelism;
+        this.cacheFile = cacheFile;
+        this.configurationFingerprint = ValidationCache.createFingerprint(options, severity);
+        this.isFixing = isFixing;
+        this.fixDate = System.currentTimeMillis();
+    }
+
+    private static @NotNull XMLInputFactory createXmlInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        // same restrictions as for the SAX parser used by FileVault
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    /**
+     * Validates all DocView XML files below the given directory.
+     * In case there is a {@code META-INF/vault/filter.xml} next to the directory and none of its filter roots is relevant, no file is validated at all.
+     * @param jcrRoot the {@code jcr_root} directory
+     * @return the result containing all violations ordered by file path and position within the file
+     * @throws IOException in case the directory cannot be traversed
+     */
+    public @NotNull PackageResult scan(@NotNull Path jcrRoot) throws IOException {
+        if (!Files.isDirectory(jcrRoot)) {
+            throw new IllegalArgumentException("The jcr_root directory " + jcrRoot + " does not exist");
+        }
+        List<ValidationViolation> violations = new ArrayList<>();
+        // kept open during the whole scan, so that the validators of the individual files only append to it
+        ViolationReport report = configuration.getReportFile() != null ? ViolationReport.open(configuration.getReportFile(), configuration.getReportFormat()) : null;
+        try {
+            if (isRelevant(jcrRoot, violations)) {
+                scan(jcrRoot, violations, report);
+            } else {
+                writeReport(report, jcrRoot, violations);
+            }
+        } finally {
+            if (report != null) {
+                report.close();
+            }
+        }
+        return new PackageResult(jcrRoot.toString(), violations);
+    }
+
+    private void scan(@NotNull Path jcrRoot, @NotNull List<ValidationViolation> violations, @Nullable ViolationReport report) throws IOException {
+        List<Path> files = findDocViewXmlFiles(jcrRoot);
+        LOGGER.debug("Validating {} files below {}", files.size(), jcrRoot);
+        ValidationCache cache = cacheFile != null && !isFixing ? ValidationCache.load(cacheFile, configurationFingerprint) : null;
+        List<Callable<List<ValidationViolation>>> tasks = new ArrayList<>(files.size());
+        for (Path file : files) {
+            tasks.add(() -> scanFile(jcrRoot, file, cache, report));
+        }
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            for (Future<List<ValidationViolation>> result : pool.invokeAll(tasks)) {
+                violations.addAll(result.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while validating " + jcrRoot, e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Could not validate " + jcrRoot + ": " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        if (cache != null) {
+            LOGGER.debug("Replayed the violations of {} unchanged files from the cache, validated {} files", cache.getHits(), cache.getMisses());
+            cache.save(jcrRoot);
+        }
+    }
+
+    /**
+     * Streams violations which have not been emitted by a validator (and therefore have not been written to the report yet) into the report.
+     */
+    private static void writeReport(@Nullable ViolationReport report, @NotNull Path jcrRoot, @NotNull List<ValidationViolation> violations) throws IOException {
+        if (report == null) {
+            return;
+        }
+        for (ValidationViolation violation : violations) {
+            report.write(jcrRoot.toString(), violation, violation.getNodePath(), violation.getFilePath(), violation.getLine(), violation.getColumn(), null);
+        }
+    }
+
+    private boolean isRelevant(@NotNull Path jcrRoot, @NotNull List<ValidationViolation> violations) throws IOException {
+        Path parent = jcrRoot.toAbsolutePath().getParent();
+        Path filterFile = parent != null ? parent.resolve(FILTER_XML_PATH) : null;
+        if (filterFile == null || !Files.isRegularFile(filterFile)) {
+            return true;
+        }
+        DefaultWorkspaceFilter filter = new DefaultWorkspaceFilter();
+        try (InputStream input = Files.newInputStream(filterFile)) {
+            filter.load(input);
+        } catch (ConfigurationException e) {
+            violations.add(new ValidationViolation(ValidationMessageSeverity.ERROR, "Invalid filter found in " + filterFile + ": " + e.getMessage()));
+            return false;
+        }
+        if (!AemReplicationMetadataValidatorFactory.isPackageRelevant(filter, configuration.getRootPaths())) {
+            LOGGER.debug("Skipping {} as none of its filter roots is relevant", jcrRoot);
+            return false;
+        }
+        return true;
+    }
+
+    private @NotNull List<Path> findDocViewXmlFiles(@NotNull Path jcrRoot) throws IOException {
+        RootPaths rootPaths = configuration.getRootPaths();
+        List<Path> files = new ArrayList<>();
+        Files.walkFileTree(jcrRoot, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) {
+                if (directory.getFileName().toString().endsWith(EXTENSION_DIR)) {
+                    return FileVisitResult.CONTINUE;
+                }
+                String nodePath = PlatformNameFormat.getRepositoryPath("/" + toUnixPath(jcrRoot.relativize(directory)));
+                if (!rootPaths.intersects(nodePath)) {
+                    LOGGER.debug("Skipping directory {} as it is outside of {}", directory, rootPaths);
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (attributes.isRegularFile() && file.getFileName().toString().endsWith(EXTENSION_XML)) {
+                    files.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        Collections.sort(files);
+        return files;
+    }
+
+    private @NotNull List<ValidationViolation> scanFile(@NotNull Path jcrRoot, @NotNull Path file, @Nullable ValidationCache cache,
+            @Nullable ViolationReport report) throws IOException {
+        Path filePath = jcrRoot.relativize(file);
+        try {
+            if (cache == null) {
+                return scanFile(jcrRoot, file, filePath, report);
+            }
+            ValidationCache.Lookup lookup = cache.lookup(file);
+            if (lookup.isHit()) {
+                List<ValidationViolation> violations = lookup.getViolations(validatorId, filePath, jcrRoot);
+                writeReport(report, jcrRoot, violations);
+                return violations;
+            }
+            List<ValidationViolation> violations = scanFile(jcrRoot, file, filePath, report);
+            cache.put(lookup, violations);
+            return violations;
+        } catch (IOException|UncheckedIOException|IllegalStateException e) {
+            // just like for packages, a file which cannot be validated or fixed does not abort the validation of the other files (and is not cached)
+            ValidationViolation violation = ValidationViolation.wrapMessage(validatorId, new ValidationMessage(ValidationMessageSeverity.ERROR,
+                    "Could not validate file: " + e.getMessage()), filePath, jcrRoot, null, 0, 0);
+            writeReport(report, jcrRoot, Collections.singletonList(violation));
+            return Collections.singletonList(violation);
+        }
+    }
+
+    private @NotNull List<ValidationViolation> scanFile(@NotNull Path jcrRoot, @NotNull Path file, @NotNull Path filePath, @Nullable ViolationReport report)
+            throws IOException {
+        // the fixed file is validated again, so that only the remaining violations are returned (and reported)
+        if (isFixing && parseFile(jcrRoot, file, filePath, null, true).isEmpty()) {
+            return new ArrayList<>();
+        }
+        return parseFile(jcrRoot, file, filePath, report, false);
+    }
+
+    /**
+     *
+     * @param jcrRoot the jcr_root directory
+     * @param file the file to parse
+     * @param filePath the file path relative to the jcr_root directory
+     * @param report the report to write the violations to (may be {@code null})
+     * @param isFixingViolations {@code true} to fix the violations (which are not written to the report then)
+     * @return the violations found in the file (before fixing them)
+     * @throws IOException in case the file cannot be read or fixed
+     */
+    private @NotNull List<ValidationViolation> parseFile(@NotNull Path jcrRoot, @NotNull Path file, @NotNull Path filePath, @Nullable ViolationReport report,
+            boolean isFixingViolations) throws IOException {
+        List<ValidationViolation> violations = new ArrayList<>();
+        String rootNodePath = null;
+        List<ReplicationMetadataFix> fixes = Collections.emptyList();
+        try (InputStream input = new BufferedInputStream(Files.newInputStream(file))) {
+            rootNodePath = DocViewParser.getDocumentViewXmlRootNodePath(input, filePath);
+            if (rootNodePath == null) {
+                // no DocView XML
+                return violations;
+            }
+            if (!configuration.getRootPaths().intersects(rootNodePath)) {
+                return violations;
+            }
+            XMLStreamReader reader = XML_INPUT_FACTORY.get().createXMLStreamReader(input);
+            DocViewStreamParser parser = new DocViewStreamParser(reader, rootNodePath, filePath, jcrRoot, violations);
+            if (isFixingViolations) {
+                parser.validator.collectFixes(fixDate);
+            }
+            try {
+                parser.parse();
+                fixes = parser.validator.getFixes();
+                // summaries are per file, as each file is validated by a separate validator
+                violations.addAll(ValidationViolation.wrapMessages(validatorId, parser.validator.getViolationSummaries(), filePath, jcrRoot, null, 0, 0));
+            } finally {
+                parser.close();
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            Location location = e.getLocation();
+            ValidationViolation violation = ValidationViolation.wrapMessage(validatorId, new ValidationMessage(ValidationMessageSeverity.ERROR, "Invalid XML found: " + e.getMessage()),
+                    filePath, jcrRoot, null, location != null ? location.getLineNumber() : 0, location != null ? location.getColumnNumber() : 0);
+            violations.add(violation);
+            writeReport(report, jcrRoot, Collections.singletonList(violation));
+        }
+        // only modify the file once it has been closed
+        if (!fixes.isEmpty() && rootNodePath != null) {
+            int fixedNodes = DocViewFixer.fix(file, rootNodePath, fixes);
+            LOGGER.info("Fixed replication metadata of {} node(s) in {}", fixedNodes, file);
+        }
+        return violations;
+    }
+
+    private static @NotNull String toUnixPath(@NotNull Path path) {
+        return path.toString().replace(File.separatorChar, '/');
+    }
+
+    /**
+     * Emits the same validator events for a single DocView XML file as the {@link DocViewParser} but with lazily materialized properties.
+     */
+    private final class DocViewStreamParser {
+        private final @NotNull XMLStreamReader reader;
+        private final @NotNull String rootNodePath;
+        private final @NotNull Path filePath;
+        private final @NotNull Path basePath;
+        private final @NotNull List<ValidationViolation> violations;
+        private final @NotNull AemReplicationMetadataValidator validator;
+        private final @NotNull RuleSet ruleSet;
+        private final @NotNull RootPaths rootPaths;
+        private final @NotNull Deque<DocViewNode2> nodes = new ArrayDeque<>();
+        private @Nullable String currentPath;
+        /** the depth of the outermost node being skipped as it is outside of the root paths, 0 if no node is skipped */
+        private int skippedSubtreeDepth;
+        /** the event which is dispatched to the validator once its end position is known */
+        private @Nullable DocViewNode2 pendingNode;
+        private @Nullable String pendingNodePath;
+        private boolean isPendingStart;
+        private boolean isPendingRoot;
+
+        DocViewStreamParser(@NotNull XMLStreamReader reader, @NotNull String rootNodePath, @NotNull Path filePath, @NotNull Path basePath,
+                @NotNull List<ValidationViolation> violations) {
+            this.reader = reader;
+            this.rootNodePath = rootNodePath;
+            this.filePath = filePath;
+            this.basePath = basePath;
+            this.violations = violations;
+            this.validator = new AemReplicationMetadataValidator(severity, configuration, basePath.toString());
+            this.ruleSet = configuration.getRuleSet();
+            this.rootPaths = configuration.getRootPaths();
+        }
+
+        /**
+         * Releases the resources of the validator (without emitting its metrics, which would be too verbose for every file).
+         */
+        void close() {
+            validator.closeReport();
+        }
+
+        void parse() throws XMLStreamException {
+            // the depth of the current element (including the skipped ones)
+            int depth = 0;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                // the SAX parser reports the position after an event while StAX reports the position before,
+                // therefore the previous event is only dispatched to the validator with the position of the current one
+                Location location = reader.getLocation();
+                dispatchPendingEvent(location.getLineNumber(), location.getColumnNumber());
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                    if (skippedSubtreeDepth == 0) {
+                        startElement(depth);
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (skippedSubtreeDepth == 0) {
+                        endElement();
+                    } else if (skippedSubtreeDepth == depth) {
+                        skippedSubtreeDepth = 0;
+                        currentPath = Text.getRelativeParent(currentPath, 1);
+                    }
+                    depth--;
+                }
+            }
+        }
+
+        private void startElement(int depth) throws XMLStreamException {
+            String prefix = reader.getPrefix();
+            String localName = reader.getLocalName();
+            String namespaceUri = reader.getNamespaceURI();
+            final Name name;
+            if (currentPath == null && Name.NS_JCR_URI.equals(namespaceUri) && "root".equals(localName)) {
+                // the name of the root node is derived from the file path
+                name = getRootNodeName();
+                currentPath = rootNodePath;
+            } else {
+                String label = ISO9075.decode(prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName);
+                // same name sibling indices are not relevant for this validator
+                name = NameConstants.NAME_FACTORY.create(namespaceUri == null ? Name.NS_DEFAULT_URI : namespaceUri, stripIndex(ISO9075.decode(localName)));
+                if (currentPath == null) {
+                    currentPath = Text.getRelativeParent(rootNodePath, 1);
+                }
+                currentPath = PathUtil.append(currentPath, label);
+            }
+            if (!rootPaths.intersects(currentPath)) {
+                skippedSubtreeDepth = depth;
+                return;
+            }
+            DocViewNode2 node = createNode(name);
+            setPendingEvent(true, node, currentPath, nodes.isEmpty());
+            nodes.push(node);
+        }
+
+        private void endElement() {
+            // same (parent) node path as emitted by the DocViewParser, compare with https://issues.apache.org/jira/browse/JCRVLT-718
+            currentPath = Text.getRelativeParent(currentPath, 1);
+            DocViewNode2 node = nodes.pop();
+            setPendingEvent(false, node, currentPath, nodes.isEmpty());
+        }
+
+        private void setPendingEvent(boolean isStart, @NotNull DocViewNode2 node, @NotNull String nodePath, boolean isRoot) {
+            this.isPendingStart = isStart;
+            this.pendingNode = node;
+            this.pendingNodePath = nodePath;
+            this.isPendingRoot = isRoot;
+        }
+
+        private void dispatchPendingEvent(int line, int column) {
+            if (pendingNode == null || pendingNodePath == null) {
+                return;
+            }
+            NodeContext nodeContext = new PositionedNodeContext(pendingNodePath, filePath, basePath, line, column);
+            final Collection<ValidationMessage> messages;
+            if (isPendingStart) {
+                messages = validator.validate(pendingNode, nodeContext, isPendingRoot);
+            } else {
+                messages = validator.validateEnd(pendingNode, nodeContext, isPendingRoot);
+            }
+            if (messages != null) {
+                violations.addAll(ValidationViolation.wrapMessages(validatorId, messages, filePath, basePath, pendingNodePath, line, column));
+            }
+            pendingNode = null;
+            pendingNodePath = null;
+        }
+
+        private @NotNull Name getRootNodeName() throws XMLStreamException {
+            if (rootNodePath.equals("/")) {
+                return org.apache.jackrabbit.spi.commons.name.NameConstants.ROOT;
+            }
+            String qualifiedName = stripIndex(Text.getName(rootNodePath));
+            int colon = qualifiedName.indexOf(':');
+            if (colon == -1) {
+                return NameConstants.NAME_FACTORY.create(Name.NS_DEFAULT_URI, qualifiedName);
+            }
+            String namespaceUri = reader.getNamespaceURI(qualifiedName.substring(0, colon));
+            if (namespaceUri == null) {
+                throw new XMLStreamException("Unknown namespace prefix used in file name '" + qualifiedName + "'", reader.getLocation());
+            }
+            return NameConstants.NAME_FACTORY.create(namespaceUri, qualifiedName.substring(colon + 1));
+        }
+
+        /**
+         * Only materializes all properties for nodes which may match a rule or capture replication metadata.
+         * @param name the node name
+         * @return the node with either all properties or only the ones relevant for matching the rules
+         * @throws XMLStreamException in case a property value is invalid
+         */
+        private @NotNull DocViewNode2 createNode(@NotNull Name name) throws XMLStreamException {
+            DocViewProperty2 primaryType = parseProperty(JCR_PRIMARYTYPE);
+            DocViewProperty2 resourceType = parseProperty(NameConstants.SLING_RESOURCETYPE);
+            boolean isCandidate = name.equals(NameConstants.JCR_CONTENT)
+                    || (primaryType != null && primaryType.getStringValue().isPresent()
+                        && ruleSet.getRuleGroup(primaryType.getStringValue().get(), resourceType != null ? resourceType.getStringValue().orElse(null) : null) != null);
+            if (isCandidate) {
+                return new DocViewNode2(name, parseAllProperties());
+            }
+            if (primaryType == null) {
+                return new DocViewNode2(name, Collections.emptyList());
+            }
+            List<DocViewProperty2> properties = new ArrayList<>(2);
+            properties.add(primaryType);
+            if (resourceType != null) {
+                properties.add(resourceType);
+            }
+            return new DocViewNode2(name, properties);
+        }
+
+        private @Nullable DocViewProperty2 parseProperty(@NotNull Name name) throws XMLStreamException {
+            String value = reader.getAttributeValue(name.getNamespaceURI(), name.getLocalName());
+            return value != null ? parseProperty(name, value) : null;
+        }
+
+        private @NotNull Collection<DocViewProperty2> parseAllProperties() throws XMLStreamException {
+            int count = reader.getAttributeCount();
+            List<DocViewProperty2> properties = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                if (!ATTRIBUTE_TYPE_CDATA.equals(reader.getAttributeType(i))) {
+                    continue;
+                }
+                String namespaceUri = reader.getAttributeNamespace(i);
+                Name name = NameConstants.NAME_FACTORY.create(namespaceUri == null ? XMLConstants.NULL_NS_URI : namespaceUri, ISO9075.decode(reader.getAttributeLocalName(i)));
+                properties.add(parseProperty(name, reader.getAttributeValue(i)));
+            }
+            return properties;
+        }
+
+        private @NotNull DocViewProperty2 parseProperty(@NotNull Name name, @NotNull String value) throws XMLStreamException {
+            try {
+                return DocViewProperty2.parse(name, value);
+            } catch (IllegalNameException|NamespaceException|IllegalArgumentException e) {
+                XMLStreamException exception = new XMLStreamException("Invalid value of property " + name + ": " + e.getMessage(), reader.getLocation());
+                exception.initCause(e);
+                throw exception;
+            }
+        }
+    }
+
+    private static @NotNull String stripIndex(@NotNull String label) {
+        int bracket = label.lastIndexOf('[');
+        return bracket > 0 && label.endsWith("]") ? label.substring(0, bracket) : label;
+    }
+}
@@ -0,0 +1,407 @@
+/*-
+ * #%L
+ * AEM Replication Metadata Validator
+ * %%
+ * Copyright (C) 2024 Cognizant Netcentric
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package biz.netcentric.filevault.validator;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Finds all literals which are mandatory for a regular expression to match in a single pass over a path (via an Aho-Corasick automaton).
+ * Used to skip the regular expression evaluation for paths which lack one of the required literals.
+ * <p>
+ * The literals found in a path are represented as bit set (one bit per literal id) to be able to check all literals of a rule at once.
+ * <p>
+ * Instances are immutable and thread-safe.
+ */
+final class LiteralPrefilter {
+
+    private static final String META_CHARACTERS = "\\[](){}.*+?^$|";
+    /** escape sequences consisting of a single character which don't represent a literal (character classes, boundaries, control characters) */
+    private static final String NON_LITERAL_ESCAPE_CHARACTERS = "dDsSwWbBAGZzRhHvVXtnrfea";
+    /** literals with only one character (usually "/") occur in almost every path and are therefore not worth checking */
+    private static final int MIN_LITERAL_LENGTH = 2;
+    private static final int ASCII_LIMIT = 128;
+
+    private final @NotNull List<String> literals;
+    /** the character class of each ASCII character (0 means the character is not part of any literal) */
+    private final int[] asciiCharacterClasses;
+    /** the sorted non-ASCII characters being part of any literal */
+    private final char[] otherCharacters;
+    /** the character classes of {@link #otherCharacters} (same index) */
+    private final int[] otherCharacterClasses;
+    private final int alphabetSize;
+    /** the transitions of the deterministic automaton, indexed by {@code state * alphabetSize + characterClass} */
+    private final int[] transitions;
+    /** the bit set of all literals ending in each state ({@code null} if none) */
+    private final long[][] outputs;
+
+    /**
+     *
+     * @param literals the literals to look for, their ids are the indices in the given collection
+     */
+    LiteralPrefilter(@NotNull Collection<String> literals) {
+        this.literals = Collections.unmodifiableList(new ArrayList<>(literals));
+        // 1. alphabet (only characters being part of a literal are distinguished)
+        asciiCharacterClasses = new int[ASCII_LIMIT];
+        Set<Character> nonAsciiCharacters = new TreeSet<>();
+        int characterClass = 1;
+        for (String literal : this.literals) {
+            for (char character : literal.toCharArray()) {
+                if (character < ASCII_LIMIT) {
+                    if (asciiCharacterClasses[character] == 0) {
+                        asciiCharacterClasses[character] = characterClass++;
+                    }
+                } else {
+                    nonAsciiCharacters.add(character);
+                }
+            }
+        }
+        otherCharacters = new char[nonAsciiCharacters.size()];
+        otherCharacterClasses = new int[nonAsciiCharacters.size()];
+        int index = 0;
+        for (Character character : nonAsciiCharacters) {
+            otherCharacters[index] = character;
+            otherCharacterClasses[index++] = characterClass++;
+        }
+        alphabetSize = characterClass;
+
+        // 2. trie of all literals (state 0 is the root, -1 means no transition)
+        List<int[]> trie = new ArrayList<>();
+        List<long[]> trieOutputs = new ArrayList<>();
+        addState(trie, trieOutputs);
+        for (int literalId = 0; literalId < this.literals.size(); literalId++) {
+            int state = 0;
+            for (char character : this.literals.get(literalId).toCharArray()) {
+                int nextState = trie.get(state)[getCharacterClass(character)];
+                if (nextState == -1) {
+                    nextState = addState(trie, trieOutputs);
+                    trie.get(state)[getCharacterClass(character)] = nextState;
+                }
+                state = nextState;
+            }
+            setBit(trieOutputs, state, literalId);
+        }
+
+        // 3. turn into a deterministic automaton by following the failure links (breadth first)
+        transitions = new int[trie.size() * alphabetSize];
+        int[] failureLinks = new int[trie.size()];
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int symbol = 0; symbol < alphabetSize; symbol++) {
+            int nextState = trie.get(0)[symbol];
+            if (nextState == -1) {
+                transitions[symbol] = 0;
+            } else {
+                transitions[symbol] = nextState;
+                failureLinks[nextState] = 0;
+                queue.add(nextState);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.remove();
+            // outputs of the longest proper suffix being a trie state
+            mergeBits(trieOutputs, state, trieOutputs.get(failureLinks[state]));
+            for (int symbol = 0; symbol < alphabetSize; symbol++) {
+                int nextState = trie.get(state)[symbol];
+                int failureTransition = transitions[failureLinks[state] * alphabetSize + symbol];
+                if (nextState == -1) {
+                    transitions[state * alphabetSize + symbol] = failureTransition;
+                } else {
+                    transitions[state * alphabetSize + symbol] = nextState;
+                    failureLinks[nextState] = failureTransition;
+                    queue.add(nextState);
+                }
+            }
+        }
+        outputs = trieOutputs.toArray(new long[0][]);
+    }
+
+    private int addState(@NotNull List<int[]> trie, @NotNull List<long[]> trieOutputs) {
+        int[] stateTransitions = new int[alphabetSize];
+        Arrays.fill(stateTransitions, -1);
+        trie.add(stateTransitions);
+        trieOutputs.add(null);
+        return trie.size() - 1;
+    }
+
+    private void setBit(@NotNull List<long[]> bitSets, int index, int bit) {
+        long[] bitSet = bitSets.get(index);
+        if (bitSet == null) {
+            bitSet = createBitSet();
+            bitSets.set(index, bitSet);
+        }
+        bitSet[bit >>> 6] |= 1L << bit;
+    }
+
+    private void mergeBits(@NotNull List<long[]> bitSets, int index, long[] otherBitSet) {
+        if (otherBitSet == null) {
+            return;
+        }
+        long[] bitSet = bitSets.get(index);
+        if (bitSet == null) {
+            bitSet = createBitSet();
+            bitSets.set(index, bitSet);
+        }
+        for (int i = 0; i < bitSet.length; i++) {
+            bitSet[i] |= otherBitSet[i];
+        }
+    }
+
+    private int getCharacterClass(char character) {
+        if (character < ASCII_LIMIT) {
+            return asciiCharacterClasses[character];
+        }
+        int index = Arrays.binarySearch(otherCharacters, character);
+        return index < 0 ? 0 : otherCharacterClasses[index];
+    }
+
+    /**
+     *
+     * @return a new (empty) bit set which can hold the ids of all literals
+     */
+    long[] createBitSet() {
+        return new long[Math.max(1, (literals.size() + 63) >>> 6)];
+    }
+
+    /**
+     *
+     * @param literalIds the ids of the literals
+     * @return a bit set containing the given literal ids
+     */
+    long[] createBitSet(@NotNull Collection<Integer> literalIds) {
+        long[] bitSet = createBitSet();
+        for (int literalId : literalIds) {
+            bitSet[literalId >>> 6] |= 1L << literalId;
+        }
+        return bitSet;
+    }
+
+    /**
+     * Finds all literals contained in the given text in a single pass. Does not allocate any objects.
+     * @param text the text to search in
+     * @param foundLiterals the bit set which is populated with the ids of all literals found in the given text (all other bits are cleared)
+     */
+    void find(@NotNull String text, long[] foundLiterals) {
+        Arrays.fill(foundLiterals, 0L);
+        if (literals.isEmpty()) {
+            return;
+        }
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            state = transitions[state * alphabetSize + getCharacterClass(text.charAt(i))];
+            long[] output = outputs[state];
+            if (output != null) {
+                for (int j = 0; j < output.length; j++) {
+                    foundLiterals[j] |= output[j];
+                }
+            }
+        }
+    }
+
+    /**
+     *
+     * @param foundLiterals the literals found via {@link #find(String, long[])}
+     * @param requiredLiterals the literals required by a rule
+     * @return {@code true} in case all required literals have been found
+     */
+    static boolean containsAll(long[] foundLiterals, long[] requiredLiterals) {
+        for (int i = 0; i < requiredLiterals.length; i++) {
+            if ((foundLiterals[i] & requiredLiterals[i]) != requiredLiterals[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @NotNull List<String> getLiterals() {
+        return literals;
+    }
+
+    /**
+     * Creates a prefilter for all literals required by any of the given regular expressions.
+     * @param regexes the regular expressions
+     * @param requiredLiteralIds the map which is populated with the ids of the literals required by each regular expression
+     * @return the prefilter
+     */
+    static @NotNull LiteralPrefilter create(@NotNull Collection<String> regexes, @NotNull Map<String, Set<Integer>> requiredLiteralIds) {
+        Map<String, Integer> literalIds = new LinkedHashMap<>();
+        for (String regex : regexes) {
+            Set<Integer> ids = new LinkedHashSet<>();
+            for (String literal : getRequiredLiterals(regex)) {
+                ids.add(literalIds.computeIfAbsent(literal, l -> literalIds.size()));
+            }
+            requiredLiteralIds.put(regex, ids);
+        }
+        return new LiteralPrefilter(literalIds.keySet());
+    }
+
+    /**
+     * Extracts literals which must occur in every string matched by the given regular expression.
+     * Only the top-level sequence of the regular expression is analysed (groups, character classes and optional atoms just separate literals).
+     * In case the regular expression contains constructs which are not understood no further literals are extracted.
+     * @param regex the regular expression
+     * @return the literals (each with at least two characters) which all strings matching the given regular expression must contain
+     */
+    static @NotNull Set<String> getRequiredLiterals(@NotNull String regex) {
+        Set<String> requiredLiterals = new LinkedHashSet<>();
+        // flags (e.g. case insensitivity) or quotations would change the meaning of literals
+        if (RootPaths.hasTopLevelAlternation(regex) || regex.replace("(?:", "").contains("(?") || regex.contains("\\Q")) {
+            return requiredLiterals;
+        }
+        StringBuilder currentLiteral = new StringBuilder();
+        int position = 0;
+        try {
+            while (position < regex.length()) {
+                char character = regex.charAt(position);
+                char literalCharacter = 0;
+                final int atomEnd;
+                if (character == '\\') {
+                    if (position + 1 >= regex.length()) {
+                        return requiredLiterals;
+                    }
+                    char escapedCharacter = regex.charAt(position + 1);
+                    if (META_CHARACTERS.indexOf(escapedCharacter) != -1) {
+                        literalCharacter = escapedCharacter;
+                    } else if (NON_LITERAL_ESCAPE_CHARACTERS.indexOf(escapedCharacter) == -1) {
+                        // multi-character escape sequences (like unicode escapes, properties or back references)
+                        return requiredLiterals;
+                    }
+                    atomEnd = position + 2;
+                } else if (character == '[' || character == '(') {
+                    atomEnd = findClosingBracket(regex, position);
+                    if (atomEnd == -1) {
+                        return requiredLiterals;
+                    }
+                } else if (character == '.' || character == '^' || character == '$') {
+                    atomEnd = position + 1;
+                } else if (META_CHARACTERS.indexOf(character) != -1) {
+                    // e.g. dangling quantifiers
+                    return requiredLiterals;
+                } else {
+                    literalCharacter = character;
+                    atomEnd = position + 1;
+                }
+                char quantifier = atomEnd < regex.length() ? regex.charAt(atomEnd) : 0;
+                if (quantifier == '?' || quantifier == '*' || quantifier == '{') {
+                    // optional atom
+                    addLiteral(requiredLiterals, currentLiteral);
+                } else if (literalCharacter != 0) {
+                    currentLiteral.append(literalCharacter);
+                    if (quantifier == '+') {
+                        // the repeated character may be followed by the same character
+                        addLiteral(requiredLiterals, currentLiteral);
+                    }
+                } else {
+                    addLiteral(requiredLiterals, currentLiteral);
+                }
+                position = skipQuantifier(regex, atomEnd);
+                if (position == -1) {
+                    return requiredLiterals;
+                }
+            }
+            return requiredLiterals;
+        } finally {
+            addLiteral(requiredLiterals, currentLiteral);
+        }
+    }
+
+    private static void addLiteral(@NotNull Set<String> literals, @NotNull StringBuilder literal) {
+        if (literal.length() >= MIN_LITERAL_LENGTH) {
+            literals.add(literal.toString());
+        }
+        literal.setLength(0);
+    }
+
+    /**
+     *
+     * @param regex the regular expression
+     * @param position the position of the opening bracket (either "[" or "(")
+     * @return the position after the according closing bracket or -1 if not found
+     */
+    private static int findClosingBracket(@NotNull String regex, int position) {
+        int groupDepth = 0;
+        int characterClassDepth = 0;
+        for (int i = position; i < regex.length(); i++) {
+            char character = regex.charAt(i);
+            if (character == '\\') {
+                i++;
+            } else if (character == '[') {
+                // character classes may be nested (e.g. for intersections)
+                characterClassDepth++;
+                // a closing bracket directly at the beginning of a character class is a literal
+                if (i + 1 < regex.length() && regex.charAt(i + 1) == '^') {
+                    i++;
+                }
+                if (i + 1 < regex.length() && regex.charAt(i + 1) == ']') {
+                    i++;
+                }
+            } else if (character == ']' && characterClassDepth > 0) {
+                characterClassDepth--;
+            } else if (characterClassDepth == 0 && character == '(') {
+                groupDepth++;
+            } else if (characterClassDepth == 0 && character == ')') {
+                groupDepth--;
+            }
+            if (groupDepth == 0 && characterClassDepth == 0) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     *
+     * @param regex the regular expression
+     * @param position the position directly after an atom
+     * @return the position after the quantifier (if there is one) or -1 in case the quantifier is invalid
+     */
+    private static int skipQuantifier(@NotNull String regex, int position) {
+        if (position >= regex.length()) {
+            return position;
+        }
+        char quantifier = regex.charAt(position);
+        final int quantifierEnd;
+        if (quantifier == '{') {
+            int end = regex.indexOf('}', position);
+            if (end == -1) {
+                return -1;
+            }
+            quantifierEnd = end + 1;
+        } else if (quantifier == '?' || quantifier == '*' || quantifier == '+') {
+            quantifierEnd = position + 1;
+        } else {
+            return position;
+        }
+        // reluctant or possessive quantifiers
+        if (quantifierEnd < regex.length() && (regex.charAt(quantifierEnd) == '?' || regex.charAt(quantifierEnd) == '+')) {
+            return quantifierEnd + 1;
+        }
+        return quantifierEnd;
+    }
+
+    @Override
+    public String toString() {
+        return "LiteralPrefilter " + literals;
+    }
+}
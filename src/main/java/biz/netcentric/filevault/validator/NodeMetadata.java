@@ -12,12 +12,10 @@
  */
 package biz.netcentric.filevault.validator;
 
-import java.util.Calendar;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.LinkedList;
-import java.util.Map;
-import java.util.Optional;
+import java.util.List;
 
 import javax.jcr.RepositoryException;
 
@@ -25,15 +23,25 @@ import org.apache.jackrabbit.vault.util.DocViewNode2;
 import org.apache.jackrabbit.vault.validation.spi.ValidationMessage;
 import org.apache.jackrabbit.vault.validation.spi.ValidationMessageSeverity;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import biz.netcentric.filevault.validator.ReplicationMetadata.ReplicationActionType;
+import biz.netcentric.filevault.validator.Violation.Code;
 
 /**
  * Encapsulates path and some node metadata (last modification date and replication metadata).
  * As for replication metadata it is preferably captured in {@code jcr:content} child nodes, this object is mutable.
+ * Only primitive values are captured from the nodes (no references to the nodes themselves), so the footprint of an instance does not depend on the node size.
+ * The replication metadata is kept per agent index (see {@link ValidatorConfiguration#getAgentPropertyNames()}) in primitive arrays (9 bytes per agent)
+ * and bit sets (one bit per agent), so that the common case of all agents being up to date is detected without iterating over the agents.
  */
 public class NodeMetadata {
 
+    /** the maximum number of agents whose replication status can be kept in the bit sets */
+    static final int MAX_AGENTS = Long.SIZE;
+
+    private static final String JCR_CONTENT_SUFFIX = "/" + NameConstants.QUALIFIED_NAME_JCR_CONTENT;
+
     /*
      * If {@code true} the node is supposed to contain replication metadata which indicates it is active and not modified,
      *  otherwise it should not contain any replication metadata at all
@@ -41,126 +49,313 @@ public class NodeMetadata {
     final boolean isExcluded;
     /** this path always refers to the node supposed to contain the last modified property */
     private final String path;
-    private final Map<String,ReplicationMetadata> replicationStatusPerAgent;
     private final DateProperty comparisonDateProperty;
-    private Optional<Map.Entry<Calendar, String>> comparisonDateAndLabel;
-    /** helper variable to keep track of the nesting level below the node given by path, 0 means current node is the one supposed to contain the last modified property */
-    private int currentNodeNestingLevel;
+    /** the index of the rule (within the {@link RuleSet}) which made this node relevant or {@link RuleSet#NO_MATCH} if unknown */
+    private final int ruleIndex;
+    /** the comparison date in epoch milliseconds, only set if {@link #comparisonDateLabel} is not {@code null} */
+    private long comparisonDate;
+    /** the (shared) label explaining where the comparison date came from, {@code null} in case there is no comparison date */
+    private String comparisonDateLabel;
+    /** the nesting depth (within the package) of the node whose end completes capturing the metadata (either the node given by path or the first child of its parent) */
+    private final int endNodeDepth;
+    /** per agent index: the ordinal of the last replication action (or one of the special values from {@link ReplicationMetadata}), {@code null} if not captured yet */
+    private byte[] lastReplicationActions;
+    /** per agent index: the last replication date in epoch milliseconds if the agent's bit is set in {@link #validDateAgents},
+     * otherwise the index of the invalid date property name if the agent's bit is set in {@link #datedAgents}, {@code null} if not captured yet */
+    private long[] lastReplicationDates;
+    /** bit set of the agent indices with a valid last replication action */
+    private long presentAgents;
+    /** bit set of the agent indices whose last replication action is {@link ReplicationActionType#ACTIVATE} */
+    private long activatedAgents;
+    /** bit set of the agent indices with a last replication date property */
+    private long datedAgents;
+    /** bit set of the agent indices with a valid last replication date */
+    private long validDateAgents;
+    /** the minimum of all valid last replication dates in epoch milliseconds */
+    private long minLastReplicationDate;
+    /** {@code true} in case the replication metadata has been captured from the {@code jcr:content} child of the node given by path */
+    private boolean isReplicationMetadataInContentChild;
+
+    public NodeMetadata(boolean isExcluded, String path, int endNodeDepth, DateProperty comparisonDateProperty) {
+        this(isExcluded, path, endNodeDepth, comparisonDateProperty, RuleSet.NO_MATCH);
+    }
 
-    public NodeMetadata(boolean isExcluded, String path, boolean currentNodeIsParent, DateProperty comparisonDateProperty) {
+    NodeMetadata(boolean isExcluded, String path, int endNodeDepth, DateProperty comparisonDateProperty, int ruleIndex) {
         super();
         this.isExcluded = isExcluded;
         this.path = path;
-        this.replicationStatusPerAgent = new HashMap<>();
-        comparisonDateAndLabel = Optional.empty();
-        this.currentNodeNestingLevel = currentNodeIsParent ? -1 : 0;
+        this.endNodeDepth = endNodeDepth;
         this.comparisonDateProperty = comparisonDateProperty;
+        this.ruleIndex = ruleIndex;
     }
 
     public String getPath() {
         return path;
     }
 
-    public void increaseCurrentNodeNestingLevel() {
-        currentNodeNestingLevel++;
+    int getRuleIndex() {
+        return ruleIndex;
+    }
+
+    /**
+     * Checks without allocating objects whether the given path is either equal to {@link #getPath()} or to its {@code jcr:content} child path.
+     * @param nodePath the path to check
+     * @return {@code true} in case the given path refers to this node or its {@code jcr:content} child
+     */
+    public boolean isPathOrContentChildPath(@NotNull String nodePath) {
+        if (!nodePath.startsWith(path)) {
+            return false;
+        }
+        int pathLength = path.length();
+        return nodePath.length() == pathLength
+                || (nodePath.length() == pathLength + JCR_CONTENT_SUFFIX.length() && nodePath.startsWith(JCR_CONTENT_SUFFIX, pathLength));
     }
 
     /**
      * 
-     * @return {@code true} in case the node to which {@link #getPath()} refers to is reached
+     * @param nodeDepth the nesting depth of the node whose end has been reached
+     * @return {@code true} in case the end of the node completing this metadata is reached (or the end of its parent in case the node does not exist)
      */
-    public boolean decreaseCurrentNodeNestingLevel() {
-        return --currentNodeNestingLevel < 0;
+    public boolean isEndNode(int nodeDepth) {
+        return nodeDepth <= endNodeDepth;
     }
 
-    public Optional<Map.Entry<Calendar, String>> getComparisonDateAndLabel() {
-        return comparisonDateAndLabel;
+    public void captureComparisonDate(@NotNull DocViewNode2 node, @NotNull PropertyNameIndex.PropertyScan propertyScan, @NotNull JcrDateParser dateParser) throws IllegalStateException, RepositoryException {
+        long date = comparisonDateProperty.extractDate(node, propertyScan, dateParser);
+        if (date != DateProperty.NO_DATE) {
+            comparisonDate = date;
+            comparisonDateLabel = propertyScan.getDateLabel();
+        } else {
+            comparisonDateLabel = null;
+        }
     }
 
-    public void captureComparisonDate(@NotNull DocViewNode2 node) throws IllegalStateException, RepositoryException {
-        comparisonDateAndLabel = comparisonDateProperty.extractDate(node);
+    /**
+     * This method never fails, invalid values are only reported in {@link #validate(ValidationMessageSeverity, List, boolean)}.
+     * @param propertyScan the properties of the node to capture replication metadata from
+     * @param dateParser the parser to use for date values
+     */
+    public void captureReplicationMetadata(@NotNull PropertyNameIndex.PropertyScan propertyScan, @NotNull JcrDateParser dateParser) {
+        captureReplicationMetadata(propertyScan, dateParser, false);
     }
 
     /**
-     * This method never fails until actually dereferencing data in another method.
-     * @param node the node to capture replication metadata from
-     * @param agentNames the agent names to capture replication metadata for
+     * This method never fails, invalid values are only reported in {@link #validate(ValidationMessageSeverity, List, boolean)}.
+     * @param propertyScan the properties of the node to capture replication metadata from
+     * @param dateParser the parser to use for date values
+     * @param isContentChild {@code true} in case the properties belong to the {@code jcr:content} child of the node given by {@link #getPath()}
      */
-    public void captureReplicationMetadata(@NotNull DocViewNode2 node, @NotNull Collection<@NotNull String> agentNames) {
-        for (String agentName : agentNames) {
-            replicationStatusPerAgent.put(agentName, new ReplicationMetadata(node, agentName));
+    void captureReplicationMetadata(@NotNull PropertyNameIndex.PropertyScan propertyScan, @NotNull JcrDateParser dateParser, boolean isContentChild) {
+        isReplicationMetadataInContentChild = isContentChild;
+        int agentCount = propertyScan.getAgentCount();
+        if (lastReplicationActions == null) {
+            lastReplicationActions = new byte[agentCount];
+            lastReplicationDates = new long[agentCount];
         }
+        presentAgents = 0L;
+        activatedAgents = 0L;
+        datedAgents = 0L;
+        validDateAgents = 0L;
+        minLastReplicationDate = Long.MAX_VALUE;
+        for (int i = 0; i < agentCount; i++) {
+            long agentBit = 1L << i;
+            byte lastReplicationAction = ReplicationMetadata.getLastReplicationAction(propertyScan.getLastReplicationAction(i));
+            lastReplicationActions[i] = lastReplicationAction;
+            if (lastReplicationAction >= 0) {
+                presentAgents |= agentBit;
+                if (lastReplicationAction == ReplicationActionType.ACTIVATE.ordinal()) {
+                    activatedAgents |= agentBit;
+                }
+            }
+            byte datePropertyIndex = propertyScan.getLastReplicationDatePropertyIndex(i);
+            if (datePropertyIndex == ReplicationMetadata.DATE_NOT_FOUND) {
+                continue;
+            }
+            datedAgents |= agentBit;
+            long lastReplicationDate = ReplicationMetadata.getLastReplicationDate(propertyScan.getLastReplicationDate(i, datePropertyIndex), dateParser);
+            if (lastReplicationDate == ReplicationMetadata.DATE_INVALID) {
+                lastReplicationDates[i] = datePropertyIndex;
+            } else {
+                lastReplicationDates[i] = lastReplicationDate;
+                validDateAgents |= agentBit;
+                minLastReplicationDate = Math.min(minLastReplicationDate, lastReplicationDate);
+            }
+        }
+    }
+
+    /**
+     * 
+     * @param agentCount the number of agents (at most {@link #MAX_AGENTS})
+     * @return the bit set containing all agent indices
+     */
+    static long getAllAgents(int agentCount) {
+        return agentCount >= MAX_AGENTS ? -1L : (1L << agentCount) - 1L;
     }
 
-    public Collection<ValidationMessage> validate(@NotNull ValidationMessageSeverity validationMessageSeverity, @NotNull Collection<@NotNull String> agentNames, boolean strictLastModificationCheck) {
+    /**
+     * 
+     * @param strictLastModificationCheck {@code true} to treat a missing comparison date as not up to date
+     * @return the bit set of the agent indices whose valid last replication date is not older than the comparison date
+     */
+    private long getUpToDateAgents(boolean strictLastModificationCheck) {
+        final long minDate;
+        if (comparisonDateLabel != null) {
+            minDate = comparisonDate;
+        } else if (strictLastModificationCheck) {
+            return 0L;
+        } else {
+            minDate = 0L;
+        }
+        if (minLastReplicationDate >= minDate) {
+            return validDateAgents;
+        }
+        long upToDateAgents = 0L;
+        for (long agents = validDateAgents; agents != 0L; agents &= agents - 1) {
+            int agentIndex = Long.numberOfTrailingZeros(agents);
+            if (lastReplicationDates[agentIndex] >= minDate) {
+                upToDateAgents |= 1L << agentIndex;
+            }
+        }
+        return upToDateAgents;
+    }
+
+    /**
+     * 
+     * @param validationMessageSeverity the severity of all violations
+     * @param agentPropertyNames the property names of all agents (the same as used for {@link #captureReplicationMetadata(PropertyNameIndex.PropertyScan, JcrDateParser)})
+     * @param strictLastModificationCheck {@code true} to report a missing comparison date
+     * @return the violations as {@link Violation}s (whose messages are only rendered on demand)
+     */
+    public Collection<ValidationMessage> validate(@NotNull ValidationMessageSeverity validationMessageSeverity, @NotNull List<@NotNull AgentPropertyNames> agentPropertyNames, boolean strictLastModificationCheck) {
+        if (lastReplicationActions != null) {
+            // fast path for the common case of all agents being valid
+            if (isExcluded) {
+                if ((presentAgents | datedAgents) == 0L) {
+                    return Collections.emptyList();
+                }
+            } else if ((activatedAgents & getUpToDateAgents(strictLastModificationCheck)) == getAllAgents(agentPropertyNames.size())) {
+                return Collections.emptyList();
+            }
+        }
         Collection<ValidationMessage> validationMessages = new LinkedList<>();
         // override nodePath as this is being called from DocumentViewXmlValidator.validateEnd() which suffers from https://issues.apache.org/jira/browse/JCRVLT-718?
-        for (String agentName : agentNames) {
+        for (int i = 0; i < agentPropertyNames.size(); i++) {
             if (isExcluded) {
-                validateNoReplicationMetadata(validationMessageSeverity, validationMessages, agentName);
+                validateNoReplicationMetadata(validationMessageSeverity, validationMessages, agentPropertyNames.get(i), i);
             } else {
-                validateIsPublished(validationMessageSeverity, validationMessages, agentName, strictLastModificationCheck);
+                validateIsPublished(validationMessageSeverity, validationMessages, agentPropertyNames.get(i), i, strictLastModificationCheck);
             }
         }
         return validationMessages;
     }
 
+    /**
+     * Derives the property changes resolving the given violations.
+     * Violations which cannot be resolved by changing the replication metadata of this node (e.g. a missing {@code jcr:content} node or comparison date) are ignored.
+     * @param violations the violations previously returned by {@link #validate(ValidationMessageSeverity, List, boolean)}
+     * @param fixDate the replication date to set in epoch milliseconds (unless the comparison date is newer)
+     * @return the fix or {@code null} in case none of the violations can be resolved
+     */
+    @Nullable ReplicationMetadataFix createFix(@NotNull Collection<ValidationMessage> violations, long fixDate) {
+        // the properties need to be changed where they have been captured from
+        ReplicationMetadataFix fix = new ReplicationMetadataFix(isReplicationMetadataInContentChild ? path + JCR_CONTENT_SUFFIX : path);
+        // the replication must be newer than the comparison date
+        long replicationDate = comparisonDateLabel != null && comparisonDate >= fixDate ? comparisonDate + 1 : fixDate;
+        for (ValidationMessage message : violations) {
+            if (!(message instanceof Violation)) {
+                continue;
+            }
+            Violation violation = (Violation) message;
+            switch (violation.getCode()) {
+                case REPLICATION_ACTION_NOT_FOUND:
+                case REPLICATION_ACTION_INVALID:
+                case REPLICATION_ACTION_NOT_ACTIVATE:
+                    fix.activate(violation.getAgentPropertyNames());
+                    break;
+                case REPLICATION_DATE_NOT_FOUND:
+                case REPLICATION_DATE_INVALID:
+                case REPLICATION_DATE_OLDER_THAN_EPOCH:
+                case REPLICATION_DATE_OLDER_THAN_COMPARISON_DATE:
+                    fix.setReplicationDate(violation.getAgentPropertyNames(), replicationDate);
+                    break;
+                case REPLICATION_ACTION_NOT_ALLOWED:
+                    fix.removeReplicationAction(violation.getAgentPropertyNames());
+                    break;
+                case REPLICATION_DATE_NOT_ALLOWED:
+                    fix.removeReplicationDates(violation.getAgentPropertyNames());
+                    break;
+                default:
+                    break;
+            }
+        }
+        return fix.isEmpty() ? null : fix;
+    }
+
     private void validateNoReplicationMetadata(@NotNull ValidationMessageSeverity validationMessageSeverity,
-            Collection<ValidationMessage> validationMessages, String agentName) {
-        ReplicationMetadata replicationStatus = replicationStatusPerAgent.get(agentName);
-        ReplicationActionType lastReplicationAction = replicationStatus.getLastReplicationAction(true);
-        if (lastReplicationAction != null) {
-            validationMessages.add(new ValidationMessage(validationMessageSeverity, "Last replication action not allowed for this path but is " + lastReplicationAction, path, null, null, 0, 0, null));
+            Collection<ValidationMessage> validationMessages, AgentPropertyNames agentPropertyNames, int agentIndex) {
+        if (lastReplicationActions == null) {
+            // no replication metadata at all
+            return;
+        }
+        long agentBit = 1L << agentIndex;
+        if ((presentAgents & agentBit) != 0L) {
+            validationMessages.add(new Violation(validationMessageSeverity, Code.REPLICATION_ACTION_NOT_ALLOWED, path, agentPropertyNames, lastReplicationActions[agentIndex], 0L, 0L, null));
         }
-        Calendar lastReplicationDate = replicationStatus.getLastReplicationDate(true);
-        if (lastReplicationDate != null) {
-            validationMessages.add(new ValidationMessage(validationMessageSeverity, "Last replication date not allowed for this path but is " + lastReplicationDate.toInstant().toString(), path, null, null, 0, 0, null));
+        if ((validDateAgents & agentBit) != 0L) {
+            validationMessages.add(new Violation(validationMessageSeverity, Code.REPLICATION_DATE_NOT_ALLOWED, path, agentPropertyNames, 0, lastReplicationDates[agentIndex], 0L, null));
+        } else if ((datedAgents & agentBit) != 0L) {
+            // also invalid dates are not allowed (and need to be removed by a fix)
+            validationMessages.add(new Violation(validationMessageSeverity, Code.REPLICATION_DATE_NOT_ALLOWED, path, agentPropertyNames,
+                    (int) lastReplicationDates[agentIndex], DateProperty.NO_DATE, 0L, null));
         }
     }
 
-    private void validateIsPublished(ValidationMessageSeverity validationMessageSeverity, Collection<ValidationMessage> validationMessages, String agentName, boolean strictLastModificationCheck) {
-        ReplicationMetadata replicationStatus = replicationStatusPerAgent.get(agentName);
-        if (replicationStatus == null) {
-            if (path.endsWith("/" + NameConstants.QUALIFIED_NAME_JCR_CONTENT)) {
-                validationMessages.add(new ValidationMessage(validationMessageSeverity, "No jcr:content node found at all where replication data would have been captured for agent " + agentName, path, null, null, 0, 0, null));
+    private void validateIsPublished(ValidationMessageSeverity validationMessageSeverity, Collection<ValidationMessage> validationMessages, AgentPropertyNames agentPropertyNames, int agentIndex,
+            boolean strictLastModificationCheck) {
+        final long agentBit = 1L << agentIndex;
+        final byte lastReplicationAction;
+        final boolean isDated;
+        if (lastReplicationActions == null) {
+            if (path.endsWith(JCR_CONTENT_SUFFIX)) {
+                validationMessages.add(new Violation(validationMessageSeverity, Code.NO_CONTENT_NODE, path, agentPropertyNames));
             } else {
                 // this is a programming error most probably
-                validationMessages.add(new ValidationMessage(validationMessageSeverity, "Replication status not yet populated via captureReplicationMetadata() for agent " + agentName, path, null, null, 0, 0, null));
+                validationMessages.add(new Violation(validationMessageSeverity, Code.REPLICATION_METADATA_NOT_CAPTURED, path, agentPropertyNames));
             }
-            replicationStatus = ReplicationMetadata.EMPTY;
+            lastReplicationAction = ReplicationMetadata.ACTION_NOT_FOUND;
+            isDated = false;
+        } else {
+            lastReplicationAction = lastReplicationActions[agentIndex];
+            isDated = (datedAgents & agentBit) != 0L;
         }
-        try {
-            ReplicationActionType lastReplicationAction = replicationStatus.getLastReplicationAction(false);
-            if (lastReplicationAction != ReplicationActionType.ACTIVATE) {
-                validationMessages.add(new ValidationMessage(validationMessageSeverity, "The last replication action must be 'Activate' but was '" + lastReplicationAction + "' for agent " + agentName, path, null, null, 0, 0, null));
-            }
-        } catch (IllegalStateException e) {
-            validationMessages.add(new ValidationMessage(validationMessageSeverity, "No replication action set for agent " + agentName +": " + e.getMessage(), path, null, null, 0, 0, null));
-        }
-        final Calendar lastReplicationDate;
-        try {
-            lastReplicationDate = replicationStatus.getLastReplicationDate(false);
-            // unfortunately this is not allowed to be null (always dereferenced in com.adobe.cq.xf.impl.servlet.ExperienceFragmentsReferencesServlet.writeJsonForReference)
-        } catch (IllegalStateException e) {
-            validationMessages.add(new ValidationMessage(validationMessageSeverity, "No replication date set for agent " + agentName +": " + e.getMessage(), path, null, null, 0, 0, null));
+        if (lastReplicationAction == ReplicationMetadata.ACTION_NOT_FOUND) {
+            validationMessages.add(new Violation(validationMessageSeverity, Code.REPLICATION_ACTION_NOT_FOUND, path, agentPropertyNames));
+        } else if (lastReplicationAction == ReplicationMetadata.ACTION_INVALID) {
+            validationMessages.add(new Violation(validationMessageSeverity, Code.REPLICATION_ACTION_INVALID, path, agentPropertyNames));
+        } else if (lastReplicationAction != ReplicationActionType.ACTIVATE.ordinal()) {
+            validationMessages.add(new Violation(validationMessageSeverity, Code.REPLICATION_ACTION_NOT_ACTIVATE, path, agentPropertyNames, lastReplicationAction, 0L, 0L, null));
+        }
+        // unfortunately this is not allowed to be null (always dereferenced in com.adobe.cq.xf.impl.servlet.ExperienceFragmentsReferencesServlet.writeJsonForReference)
+        if (!isDated) {
+            validationMessages.add(new Violation(validationMessageSeverity, Code.REPLICATION_DATE_NOT_FOUND, path, agentPropertyNames));
             return;
         }
-        if (!comparisonDateAndLabel.isPresent()) {
+        if ((validDateAgents & agentBit) == 0L) {
+            // the date slot holds the index of the invalid date property
+            validationMessages.add(new Violation(validationMessageSeverity, Code.REPLICATION_DATE_INVALID, path, agentPropertyNames, (int) lastReplicationDates[agentIndex], 0L, 0L, null));
+            return;
+        }
+        final long lastReplicationDate = lastReplicationDates[agentIndex];
+        if (comparisonDateLabel == null) {
             if (strictLastModificationCheck) {
-                validationMessages.add(new ValidationMessage(validationMessageSeverity, "No last modification property set and don't fall back to -1 due to strict check option", path, null, null, 0, 0, null));
-            } else {
-                if (lastReplicationDate.getTimeInMillis() < 0L) {
-                        validationMessages.add(new ValidationMessage(validationMessageSeverity, "The replication date " + lastReplicationDate.toInstant().toString() + " for agent " + agentName
-                                + " is older than the implicit last modification date 0", path, null, null, 0, 0, null));
-                }
+                validationMessages.add(new Violation(validationMessageSeverity, Code.COMPARISON_DATE_NOT_FOUND, path, agentPropertyNames));
+            } else if (lastReplicationDate < 0L) {
+                validationMessages.add(new Violation(validationMessageSeverity, Code.REPLICATION_DATE_OLDER_THAN_EPOCH, path, agentPropertyNames, 0, lastReplicationDate, 0L, null));
             }
         } else {
             // Logic from com.day.cq.wcm.core.impl.reference.converter.AssetJSONItemConverter.referenceToJSONObject()
-            Calendar comparisonDate = comparisonDateAndLabel.get().getKey();
-            String comparisonDateLabel = comparisonDateAndLabel.get().getValue();
-            if (lastReplicationDate.compareTo(comparisonDate) < 0) {
-                validationMessages.add(new ValidationMessage(validationMessageSeverity, "The replication date " + lastReplicationDate.toInstant().toString() + " for agent " + agentName
-                        + " is older than the comparison date " + comparisonDate.toInstant().toString() + " (" + comparisonDateLabel + ")" , path, null, null, 0, 0, null));
+            if (lastReplicationDate < comparisonDate) {
+                validationMessages.add(new Violation(validationMessageSeverity, Code.REPLICATION_DATE_OLDER_THAN_COMPARISON_DATE, path, agentPropertyNames, 0, lastReplicationDate, comparisonDate, comparisonDateLabel));
             }
         }
     }
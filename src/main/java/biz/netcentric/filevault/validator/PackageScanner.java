@@ -0,0 +1,352 @@
+/*-
+ * #%L
+ * AEM Replication Metadata Validator
+ * %%
+ * Copyright (C) 2024 Cognizant Netcentric
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package biz.netcentric.filevault.validator;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+import org.apache.jackrabbit.vault.fs.io.Archive;
+import org.apache.jackrabbit.vault.fs.io.DocViewParser;
+import org.apache.jackrabbit.vault.fs.io.DocViewParser.XmlParseException;
+import org.apache.jackrabbit.vault.fs.io.DocViewParserHandler;
+import org.apache.jackrabbit.vault.fs.io.ZipArchive;
+import org.apache.jackrabbit.vault.util.Constants;
+import org.apache.jackrabbit.vault.util.DocViewNode2;
+import org.apache.jackrabbit.vault.validation.ValidationViolation;
+import org.apache.jackrabbit.vault.validation.context.ArchiveValidationContext;
+import org.apache.jackrabbit.vault.validation.context.DependencyResolver;
+import org.apache.jackrabbit.vault.validation.context.SubPackageInArchiveValidationContext;
+import org.apache.jackrabbit.vault.validation.spi.DocumentViewXmlValidator;
+import org.apache.jackrabbit.vault.validation.spi.NodeContext;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessage;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessageSeverity;
+import org.apache.jackrabbit.vault.validation.spi.ValidatorSettings;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.InputSource;
+
+/**
+ * Validates content package files (and all their sub packages) with the {@link AemReplicationMetadataValidator} outside of the FileVault Package Maven Plugin.
+ * <p>
+ * Each package and sub package is validated in its own task on a {@link ForkJoinPool} (with one validator instance per task).
+ * The results are independent of the scheduling: they are returned in the order of the given package files, each followed by its sub packages
+ * (depth-first, ordered by their path within the container package) and the violations within each package are ordered by file path
+ * and position within the file.
+ * <p>
+ * Instances are thread-safe.
+ */
+public final class PackageScanner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PackageScanner.class);
+
+    private static final String EXTENSION_PACKAGE = ".zip";
+    private static final String EXTENSION_XML = ".xml";
+    /** like FileVault only ZIP files below this path (relative to jcr_root) are treated as sub packages */
+    private static final Path SUBPACKAGES_PATH = Paths.get("etc", "packages");
+    /** dependencies are not relevant for this validator */
+    private static final DependencyResolver NO_DEPENDENCY_RESOLVER = (dependencies, dependencyLocations) -> Collections.emptyList();
+
+    private final @NotNull AemReplicationMetadataValidatorFactory validatorFactory;
+    private final @NotNull ValidatorSettings validatorSettings;
+    private final int parallelism;
+    /** the violations of sub packages validated before (also by other scanners in the same JVM) */
+    private final @NotNull SubpackageResultCache subpackageResultCache;
+    /** the fingerprint of the options and severity, part of each sub package's fingerprint */
+    private final @NotNull String configurationFingerprint;
+
+    /**
+     *
+     * @param defaultSeverity the severity of all violations
+     * @param options the validator options (same as for the FileVault Package Maven Plugin)
+     * @param parallelism the number of packages being validated concurrently
+     */
+    public PackageScanner(@NotNull ValidationMessageSeverity defaultSeverity, @NotNull Map<String, String> options, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1 but is " + parallelism);
+        }
+        this.validatorFactory = new AemReplicationMetadataValidatorFactory();
+        this.validatorSettings = new ScannerValidatorSettings(defaultSeverity, options);
+        // fail early in case of invalid options
+        ValidatorConfiguration configuration = validatorFactory.getConfiguration(options);
+        this.parallelism = parallelism;
+        this.subpackageResultCache = SubpackageResultCache.get(configuration.getSubpackageCacheFile());
+        this.configurationFingerprint = ValidationCache.createFingerprint(options, defaultSeverity);
+    }
+
+    /**
+     * Validates the given package files and all their sub packages.
+     * @param packageFiles the content package files
+     * @return the results for all packages and sub packages (in a deterministic order)
+     */
+    public @NotNull List<PackageResult> scan(@NotNull List<Path> packageFiles) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return pool.invoke(new PackagesTask(packageFiles));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * The outcome of validating a single package.
+     */
+    public static final class PackageResult {
+        private final @NotNull String packageName;
+        private final @NotNull List<ValidationViolation> violations;
+
+        PackageResult(@NotNull String packageName, @NotNull List<ValidationViolation> violations) {
+            this.packageName = packageName;
+            this.violations = Collections.unmodifiableList(violations);
+        }
+
+        /**
+         *
+         * @return the path of the package file, for sub packages followed by "!" and the path of the sub package within the container package
+         */
+        public @NotNull String getPackageName() {
+            return packageName;
+        }
+
+        /**
+         *
+         * @return all violations found in the package (excluding the ones from sub packages)
+         */
+        public @NotNull List<ValidationViolation> getViolations() {
+            return violations;
+        }
+
+        /**
+         *
+         * @param severity the severity
+         * @return {@code true} in case there is at least one violation with the given or a higher severity
+         */
+        public boolean hasViolations(@NotNull ValidationMessageSeverity severity) {
+            return violations.stream().anyMatch(violation -> violation.getSeverity().ordinal() >= severity.ordinal());
+        }
+
+        @Override
+        public String toString() {
+            return "PackageResult [packageName=" + packageName + ", violations=" + violations + "]";
+        }
+    }
+
+    /** Validates all top-level packages concurrently and merges their results in the given order. */
+    private final class PackagesTask extends RecursiveTask<List<PackageResult>> {
+        private static final long serialVersionUID = 1L;
+        private final transient @NotNull List<Path> packageFiles;
+
+        PackagesTask(@NotNull List<Path> packageFiles) {
+            this.packageFiles = packageFiles;
+        }
+
+        @Override
+        protected List<PackageResult> compute() {
+            List<PackageTask> tasks = new ArrayList<>(packageFiles.size());
+            for (Path packageFile : packageFiles) {
+                tasks.add(new PackageTask(packageFile.toString(), packageFile.toFile(), false, null));
+            }
+            ForkJoinTask.invokeAll(tasks);
+            List<PackageResult> results = new ArrayList<>();
+            for (PackageTask task : tasks) {
+                results.addAll(task.join());
+            }
+            return results;
+        }
+    }
+
+    /** Validates a single package and (concurrently) all its sub packages. */
+    private final class PackageTask extends RecursiveTask<List<PackageResult>> {
+        private static final long serialVersionUID = 1L;
+        private final @NotNull String packageName;
+        private final transient @NotNull File packageFile;
+        /** {@code true} for extracted sub packages which need to be deleted afterwards */
+        private final boolean isTemporaryFile;
+        private final transient @Nullable ArchiveValidationContext containerContext;
+
+        PackageTask(@NotNull String packageName, @NotNull File packageFile, boolean isTemporaryFile, @Nullable ArchiveValidationContext containerContext) {
+            this.packageName = packageName;
+            this.packageFile = packageFile;
+            this.isTemporaryFile = isTemporaryFile;
+            this.containerContext = containerContext;
+        }
+
+        @Override
+        protected List<PackageResult> compute() {
+            List<ValidationViolation> violations = new ArrayList<>();
+            List<PackageTask> subPackageTasks = new ArrayList<>();
+            LOGGER.debug("Validating package {}", packageName);
+            try (Archive archive = new ZipArchive(packageFile, isTemporaryFile)) {
+                archive.open(true);
+                Path packagePath = packageFile.toPath();
+                final ArchiveValidationContext context;
+                if (containerContext == null) {
+                    context = new ArchiveValidationContext(archive, packagePath, NO_DEPENDENCY_RESOLVER);
+                } else {
+                    context = new SubPackageInArchiveValidationContext(containerContext, archive, packagePath, NO_DEPENDENCY_RESOLVER);
+                }
+                AemReplicationMetadataValidator validator = (AemReplicationMetadataValidator) validatorFactory.createValidator(context, validatorSettings);
+                List<SubpackageResultCache.CachedMessage> cachedMessages = null;
+                if (validator != null && containerContext != null) {
+                    String subpackageFingerprint = SubpackageResultCache.createFingerprint(packagePath, configurationFingerprint);
+                    cachedMessages = subpackageResultCache.get(subpackageFingerprint);
+                    if (cachedMessages == null) {
+                        validator.recordResults(subpackageResultCache, subpackageFingerprint);
+                    } else {
+                        LOGGER.debug("Replaying the {} violation(s) of identical sub package {} validated before", cachedMessages.size(), packageName);
+                    }
+                }
+                Archive.Entry jcrRoot = archive.getJcrRoot();
+                if (jcrRoot != null) {
+                    // when replaying cached results no node needs to be visited (only the nested sub packages are collected)
+                    validateEntries(archive, jcrRoot, Paths.get(""), context, cachedMessages == null ? validator : null, violations, subPackageTasks);
+                }
+                if (validator != null) {
+                    addViolations(violations, cachedMessages != null ? validator.replay(cachedMessages) : validator.done(), null, null, 0, 0);
+                }
+            } catch (IOException|IllegalStateException e) {
+                violations.add(new ValidationViolation(ValidationMessageSeverity.ERROR, "Could not validate package: " + e.getMessage()));
+            }
+            // sub packages are validated concurrently
+            ForkJoinTask.invokeAll(subPackageTasks);
+            List<PackageResult> results = new ArrayList<>();
+            results.add(new PackageResult(packageName, violations));
+            for (PackageTask subPackageTask : subPackageTasks) {
+                results.addAll(subPackageTask.join());
+            }
+            return results;
+        }
+
+        private void validateEntries(@NotNull Archive archive, @NotNull Archive.Entry directory, @NotNull Path directoryPath, @NotNull ArchiveValidationContext context,
+                @Nullable DocumentViewXmlValidator validator, @NotNull List<ValidationViolation> violations, @NotNull List<PackageTask> subPackageTasks) throws IOException {
+            List<Archive.Entry> entries = new ArrayList<>(directory.getChildren());
+            entries.sort(Comparator.comparing(Archive.Entry::getName));
+            for (Archive.Entry entry : entries) {
+                Path entryPath = directoryPath.resolve(entry.getName());
+                if (entry.isDirectory()) {
+                    validateEntries(archive, entry, entryPath, context, validator, violations, subPackageTasks);
+                } else if (entry.getName().endsWith(EXTENSION_PACKAGE) && entryPath.startsWith(SUBPACKAGES_PATH)) {
+                    if (validatorFactory.shouldValidateSubpackages()) {
+                        subPackageTasks.add(createSubPackageTask(archive, entry, entryPath, context));
+                    }
+                } else if (validator != null && entry.getName().endsWith(EXTENSION_XML)) {
+                    validateDocViewXml(archive, entry, entryPath, validator, violations);
+                }
+            }
+        }
+
+        private @NotNull PackageTask createSubPackageTask(@NotNull Archive archive, @NotNull Archive.Entry entry, @NotNull Path entryPath,
+                @NotNull ArchiveValidationContext context) throws IOException {
+            // the sub package must be extracted to be opened as archive
+            Path subPackageFile = Files.createTempFile("subpackage", EXTENSION_PACKAGE);
+            try (InputStream input = archive.openInputStream(entry)) {
+                Files.copy(input, subPackageFile, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                Files.delete(subPackageFile);
+                throw e;
+            }
+            String subPackageName = packageName + "!/" + Constants.ROOT_DIR + "/" + toUnixPath(entryPath);
+            return new PackageTask(subPackageName, subPackageFile.toFile(), true, context);
+        }
+
+        private void validateDocViewXml(@NotNull Archive archive, @NotNull Archive.Entry entry, @NotNull Path entryPath, @NotNull DocumentViewXmlValidator validator,
+                @NotNull List<ValidationViolation> violations) throws IOException {
+            Path basePath = Paths.get(Constants.ROOT_DIR);
+            try (InputStream input = new BufferedInputStream(archive.openInputStream(entry))) {
+                String rootNodePath = DocViewParser.getDocumentViewXmlRootNodePath(input, entryPath);
+                if (rootNodePath == null) {
+                    // no DocView XML
+                    return;
+                }
+                new DocViewParser().parse(rootNodePath, new InputSource(input), new DocViewParserHandler() {
+                    @Override
+                    public void startDocViewNode(@NotNull String nodePath, @NotNull DocViewNode2 docViewNode, @NotNull Optional<DocViewNode2> parentDocViewNode, int line, int column) {
+                        NodeContext nodeContext = new PositionedNodeContext(nodePath, entryPath, basePath, line, column);
+                        addViolations(violations, validator.validate(docViewNode, nodeContext, !parentDocViewNode.isPresent()), entryPath, nodePath, line, column);
+                    }
+
+                    @Override
+                    public void endDocViewNode(@NotNull String nodePath, @NotNull DocViewNode2 docViewNode, @NotNull Optional<DocViewNode2> parentDocViewNode, int line, int column) {
+                        NodeContext nodeContext = new PositionedNodeContext(nodePath, entryPath, basePath, line, column);
+                        addViolations(violations, validator.validateEnd(docViewNode, nodeContext, !parentDocViewNode.isPresent()), entryPath, nodePath, line, column);
+                    }
+                });
+            } catch (XmlParseException e) {
+                violations.add(ValidationViolation.wrapMessage(validatorFactory.getId(), new ValidationMessage(ValidationMessageSeverity.ERROR, "Invalid XML found: " + e.getMessage()),
+                        entryPath, basePath, null, e.getLineNumber(), e.getColumnNumber()));
+            }
+        }
+
+        private void addViolations(@NotNull List<ValidationViolation> violations, @Nullable Collection<ValidationMessage> messages, @Nullable Path filePath,
+                @Nullable String nodePath, int line, int column) {
+            if (messages != null) {
+                violations.addAll(ValidationViolation.wrapMessages(validatorFactory.getId(), messages, filePath, filePath != null ? Paths.get(Constants.ROOT_DIR) : null,
+                        nodePath, line, column));
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "PackageTask [" + packageName + "]";
+        }
+    }
+
+    private static @NotNull String toUnixPath(@NotNull Path path) {
+        return path.toString().replace(File.separatorChar, '/');
+    }
+
+    /**
+     * Settings given to the validator factory.
+     */
+    private static final class ScannerValidatorSettings implements ValidatorSettings {
+        private final @NotNull ValidationMessageSeverity defaultSeverity;
+        private final @NotNull Map<String, String> options;
+
+        ScannerValidatorSettings(@NotNull ValidationMessageSeverity defaultSeverity, @NotNull Map<String, String> options) {
+            this.defaultSeverity = defaultSeverity;
+            this.options = Collections.unmodifiableMap(options);
+        }
+
+        @Override
+        public @NotNull ValidationMessageSeverity getDefaultSeverity() {
+            return defaultSeverity;
+        }
+
+        @Override
+        public @NotNull Map<String, String> getOptions() {
+            return options;
+        }
+
+        @Override
+        public boolean isDisabled() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/*-
+ * #%L
+ * AEM Replication Metadata Validator
+ * %%
+ * Copyright (C) 2024 Cognizant Netcentric
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package biz.netcentric.filevault.validator;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.jackrabbit.vault.validation.ValidationViolation;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessageSeverity;
+import org.jetbrains.annotations.NotNull;
+
+import biz.netcentric.filevault.validator.PackageScanner.PackageResult;
+
+/**
+ * Command line interface for the {@link PackageScanner} and the {@link JcrRootScanner}.
+ * Prints all violations to standard out and exits with a non-zero code in case there are violations with severity {@code ERROR}.
+ */
+public final class PackageScannerCli {
+
+    static final int EXIT_CODE_SUCCESS = 0;
+    static final int EXIT_CODE_VIOLATIONS = 1;
+    static final int EXIT_CODE_INVALID_ARGUMENTS = 2;
+    static final int EXIT_CODE_FAILURE = 3;
+
+    private static final String USAGE = "Usage: java " + PackageScannerCli.class.getName() + " [options] <package file or directory>...\n"
+            + "Validates the given content packages (directories are searched recursively for *.zip files) and all their sub packages.\n"
+            + "Options:\n"
+            + "  -o, --option <name>=<value>  validator option, e.g. agentNames=publish,preview (may be given multiple times)\n"
+            + "  -s, --severity <severity>    severity of violations (DEBUG, INFO, WARN or ERROR), default: ERROR\n"
+            + "  -t, --threads <number>       number of packages or files being validated concurrently, default: number of available processors\n"
+            + "  -j, --jcr-root <directory>   validate the DocView XML files below the given unpacked jcr_root directory (may be given multiple times)\n"
+            + "  -c, --cache <file>           file in which the results of jcr_root directories are cached to skip unchanged files in subsequent runs\n"
+            + "  -f, --fix                    fix the violations in the DocView XML files below the jcr_root directories (only prints the remaining ones)\n"
+            + "  -h, --help                   print this help";
+
+    private PackageScannerCli() {
+        // only static methods
+    }
+
+    public static void main(String[] args) {
+        System.exit(run(args, System.out, System.err));
+    }
+
+    /**
+     *
+     * @param args the command line arguments
+     * @param out the stream for the violations
+     * @param err the stream for usage errors and failures
+     * @return the exit code
+     */
+    static int run(@NotNull String[] args, @NotNull PrintStream out, @NotNull PrintStream err) {
+        Map<String, String> options = new LinkedHashMap<>();
+        ValidationMessageSeverity severity = ValidationMessageSeverity.ERROR;
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<Path> packageFiles = new ArrayList<>();
+        List<Path> jcrRoots = new ArrayList<>();
+        Path cacheFile = null;
+        boolean isFixing = false;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "-h":
+                    case "--help":
+                        out.println(USAGE);
+                        return EXIT_CODE_SUCCESS;
+                    case "-o":
+                    case "--option":
+                        String[] nameAndValue = getValue(args, ++i, arg).split("=", 2);
+                        if (nameAndValue.length != 2) {
+                            throw new IllegalArgumentException("Option must have the format <name>=<value> but is " + args[i]);
+                        }
+                        options.put(nameAndValue[0].trim(), nameAndValue[1].trim());
+                        break;
+                    case "-s":
+                    case "--severity":
+                        severity = ValidationMessageSeverity.valueOf(getValue(args, ++i, arg).trim().toUpperCase());
+                        break;
+                    case "-t":
+                    case "--threads":
+                        threads = Integer.parseInt(getValue(args, ++i, arg).trim());
+                        break;
+                    case "-j":
+                    case "--jcr-root":
+                        jcrRoots.add(Paths.get(getValue(args, ++i, arg)));
+                        break;
+                    case "-c":
+                    case "--cache":
+                        cacheFile = Paths.get(getValue(args, ++i, arg));
+                        break;
+                    case "-f":
+                    case "--fix":
+                        isFixing = true;
+                        break;
+                    default:
+                        if (arg.startsWith("-")) {
+                            throw new IllegalArgumentException("Unknown argument " + arg);
+                        }
+                        packageFiles.addAll(findPackageFiles(Paths.get(arg)));
+                }
+            }
+            if (packageFiles.isEmpty() && jcrRoots.isEmpty()) {
+                throw new IllegalArgumentException("No package files or jcr_root directories given");
+            }
+            List<PackageResult> results = new ArrayList<>();
+            if (!packageFiles.isEmpty()) {
+                results.addAll(new PackageScanner(severity, options, threads).scan(packageFiles));
+            }
+            if (!jcrRoots.isEmpty()) {
+                JcrRootScanner jcrRootScanner = new JcrRootScanner(severity, options, threads, cacheFile, isFixing);
+                for (Path jcrRoot : jcrRoots) {
+                    results.add(jcrRootScanner.scan(jcrRoot));
+                }
+            }
+            return printResults(results, jcrRoots.size(), out);
+        } catch (IllegalArgumentException|IOException e) {
+            err.println(e.getMessage());
+            err.println(USAGE);
+            return EXIT_CODE_INVALID_ARGUMENTS;
+        } catch (IllegalStateException|UncheckedIOException e) {
+            // must be distinguishable from violations
+            err.println("Validation failed: " + e.getMessage());
+            return EXIT_CODE_FAILURE;
+        }
+    }
+
+    private static @NotNull String getValue(@NotNull String[] args, int index, @NotNull String arg) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for argument " + arg);
+        }
+        return args[index];
+    }
+
+    private static @NotNull List<Path> findPackageFiles(@NotNull Path path) throws IOException {
+        if (!Files.exists(path)) {
+            throw new IllegalArgumentException("Package file or directory " + path + " does not exist");
+        }
+        if (!Files.isDirectory(path)) {
+            return Collections.singletonList(path);
+        }
+        try (Stream<Path> files = Files.walk(path)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".zip") && Files.isRegularFile(file))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static int printResults(@NotNull List<PackageResult> results, int jcrRootCount, @NotNull PrintStream out) {
+        int violationCount = 0;
+        boolean hasErrors = false;
+        for (PackageResult result : results) {
+            for (ValidationViolation violation : result.getViolations()) {
+                out.println(formatViolation(result.getPackageName(), violation));
+                violationCount++;
+            }
+            hasErrors |= result.hasViolations(ValidationMessageSeverity.ERROR);
+        }
+        out.print("Validated " + (results.size() - jcrRootCount) + " package(s)");
+        if (jcrRootCount > 0) {
+            out.print(" and " + jcrRootCount + " jcr_root director" + (jcrRootCount == 1 ? "y" : "ies"));
+        }
+        out.println(", found " + violationCount + " violation(s)");
+        return hasErrors ? EXIT_CODE_VIOLATIONS : EXIT_CODE_SUCCESS;
+    }
+
+    static @NotNull String formatViolation(@NotNull String packageName, @NotNull ValidationViolation violation) {
+        StringBuilder line = new StringBuilder();
+        line.append('[').append(violation.getSeverity()).append("] ").append(packageName);
+        if (violation.getFilePath() != null) {
+            line.append(": ").append(violation.getFilePath().toString().replace('\\', '/'));
+            if (violation.getLine() > 0) {
+                line.append(':').append(violation.getLine()).append(':').append(violation.getColumn());
+            }
+        }
+        if (violation.getNodePath() != null) {
+            line.append(" (").append(violation.getNodePath()).append(')');
+        }
+        line.append(": ").append(violation.getMessage());
+        return line.toString();
+    }
+}
@@ -0,0 +1,535 @@
+/*-
+ * #%L
+ * AEM Replication Metadata Validator
+ * %%
+ * Copyright (C) 2024 Cognizant Netcentric
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package biz.netcentric.filevault.validator;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Protects against path patterns leading to catastrophic backtracking of the regex engine.
+ * <ol>
+ * <li>At configuration time risky constructs are rewritten in case the rewritten pattern is guaranteed to match exactly the same paths
+ * (with {@link java.util.regex.Matcher#matches()}), see {@link #harden(String)}.</li>
+ * <li>Remaining risky constructs (repeated groups containing unbounded quantifiers, many unbounded wildcards) are reported by {@link #findRisks(String)}.</li>
+ * <li>At match time every evaluation is limited to a number of steps (i.e. character accesses of the regex engine) via a {@link BudgetedPath}.</li>
+ * </ol>
+ * The analysis is based on a simple tokenizer only. Patterns using inline flags or quoting ({@code \Q...\E}) are therefore never rewritten.
+ */
+final class PathPatternGuard {
+
+    /** the default maximum number of steps per regex evaluation, reached only by pathological patterns on paths of usual length */
+    static final long DEFAULT_STEP_BUDGET = 1_000_000;
+    /** from this number of unbounded wildcards on the pattern is considered risky (as the cost grows polynomially with the path length) */
+    private static final int MAX_UNBOUNDED_WILDCARDS = 3;
+    private static final Pattern BOUNDED_QUANTIFIER_PATTERN = Pattern.compile("\\{(\\d{1,9})(?:,(\\d{1,9}))?\\}\\??");
+
+    private PathPatternGuard() {
+        // static methods only
+    }
+
+    /**
+     * Rewrites the given regex to prevent unnecessary backtracking. Only applies rewrites which do not change the set of matching paths:
+     * <ul>
+     * <li>adjacent wildcards are collapsed (e.g. {@code .*.*} becomes {@code .*}, {@code .*.+} becomes {@code .+})</li>
+     * <li>groups with a quantified single atom which are quantified again are flattened (e.g. {@code (a+)+} becomes {@code (a+)}, {@code (?:[^/]*)+} becomes {@code (?:[^/]*)})
+     * unless the regex contains back references</li>
+     * <li>quantifiers of atoms which cannot match the next literal are made possessive (e.g. {@code [^.]*\.} becomes {@code [^.]*+\.}),
+     * the same for quantifiers at the very end of the regex (e.g. {@code /content/.*} becomes {@code /content/.*+})</li>
+     * </ul>
+     * @param regex the regex
+     * @return the rewritten regex (or the given one in case it cannot be safely rewritten)
+     */
+    static @NotNull String harden(@NotNull String regex) {
+        List<Token> tokens = tokenize(regex);
+        if (tokens == null) {
+            return regex;
+        }
+        boolean hasBackReference = tokens.stream().anyMatch(token -> token.kind == Kind.BACK_REFERENCE);
+        collapseAdjacentWildcards(tokens);
+        flattenNestedQuantifiers(tokens, hasBackReference);
+        makeQuantifiersPossessive(tokens);
+        StringBuilder hardenedRegex = new StringBuilder(regex.length() + 4);
+        for (Token token : tokens) {
+            hardenedRegex.append(token.text);
+        }
+        return hardenedRegex.toString();
+    }
+
+    /**
+     *
+     * @param regex the regex
+     * @return descriptions of the constructs within the regex which may lead to excessive backtracking (empty in case there are none or the regex cannot be analyzed)
+     */
+    static @NotNull List<String> findRisks(@NotNull String regex) {
+        List<String> risks = new ArrayList<>();
+        List<Token> tokens = tokenize(regex);
+        if (tokens == null) {
+            return risks;
+        }
+        int unboundedWildcards = 0;
+        // the start index of each currently open group and whether it contains an unbounded quantifier which may backtrack
+        List<Integer> groupStarts = new ArrayList<>();
+        List<Boolean> groupsWithUnboundedQuantifier = new ArrayList<>();
+        for (int i = 0; i < tokens.size(); i++) {
+            Token token = tokens.get(i);
+            if (token.kind == Kind.GROUP_OPEN) {
+                groupStarts.add(i);
+                groupsWithUnboundedQuantifier.add(false);
+            } else if (token.kind == Kind.GROUP_CLOSE) {
+                if (groupStarts.isEmpty()) {
+                    return risks;
+                }
+                int groupStart = groupStarts.remove(groupStarts.size() - 1);
+                // atomic groups never give back characters
+                boolean hasUnboundedQuantifier = groupsWithUnboundedQuantifier.remove(groupsWithUnboundedQuantifier.size() - 1)
+                        && !tokens.get(groupStart).text.equals("(?>");
+                if (hasUnboundedQuantifier && i + 1 < tokens.size() && tokens.get(i + 1).isBacktrackingRepetition()) {
+                    risks.add("contains a repeated group with unbounded quantifiers " + join(tokens, groupStart, i + 2));
+                }
+                if (hasUnboundedQuantifier && !groupsWithUnboundedQuantifier.isEmpty()) {
+                    groupsWithUnboundedQuantifier.set(groupsWithUnboundedQuantifier.size() - 1, true);
+                }
+            } else if (token.isBacktrackingUnboundedQuantifier()) {
+                if (!groupsWithUnboundedQuantifier.isEmpty()) {
+                    groupsWithUnboundedQuantifier.set(groupsWithUnboundedQuantifier.size() - 1, true);
+                }
+                if (i > 0 && tokens.get(i - 1).kind == Kind.DOT) {
+                    unboundedWildcards++;
+                }
+            }
+        }
+        if (unboundedWildcards >= MAX_UNBOUNDED_WILDCARDS) {
+            risks.add("contains " + unboundedWildcards + " unbounded wildcards whose matches may overlap");
+        }
+        return risks;
+    }
+
+    private static @NotNull String join(@NotNull List<Token> tokens, int start, int end) {
+        StringBuilder text = new StringBuilder();
+        for (int i = start; i < end && i < tokens.size(); i++) {
+            text.append(tokens.get(i).text);
+        }
+        return text.toString();
+    }
+
+    private static void collapseAdjacentWildcards(@NotNull List<Token> tokens) {
+        for (int i = 0; i + 3 < tokens.size();) {
+            Token firstQuantifier = tokens.get(i + 1);
+            Token secondQuantifier = tokens.get(i + 3);
+            // .+.+ requires at least two characters and is therefore kept
+            if (tokens.get(i).kind == Kind.DOT && tokens.get(i + 2).kind == Kind.DOT && firstQuantifier.isGreedyStarOrPlus()
+                    && secondQuantifier.isGreedyStarOrPlus() && !(firstQuantifier.text.equals("+") && secondQuantifier.text.equals("+"))) {
+                boolean atLeastOne = firstQuantifier.text.equals("+") || secondQuantifier.text.equals("+");
+                tokens.set(i + 1, new Token(Kind.QUANTIFIER, atLeastOne ? "+" : "*"));
+                tokens.remove(i + 3);
+                tokens.remove(i + 2);
+            } else {
+                i++;
+            }
+        }
+    }
+
+    private static void flattenNestedQuantifiers(@NotNull List<Token> tokens, boolean hasBackReference) {
+        for (int i = 0; i + 4 < tokens.size(); i++) {
+            Token open = tokens.get(i);
+            Token innerQuantifier = tokens.get(i + 2);
+            Token outerQuantifier = tokens.get(i + 4);
+            if (open.kind == Kind.GROUP_OPEN && (open.text.equals("(?:") || (open.text.equals("(") && !hasBackReference))
+                    && tokens.get(i + 1).isAtom() && innerQuantifier.isGreedyStarOrPlus()
+                    && tokens.get(i + 3).kind == Kind.GROUP_CLOSE && outerQuantifier.isGreedyStarOrPlus()) {
+                // (a+)+ matches the same as (a+), all other combinations match the same as (a*)
+                boolean atLeastOne = innerQuantifier.text.equals("+") && outerQuantifier.text.equals("+");
+                tokens.set(i + 2, new Token(Kind.QUANTIFIER, atLeastOne ? "+" : "*"));
+                tokens.remove(i + 4);
+            }
+        }
+    }
+
+    private static void makeQuantifiersPossessive(@NotNull List<Token> tokens) {
+        int depth = 0;
+        for (int i = 0; i + 1 < tokens.size(); i++) {
+            Token token = tokens.get(i);
+            if (token.kind == Kind.GROUP_OPEN) {
+                depth++;
+            } else if (token.kind == Kind.GROUP_CLOSE) {
+                depth--;
+            }
+            Token quantifier = tokens.get(i + 1);
+            if (!token.isAtom() || !quantifier.isGreedyStarOrPlus()) {
+                continue;
+            }
+            boolean isPossessiveSafe;
+            if (i + 2 == tokens.size()) {
+                // nothing follows at the top level, so giving back characters can never lead to a match
+                isPossessiveSafe = depth == 0;
+            } else {
+                Token next = tokens.get(i + 2);
+                // the atom cannot match the following (mandatory) literal, so giving back characters can never lead to a match
+                isPossessiveSafe = next.kind == Kind.LITERAL && token.excludes(next.getLiteral())
+                        && (i + 3 == tokens.size() || tokens.get(i + 3).kind != Kind.QUANTIFIER);
+            }
+            if (isPossessiveSafe) {
+                tokens.set(i + 1, new Token(Kind.QUANTIFIER, quantifier.text + "+"));
+            }
+        }
+    }
+
+    enum Kind {
+        /** a single literal character (maybe escaped) */
+        LITERAL,
+        /** any other single character atom (character class, predefined character class escape) */
+        CHARACTER_CLASS,
+        /** the wildcard {@code .} */
+        DOT,
+        BACK_REFERENCE,
+        GROUP_OPEN,
+        GROUP_CLOSE,
+        QUANTIFIER,
+        /** alternation, anchors, boundaries or anything else not consuming exactly one character */
+        OTHER
+    }
+
+    static final class Token {
+        private final @NotNull Kind kind;
+        private final @NotNull String text;
+        /** the characters never matched by this atom (only set for some character classes and literals) */
+        private final @Nullable BitSet excludedCharacters;
+
+        Token(@NotNull Kind kind, @NotNull String text) {
+            this(kind, text, null);
+        }
+
+        Token(@NotNull Kind kind, @NotNull String text, @Nullable BitSet excludedCharacters) {
+            this.kind = kind;
+            this.text = text;
+            this.excludedCharacters = excludedCharacters;
+        }
+
+        boolean isAtom() {
+            return kind == Kind.LITERAL || kind == Kind.CHARACTER_CLASS || kind == Kind.DOT;
+        }
+
+        boolean isGreedyStarOrPlus() {
+            return kind == Kind.QUANTIFIER && (text.equals("*") || text.equals("+"));
+        }
+
+        boolean isBacktrackingUnboundedQuantifier() {
+            if (kind != Kind.QUANTIFIER || (text.length() > 1 && text.endsWith("+"))) {
+                // possessive quantifiers never give back characters
+                return false;
+            }
+            return text.startsWith("*") || text.startsWith("+") || text.matches("\\{\\d+,\\}\\??");
+        }
+
+        /**
+         * 
+         * @return {@code true} for non-possessive quantifiers allowing more than one repetition
+         */
+        boolean isBacktrackingRepetition() {
+            if (isBacktrackingUnboundedQuantifier()) {
+                return true;
+            }
+            if (kind != Kind.QUANTIFIER || !text.startsWith("{") || text.endsWith("+")) {
+                return false;
+            }
+            Matcher matcher = BOUNDED_QUANTIFIER_PATTERN.matcher(text);
+            return matcher.matches() && Long.parseLong(matcher.group(matcher.group(2) != null ? 2 : 1)) > 1;
+        }
+
+        char getLiteral() {
+            return text.charAt(text.length() - 1);
+        }
+
+        boolean excludes(char character) {
+            if (kind == Kind.LITERAL) {
+                return getLiteral() != character;
+            }
+            return excludedCharacters != null && excludedCharacters.get(character);
+        }
+
+        @Override
+        public String toString() {
+            return kind + ":" + text;
+        }
+    }
+
+    /**
+     *
+     * @param regex the regex
+     * @return the tokens or {@code null} in case the regex uses constructs which are not supported by this simple tokenizer
+     */
+    static @Nullable List<Token> tokenize(@NotNull String regex) {
+        List<Token> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < regex.length()) {
+            char character = regex.charAt(i);
+            int end;
+            switch (character) {
+                case '\\':
+                    if (i + 1 >= regex.length()) {
+                        return null;
+                    }
+                    char escaped = regex.charAt(i + 1);
+                    if (escaped >= '1' && escaped <= '9' || escaped == 'k') {
+                        end = escaped == 'k' ? regex.indexOf('>', i) + 1 : i + 2;
+                        while (escaped != 'k' && end < regex.length() && Character.isDigit(regex.charAt(end))) {
+                            end++;
+                        }
+                        if (end <= i) {
+                            return null;
+                        }
+                        tokens.add(new Token(Kind.BACK_REFERENCE, regex.substring(i, end)));
+                    } else if ("dDwWsS".indexOf(escaped) >= 0) {
+                        end = i + 2;
+                        tokens.add(new Token(Kind.CHARACTER_CLASS, regex.substring(i, end), getExcludedCharacters(escaped)));
+                    } else if ("bBAGZzR".indexOf(escaped) >= 0) {
+                        end = i + 2;
+                        tokens.add(new Token(Kind.OTHER, regex.substring(i, end)));
+                    } else if (Character.isLetterOrDigit(escaped)) {
+                        // quoting, unicode categories, hexadecimal/octal characters and other rarely used escapes
+                        return null;
+                    } else {
+                        end = i + 2;
+                        tokens.add(new Token(Kind.LITERAL, regex.substring(i, end)));
+                    }
+                    break;
+                case '[':
+                    end = findCharacterClassEnd(regex, i);
+                    if (end == -1) {
+                        return null;
+                    }
+                    tokens.add(new Token(Kind.CHARACTER_CLASS, regex.substring(i, end), getExcludedCharacters(regex.substring(i, end))));
+                    break;
+                case '(':
+                    if (regex.startsWith("(?", i)) {
+                        if (regex.startsWith("(?:", i) || regex.startsWith("(?=", i) || regex.startsWith("(?!", i) || regex.startsWith("(?>", i)) {
+                            end = i + 3;
+                        } else if (regex.startsWith("(?<=", i) || regex.startsWith("(?<!", i)) {
+                            end = i + 4;
+                        } else if (regex.startsWith("(?<", i)) {
+                            end = regex.indexOf('>', i) + 1;
+                            if (end == 0) {
+                                return null;
+                            }
+                        } else {
+                            // inline flags (e.g. case insensitive or comments mode) change the meaning of the tokens
+                            return null;
+                        }
+                    } else {
+                        end = i + 1;
+                    }
+                    tokens.add(new Token(Kind.GROUP_OPEN, regex.substring(i, end)));
+                    break;
+                case ')':
+                    end = i + 1;
+                    tokens.add(new Token(Kind.GROUP_CLOSE, ")"));
+                    break;
+                case '*':
+                case '+':
+                case '?':
+                case '{':
+                    if (character == '{') {
+                        end = regex.indexOf('}', i) + 1;
+                        if (end == 0) {
+                            return null;
+                        }
+                    } else {
+                        end = i + 1;
+                    }
+                    if (end < regex.length() && (regex.charAt(end) == '?' || regex.charAt(end) == '+')) {
+                        end++;
+                    }
+                    tokens.add(new Token(Kind.QUANTIFIER, regex.substring(i, end)));
+                    break;
+                case '.':
+                    end = i + 1;
+                    tokens.add(new Token(Kind.DOT, "."));
+                    break;
+                case '|':
+                case '^':
+                case '$':
+                    end = i + 1;
+                    tokens.add(new Token(Kind.OTHER, String.valueOf(character)));
+                    break;
+                default:
+                    end = i + 1;
+                    tokens.add(new Token(Kind.LITERAL, String.valueOf(character)));
+                    break;
+            }
+            i = end;
+        }
+        return tokens;
+    }
+
+    /**
+     *
+     * @param regex the regex
+     * @param start the index of the opening bracket
+     * @return the index after the closing bracket or -1 if not found
+     */
+    private static int findCharacterClassEnd(@NotNull String regex, int start) {
+        int depth = 0;
+        int i = start;
+        while (i < regex.length()) {
+            char character = regex.charAt(i);
+            if (character == '\\') {
+                i += 2;
+                continue;
+            }
+            if (character == '[') {
+                depth++;
+                // a closing bracket directly at the beginning is a literal
+                if (regex.startsWith("^]", i + 1)) {
+                    i += 2;
+                } else if (i + 1 < regex.length() && regex.charAt(i + 1) == ']') {
+                    i++;
+                }
+            } else if (character == ']') {
+                depth--;
+                if (depth == 0) {
+                    return i + 1;
+                }
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    /**
+     *
+     * @param characterClass the character class including the brackets
+     * @return the ASCII characters excluded by a negated character class consisting only of literals (e.g. {@code [^/]}) or {@code null}
+     */
+    private static @Nullable BitSet getExcludedCharacters(@NotNull String characterClass) {
+        if (!characterClass.startsWith("[^") || characterClass.length() < 4) {
+            return null;
+        }
+        BitSet excludedCharacters = new BitSet(128);
+        for (int i = 2; i < characterClass.length() - 1; i++) {
+            char character = characterClass.charAt(i);
+            if (character == '\\' && i + 2 < characterClass.length() && !Character.isLetterOrDigit(characterClass.charAt(i + 1))) {
+                character = characterClass.charAt(++i);
+            } else if (character == '\\' || character == '[' || character == '-' || character == '&' || character >= 128) {
+                // ranges, nested classes, intersections and predefined classes are not supported
+                return null;
+            }
+            excludedCharacters.set(character);
+        }
+        return excludedCharacters;
+    }
+
+    /**
+     *
+     * @param predefinedClass the character after the backslash
+     * @return the ASCII characters never matched by the given predefined character class
+     */
+    private static @NotNull BitSet getExcludedCharacters(char predefinedClass) {
+        // in case of the lower case variants these are the matched characters, which are flipped afterwards
+        BitSet matchedCharacters = new BitSet(128);
+        for (char character = 0; character < 128; character++) {
+            switch (Character.toLowerCase(predefinedClass)) {
+                case 'd':
+                    matchedCharacters.set(character, character >= '0' && character <= '9');
+                    break;
+                case 'w':
+                    matchedCharacters.set(character, Character.isLetterOrDigit(character) || character == '_');
+                    break;
+                default:
+                    matchedCharacters.set(character, " \t\n\u000B\f\r".indexOf(character) >= 0);
+                    break;
+            }
+        }
+        if (Character.isLowerCase(predefinedClass)) {
+            matchedCharacters.flip(0, 128);
+        }
+        // the upper case variants exclude exactly the characters matched by the lower case variants
+        return matchedCharacters;
+    }
+
+    /**
+     * Wraps a path to limit the number of steps the regex engine may spend on it.
+     * Every character access counts as one step. Reused for all evaluations of one matcher, not thread-safe.
+     */
+    static final class BudgetedPath implements CharSequence {
+        private final long stepBudget;
+        private @NotNull String path = "";
+        private long remainingSteps;
+
+        BudgetedPath(long stepBudget) {
+            this.stepBudget = stepBudget;
+        }
+
+        /**
+         *
+         * @param path the path to evaluate next
+         * @return this instance with the full budget
+         */
+        @NotNull BudgetedPath reset(@NotNull String path) {
+            this.path = path;
+            this.remainingSteps = stepBudget;
+            return this;
+        }
+
+        @Override
+        public int length() {
+            return path.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (--remainingSteps < 0) {
+                throw new StepBudgetExceededException(stepBudget);
+            }
+            return path.charAt(index);
+        }
+
+        @Override
+        public @NotNull CharSequence subSequence(int start, int end) {
+            return path.subSequence(start, end);
+        }
+
+        @Override
+        public @NotNull String toString() {
+            return path;
+        }
+    }
+
+    /**
+     * Thrown in case a regex evaluation exceeds its step budget.
+     */
+    static final class StepBudgetExceededException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        private final long stepBudget;
+
+        StepBudgetExceededException(long stepBudget) {
+            // no stack trace, as only the message is relevant
+            super("Exceeded the budget of " + stepBudget + " steps", null, false, false);
+            this.stepBudget = stepBudget;
+        }
+
+        StepBudgetExceededException(@NotNull String message, long stepBudget) {
+            super(message, null, false, false);
+            this.stepBudget = stepBudget;
+        }
+
+        long getStepBudget() {
+            return stepBudget;
+        }
+    }
+}
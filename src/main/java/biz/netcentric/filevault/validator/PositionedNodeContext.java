@@ -0,0 +1,67 @@
+/*-
+ * #%L
+ * AEM Replication Metadata Validator
+ * %%
+ * Copyright (C) 2024 Cognizant Netcentric
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package biz.netcentric.filevault.validator;
+
+import java.nio.file.Path;
+
+import org.apache.jackrabbit.vault.validation.spi.NodeContext;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A {@link NodeContext} which additionally carries the position of the event within the DocView XML file.
+ * Only emitted by {@link JcrRootScanner} and {@link PackageScanner}, as FileVault's validation framework does not expose the position to validators.
+ */
+final class PositionedNodeContext implements NodeContext {
+
+    private final @NotNull String nodePath;
+    private final @NotNull Path filePath;
+    private final @NotNull Path basePath;
+    private final int line;
+    private final int column;
+
+    PositionedNodeContext(@NotNull String nodePath, @NotNull Path filePath, @NotNull Path basePath, int line, int column) {
+        this.nodePath = nodePath;
+        this.filePath = filePath;
+        this.basePath = basePath;
+        this.line = line;
+        this.column = column;
+    }
+
+    @Override
+    public @NotNull String getNodePath() {
+        return nodePath;
+    }
+
+    @Override
+    public @NotNull Path getFilePath() {
+        return filePath;
+    }
+
+    @Override
+    public @NotNull Path getBasePath() {
+        return basePath;
+    }
+
+    int getLine() {
+        return line;
+    }
+
+    int getColumn() {
+        return column;
+    }
+
+    @Override
+    public String toString() {
+        return "PositionedNodeContext [nodePath=" + nodePath + ", filePath=" + filePath + ", line=" + line + ", column=" + column + "]";
+    }
+}
@@ -30,6 +30,9 @@ final class PropertyName {
 
     private final Name name;
     private final Collection<String> autoCreatedTypes; // either mixin or primary types
+    // labels are shared by all extracted dates
+    private final String label;
+    private final String autoCreatedLabel;
 
     private PropertyName(Name name) {
         this(name, Collections.emptySet());
@@ -39,6 +42,8 @@ final class PropertyName {
         super();
         this.name = name;
         this.autoCreatedTypes = autoGenerateTypes;
+        this.label = name.toString();
+        this.autoCreatedLabel = "auto created " + label;
     }
 
     public Name getName() {
@@ -48,4 +53,20 @@ final class PropertyName {
     public Collection<String> getAutoCreatedTypes() {
         return autoCreatedTypes;
     }
+
+    /**
+     * 
+     * @return the label for a date extracted from this property
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * 
+     * @return the label for a date derived from this property being auto created
+     */
+    public String getAutoCreatedLabel() {
+        return autoCreatedLabel;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,148 @@
+/*-
+ * #%L
+ * AEM Replication Metadata Validator
+ * %%
+ * Copyright (C) 2024 Cognizant Netcentric
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package biz.netcentric.filevault.validator;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.jackrabbit.spi.Name;
+import org.apache.jackrabbit.vault.util.DocViewNode2;
+import org.apache.jackrabbit.vault.util.DocViewProperty2;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Assigns a slot to each property name being evaluated by the validator (the replication properties of all agents and all properties
+ * potentially carrying the comparison date). This allows to look up all of them in a single pass over the properties of a node.
+ * <p>
+ * Instances are immutable and thread-safe.
+ */
+final class PropertyNameIndex {
+
+    private final @NotNull Map<Name, Integer> slotsByName;
+    /** per agent index: the slot of the last replication action property */
+    private final int[] lastReplicationActionSlots;
+    /** per agent index: the slots of the last replication date properties (in the order of precedence) */
+    private final int[][] lastReplicationDateSlots;
+
+    PropertyNameIndex(@NotNull List<AgentPropertyNames> agentPropertyNames) {
+        Map<Name, Integer> slots = new HashMap<>();
+        lastReplicationActionSlots = new int[agentPropertyNames.size()];
+        lastReplicationDateSlots = new int[agentPropertyNames.size()][];
+        for (int i = 0; i < agentPropertyNames.size(); i++) {
+            AgentPropertyNames agentPropertyName = agentPropertyNames.get(i);
+            lastReplicationActionSlots[i] = addSlot(slots, agentPropertyName.getLastReplicationActionName());
+            List<Name> lastReplicationDateNames = agentPropertyName.getLastReplicationDateNames();
+            lastReplicationDateSlots[i] = new int[lastReplicationDateNames.size()];
+            for (int j = 0; j < lastReplicationDateNames.size(); j++) {
+                lastReplicationDateSlots[i][j] = addSlot(slots, lastReplicationDateNames.get(j));
+            }
+        }
+        for (DateProperty dateProperty : DateProperty.values()) {
+            for (PropertyName propertyName : dateProperty.getPropertyNames()) {
+                addSlot(slots, propertyName.getName());
+            }
+        }
+        this.slotsByName = Collections.unmodifiableMap(slots);
+    }
+
+    private static int addSlot(@NotNull Map<Name, Integer> slots, @NotNull Name name) {
+        return slots.computeIfAbsent(name, n -> slots.size());
+    }
+
+    /**
+     *
+     * @return a new scan for this index, must not be shared between threads
+     */
+    @NotNull PropertyScan createScan() {
+        return new PropertyScan();
+    }
+
+    /**
+     * The properties of one node looked up by their slot. Reused for all nodes to prevent allocations.
+     * Not thread-safe.
+     */
+    final class PropertyScan {
+        private final DocViewProperty2[] properties = new DocViewProperty2[slotsByName.size()];
+        /** the label of the date last extracted by {@link DateProperty#extractDate(DocViewNode2, PropertyScan, JcrDateParser)} */
+        private @Nullable String dateLabel;
+
+        private PropertyScan() {
+        }
+
+        /**
+         * Captures all properties with a slot from the given node in a single pass (and forgets about the ones captured from a previous node).
+         * @param node the node
+         * @return this scan
+         */
+        @NotNull PropertyScan scan(@NotNull DocViewNode2 node) {
+            Arrays.fill(properties, null);
+            for (DocViewProperty2 property : node.getProperties()) {
+                Integer slot = slotsByName.get(property.getName());
+                if (slot != null) {
+                    properties[slot] = property;
+                }
+            }
+            return this;
+        }
+
+        @Nullable DocViewProperty2 getLastReplicationAction(int agentIndex) {
+            return properties[lastReplicationActionSlots[agentIndex]];
+        }
+
+        /**
+         *
+         * @param agentIndex the agent index
+         * @return the index of the first last replication date property name (from {@link AgentPropertyNames#getLastReplicationDateNames()}) being set
+         * or {@link ReplicationMetadata#DATE_NOT_FOUND}
+         */
+        byte getLastReplicationDatePropertyIndex(int agentIndex) {
+            int[] slots = lastReplicationDateSlots[agentIndex];
+            for (int i = 0; i < slots.length; i++) {
+                if (properties[slots[i]] != null) {
+                    return (byte) i;
+                }
+            }
+            return ReplicationMetadata.DATE_NOT_FOUND;
+        }
+
+        @Nullable DocViewProperty2 getLastReplicationDate(int agentIndex, int propertyIndex) {
+            return properties[lastReplicationDateSlots[agentIndex][propertyIndex]];
+        }
+
+        @Nullable DocViewProperty2 getProperty(@NotNull PropertyName propertyName) {
+            Integer slot = slotsByName.get(propertyName.getName());
+            return slot != null ? properties[slot] : null;
+        }
+
+        int getAgentCount() {
+            return lastReplicationActionSlots.length;
+        }
+
+        /**
+         *
+         * @return the label explaining where the date last extracted by {@link DateProperty#extractDate(DocViewNode2, PropertyScan, JcrDateParser)} came from,
+         * {@code null} in case no date was found
+         */
+        @Nullable String getDateLabel() {
+            return dateLabel;
+        }
+
+        void setDateLabel(@Nullable String dateLabel) {
+            this.dateLabel = dateLabel;
+        }
+    }
+}
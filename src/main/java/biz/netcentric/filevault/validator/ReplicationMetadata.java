@@ -13,96 +13,80 @@
 package biz.netcentric.filevault.validator;
 
 import java.text.ChoiceFormat;
-import java.util.Arrays;
-import java.util.Calendar;
-import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
-import javax.jcr.RepositoryException;
+import javax.jcr.ValueFormatException;
 
 import org.apache.jackrabbit.spi.Name;
-import org.apache.jackrabbit.vault.util.DocViewNode2;
 import org.apache.jackrabbit.vault.util.DocViewProperty2;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
- * Replication metadata from {@link DocViewNode2}s.
- * The properties are accessed lazily.
+ * Extracts replication metadata from {@link DocViewProperty2}s into primitive values, so that no references to the node need to be retained.
  * Metadata always refer to a specific agent (which may be publish=default)
  *
  */
-public class ReplicationMetadata {
+public final class ReplicationMetadata {
 
     static final String DEFAULT_AGENT_NAME = "publish";
-    // the following are just the local names of properties (without their namespace prefix)
-    private static final String LAST_REPLICATED = "lastReplicated";
-    private static final String LAST_PUBLISHED = "lastPublished";
-    private static final String LAST_REPLICATION_ACTION = "lastReplicationAction";
-
-    private final @NotNull DocViewNode2 node;
-    private final @NotNull String agentName;
-
-    private static final DocViewNode2 EMPTY_NODE = new DocViewNode2(NameConstants.JCR_CONTENT, Collections.emptyList());
-    // the node name does not matter
-    static final ReplicationMetadata EMPTY  = new ReplicationMetadata(EMPTY_NODE, DEFAULT_AGENT_NAME);
-
-    public ReplicationMetadata(@NotNull DocViewNode2 node, @NotNull String agentName) {
-        super();
-        this.node = node;
-        this.agentName = agentName;
-    }
 
-    static DocViewProperty2 getProperty(@NotNull DocViewNode2 node, @NotNull String agentName, boolean allowNullReturnValue, @NotNull String namespaceUri, String... propertyNames) {
-        // only use agent specific metadata if name is not "publish", replicating logic from com.day.cq.wcm.core.impl.reference.ReferenceReplicationStatusProvider.initReplicationStatusMap() line 67
-        String metadataPropertySuffix = agentName.equals(DEFAULT_AGENT_NAME) ? "" : ("_" + agentName);
-        List<String> suffixedPropertyNames = Arrays.stream(propertyNames).map(s -> s + metadataPropertySuffix).collect(Collectors.toList());
-        for (String propertyName : suffixedPropertyNames) {
-            Optional<DocViewProperty2> property = node.getProperty(NameConstants.NAME_FACTORY.create(namespaceUri, propertyName));
-            if (property.isPresent()) {
-                return property.get();
-            }
-        }
-        if (!allowNullReturnValue) {
-            ChoiceFormat replicationProperties = new ChoiceFormat(
-                    "1#Replication property|1.0<Replication properties");
-            throw new IllegalStateException(replicationProperties.format(suffixedPropertyNames.size()) + " " + String.join(" or ", suffixedPropertyNames.stream().map(s -> "{" + namespaceUri + "}" + s).collect(Collectors.toList())) + " not found");
-        }
-        return null;
+    /** returned by {@link #getLastReplicationAction(DocViewProperty2)} in case the property is not set */
+    static final byte ACTION_NOT_FOUND = -1;
+    /** returned by {@link #getLastReplicationAction(DocViewProperty2)} in case the property does not contain a valid action */
+    static final byte ACTION_INVALID = -2;
+
+    /** returned by {@link PropertyNameIndex.PropertyScan#getLastReplicationDatePropertyIndex(int)} in case none of the properties is set */
+    static final byte DATE_NOT_FOUND = -1;
+    /** returned by {@link #getLastReplicationDate(DocViewProperty2, JcrDateParser)} in case the property does not contain a valid date */
+    static final long DATE_INVALID = Long.MIN_VALUE;
+
+    private ReplicationMetadata() {
     }
 
-    public Calendar getLastReplicationDate(boolean allowNullReturnValue) {
+    /**
+     * 
+     * @param property the last replication action property (may be {@code null})
+     * @return the ordinal of the {@link ReplicationActionType} or one of {@link #ACTION_NOT_FOUND} or {@link #ACTION_INVALID}
+     */
+    static byte getLastReplicationAction(@Nullable DocViewProperty2 property) {
         // this logic is derived from com.day.cq.replication.impl.ReplicationStatusImpl.readAgentStatus(...)
         // and com.day.cq.wcm.core.impl.reference.ReferenceReplicationStatusProvider.initReplicationStatusMap(...)
-        DocViewProperty2 property = getProperty(node, agentName, allowNullReturnValue, NameConstants.CQ_NAMESPACE_URI, LAST_REPLICATED, LAST_PUBLISHED);
-        Optional<Calendar> lastReplicationDate = Optional.ofNullable(property)
-                .flatMap(DocViewProperty2::getStringValue)
-                .map(NameConstants.VALUE_FACTORY::createValue)
-                .map(t -> {
-            try {
-                return t.getDate();
-            } catch (RepositoryException e) {
-                throw new IllegalStateException(e);
-            }
-        });
-        if (!allowNullReturnValue && !lastReplicationDate.isPresent()) {
-            throw new IllegalStateException("No replication property found with name " + Optional.ofNullable(property).map(DocViewProperty2::getName).map(Name::toString).orElse("?"));
+        if (property == null) {
+            return ACTION_NOT_FOUND;
         }
-        return lastReplicationDate.orElse(null);
+        ReplicationActionType replicationActionType = property.getStringValue().map(ReplicationActionType::fromName).orElse(null);
+        return replicationActionType != null ? (byte) replicationActionType.ordinal() : ACTION_INVALID;
     }
 
-    public ReplicationActionType getLastReplicationAction(boolean allowNullReturnValue) {
-     // this logic is derived from com.day.cq.replication.impl.ReplicationStatusImpl.readAgentStatus(...)
-        // and com.day.cq.wcm.core.impl.reference.ReferenceReplicationStatusProvider.initReplicationStatusMap(...)
-        DocViewProperty2 property = getProperty(node, agentName, allowNullReturnValue, NameConstants.CQ_NAMESPACE_URI, LAST_REPLICATION_ACTION);
-        Optional<ReplicationActionType> replicationActionType = Optional.ofNullable(property)
-                .flatMap(DocViewProperty2::getStringValue)
-                .map(ReplicationActionType::fromName);
-        if (!allowNullReturnValue && !replicationActionType.isPresent()) {
-            throw new IllegalStateException("No replication property found with name " + Optional.ofNullable(property).map(DocViewProperty2::getName).map(Name::toString).orElse("?"));
+    /**
+     * 
+     * @param property the last replication date property
+     * @param dateParser the parser to use for the date value
+     * @return the last replication date in epoch milliseconds or {@link #DATE_INVALID}
+     */
+    static long getLastReplicationDate(@NotNull DocViewProperty2 property, @NotNull JcrDateParser dateParser) {
+        Optional<String> value = property.getStringValue();
+        if (!value.isPresent()) {
+            return DATE_INVALID;
+        }
+        try {
+            return dateParser.parse(value.get());
+        } catch (ValueFormatException e) {
+            return DATE_INVALID;
         }
-        return replicationActionType.orElse(null);
+    }
+
+    static @NotNull String getPropertiesNotFoundMessage(@NotNull List<Name> propertyNames) {
+        ChoiceFormat replicationProperties = new ChoiceFormat(
+                "1#Replication property|1.0<Replication properties");
+        return replicationProperties.format(propertyNames.size()) + " " + propertyNames.stream().map(Name::toString).collect(Collectors.joining(" or ")) + " not found";
+    }
+
+    static @NotNull String getInvalidPropertyMessage(@NotNull Name propertyName) {
+        return "No replication property found with name " + propertyName;
     }
 
     /**
@@ -0,0 +1,89 @@
+/*-
+ * #%L
+ * AEM Replication Metadata Validator
+ * %%
+ * Copyright (C) 2024 Cognizant Netcentric
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package biz.netcentric.filevault.validator;
+
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+
+import org.apache.jackrabbit.spi.Name;
+import org.apache.jackrabbit.util.ISO8601;
+import org.jetbrains.annotations.NotNull;
+
+import biz.netcentric.filevault.validator.ReplicationMetadata.ReplicationActionType;
+
+/**
+ * The changes to the replication metadata properties of a single node which resolve its violations.
+ * Created by {@link NodeMetadata#createFix(java.util.Collection, long)} and applied to the DocView XML file by {@link DocViewFixer}.
+ */
+final class ReplicationMetadataFix {
+
+    private static final @NotNull TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    private final @NotNull String nodePath;
+    /** the properties to add or overwrite with their DocView XML values */
+    private final @NotNull Map<Name, String> propertiesToSet = new LinkedHashMap<>();
+    private final @NotNull Set<Name> propertiesToRemove = new LinkedHashSet<>();
+
+    ReplicationMetadataFix(@NotNull String nodePath) {
+        this.nodePath = nodePath;
+    }
+
+    @NotNull String getNodePath() {
+        return nodePath;
+    }
+
+    void activate(@NotNull AgentPropertyNames agentPropertyNames) {
+        propertiesToSet.put(agentPropertyNames.getLastReplicationActionName(), ReplicationActionType.ACTIVATE.getName());
+    }
+
+    /**
+     * Sets the first (i.e. the one with the highest precedence) replication date property of the given agent.
+     * @param agentPropertyNames the agent
+     * @param date the date in epoch milliseconds
+     */
+    void setReplicationDate(@NotNull AgentPropertyNames agentPropertyNames, long date) {
+        Calendar calendar = Calendar.getInstance(UTC);
+        calendar.setTimeInMillis(date);
+        propertiesToSet.put(agentPropertyNames.getLastReplicationDateNames().get(0), "{Date}" + ISO8601.format(calendar));
+    }
+
+    void removeReplicationAction(@NotNull AgentPropertyNames agentPropertyNames) {
+        propertiesToRemove.add(agentPropertyNames.getLastReplicationActionName());
+    }
+
+    void removeReplicationDates(@NotNull AgentPropertyNames agentPropertyNames) {
+        propertiesToRemove.addAll(agentPropertyNames.getLastReplicationDateNames());
+    }
+
+    boolean isEmpty() {
+        return propertiesToSet.isEmpty() && propertiesToRemove.isEmpty();
+    }
+
+    @NotNull Map<Name, String> getPropertiesToSet() {
+        return Collections.unmodifiableMap(propertiesToSet);
+    }
+
+    @NotNull Set<Name> getPropertiesToRemove() {
+        return Collections.unmodifiableSet(propertiesToRemove);
+    }
+
+    @Override
+    public String toString() {
+        return "ReplicationMetadataFix [nodePath=" + nodePath + ", propertiesToSet=" + propertiesToSet + ", propertiesToRemove=" + propertiesToRemove + "]";
+    }
+}
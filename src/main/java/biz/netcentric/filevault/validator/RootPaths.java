@@ -0,0 +1,305 @@
+/*-
+ * #%L
+ * AEM Replication Metadata Validator
+ * %%
+ * Copyright (C) 2024 Cognizant Netcentric
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package biz.netcentric.filevault.validator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The repository paths below which nodes may be relevant for validation at all.
+ * Used to skip whole subtrees (and even whole packages) which cannot contain any node matching a rule.
+ * <p>
+ * The root paths are either given explicitly or derived from the literal prefixes of the rules' path patterns
+ * (e.g. {@code /(apps|conf)/.*} leads to root paths {@code /apps} and {@code /conf}).
+ * Patterns without a literal prefix (like {@code .*}/settings/...) lead to the unrestricted root path {@code /}.
+ * <p>
+ * Instances are immutable and thread-safe.
+ */
+final class RootPaths {
+
+    static final @NotNull RootPaths UNRESTRICTED = new RootPaths(Collections.singleton("/"));
+
+    /** the maximum number of literal prefixes derived from a single pattern (alternations multiply the number of prefixes) */
+    private static final int MAX_PREFIXES_PER_PATTERN = 32;
+    private static final String META_CHARACTERS = "\\[](){}.*+?^$|";
+
+    /** the normalized root paths (without trailing slash), none of them is a descendant of another one */
+    private final @NotNull List<String> paths;
+    private final boolean isUnrestricted;
+
+    RootPaths(@NotNull Collection<String> paths) {
+        List<String> normalizedPaths = new ArrayList<>();
+        for (String path : paths) {
+            String normalizedPath = normalize(path);
+            if (!normalizedPaths.contains(normalizedPath)) {
+                normalizedPaths.add(normalizedPath);
+            }
+        }
+        // remove all paths being covered by another path already
+        normalizedPaths.removeIf(path -> normalizedPaths.stream().anyMatch(otherPath -> isStrictAncestor(otherPath, path)));
+        this.paths = Collections.unmodifiableList(normalizedPaths);
+        this.isUnrestricted = normalizedPaths.contains("/");
+    }
+
+    private static @NotNull String normalize(@NotNull String path) {
+        String normalizedPath = path.trim();
+        if (!normalizedPath.startsWith("/")) {
+            throw new IllegalArgumentException("Root paths must be absolute but found " + path);
+        }
+        while (normalizedPath.length() > 1 && normalizedPath.endsWith("/")) {
+            normalizedPath = normalizedPath.substring(0, normalizedPath.length() - 1);
+        }
+        return normalizedPath;
+    }
+
+    /**
+     *
+     * @param typesSettings the rules
+     * @return the root paths derived from the literal prefixes of the given rules' path patterns
+     */
+    static @NotNull RootPaths fromTypesSettings(@NotNull Collection<TypeSettings> typesSettings) {
+        Set<String> rootPaths = new LinkedHashSet<>();
+        for (TypeSettings typeSettings : typesSettings) {
+            rootPaths.addAll(getRootPaths(typeSettings.getPathPattern().pattern()));
+        }
+        return rootPaths.isEmpty() ? UNRESTRICTED : new RootPaths(rootPaths);
+    }
+
+    /**
+     *
+     * @param regex a regular expression which needs to match a path fully
+     * @return the paths which all matching paths must be equal to or a descendant of
+     */
+    static @NotNull Set<String> getRootPaths(@NotNull String regex) {
+        Set<String> rootPaths = new LinkedHashSet<>();
+        boolean isCompletelyLiteral = getLiteralPrefixes(regex, rootPaths);
+        Set<String> normalizedRootPaths = new LinkedHashSet<>();
+        for (String prefix : rootPaths) {
+            // a literal prefix ending in the middle of a path segment only determines the parent segment
+            int lastSlash = prefix.lastIndexOf('/');
+            if (!prefix.startsWith("/")) {
+                normalizedRootPaths.add("/");
+            } else if (isCompletelyLiteral) {
+                normalizedRootPaths.add(prefix);
+            } else if (lastSlash <= 0) {
+                normalizedRootPaths.add("/");
+            } else {
+                normalizedRootPaths.add(prefix.substring(0, lastSlash));
+            }
+        }
+        return normalizedRootPaths;
+    }
+
+    /**
+     * Extracts the literal prefixes of the given regular expression. Only simple constructs are supported (literal characters, escaped meta characters and
+     * groups consisting of an alternation of literals), the analysis stops at the first other construct.
+     * @param regex the regular expression
+     * @param prefixes the set to which the prefixes are added (one of them is a prefix of every string matched by the regular expression)
+     * @return {@code true} in case the regular expression only consists of literals (i.e. the prefixes are all strings matched by it)
+     */
+    static boolean getLiteralPrefixes(@NotNull String regex, @NotNull Set<String> prefixes) {
+        List<StringBuilder> currentPrefixes = new ArrayList<>();
+        currentPrefixes.add(new StringBuilder());
+        try {
+            if (hasTopLevelAlternation(regex)) {
+                return false;
+            }
+            int position = regex.startsWith("^") ? 1 : 0;
+            while (position < regex.length()) {
+                char character = regex.charAt(position);
+                final List<String> alternatives;
+                if (character == '\\') {
+                    // only escaped meta characters are literals
+                    if (position + 1 >= regex.length() || META_CHARACTERS.indexOf(regex.charAt(position + 1)) == -1) {
+                        return false;
+                    }
+                    alternatives = Collections.singletonList(String.valueOf(regex.charAt(position + 1)));
+                    position += 2;
+                } else if (character == '(') {
+                    int start = position + 1;
+                    if (regex.startsWith("?:", start)) {
+                        start += 2;
+                    } else if (regex.startsWith("?", start)) {
+                        // flags, look-arounds or named groups
+                        return false;
+                    }
+                    int end = regex.indexOf(')', start);
+                    if (end == -1) {
+                        return false;
+                    }
+                    alternatives = Arrays.asList(regex.substring(start, end).split("\\|", -1));
+                    for (String alternative : alternatives) {
+                        if (!isLiteral(alternative)) {
+                            return false;
+                        }
+                    }
+                    position = end + 1;
+                } else if (META_CHARACTERS.indexOf(character) != -1) {
+                    return false;
+                } else {
+                    alternatives = Collections.singletonList(String.valueOf(character));
+                    position++;
+                }
+                // the atom might be optional
+                char quantifier = position < regex.length() ? regex.charAt(position) : 0;
+                if (quantifier == '?' || quantifier == '*' || quantifier == '{') {
+                    return false;
+                }
+                if (currentPrefixes.size() * alternatives.size() > MAX_PREFIXES_PER_PATTERN) {
+                    return false;
+                }
+                currentPrefixes = append(currentPrefixes, alternatives);
+                if (quantifier == '+') {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            for (StringBuilder prefix : currentPrefixes) {
+                prefixes.add(prefix.toString());
+            }
+        }
+    }
+
+    private static @NotNull List<StringBuilder> append(@NotNull List<StringBuilder> prefixes, @NotNull List<String> alternatives) {
+        if (alternatives.size() == 1) {
+            for (StringBuilder prefix : prefixes) {
+                prefix.append(alternatives.get(0));
+            }
+            return prefixes;
+        }
+        List<StringBuilder> newPrefixes = new ArrayList<>(prefixes.size() * alternatives.size());
+        for (StringBuilder prefix : prefixes) {
+            for (String alternative : alternatives) {
+                newPrefixes.add(new StringBuilder(prefix).append(alternative));
+            }
+        }
+        return newPrefixes;
+    }
+
+    private static boolean isLiteral(@NotNull String regex) {
+        for (int i = 0; i < regex.length(); i++) {
+            if (META_CHARACTERS.indexOf(regex.charAt(i)) != -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     *
+     * @param regex the regular expression
+     * @return {@code true} in case the given regular expression contains an alternation outside of all groups
+     */
+    static boolean hasTopLevelAlternation(@NotNull String regex) {
+        int depth = 0;
+        boolean isInCharacterClass = false;
+        for (int i = 0; i < regex.length(); i++) {
+            char character = regex.charAt(i);
+            if (character == '\\') {
+                i++;
+            } else if (isInCharacterClass) {
+                isInCharacterClass = character != ']';
+            } else if (character == '[') {
+                isInCharacterClass = true;
+            } else if (character == '(') {
+                depth++;
+            } else if (character == ')') {
+                depth--;
+            } else if (character == '|' && depth == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isStrictAncestor(@NotNull String ancestorPath, @NotNull String path) {
+        if (ancestorPath.equals("/")) {
+            return path.length() > 1;
+        }
+        return path.length() > ancestorPath.length() && path.startsWith(ancestorPath) && path.charAt(ancestorPath.length()) == '/';
+    }
+
+    /**
+     *
+     * @param other the other root paths
+     * @return the union of both root paths
+     */
+    @NotNull RootPaths union(@NotNull RootPaths other) {
+        List<String> allPaths = new ArrayList<>(paths);
+        allPaths.addAll(other.paths);
+        return new RootPaths(allPaths);
+    }
+
+    boolean isUnrestricted() {
+        return isUnrestricted;
+    }
+
+    @NotNull List<String> getPaths() {
+        return paths;
+    }
+
+    /**
+     *
+     * @param path a node path
+     * @return {@code true} in case the given path is equal to or a descendant of one of the root paths (i.e. the node and all its descendants are relevant)
+     */
+    boolean contains(@NotNull String path) {
+        if (isUnrestricted) {
+            return true;
+        }
+        // accessed via index to prevent iterator allocations
+        for (int i = 0; i < paths.size(); i++) {
+            String rootPath = paths.get(i);
+            if (rootPath.equals(path) || isStrictAncestor(rootPath, path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     *
+     * @param path a node path
+     * @return {@code true} in case the given path is an ancestor of one of the root paths (i.e. some of its descendants are relevant)
+     */
+    boolean isAncestor(@NotNull String path) {
+        for (int i = 0; i < paths.size(); i++) {
+            if (isStrictAncestor(path, paths.get(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     *
+     * @param path a node path
+     * @return {@code true} in case the given path is equal to, a descendant of or an ancestor of one of the root paths
+     */
+    boolean intersects(@NotNull String path) {
+        return contains(path) || isAncestor(path);
+    }
+
+    @Override
+    public String toString() {
+        return "RootPaths " + paths;
+    }
+}
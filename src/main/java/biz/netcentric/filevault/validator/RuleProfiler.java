@@ -0,0 +1,169 @@
+/*-
+ * #%L
+ * AEM Replication Metadata Validator
+ * %%
+ * Copyright (C) 2024 Cognizant Netcentric
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package biz.netcentric.filevault.validator;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Records the cost of evaluating the path pattern of each rule.
+ * While profiling, the path patterns of a {@link RuleSet.RuleGroup} are evaluated one after the other (instead of as one combined alternation)
+ * so that the time can be attributed to the individual rules (this does not change the outcome).
+ * <p>
+ * To detect patterns whose cost grows superlinearly with the path length (usually due to nested quantifiers leading to excessive backtracking),
+ * the evaluations are bucketed by the binary logarithm of the path length. The growth exponent is the slope between the shortest and longest bucket
+ * in a log-log scale.
+ * <p>
+ * Not thread-safe (just like the {@link RuleSet.RuleMatcher} it is used by).
+ */
+final class RuleProfiler {
+
+    /** buckets for path lengths 0-1, 2-3, 4-7, ..., 2048 and above */
+    private static final int BUCKETS = 12;
+    /** the minimum number of evaluations per bucket to be considered for the growth exponent */
+    private static final int MIN_EVALUATIONS_PER_BUCKET = 10;
+    /** average durations below this threshold are dominated by the timer resolution and the constant overhead */
+    private static final long MIN_AVERAGE_NANOS_FOR_GROWTH = 1000;
+    /** exponents above this threshold indicate superlinear cost (linear would be 1) */
+    static final double SUPERLINEAR_GROWTH_EXPONENT = 1.5;
+
+    private final @NotNull RuleSet ruleSet;
+    private final long[] evaluations;
+    private final long[] matches;
+    private final long[] totalNanos;
+    private final long[] maxNanos;
+    private final long[][] bucketEvaluations;
+    private final long[][] bucketNanos;
+    private final long[][] bucketLengths;
+
+    RuleProfiler(@NotNull RuleSet ruleSet) {
+        this.ruleSet = ruleSet;
+        int size = ruleSet.size();
+        evaluations = new long[size];
+        matches = new long[size];
+        totalNanos = new long[size];
+        maxNanos = new long[size];
+        bucketEvaluations = new long[size][BUCKETS];
+        bucketNanos = new long[size][BUCKETS];
+        bucketLengths = new long[size][BUCKETS];
+    }
+
+    /**
+     *
+     * @param ruleIndex the index of the rule within the rule set
+     * @param pathLength the length of the evaluated path
+     * @param nanos the duration of the evaluation
+     * @param isMatch whether the path pattern matched
+     */
+    void record(int ruleIndex, int pathLength, long nanos, boolean isMatch) {
+        evaluations[ruleIndex]++;
+        if (isMatch) {
+            matches[ruleIndex]++;
+        }
+        totalNanos[ruleIndex] += nanos;
+        if (nanos > maxNanos[ruleIndex]) {
+            maxNanos[ruleIndex] = nanos;
+        }
+        int bucket = Math.min(BUCKETS - 1, 31 - Integer.numberOfLeadingZeros(Math.max(1, pathLength)));
+        bucketEvaluations[ruleIndex][bucket]++;
+        bucketNanos[ruleIndex][bucket] += nanos;
+        bucketLengths[ruleIndex][bucket] += pathLength;
+    }
+
+    long getEvaluations(int ruleIndex) {
+        return evaluations[ruleIndex];
+    }
+
+    long getMatches(int ruleIndex) {
+        return matches[ruleIndex];
+    }
+
+    long getTotalNanos(int ruleIndex) {
+        return totalNanos[ruleIndex];
+    }
+
+    long getMaxNanos(int ruleIndex) {
+        return maxNanos[ruleIndex];
+    }
+
+    /**
+     *
+     * @param ruleIndex the index of the rule within the rule set
+     * @return the exponent with which the evaluation time grows with the path length or {@link Double#NaN} in case there are not enough samples
+     */
+    double getGrowthExponent(int ruleIndex) {
+        int shortestBucket = -1;
+        int longestBucket = -1;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            if (bucketEvaluations[ruleIndex][bucket] >= MIN_EVALUATIONS_PER_BUCKET) {
+                if (shortestBucket == -1) {
+                    shortestBucket = bucket;
+                }
+                longestBucket = bucket;
+            }
+        }
+        if (shortestBucket == longestBucket) {
+            return Double.NaN;
+        }
+        double shortLength = (double) bucketLengths[ruleIndex][shortestBucket] / bucketEvaluations[ruleIndex][shortestBucket];
+        double longLength = (double) bucketLengths[ruleIndex][longestBucket] / bucketEvaluations[ruleIndex][longestBucket];
+        double shortNanos = (double) bucketNanos[ruleIndex][shortestBucket] / bucketEvaluations[ruleIndex][shortestBucket];
+        double longNanos = (double) bucketNanos[ruleIndex][longestBucket] / bucketEvaluations[ruleIndex][longestBucket];
+        if (longNanos < MIN_AVERAGE_NANOS_FOR_GROWTH || shortNanos <= 0 || shortLength <= 0) {
+            return Double.NaN;
+        }
+        return Math.log(longNanos / shortNanos) / Math.log(longLength / shortLength);
+    }
+
+    /**
+     *
+     * @param ruleIndex the index of the rule within the rule set
+     * @return {@code true} in case the evaluation time of the given rule grows superlinearly with the path length
+     */
+    boolean isSuperlinear(int ruleIndex) {
+        return getGrowthExponent(ruleIndex) > SUPERLINEAR_GROWTH_EXPONENT;
+    }
+
+    /**
+     *
+     * @return a multi-line report of all evaluated rules ranked by their total evaluation time
+     */
+    @NotNull String toReport() {
+        List<Integer> ruleIndices = new ArrayList<>();
+        for (int i = 0; i < ruleSet.size(); i++) {
+            if (evaluations[i] > 0) {
+                ruleIndices.add(i);
+            }
+        }
+        ruleIndices.sort(Comparator.comparingLong((Integer ruleIndex) -> totalNanos[ruleIndex]).reversed());
+        StringBuilder report = new StringBuilder("Path pattern profile (ranked by total evaluation time):");
+        if (ruleIndices.isEmpty()) {
+            report.append(" no path pattern evaluated");
+        }
+        int rank = 1;
+        for (int ruleIndex : ruleIndices) {
+            TypeSettings rule = ruleSet.getRule(ruleIndex);
+            report.append(System.lineSeparator()).append(String.format(Locale.ROOT, "%3d. %s[%s]: %d evaluations, %d matches, total %.3f ms, max %.3f ms, average %d ns",
+                    rank++, rule.getPathPattern().pattern(), rule.getType(), evaluations[ruleIndex], matches[ruleIndex], totalNanos[ruleIndex] / 1e6,
+                    maxNanos[ruleIndex] / 1e6, totalNanos[ruleIndex] / evaluations[ruleIndex]));
+            if (isSuperlinear(ruleIndex)) {
+                report.append(String.format(Locale.ROOT, " - SUPERLINEAR: cost grows with path length^%.1f", getGrowthExponent(ruleIndex)));
+            }
+        }
+        return report.toString();
+    }
+}
@@ -0,0 +1,453 @@
+/*-
+ * #%L
+ * AEM Replication Metadata Validator
+ * %%
+ * Copyright (C) 2024 Cognizant Netcentric
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package biz.netcentric.filevault.validator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.apache.jackrabbit.vault.util.DocViewNode2;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.day.cq.commons.jcr.JcrConstants;
+
+/**
+ * The included and excluded {@link TypeSettings} compiled into a single rule set.
+ * <p>
+ * The rules are indexed by the type they refer to. Only nodes whose primary type (or {@code sling:resourceType} in case of primary type
+ * {@code nt:unstructured} or {@code cq:PageContent}) is used by at least one rule are evaluated against path patterns at all.
+ * The path patterns of all rules sharing a type are merged into one alternation (in the order includes first, then excludes) so that a single regex evaluation
+ * detects the first matching rule.
+ * The rule index returned by {@link #match(String, DocViewNode2)} therefore always refers to the first included rule matching both path and type,
+ * or (if there is none) to the first excluded rule matching both.
+ * <p>
+ * Before evaluating any regex the path is checked for the literals each rule's path pattern requires (with a {@link LiteralPrefilter}),
+ * so that the regex engine is only used for paths which contain all required literals of at least one rule.
+ * <p>
+ * The path patterns are hardened against excessive backtracking with {@link PathPatternGuard} and each regex evaluation is limited to a step budget.
+ * <p>
+ * Instances are immutable and thread-safe.
+ */
+final class RuleSet {
+
+    static final int NO_MATCH = -1;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RuleSet.class);
+
+    private static final Pattern BACK_REFERENCE_PATTERN = Pattern.compile("\\\\([1-9]|k<)");
+
+    private final @NotNull List<TypeSettings> rules;
+    /** the hardened path patterns actually evaluated (same index as {@link #rules}) */
+    private final @NotNull List<Pattern> pathPatterns;
+    /** the maximum number of steps of each regex evaluation (0 for unlimited) */
+    private final long stepBudget;
+    private final int includedRulesCount;
+    /** all rules applicable to nodes with a primary type (which is not {@code nt:unstructured} or {@code cq:PageContent}) */
+    private final @NotNull Map<String, RuleGroup> rulesByPrimaryType;
+    /** all rules applicable to nodes with primary type {@code nt:unstructured} and a specific resource type */
+    private final @NotNull Map<String, RuleGroup> unstructuredRulesByResourceType;
+    /** all rules applicable to nodes with primary type {@code cq:PageContent} and a specific resource type */
+    private final @NotNull Map<String, RuleGroup> pageContentRulesByResourceType;
+    /** all rule groups, the index in this list is the rule group's id */
+    private final @NotNull List<RuleGroup> ruleGroups;
+    /** finds the literals required by the rules' path patterns */
+    private final @NotNull LiteralPrefilter literalPrefilter;
+    /** the bit set of literals (from {@link #literalPrefilter}) required by each rule (same index as {@link #rules}) */
+    private final long[][] requiredLiterals;
+
+    RuleSet(@NotNull Collection<TypeSettings> includedTypesSettings, @NotNull Collection<TypeSettings> excludedTypesSettings) {
+        this(includedTypesSettings, excludedTypesSettings, PathPatternGuard.DEFAULT_STEP_BUDGET);
+    }
+
+    /**
+     * 
+     * @param includedTypesSettings the included rules
+     * @param excludedTypesSettings the excluded rules
+     * @param stepBudget the maximum number of steps of each regex evaluation (0 or negative for unlimited)
+     */
+    RuleSet(@NotNull Collection<TypeSettings> includedTypesSettings, @NotNull Collection<TypeSettings> excludedTypesSettings, long stepBudget) {
+        List<TypeSettings> allRules = new ArrayList<>(includedTypesSettings.size() + excludedTypesSettings.size());
+        allRules.addAll(includedTypesSettings);
+        allRules.addAll(excludedTypesSettings);
+        this.rules = Collections.unmodifiableList(allRules);
+        this.includedRulesCount = includedTypesSettings.size();
+        this.stepBudget = Math.max(0, stepBudget);
+        List<Pattern> hardenedPathPatterns = new ArrayList<>(rules.size());
+        for (TypeSettings rule : rules) {
+            hardenedPathPatterns.add(hardenPathPattern(rule.getPathPattern()));
+        }
+        this.pathPatterns = Collections.unmodifiableList(hardenedPathPatterns);
+        List<String> regexes = new ArrayList<>(rules.size());
+        for (TypeSettings rule : rules) {
+            regexes.add(rule.getPathPattern().pattern());
+        }
+        Map<String, Set<Integer>> requiredLiteralIds = new HashMap<>();
+        this.literalPrefilter = LiteralPrefilter.create(regexes, requiredLiteralIds);
+        this.requiredLiterals = new long[rules.size()][];
+        for (int i = 0; i < rules.size(); i++) {
+            requiredLiterals[i] = literalPrefilter.createBitSet(requiredLiteralIds.get(regexes.get(i)));
+        }
+        Set<String> types = new LinkedHashSet<>();
+        for (TypeSettings rule : rules) {
+            types.add(rule.getType());
+        }
+        List<RuleGroup> ruleGroupList = new ArrayList<>();
+        Map<String, RuleGroup> primaryTypeIndex = new HashMap<>();
+        Map<String, RuleGroup> unstructuredResourceTypeIndex = new HashMap<>();
+        Map<String, RuleGroup> pageContentResourceTypeIndex = new HashMap<>();
+        for (String type : types) {
+            primaryTypeIndex.put(type, createRuleGroup(ruleGroupList, type, null));
+            unstructuredResourceTypeIndex.put(type, createRuleGroup(ruleGroupList, type, JcrConstants.NT_UNSTRUCTURED));
+            pageContentResourceTypeIndex.put(type, createRuleGroup(ruleGroupList, type, NameConstants.NT_CQ_PAGE_CONTENT));
+        }
+        this.rulesByPrimaryType = Collections.unmodifiableMap(primaryTypeIndex);
+        this.unstructuredRulesByResourceType = Collections.unmodifiableMap(unstructuredResourceTypeIndex);
+        this.pageContentRulesByResourceType = Collections.unmodifiableMap(pageContentResourceTypeIndex);
+        this.ruleGroups = Collections.unmodifiableList(ruleGroupList);
+    }
+
+    private static @NotNull Pattern hardenPathPattern(@NotNull Pattern pathPattern) {
+        String regex = pathPattern.pattern();
+        String hardenedRegex = PathPatternGuard.harden(regex);
+        Pattern hardenedPathPattern = pathPattern;
+        if (!hardenedRegex.equals(regex)) {
+            try {
+                hardenedPathPattern = Pattern.compile(hardenedRegex, pathPattern.flags());
+                LOGGER.debug("Rewrote path pattern {} to {} to prevent backtracking", regex, hardenedRegex);
+            } catch (PatternSyntaxException e) {
+                LOGGER.debug("Could not compile rewritten path pattern {}, using original pattern {}", hardenedRegex, regex, e);
+            }
+        }
+        for (String risk : PathPatternGuard.findRisks(hardenedPathPattern.pattern())) {
+            LOGGER.warn("Path pattern {} {} which may lead to excessive backtracking on long paths, consider simplifying it", regex, risk);
+        }
+        return hardenedPathPattern;
+    }
+
+    private @NotNull RuleGroup createRuleGroup(@NotNull List<RuleGroup> ruleGroups, @NotNull String type, @Nullable String alternativeType) {
+        List<Integer> ruleIndices = new ArrayList<>();
+        for (int i = 0; i < rules.size(); i++) {
+            String ruleType = rules.get(i).getType();
+            if (ruleType.equals(type) || ruleType.equals(alternativeType)) {
+                ruleIndices.add(i);
+            }
+        }
+        RuleGroup ruleGroup = new RuleGroup(ruleGroups.size(), rules, pathPatterns, ruleIndices, requiredLiterals);
+        ruleGroups.add(ruleGroup);
+        return ruleGroup;
+    }
+
+    /**
+     *
+     * @param nodePath the node path
+     * @param node the node
+     * @return the index of the first rule matching both path and type of the given node or {@link #NO_MATCH}
+     */
+    int match(@NotNull String nodePath, @NotNull DocViewNode2 node) {
+        return createMatcher().match(nodePath, node);
+    }
+
+    /**
+     * 
+     * @return a new matcher for this rule set, must not be shared between threads
+     */
+    @NotNull RuleMatcher createMatcher() {
+        return new RuleMatcher(null);
+    }
+
+    /**
+     * 
+     * @param profiler the profiler recording the cost of each path pattern evaluation (may be {@code null})
+     * @return a new matcher for this rule set, must not be shared between threads
+     */
+    @NotNull RuleMatcher createMatcher(@Nullable RuleProfiler profiler) {
+        return new RuleMatcher(profiler);
+    }
+
+    /**
+     *
+     * @param node the node
+     * @return all rules whose type matches the given node or {@code null} if there is none
+     */
+    @Nullable RuleGroup getRuleGroup(@NotNull DocViewNode2 node) {
+        String primaryType = DocViewNodes.getPrimaryType(node);
+        if (primaryType == null) {
+            return null;
+        }
+        return getRuleGroup(primaryType, DocViewNodes.getFirstValue(node, NameConstants.SLING_RESOURCETYPE));
+    }
+
+    /**
+     *
+     * @param primaryType the node's primary type
+     * @param resourceType the node's resource type (may be {@code null})
+     * @return all rules whose type matches a node with the given types or {@code null} if there is none
+     */
+    @Nullable RuleGroup getRuleGroup(@NotNull String primaryType, @Nullable String resourceType) {
+        final Map<String, RuleGroup> rulesByResourceType;
+        if (primaryType.equals(JcrConstants.NT_UNSTRUCTURED)) {
+            rulesByResourceType = unstructuredRulesByResourceType;
+        } else if (primaryType.equals(NameConstants.NT_CQ_PAGE_CONTENT)) {
+            rulesByResourceType = pageContentRulesByResourceType;
+        } else {
+            return rulesByPrimaryType.get(primaryType);
+        }
+        RuleGroup ruleGroup = null;
+        if (resourceType != null) {
+            ruleGroup = rulesByResourceType.get(resourceType);
+        }
+        if (ruleGroup == null) {
+            ruleGroup = rulesByPrimaryType.get(primaryType);
+        }
+        return ruleGroup;
+    }
+
+    @NotNull TypeSettings getRule(int ruleIndex) {
+        return rules.get(ruleIndex);
+    }
+
+    boolean isExcluded(int ruleIndex) {
+        return ruleIndex >= includedRulesCount;
+    }
+
+    int size() {
+        return rules.size();
+    }
+
+    /**
+     * All rules sharing the same (node or resource) type with their path patterns merged into one alternation.
+     */
+    static final class RuleGroup {
+        private final int id;
+        private final @NotNull List<TypeSettings> rules;
+        private final @NotNull List<Pattern> pathPatterns;
+        /** the indices of the rules contained in this group (referring to the list of all rules) */
+        private final int[] ruleIndices;
+        /** the alternation of all path patterns, each wrapped in its own capturing group, {@code null} in case the patterns cannot be combined */
+        private final Pattern combinedPathPattern;
+        /** the index of the capturing group in {@link #combinedPathPattern} for each rule */
+        private final int[] ruleGroupIndices;
+        /** the bit set of required literals for each rule of this group (same index as {@link #ruleIndices}) */
+        private final long[][] requiredLiterals;
+
+        RuleGroup(int id, @NotNull List<TypeSettings> rules, @NotNull List<Pattern> pathPatterns, @NotNull List<Integer> ruleIndices,
+                long[][] requiredLiteralsByRuleIndex) {
+            this.id = id;
+            this.rules = rules;
+            this.pathPatterns = pathPatterns;
+            this.ruleIndices = ruleIndices.stream().mapToInt(Integer::intValue).toArray();
+            this.requiredLiterals = new long[this.ruleIndices.length][];
+            for (int i = 0; i < this.ruleIndices.length; i++) {
+                requiredLiterals[i] = requiredLiteralsByRuleIndex[this.ruleIndices[i]];
+            }
+            this.ruleGroupIndices = new int[this.ruleIndices.length];
+            this.combinedPathPattern = combinePathPatterns();
+        }
+
+        /**
+         * Merges the path patterns of all rules of this group into one alternation and populates {@link #ruleGroupIndices}.
+         * @return the combined pattern or {@code null} in case the patterns cannot be safely combined (because one of them contains back references)
+         */
+        private Pattern combinePathPatterns() {
+            StringBuilder combinedRegex = new StringBuilder();
+            int groupIndex = 1;
+            for (int i = 0; i < ruleIndices.length; i++) {
+                Pattern pathPattern = pathPatterns.get(ruleIndices[i]);
+                // back references would refer to the wrong group after renumbering
+                if (BACK_REFERENCE_PATTERN.matcher(pathPattern.pattern()).find()) {
+                    return null;
+                }
+                if (i > 0) {
+                    combinedRegex.append('|');
+                }
+                combinedRegex.append('(').append(pathPattern.pattern()).append(')');
+                ruleGroupIndices[i] = groupIndex;
+                // skip the wrapping group and all groups contained in the rule's own pattern
+                groupIndex += 1 + pathPattern.matcher("").groupCount();
+            }
+            try {
+                return Pattern.compile(combinedRegex.toString());
+            } catch (PatternSyntaxException e) {
+                // e.g. in case of comments mode swallowing the closing parenthesis
+                return null;
+            }
+        }
+
+        /**
+         *
+         * @param nodePath the node path
+         * @param ruleMatcher the rule matcher providing reusable regex matchers
+         * @return the index of the first rule of this group whose path pattern matches or {@link RuleSet#NO_MATCH}
+         */
+        int match(@NotNull String nodePath, @NotNull RuleMatcher ruleMatcher) {
+            try {
+                return matchWithinBudget(nodePath, ruleMatcher);
+            } catch (PathPatternGuard.StepBudgetExceededException e) {
+                List<String> regexes = new ArrayList<>(ruleIndices.length);
+                for (int ruleIndex : ruleIndices) {
+                    regexes.add(rules.get(ruleIndex).getPathPattern().pattern());
+                }
+                throw new PathPatternGuard.StepBudgetExceededException("Evaluating the path pattern(s) " + regexes + " against path " + nodePath
+                        + " exceeded the budget of " + e.getStepBudget() + " steps. This is usually caused by excessive backtracking (e.g. due to nested quantifiers), "
+                        + "simplify the path pattern(s) or increase the option \"pathPatternStepBudget\"", e.getStepBudget());
+            }
+        }
+
+        private int matchWithinBudget(@NotNull String nodePath, @NotNull RuleMatcher ruleMatcher) {
+            long[] foundLiterals = ruleMatcher.findLiterals(nodePath);
+            if (ruleMatcher.profiler != null) {
+                return matchProfiled(nodePath, foundLiterals, ruleMatcher, ruleMatcher.profiler);
+            }
+            if (combinedPathPattern != null) {
+                // rules lacking a required literal cannot participate in a match of the combined pattern
+                if (!hasCandidate(foundLiterals)) {
+                    return NO_MATCH;
+                }
+                Matcher matcher = ruleMatcher.getGroupMatcher(this, nodePath);
+                if (!matcher.matches()) {
+                    return NO_MATCH;
+                }
+                for (int i = 0; i < ruleGroupIndices.length; i++) {
+                    if (matcher.start(ruleGroupIndices[i]) != -1) {
+                        return ruleIndices[i];
+                    }
+                }
+                throw new IllegalStateException("Combined pattern matched without any rule group having participated");
+            }
+            for (int i = 0; i < ruleIndices.length; i++) {
+                if (LiteralPrefilter.containsAll(foundLiterals, requiredLiterals[i]) && ruleMatcher.getRuleMatcher(ruleIndices[i], nodePath).matches()) {
+                    return ruleIndices[i];
+                }
+            }
+            return NO_MATCH;
+        }
+
+        /**
+         * Evaluates the path patterns one after the other (leading to the same result as the combined pattern) to measure the cost of each one.
+         */
+        private int matchProfiled(@NotNull String nodePath, long[] foundLiterals, @NotNull RuleMatcher ruleMatcher, @NotNull RuleProfiler profiler) {
+            for (int i = 0; i < ruleIndices.length; i++) {
+                if (LiteralPrefilter.containsAll(foundLiterals, requiredLiterals[i])) {
+                    Matcher matcher = ruleMatcher.getRuleMatcher(ruleIndices[i], nodePath);
+                    long start = System.nanoTime();
+                    boolean isMatch = matcher.matches();
+                    profiler.record(ruleIndices[i], nodePath.length(), System.nanoTime() - start, isMatch);
+                    if (isMatch) {
+                        return ruleIndices[i];
+                    }
+                }
+            }
+            return NO_MATCH;
+        }
+
+        private boolean hasCandidate(long[] foundLiterals) {
+            for (long[] ruleRequiredLiterals : requiredLiterals) {
+                if (LiteralPrefilter.containsAll(foundLiterals, ruleRequiredLiterals)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Evaluates the rule set for nodes reusing the same regex matchers for all nodes (to prevent allocations).
+     * Not thread-safe.
+     */
+    final class RuleMatcher {
+        private final Matcher[] groupMatchers = new Matcher[ruleGroups.size()];
+        private final Matcher[] ruleMatchers = new Matcher[rules.size()];
+        private final long[] foundLiterals = literalPrefilter.createBitSet();
+        /** the path wrapper counting the steps of the regex engine, {@code null} in case of an unlimited budget */
+        private final @Nullable PathPatternGuard.BudgetedPath budgetedPath = stepBudget > 0 ? new PathPatternGuard.BudgetedPath(stepBudget) : null;
+        /** the number of evaluated regular expressions (for metrics) */
+        private long regexEvaluations;
+        private final @Nullable RuleProfiler profiler;
+
+        private RuleMatcher(@Nullable RuleProfiler profiler) {
+            this.profiler = profiler;
+        }
+
+        long getRegexEvaluations() {
+            return regexEvaluations;
+        }
+
+        /**
+         *
+         * @param nodePath the node path
+         * @return the bit set of all literals found in the given path (reused for every path)
+         */
+        long[] findLiterals(@NotNull String nodePath) {
+            literalPrefilter.find(nodePath, foundLiterals);
+            return foundLiterals;
+        }
+
+        /**
+         *
+         * @param nodePath the node path
+         * @param node the node
+         * @return the index of the first rule matching both path and type of the given node or {@link #NO_MATCH}
+         */
+        int match(@NotNull String nodePath, @NotNull DocViewNode2 node) {
+            RuleGroup ruleGroup = getRuleGroup(node);
+            if (ruleGroup == null) {
+                return NO_MATCH;
+            }
+            return ruleGroup.match(nodePath, this);
+        }
+
+        @NotNull Matcher getGroupMatcher(@NotNull RuleGroup ruleGroup, @NotNull String nodePath) {
+            regexEvaluations++;
+            CharSequence input = getInput(nodePath);
+            Matcher matcher = groupMatchers[ruleGroup.id];
+            if (matcher == null) {
+                matcher = ruleGroup.combinedPathPattern.matcher(input);
+                groupMatchers[ruleGroup.id] = matcher;
+                return matcher;
+            }
+            return matcher.reset(input);
+        }
+
+        @NotNull Matcher getRuleMatcher(int ruleIndex, @NotNull String nodePath) {
+            regexEvaluations++;
+            CharSequence input = getInput(nodePath);
+            Matcher matcher = ruleMatchers[ruleIndex];
+            if (matcher == null) {
+                matcher = pathPatterns.get(ruleIndex).matcher(input);
+                ruleMatchers[ruleIndex] = matcher;
+                return matcher;
+            }
+            return matcher.reset(input);
+        }
+
+        /**
+         * 
+         * @param nodePath the node path
+         * @return the input for the next regex evaluation (with the full step budget)
+         */
+        private @NotNull CharSequence getInput(@NotNull String nodePath) {
+            return budgetedPath != null ? budgetedPath.reset(nodePath) : nodePath;
+        }
+    }
+}
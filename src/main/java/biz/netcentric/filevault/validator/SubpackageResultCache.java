@@ -0,0 +1,355 @@
+/*-
+ * #%L
+ * AEM Replication Metadata Validator
+ * %%
+ * Copyright (C) 2024 Cognizant Netcentric
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package biz.netcentric.filevault.validator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.jackrabbit.vault.validation.spi.NodeContext;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessage;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessageSeverity;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The violations of all sub packages validated within the JVM, keyed by a fingerprint of the sub package and the validator configuration.
+ * Used by the {@link PackageScanner} to replay the violations of a sub package which is embedded in multiple container packages
+ * (with the same content) instead of validating it again. The filevault-package-maven-plugin does not expose sub packages as file, therefore their
+ * content cannot be hashed and they are always validated.
+ * <p>
+ * Optionally the results are also appended to a file, so that they are reused across builds. That file is discarded once it contains more than
+ * {@value #MAX_PERSISTED_RESULTS} results or has been written by another version of this validator.
+ * <p>
+ * Instances are thread-safe.
+ */
+final class SubpackageResultCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SubpackageResultCache.class);
+
+    /** to be increased with every incompatible change of the format */
+    private static final int FORMAT_VERSION = 2;
+    private static final int MAX_PERSISTED_RESULTS = 10_000;
+    /** longer strings cannot be serialized with {@link DataOutputStream#writeUTF(String)}, sub packages leading to those are not cached */
+    private static final int MAX_STRING_LENGTH = 16 * 1024;
+    private static final @NotNull SubpackageResultCache IN_MEMORY = new SubpackageResultCache(null, Collections.emptyMap());
+    /** the caches backed by a file, keyed by the file's absolute path */
+    private static final @NotNull ConcurrentMap<Path, SubpackageResultCache> PERSISTENT = new ConcurrentHashMap<>();
+
+    private final @Nullable Path cacheFile;
+    private final @NotNull ConcurrentMap<String, List<CachedMessage>> results;
+
+    private SubpackageResultCache(@Nullable Path cacheFile, @NotNull Map<String, List<CachedMessage>> loadedResults) {
+        this.cacheFile = cacheFile;
+        this.results = new ConcurrentHashMap<>(loadedResults);
+    }
+
+    /**
+     *
+     * @param cacheFile the file in which the results are persisted (may be {@code null})
+     * @return the cache shared by all validators of this JVM using the same file (or no file)
+     */
+    static @NotNull SubpackageResultCache get(@Nullable Path cacheFile) {
+        if (cacheFile == null) {
+            return IN_MEMORY;
+        }
+        return PERSISTENT.computeIfAbsent(cacheFile.toAbsolutePath().normalize(), SubpackageResultCache::load);
+    }
+
+    /**
+     * Creates the fingerprint of a sub package from its content hash.
+     * @param packageFile the sub package file (extracted from its container package)
+     * @param configurationFingerprint the fingerprint of the validator configuration (see {@link ValidationCache#createFingerprint(Map, ValidationMessageSeverity)})
+     * @return the fingerprint
+     * @throws IOException in case the file cannot be read
+     */
+    static @NotNull String createFingerprint(@NotNull Path packageFile, @NotNull String configurationFingerprint) throws IOException {
+        String fingerprint = FORMAT_VERSION + "\n" + configurationFingerprint + "\n" + ValidationCache.toHex(ValidationCache.hash(packageFile));
+        return ValidationCache.toHex(ValidationCache.createMessageDigest().digest(fingerprint.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    static @NotNull SubpackageResultCache load(@NotNull Path cacheFile) {
+        if (!Files.isRegularFile(cacheFile)) {
+            return new SubpackageResultCache(cacheFile, Collections.emptyMap());
+        }
+        Map<String, List<CachedMessage>> results = new ConcurrentHashMap<>();
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(cacheFile)))) {
+            if (input.readInt() != FORMAT_VERSION) {
+                throw new IOException("Unsupported format");
+            }
+            while (true) {
+                // only the end of the file in between two results is expected (incomplete results are treated as corruption)
+                input.mark(1);
+                if (input.read() == -1) {
+                    break;
+                }
+                input.reset();
+                String fingerprint = input.readUTF();
+                int messageCount = input.readInt();
+                List<CachedMessage> messages = new ArrayList<>(messageCount);
+                for (int i = 0; i < messageCount; i++) {
+                    messages.add(CachedMessage.read(input));
+                }
+                results.put(fingerprint, messages);
+            }
+            if (results.size() > MAX_PERSISTED_RESULTS) {
+                throw new IOException("Too many results");
+            }
+            LOGGER.debug("Loaded {} sub package results from {}", results.size(), cacheFile);
+            return new SubpackageResultCache(cacheFile, results);
+        } catch (IOException|RuntimeException e) {
+            LOGGER.info("Discarding sub package result cache {}: {}", cacheFile, e.getMessage());
+            try {
+                Files.delete(cacheFile);
+            } catch (IOException deleteException) {
+                LOGGER.warn("Could not delete sub package result cache {}: {}", cacheFile, deleteException.getMessage());
+            }
+            return new SubpackageResultCache(cacheFile, Collections.emptyMap());
+        }
+    }
+
+    /**
+     *
+     * @param fingerprint the fingerprint of the sub package
+     * @return the violations found in the sub package (to be replayed via {@link AemReplicationMetadataValidator#replay(List)})
+     * or {@code null} in case it has not been validated yet
+     */
+    @Nullable List<CachedMessage> get(@NotNull String fingerprint) {
+        List<CachedMessage> messages = results.get(fingerprint);
+        return messages != null ? Collections.unmodifiableList(messages) : null;
+    }
+
+    /**
+     * Stores the violations of a sub package which was not cached yet.
+     * @param fingerprint the fingerprint of the sub package
+     * @param messages the violations found in the sub package (as returned by {@link #record(List, Collection, NodeContext, int)})
+     */
+    void put(@NotNull String fingerprint, @NotNull List<CachedMessage> messages) {
+        if (results.putIfAbsent(fingerprint, messages) != null || cacheFile == null) {
+            return;
+        }
+        for (CachedMessage message : messages) {
+            if (!message.isSerializable()) {
+                return;
+            }
+        }
+        // the instance is shared by all validators using the same file
+        synchronized (this) {
+            try {
+                boolean isNew = !Files.isRegularFile(cacheFile);
+                Path parent = cacheFile.getParent();
+                if (parent != null) {
+                    Files.createDirectories(parent);
+                }
+                try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(cacheFile, StandardOpenOption.CREATE,
+                        StandardOpenOption.APPEND)))) {
+                    if (isNew) {
+                        output.writeInt(FORMAT_VERSION);
+                    }
+                    output.writeUTF(fingerprint);
+                    output.writeInt(messages.size());
+                    for (CachedMessage message : messages) {
+                        message.write(output);
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.warn("Could not write sub package result cache {}: {}", cacheFile, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Adds the given messages to the list of recorded messages. Only the structured data of {@link Violation}s is recorded, their messages are
+     * rendered once they are replayed.
+     * @param recordedMessages the messages recorded so far
+     * @param messages the messages to add (may be {@code null})
+     * @param nodeContext the context of the node the messages have been emitted for
+     * @param ruleIndex the index of the rule which made the node relevant or {@link RuleSet#NO_MATCH}
+     */
+    static void record(@NotNull List<CachedMessage> recordedMessages, @Nullable Collection<ValidationMessage> messages, @NotNull NodeContext nodeContext,
+            int ruleIndex) {
+        if (messages == null) {
+            return;
+        }
+        for (ValidationMessage message : messages) {
+            recordedMessages.add(new CachedMessage(message, nodeContext, ruleIndex));
+        }
+    }
+
+    /**
+     * A violation together with the context it has been emitted for. Serialized in the same structure in which it is kept in memory.
+     */
+    static final class CachedMessage {
+        /** the code of a plain {@link ValidationMessage} (not being a {@link Violation}) */
+        private static final int NO_CODE = -1;
+
+        private final @NotNull ValidationMessageSeverity severity;
+        /** the ordinal of the {@link Violation.Code} or {@link #NO_CODE} */
+        private final int code;
+        /** the message of a plain {@link ValidationMessage}, empty for violations */
+        private final @NotNull String message;
+        /** the node path carried by the message itself, empty in case it has none */
+        private final @NotNull String messageNodePath;
+        /** the name of the agent of the violation, empty for plain {@link ValidationMessage}s */
+        private final @NotNull String agentName;
+        private final int propertyDetail;
+        private final long replicationDate;
+        private final long comparisonDate;
+        /** empty in case the violation has no comparison date label */
+        private final @NotNull String comparisonDateLabel;
+        private final @NotNull String nodePath;
+        private final @NotNull String filePath;
+        private final @NotNull String basePath;
+        /** 0 in case the position is unknown */
+        private final int line;
+        private final int column;
+        private final int ruleIndex;
+
+        CachedMessage(@NotNull ValidationMessage message, @NotNull NodeContext nodeContext, int ruleIndex) {
+            this.severity = message.getSeverity();
+            if (message instanceof Violation) {
+                Violation violation = (Violation) message;
+                this.code = violation.getCode().ordinal();
+                this.message = "";
+                this.agentName = violation.getAgentPropertyNames().getAgentName();
+                this.propertyDetail = violation.getPropertyDetail();
+                this.replicationDate = violation.getReplicationDate();
+                this.comparisonDate = violation.getComparisonDate();
+                this.comparisonDateLabel = violation.getComparisonDateLabel() != null ? violation.getComparisonDateLabel() : "";
+            } else {
+                this.code = NO_CODE;
+                this.message = message.getMessage();
+                this.agentName = "";
+                this.propertyDetail = 0;
+                this.replicationDate = 0L;
+                this.comparisonDate = 0L;
+                this.comparisonDateLabel = "";
+            }
+            this.messageNodePath = message.getNodePath() != null ? message.getNodePath() : "";
+            this.nodePath = nodeContext.getNodePath();
+            this.filePath = nodeContext.getFilePath().toString();
+            this.basePath = nodeContext.getBasePath().toString();
+            if (nodeContext instanceof PositionedNodeContext) {
+                this.line = ((PositionedNodeContext) nodeContext).getLine();
+                this.column = ((PositionedNodeContext) nodeContext).getColumn();
+            } else {
+                this.line = 0;
+                this.column = 0;
+            }
+            this.ruleIndex = ruleIndex;
+        }
+
+        private CachedMessage(@NotNull DataInputStream input) throws IOException {
+            this.severity = ValidationMessageSeverity.values()[input.readUnsignedByte()];
+            this.code = input.readInt();
+            if (code != NO_CODE && (code < 0 || code >= Violation.Code.values().length)) {
+                throw new IOException("Invalid code " + code);
+            }
+            this.message = input.readUTF();
+            this.messageNodePath = input.readUTF();
+            this.agentName = input.readUTF();
+            this.propertyDetail = input.readInt();
+            this.replicationDate = input.readLong();
+            this.comparisonDate = input.readLong();
+            this.comparisonDateLabel = input.readUTF();
+            this.nodePath = input.readUTF();
+            this.filePath = input.readUTF();
+            this.basePath = input.readUTF();
+            this.line = input.readInt();
+            this.column = input.readInt();
+            this.ruleIndex = input.readInt();
+        }
+
+        private boolean isSerializable() {
+            return message.length() <= MAX_STRING_LENGTH && messageNodePath.length() <= MAX_STRING_LENGTH && agentName.length() <= MAX_STRING_LENGTH
+                    && comparisonDateLabel.length() <= MAX_STRING_LENGTH && nodePath.length() <= MAX_STRING_LENGTH
+                    && filePath.length() <= MAX_STRING_LENGTH && basePath.length() <= MAX_STRING_LENGTH;
+        }
+
+        /**
+         * Recreates the message. Violations are recreated with their structured data and still rendered lazily.
+         * In contrast to the original message it carries the position of the node context, as it is no longer emitted while visiting that node.
+         * @param agentPropertyNames the agents of the validator configuration
+         * @return the message
+         */
+        @NotNull ValidationMessage toValidationMessage(@NotNull List<AgentPropertyNames> agentPropertyNames) {
+            Path path = Paths.get(filePath);
+            Path base = Paths.get(basePath);
+            if (code == NO_CODE) {
+                return new ValidationMessage(severity, message, messageNodePath.isEmpty() ? nodePath : messageNodePath, path, base, line, column, null);
+            }
+            for (AgentPropertyNames agent : agentPropertyNames) {
+                if (agent.getAgentName().equals(agentName)) {
+                    return new Violation(severity, Violation.Code.values()[code], messageNodePath, agent, propertyDetail, replicationDate, comparisonDate,
+                            comparisonDateLabel.isEmpty() ? null : comparisonDateLabel, path, base, line, column);
+                }
+            }
+            // the configuration (including the agents) is part of the fingerprint
+            throw new IllegalStateException("Agent " + agentName + " is not configured");
+        }
+
+        /**
+         *
+         * @return the context of the node the message has been emitted for
+         */
+        @NotNull NodeContext toNodeContext() {
+            return new PositionedNodeContext(nodePath, Paths.get(filePath), Paths.get(basePath), line, column);
+        }
+
+        /**
+         *
+         * @return the index of the rule which made the node relevant or {@link RuleSet#NO_MATCH}
+         */
+        int getRuleIndex() {
+            return ruleIndex;
+        }
+
+        private static @NotNull CachedMessage read(@NotNull DataInputStream input) throws IOException {
+            return new CachedMessage(input);
+        }
+
+        private void write(@NotNull DataOutputStream output) throws IOException {
+            output.writeByte(severity.ordinal());
+            output.writeInt(code);
+            output.writeUTF(message);
+            output.writeUTF(messageNodePath);
+            output.writeUTF(agentName);
+            output.writeInt(propertyDetail);
+            output.writeLong(replicationDate);
+            output.writeLong(comparisonDate);
+            output.writeUTF(comparisonDateLabel);
+            output.writeUTF(nodePath);
+            output.writeUTF(filePath);
+            output.writeUTF(basePath);
+            output.writeInt(line);
+            output.writeInt(column);
+            output.writeInt(ruleIndex);
+        }
+    }
+}
@@ -22,28 +22,34 @@ import org.jetbrains.annotations.NotNull;
 import com.day.cq.commons.jcr.JcrConstants;
 
 /**
- * Settings for a particular node type which requires replicaton metadata
+ * Settings for a particular node type which requires replicaton metadata.
+ * Immutable.
  */
-public class TypeSettings {
+public final class TypeSettings {
 
     private final @NotNull Pattern pathPattern;
     private final @NotNull String type; // either primary type or resource type
-    private @NotNull DateProperty comparisonDateProperty;
+    private final @NotNull DateProperty comparisonDateProperty;
 
     public TypeSettings(@NotNull String pathPattern, @NotNull String type) {
+        this(pathPattern, type, DateProperty.MODIFIED);
+    }
+
+    public TypeSettings(@NotNull String pathPattern, @NotNull String type, @NotNull DateProperty comparisonDateProperty) {
         this.pathPattern = Pattern.compile(pathPattern);
         this.type = type;
-        this.comparisonDateProperty = DateProperty.MODIFIED;
+        this.comparisonDateProperty = comparisonDateProperty;
     }
 
-    public void setComparisonDatePropery(@NotNull DateProperty dateProperty) {
-        this.comparisonDateProperty = dateProperty;
+    public boolean matches(@NotNull String actualNodePath, @NotNull DocViewNode2 node) {
+        return matchesPath(actualNodePath) && matchesType(node);
     }
 
-    public boolean matches(@NotNull String actualNodePath, @NotNull DocViewNode2 node) {
-        if (!pathPattern.matcher(actualNodePath).matches()) {
-            return false;
-        }
+    boolean matchesPath(@NotNull String actualNodePath) {
+        return pathPattern.matcher(actualNodePath).matches();
+    }
+
+    boolean matchesType(@NotNull DocViewNode2 node) {
         String actualPrimaryType = node.getPrimaryType().orElse("");
         boolean isNodeRelevant = actualPrimaryType.equals(type);
         // if node type == nt:unstructured or cq:PageContent, evaluate sling:resourceType in addition
@@ -77,4 +83,12 @@ public class TypeSettings {
     public DateProperty getComparisonDate() {
         return comparisonDateProperty;
     }
+
+    @NotNull String getType() {
+        return type;
+    }
+
+    @NotNull Pattern getPathPattern() {
+        return pathPattern;
+    }
 }
@@ -0,0 +1,383 @@
+/*-
+ * #%L
+ * AEM Replication Metadata Validator
+ * %%
+ * Copyright (C) 2024 Cognizant Netcentric
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package biz.netcentric.filevault.validator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.jackrabbit.vault.validation.ValidationViolation;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessageSeverity;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistent cache of the violations found in DocView XML files, keyed by the file's content hash.
+ * Used by the {@link JcrRootScanner} to replay the results of unchanged files instead of parsing and validating them again.
+ * <p>
+ * The whole cache is discarded in case the fingerprint of the validator configuration (all options, the severity and the version of this validator) differs
+ * from the one the cache was written with.
+ * Similar to Git's index the content hash is only calculated in case the size or modification time of a file changed since it was cached
+ * (or the modification time is too close to the time the cache has been written to reliably detect modifications).
+ * <p>
+ * Instances are thread-safe.
+ */
+final class ValidationCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ValidationCache.class);
+
+    /** to be increased with every incompatible change of the format */
+    private static final int FORMAT_VERSION = 1;
+    private static final String HASH_ALGORITHM = "SHA-256";
+    /** modifications within this time frame before writing the cache might not be reflected in the modification time due to its granularity */
+    private static final long MODIFICATION_TIME_GRANULARITY_MILLIS = 2000;
+    /** longer messages cannot be serialized with {@link DataOutputStream#writeUTF(String)}, files leading to those are not cached */
+    private static final int MAX_MESSAGE_LENGTH = 16 * 1024;
+    /** the version of this validator (filtered into the resource during the build) */
+    static final @NotNull String VALIDATOR_VERSION = loadValidatorVersion();
+
+    private final @NotNull Path cacheFile;
+    private final @NotNull String fingerprint;
+    /** the time when the loaded entries were written */
+    private final long writtenAt;
+    private final @NotNull Map<String, Entry> previousEntries;
+    private final @NotNull Map<String, Entry> currentEntries = new ConcurrentHashMap<>();
+    private final @NotNull LongAdder hits = new LongAdder();
+    private final @NotNull LongAdder misses = new LongAdder();
+
+    private ValidationCache(@NotNull Path cacheFile, @NotNull String fingerprint, long writtenAt, @NotNull Map<String, Entry> previousEntries) {
+        this.cacheFile = cacheFile;
+        this.fingerprint = fingerprint;
+        this.writtenAt = writtenAt;
+        this.previousEntries = previousEntries;
+    }
+
+    private static @NotNull String loadValidatorVersion() {
+        Properties properties = new Properties();
+        try (InputStream input = ValidationCache.class.getResourceAsStream("validator.properties")) {
+            if (input == null) {
+                throw new IllegalStateException("Resource validator.properties not found");
+            }
+            properties.load(input);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not load validator.properties", e);
+        }
+        String version = properties.getProperty("version");
+        if (version == null || version.startsWith("${")) {
+            throw new IllegalStateException("Resource validator.properties does not contain a filtered version but " + version);
+        }
+        return version;
+    }
+
+    /**
+     *
+     * @param options the validator options
+     * @param severity the severity of all violations
+     * @return the fingerprint of the given configuration
+     */
+    static @NotNull String createFingerprint(@NotNull Map<String, String> options, @NotNull ValidationMessageSeverity severity) {
+        return createFingerprint(options, severity, VALIDATOR_VERSION);
+    }
+
+    /**
+     *
+     * @param options the validator options
+     * @param severity the severity of all violations
+     * @param validatorVersion the version of this validator
+     * @return the fingerprint of the given configuration
+     */
+    static @NotNull String createFingerprint(@NotNull Map<String, String> options, @NotNull ValidationMessageSeverity severity, @NotNull String validatorVersion) {
+        StringBuilder fingerprint = new StringBuilder();
+        fingerprint.append(FORMAT_VERSION).append('\n');
+        fingerprint.append(validatorVersion).append('\n');
+        fingerprint.append(severity).append('\n');
+        for (Map.Entry<String, String> option : new TreeMap<>(options).entrySet()) {
+            fingerprint.append(option.getKey()).append('=').append(option.getValue()).append('\n');
+        }
+        return toHex(createMessageDigest().digest(fingerprint.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Loads the cache from the given file. Missing, outdated or corrupt cache files lead to an empty cache.
+     * @param cacheFile the cache file
+     * @param fingerprint the fingerprint of the current validator configuration
+     * @return the cache
+     */
+    static @NotNull ValidationCache load(@NotNull Path cacheFile, @NotNull String fingerprint) {
+        if (!Files.isRegularFile(cacheFile)) {
+            return new ValidationCache(cacheFile, fingerprint, 0, Collections.emptyMap());
+        }
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(cacheFile)))) {
+            if (input.readInt() != FORMAT_VERSION || !fingerprint.equals(input.readUTF())) {
+                LOGGER.info("Discarding validation cache {} as the configuration has changed", cacheFile);
+                return new ValidationCache(cacheFile, fingerprint, 0, Collections.emptyMap());
+            }
+            long writtenAt = input.readLong();
+            int entryCount = input.readInt();
+            Map<String, Entry> entries = new HashMap<>(entryCount * 2);
+            for (int i = 0; i < entryCount; i++) {
+                String key = input.readUTF();
+                entries.put(key, Entry.read(input));
+            }
+            LOGGER.debug("Loaded {} entries from validation cache {}", entryCount, cacheFile);
+            return new ValidationCache(cacheFile, fingerprint, writtenAt, entries);
+        } catch (IOException|RuntimeException e) {
+            LOGGER.warn("Discarding corrupt validation cache {}: {}", cacheFile, e.getMessage());
+            return new ValidationCache(cacheFile, fingerprint, 0, Collections.emptyMap());
+        }
+    }
+
+    /**
+     * Writes all entries which have been looked up since loading the cache.
+     * Entries of files below the given directory which have not been looked up (i.e. files which have been removed or are no longer validated) are dropped.
+     * @param directory the directory which has been validated
+     * @throws IOException in case the cache file cannot be written
+     */
+    void save(@NotNull Path directory) throws IOException {
+        String directoryKeyPrefix = getKey(directory) + directory.getFileSystem().getSeparator();
+        Map<String, Entry> entries = new TreeMap<>(currentEntries);
+        for (Map.Entry<String, Entry> previousEntry : previousEntries.entrySet()) {
+            if (!previousEntry.getKey().startsWith(directoryKeyPrefix)) {
+                entries.putIfAbsent(previousEntry.getKey(), previousEntry.getValue());
+            }
+        }
+        Path parent = cacheFile.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path temporaryFile = Files.createTempFile(parent, cacheFile.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile)))) {
+                output.writeInt(FORMAT_VERSION);
+                output.writeUTF(fingerprint);
+                output.writeLong(System.currentTimeMillis());
+                output.writeInt(entries.size());
+                for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                    output.writeUTF(entry.getKey());
+                    entry.getValue().write(output);
+                }
+            }
+            Files.move(temporaryFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+        LOGGER.debug("Saved {} entries to validation cache {}", entries.size(), cacheFile);
+    }
+
+    /**
+     * Looks up the cached violations of the given file.
+     * @param file the file
+     * @return the lookup result, either containing the cached violations or the file state to be used with {@link #put(Lookup, List)}
+     * @throws IOException in case the file cannot be read
+     */
+    @NotNull Lookup lookup(@NotNull Path file) throws IOException {
+        String key = getKey(file);
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        long size = attributes.size();
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        Entry entry = previousEntries.get(key);
+        if (entry != null && entry.size == size && entry.lastModified == lastModified && lastModified + MODIFICATION_TIME_GRANULARITY_MILLIS < writtenAt) {
+            return hit(key, entry);
+        }
+        byte[] hash = hash(file);
+        if (entry != null && Arrays.equals(entry.hash, hash)) {
+            return hit(key, new Entry(size, lastModified, hash, entry.violations));
+        }
+        misses.increment();
+        return new Lookup(key, new Entry(size, lastModified, hash, Collections.emptyList()), false);
+    }
+
+    private static @NotNull String getKey(@NotNull Path path) {
+        return path.toAbsolutePath().normalize().toString();
+    }
+
+    private @NotNull Lookup hit(@NotNull String key, @NotNull Entry entry) {
+        hits.increment();
+        currentEntries.put(key, entry);
+        return new Lookup(key, entry, true);
+    }
+
+    /**
+     * Stores the violations found in a file which was not cached yet.
+     * @param lookup the result of {@link #lookup(Path)} for the file
+     * @param violations the violations found in the file
+     */
+    void put(@NotNull Lookup lookup, @NotNull List<ValidationViolation> violations) {
+        List<CachedViolation> cachedViolations = new ArrayList<>(violations.size());
+        for (ValidationViolation violation : violations) {
+            if (violation.getMessage().length() > MAX_MESSAGE_LENGTH || (violation.getNodePath() != null && violation.getNodePath().length() > MAX_MESSAGE_LENGTH)) {
+                return;
+            }
+            cachedViolations.add(new CachedViolation(violation.getSeverity(), violation.getMessage(), violation.getNodePath(), violation.getLine(), violation.getColumn()));
+        }
+        currentEntries.put(lookup.key, new Entry(lookup.entry.size, lookup.entry.lastModified, lookup.entry.hash, cachedViolations));
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+
+    static @NotNull byte[] hash(@NotNull Path file) throws IOException {
+        MessageDigest digest = createMessageDigest();
+        byte[] buffer = new byte[8192];
+        try (InputStream input = Files.newInputStream(file)) {
+            int length;
+            while ((length = input.read(buffer)) != -1) {
+                digest.update(buffer, 0, length);
+            }
+        }
+        return digest.digest();
+    }
+
+    static @NotNull MessageDigest createMessageDigest() {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Every Java platform must support " + HASH_ALGORITHM, e);
+        }
+    }
+
+    static @NotNull String toHex(@NotNull byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * The result of {@link ValidationCache#lookup(Path)}.
+     */
+    static final class Lookup {
+        private final @NotNull String key;
+        private final @NotNull Entry entry;
+        private final boolean isHit;
+
+        Lookup(@NotNull String key, @NotNull Entry entry, boolean isHit) {
+            this.key = key;
+            this.entry = entry;
+            this.isHit = isHit;
+        }
+
+        boolean isHit() {
+            return isHit;
+        }
+
+        /**
+         *
+         * @param validatorId the validator id
+         * @param filePath the file path relative to the base path
+         * @param basePath the base path
+         * @return the cached violations (only to be called for hits)
+         */
+        @NotNull List<ValidationViolation> getViolations(@NotNull String validatorId, @NotNull Path filePath, @NotNull Path basePath) {
+            List<ValidationViolation> violations = new ArrayList<>(entry.violations.size());
+            for (CachedViolation violation : entry.violations) {
+                violations.add(new ValidationViolation(validatorId, violation.severity, violation.message, filePath, basePath, violation.nodePath,
+                        violation.line, violation.column, null));
+            }
+            return violations;
+        }
+    }
+
+    private static final class Entry {
+        private final long size;
+        private final long lastModified;
+        private final @NotNull byte[] hash;
+        private final @NotNull List<CachedViolation> violations;
+
+        Entry(long size, long lastModified, @NotNull byte[] hash, @NotNull List<CachedViolation> violations) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+            this.violations = violations;
+        }
+
+        static @NotNull Entry read(@NotNull DataInputStream input) throws IOException {
+            long size = input.readLong();
+            long lastModified = input.readLong();
+            byte[] hash = new byte[input.readUnsignedByte()];
+            input.readFully(hash);
+            int violationCount = input.readInt();
+            List<CachedViolation> violations = new ArrayList<>(violationCount);
+            for (int i = 0; i < violationCount; i++) {
+                ValidationMessageSeverity severity = ValidationMessageSeverity.values()[input.readUnsignedByte()];
+                String message = input.readUTF();
+                String nodePath = input.readBoolean() ? input.readUTF() : null;
+                violations.add(new CachedViolation(severity, message, nodePath, input.readInt(), input.readInt()));
+            }
+            return new Entry(size, lastModified, hash, violations);
+        }
+
+        void write(@NotNull DataOutputStream output) throws IOException {
+            output.writeLong(size);
+            output.writeLong(lastModified);
+            output.writeByte(hash.length);
+            output.write(hash);
+            output.writeInt(violations.size());
+            for (CachedViolation violation : violations) {
+                output.writeByte(violation.severity.ordinal());
+                output.writeUTF(violation.message);
+                output.writeBoolean(violation.nodePath != null);
+                if (violation.nodePath != null) {
+                    output.writeUTF(violation.nodePath);
+                }
+                output.writeInt(violation.line);
+                output.writeInt(violation.column);
+            }
+        }
+    }
+
+    private static final class CachedViolation {
+        private final @NotNull ValidationMessageSeverity severity;
+        private final @NotNull String message;
+        private final @Nullable String nodePath;
+        private final int line;
+        private final int column;
+
+        CachedViolation(@NotNull ValidationMessageSeverity severity, @NotNull String message, @Nullable String nodePath, int line, int column) {
+            this.severity = severity;
+            this.message = message;
+            this.nodePath = nodePath;
+            this.line = line;
+            this.column = column;
+        }
+    }
+}
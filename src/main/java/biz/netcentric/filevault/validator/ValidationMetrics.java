@@ -0,0 +1,247 @@
+/*-
+ * #%L
+ * AEM Replication Metadata Validator
+ * %%
+ * Copyright (C) 2024 Cognizant Netcentric
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package biz.netcentric.filevault.validator;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessage;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Counters collected by a single {@link AemReplicationMetadataValidator} run.
+ * Only primitive fields are updated for every node so that collecting the metrics neither allocates nor synchronizes.
+ * <p>
+ * Not thread-safe (just like the validator). The totals of all validators are aggregated in {@link AggregatedMetrics#JVM}.
+ */
+final class ValidationMetrics {
+
+    /** one lock per metrics file, serializing only the validators running concurrently which append to the same file */
+    private static final ConcurrentMap<Path, Object> FILE_LOCKS = new ConcurrentHashMap<>();
+    private static final Violation.Code[] CODES = Violation.Code.values();
+
+    private final @NotNull RuleSet ruleSet;
+    /** the profile of the path patterns, only set in case profiling is enabled */
+    private final @Nullable RuleProfiler profiler;
+    long nodes;
+    long prunedNodes;
+    long regexEvaluations;
+    long openedNodeMetadata;
+    long closedNodeMetadata;
+    long validateNanos;
+    long validateEndNanos;
+    /** the time between the creation of the validator and the end of the validation (including the time spent by FileVault and all other validators) */
+    long wallClockNanos;
+    /** the sum of the peak usages of all heap memory pools of the JVM at the end of the validation */
+    long peakHeapBytes;
+    /** the number of nodes matched by each rule (same index as in the {@link RuleSet}) */
+    final long[] ruleHits;
+    /** the number of violations per {@link Violation.Code} (same index as the ordinal) */
+    final long[] violationsByCode = new long[CODES.length];
+    /** the number of violations not being a {@link Violation} */
+    long otherViolations;
+
+    ValidationMetrics(@NotNull RuleSet ruleSet, @Nullable RuleProfiler profiler) {
+        this.ruleSet = ruleSet;
+        this.profiler = profiler;
+        this.ruleHits = new long[ruleSet.size()];
+    }
+
+    void addViolations(@Nullable Collection<ValidationMessage> messages) {
+        if (messages == null) {
+            return;
+        }
+        for (ValidationMessage message : messages) {
+            if (message instanceof Violation) {
+                violationsByCode[((Violation) message).getCode().ordinal()]++;
+            } else {
+                otherViolations++;
+            }
+        }
+    }
+
+    long getViolations() {
+        long violations = otherViolations;
+        for (long count : violationsByCode) {
+            violations += count;
+        }
+        return violations;
+    }
+
+    /**
+     * 
+     * @return the high-water mark of the heap usage since the start of the JVM (an upper bound, as the pools might have reached their peaks at different times)
+     */
+    static long getPeakHeapBytes() {
+        long peakHeapBytes = 0;
+        for (MemoryPoolMXBean memoryPool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (memoryPool.getType() == MemoryType.HEAP && memoryPool.getPeakUsage() != null) {
+                peakHeapBytes += memoryPool.getPeakUsage().getUsed();
+            }
+        }
+        return peakHeapBytes;
+    }
+
+    private static long toMillis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    private static @NotNull String getRuleLabel(@NotNull TypeSettings rule) {
+        return rule.getPathPattern().pattern() + "[" + rule.getType() + "]";
+    }
+
+    /**
+     *
+     * @return a human readable summary in a single line
+     */
+    @NotNull String toSummary() {
+        StringBuilder summary = new StringBuilder();
+        summary.append("Visited ").append(nodes).append(" nodes (").append(prunedNodes).append(" pruned) in ")
+            .append(toMillis(validateNanos + validateEndNanos)).append(" ms (validate: ").append(toMillis(validateNanos))
+            .append(" ms, validateEnd: ").append(toMillis(validateEndNanos)).append(" ms, wall clock: ").append(toMillis(wallClockNanos)).append(" ms), ")
+            .append(regexEvaluations).append(" regex evaluations, ")
+            .append(openedNodeMetadata).append('/').append(closedNodeMetadata).append(" relevant nodes opened/closed, ")
+            .append(getViolations()).append(" violations");
+        String separator = " (";
+        for (Violation.Code code : CODES) {
+            if (violationsByCode[code.ordinal()] > 0) {
+                summary.append(separator).append(code).append(": ").append(violationsByCode[code.ordinal()]);
+                separator = ", ";
+            }
+        }
+        if (otherViolations > 0) {
+            summary.append(separator).append("OTHER: ").append(otherViolations);
+            separator = ", ";
+        }
+        if (!separator.equals(" (")) {
+            summary.append(')');
+        }
+        separator = ", rule hits: ";
+        for (int i = 0; i < ruleHits.length; i++) {
+            if (ruleHits[i] > 0) {
+                summary.append(separator).append(getRuleLabel(ruleSet.getRule(i))).append('=').append(ruleHits[i]);
+                separator = ", ";
+            }
+        }
+        return summary.toString();
+    }
+
+    /**
+     *
+     * @param packageId the id of the validated package (may be {@code null})
+     * @return the metrics as JSON object in a single line
+     */
+    @NotNull String toJson(@Nullable String packageId) {
+        StringBuilder json = new StringBuilder("{");
+        json.append("\"package\":");
+        appendJsonString(json, packageId);
+        json.append(",\"nodes\":").append(nodes)
+            .append(",\"prunedNodes\":").append(prunedNodes)
+            .append(",\"regexEvaluations\":").append(regexEvaluations)
+            .append(",\"openedNodeMetadata\":").append(openedNodeMetadata)
+            .append(",\"closedNodeMetadata\":").append(closedNodeMetadata)
+            .append(",\"validateNanos\":").append(validateNanos)
+            .append(",\"validateEndNanos\":").append(validateEndNanos)
+            .append(",\"wallClockNanos\":").append(wallClockNanos)
+            .append(",\"peakHeapBytes\":").append(peakHeapBytes)
+            .append(",\"violations\":{");
+        for (Violation.Code code : CODES) {
+            json.append('"').append(code).append("\":").append(violationsByCode[code.ordinal()]).append(',');
+        }
+        json.append("\"OTHER\":").append(otherViolations).append("},\"rules\":[");
+        for (int i = 0; i < ruleHits.length; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"rule\":");
+            appendJsonString(json, getRuleLabel(ruleSet.getRule(i)));
+            json.append(",\"excluded\":").append(ruleSet.isExcluded(i)).append(",\"hits\":").append(ruleHits[i]);
+            if (profiler != null) {
+                json.append(",\"evaluations\":").append(profiler.getEvaluations(i))
+                    .append(",\"matches\":").append(profiler.getMatches(i))
+                    .append(",\"totalNanos\":").append(profiler.getTotalNanos(i))
+                    .append(",\"maxNanos\":").append(profiler.getMaxNanos(i))
+                    .append(",\"superlinear\":").append(profiler.isSuperlinear(i));
+            }
+            json.append('}');
+        }
+        return json.append("]}").toString();
+    }
+
+    static void appendJsonString(@NotNull StringBuilder json, @Nullable String value) {
+        if (value == null) {
+            json.append("null");
+            return;
+        }
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char character = value.charAt(i);
+            switch (character) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (character < 0x20) {
+                        json.append(String.format("\\u%04x", (int) character));
+                    } else {
+                        json.append(character);
+                    }
+            }
+        }
+        json.append('"');
+    }
+
+    /**
+     * Appends the metrics as a single JSON line to the given file (JSON Lines format), so that the metrics of all validated packages are kept.
+     * @param file the file
+     * @param packageId the id of the validated package (may be {@code null})
+     * @throws IOException in case the file cannot be written
+     */
+    void appendTo(@NotNull Path file, @Nullable String packageId) throws IOException {
+        String line = toJson(packageId) + System.lineSeparator();
+        Path absoluteFile = file.toAbsolutePath().normalize();
+        synchronized (FILE_LOCKS.computeIfAbsent(absoluteFile, key -> new Object())) {
+            Path parent = absoluteFile.getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            try (Writer writer = Files.newBufferedWriter(absoluteFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                writer.write(line);
+            }
+        }
+    }
+}
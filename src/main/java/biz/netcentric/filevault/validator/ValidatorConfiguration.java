@@ -0,0 +1,147 @@
+/*-
+ * #%L
+ * AEM Replication Metadata Validator
+ * %%
+ * Copyright (C) 2024 Cognizant Netcentric
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package biz.netcentric.filevault.validator;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The compiled configuration of the {@link AemReplicationMetadataValidator}.
+ * It is immutable and therefore safely shared between validator instances (also for sub packages) and threads.
+ */
+final class ValidatorConfiguration {
+
+    private final @NotNull RuleSet ruleSet;
+    private final boolean strictLastModificationDateCheck;
+    private final @NotNull List<AgentPropertyNames> agentPropertyNames;
+    private final @NotNull PropertyNameIndex propertyNameIndex;
+    private final @NotNull RootPaths rootPaths;
+    private final @Nullable Path metricsFile;
+    private final boolean isProfilingPathPatterns;
+    private final @Nullable Path reportFile;
+    private final @NotNull ViolationReport.Format reportFormat;
+    private final @Nullable Path subpackageCacheFile;
+    private final int maxViolationsPerGroup;
+
+    ValidatorConfiguration(@NotNull Collection<TypeSettings> includedTypesSettings, @NotNull Collection<TypeSettings> excludedTypesSettings,
+            boolean strictLastModificationDateCheck, @NotNull Collection<@NotNull String> agentNames) {
+        this(includedTypesSettings, excludedTypesSettings, strictLastModificationDateCheck, agentNames,
+                RootPaths.fromTypesSettings(includedTypesSettings).union(RootPaths.fromTypesSettings(excludedTypesSettings)), null, false,
+                PathPatternGuard.DEFAULT_STEP_BUDGET, null, ViolationReport.Format.JSON_LINES, null, 0);
+    }
+
+    ValidatorConfiguration(@NotNull Collection<TypeSettings> includedTypesSettings, @NotNull Collection<TypeSettings> excludedTypesSettings,
+            boolean strictLastModificationDateCheck, @NotNull Collection<@NotNull String> agentNames, @NotNull RootPaths rootPaths, @Nullable Path metricsFile,
+            boolean isProfilingPathPatterns, long pathPatternStepBudget, @Nullable Path reportFile, @NotNull ViolationReport.Format reportFormat,
+            @Nullable Path subpackageCacheFile, int maxViolationsPerGroup) {
+        // index rules by type to skip path evaluation for all nodes with irrelevant types
+        this.ruleSet = new RuleSet(includedTypesSettings, excludedTypesSettings, pathPatternStepBudget);
+        this.strictLastModificationDateCheck = strictLastModificationDateCheck;
+        // the replication status of all agents is kept in bit sets (see NodeMetadata)
+        if (agentNames.size() > NodeMetadata.MAX_AGENTS) {
+            throw new IllegalArgumentException("At most " + NodeMetadata.MAX_AGENTS + " agent names are supported but found " + agentNames.size());
+        }
+        List<AgentPropertyNames> propertyNames = new ArrayList<>(agentNames.size());
+        for (String agentName : agentNames) {
+            propertyNames.add(new AgentPropertyNames(agentName));
+        }
+        this.agentPropertyNames = Collections.unmodifiableList(propertyNames);
+        this.propertyNameIndex = new PropertyNameIndex(agentPropertyNames);
+        this.rootPaths = rootPaths;
+        this.metricsFile = metricsFile;
+        this.isProfilingPathPatterns = isProfilingPathPatterns;
+        this.reportFile = reportFile;
+        this.reportFormat = reportFormat;
+        this.subpackageCacheFile = subpackageCacheFile;
+        this.maxViolationsPerGroup = maxViolationsPerGroup;
+    }
+
+    @NotNull RuleSet getRuleSet() {
+        return ruleSet;
+    }
+
+    boolean isStrictLastModificationDateCheck() {
+        return strictLastModificationDateCheck;
+    }
+
+    @NotNull List<AgentPropertyNames> getAgentPropertyNames() {
+        return agentPropertyNames;
+    }
+
+    /**
+     * 
+     * @return the index of all property names evaluated for relevant nodes (the agent indices refer to {@link #getAgentPropertyNames()})
+     */
+    @NotNull PropertyNameIndex getPropertyNameIndex() {
+        return propertyNameIndex;
+    }
+
+    /**
+     * 
+     * @return the paths outside of which no node can be relevant
+     */
+    @NotNull RootPaths getRootPaths() {
+        return rootPaths;
+    }
+
+    /**
+     * 
+     * @return the file to which the metrics of each validator run are appended or {@code null} in case they should only be logged
+     */
+    @Nullable Path getMetricsFile() {
+        return metricsFile;
+    }
+
+    /**
+     * 
+     * @return {@code true} in case the cost of each path pattern should be measured (see {@link RuleProfiler})
+     */
+    boolean isProfilingPathPatterns() {
+        return isProfilingPathPatterns;
+    }
+
+    /**
+     * 
+     * @return the file into which all violations are streamed (see {@link ViolationReport}) or {@code null} in case they should only be returned
+     */
+    @Nullable Path getReportFile() {
+        return reportFile;
+    }
+
+    @NotNull ViolationReport.Format getReportFormat() {
+        return reportFormat;
+    }
+
+    /**
+     * 
+     * @return the file in which the results of sub packages are persisted (see {@link SubpackageResultCache}) or {@code null} in case they should only be reused
+     * within the JVM
+     */
+    @Nullable Path getSubpackageCacheFile() {
+        return subpackageCacheFile;
+    }
+
+    /**
+     * 
+     * @return the maximum number of violations emitted per rule and violation code (see {@link ViolationAggregator}) or 0 in case all violations should be emitted
+     */
+    int getMaxViolationsPerGroup() {
+        return maxViolationsPerGroup;
+    }
+}
@@ -0,0 +1,196 @@
+/*-
+ * #%L
+ * AEM Replication Metadata Validator
+ * %%
+ * Copyright (C) 2024 Cognizant Netcentric
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package biz.netcentric.filevault.validator;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Objects;
+
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessage;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessageSeverity;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import biz.netcentric.filevault.validator.ReplicationMetadata.ReplicationActionType;
+
+/**
+ * A violation found by {@link NodeMetadata#validate(ValidationMessageSeverity, java.util.List, boolean)}.
+ * Only the structured data is captured when the violation is found, the message is rendered lazily (once) when it is requested via {@link #getMessage()}.
+ * <p>
+ * Instances are immutable apart from the memoized message.
+ */
+final class Violation extends ValidationMessage {
+
+    /** the kind of violation, each one with its own message */
+    enum Code {
+        /** the jcr:content child of a page has not been found */
+        NO_CONTENT_NODE,
+        /** replication metadata has never been captured (programming error) */
+        REPLICATION_METADATA_NOT_CAPTURED,
+        /** a replication action is set on an excluded node */
+        REPLICATION_ACTION_NOT_ALLOWED,
+        /** a replication date is set on an excluded node */
+        REPLICATION_DATE_NOT_ALLOWED,
+        /** no replication action property is set */
+        REPLICATION_ACTION_NOT_FOUND,
+        /** the replication action property does not contain a valid action */
+        REPLICATION_ACTION_INVALID,
+        /** the replication action is not {@link ReplicationActionType#ACTIVATE} */
+        REPLICATION_ACTION_NOT_ACTIVATE,
+        /** no replication date property is set */
+        REPLICATION_DATE_NOT_FOUND,
+        /** the replication date property does not contain a valid date */
+        REPLICATION_DATE_INVALID,
+        /** no comparison date found (in strict mode) */
+        COMPARISON_DATE_NOT_FOUND,
+        /** the replication date is older than the implicit comparison date 0 */
+        REPLICATION_DATE_OLDER_THAN_EPOCH,
+        /** the replication date is older than the comparison date */
+        REPLICATION_DATE_OLDER_THAN_COMPARISON_DATE
+    }
+
+    private final @NotNull Code code;
+    private final @NotNull AgentPropertyNames agentPropertyNames;
+    /** either the ordinal of the replication action or the index of the (invalid) replication date property name (depending on the code) */
+    private final int propertyDetail;
+    private final long replicationDate;
+    private final long comparisonDate;
+    private final @Nullable String comparisonDateLabel;
+    private volatile String message;
+
+    Violation(@NotNull ValidationMessageSeverity severity, @NotNull Code code, @NotNull String nodePath, @NotNull AgentPropertyNames agentPropertyNames) {
+        this(severity, code, nodePath, agentPropertyNames, 0, 0L, 0L, null);
+    }
+
+    Violation(@NotNull ValidationMessageSeverity severity, @NotNull Code code, @NotNull String nodePath, @NotNull AgentPropertyNames agentPropertyNames,
+            int propertyDetail, long replicationDate, long comparisonDate, @Nullable String comparisonDateLabel) {
+        this(severity, code, nodePath, agentPropertyNames, propertyDetail, replicationDate, comparisonDate, comparisonDateLabel, null, null, 0, 0);
+    }
+
+    /**
+     * Creates a violation carrying its position (used when replaying the violations of a sub package via {@link SubpackageResultCache}).
+     */
+    Violation(@NotNull ValidationMessageSeverity severity, @NotNull Code code, @NotNull String nodePath, @NotNull AgentPropertyNames agentPropertyNames,
+            int propertyDetail, long replicationDate, long comparisonDate, @Nullable String comparisonDateLabel,
+            @Nullable Path filePath, @Nullable Path basePath, int line, int column) {
+        // the message is rendered lazily (the empty placeholder keeps the inherited equals() and hashCode() working)
+        super(severity, "", nodePath, filePath, basePath, line, column, null);
+        this.code = code;
+        this.agentPropertyNames = agentPropertyNames;
+        this.propertyDetail = propertyDetail;
+        this.replicationDate = replicationDate;
+        this.comparisonDate = comparisonDate;
+        this.comparisonDateLabel = comparisonDateLabel;
+    }
+
+    @NotNull Code getCode() {
+        return code;
+    }
+
+    @NotNull AgentPropertyNames getAgentPropertyNames() {
+        return agentPropertyNames;
+    }
+
+    int getPropertyDetail() {
+        return propertyDetail;
+    }
+
+    long getReplicationDate() {
+        return replicationDate;
+    }
+
+    long getComparisonDate() {
+        return comparisonDate;
+    }
+
+    @Nullable String getComparisonDateLabel() {
+        return comparisonDateLabel;
+    }
+
+    @Override
+    public String getMessage() {
+        String renderedMessage = message;
+        if (renderedMessage == null) {
+            renderedMessage = renderMessage();
+            message = renderedMessage;
+        }
+        return renderedMessage;
+    }
+
+    private @NotNull String renderMessage() {
+        String agentName = agentPropertyNames.getAgentName();
+        switch (code) {
+            case NO_CONTENT_NODE:
+                return "No jcr:content node found at all where replication data would have been captured for agent " + agentName;
+            case REPLICATION_METADATA_NOT_CAPTURED:
+                return "Replication status not yet populated via captureReplicationMetadata() for agent " + agentName;
+            case REPLICATION_ACTION_NOT_ALLOWED:
+                return "Last replication action not allowed for this path but is " + ReplicationActionType.values()[propertyDetail];
+            case REPLICATION_DATE_NOT_ALLOWED:
+                if (replicationDate == DateProperty.NO_DATE) {
+                    return "Last replication date not allowed for this path but is set to an invalid value in "
+                            + agentPropertyNames.getLastReplicationDateNames().get(propertyDetail);
+                }
+                return "Last replication date not allowed for this path but is " + Instant.ofEpochMilli(replicationDate);
+            case REPLICATION_ACTION_NOT_FOUND:
+                return "No replication action set for agent " + agentName + ": "
+                        + ReplicationMetadata.getPropertiesNotFoundMessage(Collections.singletonList(agentPropertyNames.getLastReplicationActionName()));
+            case REPLICATION_ACTION_INVALID:
+                return "No replication action set for agent " + agentName + ": "
+                        + ReplicationMetadata.getInvalidPropertyMessage(agentPropertyNames.getLastReplicationActionName());
+            case REPLICATION_ACTION_NOT_ACTIVATE:
+                return "The last replication action must be 'Activate' but was '" + ReplicationActionType.values()[propertyDetail] + "' for agent " + agentName;
+            case REPLICATION_DATE_NOT_FOUND:
+                return "No replication date set for agent " + agentName + ": "
+                        + ReplicationMetadata.getPropertiesNotFoundMessage(agentPropertyNames.getLastReplicationDateNames());
+            case REPLICATION_DATE_INVALID:
+                return "No replication date set for agent " + agentName + ": "
+                        + ReplicationMetadata.getInvalidPropertyMessage(agentPropertyNames.getLastReplicationDateNames().get(propertyDetail));
+            case COMPARISON_DATE_NOT_FOUND:
+                return "No last modification property set and don't fall back to -1 due to strict check option";
+            case REPLICATION_DATE_OLDER_THAN_EPOCH:
+                return "The replication date " + Instant.ofEpochMilli(replicationDate) + " for agent " + agentName
+                        + " is older than the implicit last modification date 0";
+            case REPLICATION_DATE_OLDER_THAN_COMPARISON_DATE:
+                return "The replication date " + Instant.ofEpochMilli(replicationDate) + " for agent " + agentName
+                        + " is older than the comparison date " + Instant.ofEpochMilli(comparisonDate) + " (" + comparisonDateLabel + ")";
+            default:
+                throw new IllegalStateException("Unsupported code " + code);
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * super.hashCode() + Objects.hash(code, agentPropertyNames, propertyDetail, replicationDate, comparisonDate, comparisonDateLabel);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!super.equals(obj)) {
+            return false;
+        }
+        Violation other = (Violation) obj;
+        return code == other.code && agentPropertyNames == other.agentPropertyNames && propertyDetail == other.propertyDetail
+                && replicationDate == other.replicationDate && comparisonDate == other.comparisonDate
+                && Objects.equals(comparisonDateLabel, other.comparisonDateLabel);
+    }
+
+    @Override
+    public String toString() {
+        return "Violation [code=" + code + ", severity=" + getSeverity() + ", message=" + getMessage() + ", nodePath=" + getNodePath() + "]";
+    }
+}
@@ -0,0 +1,123 @@
+/*-
+ * #%L
+ * AEM Replication Metadata Validator
+ * %%
+ * Copyright (C) 2024 Cognizant Netcentric
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package biz.netcentric.filevault.validator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessage;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessageSeverity;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Limits the number of violations emitted per group, i.e. per rule ({@link TypeSettings}) and {@link Violation.Code}.
+ * Only the first violations of each group are emitted with full detail, all further ones are only counted
+ * and summarized at the end of the validation (together with some sample node paths).
+ * Therefore the number of emitted messages and the memory consumption are bounded independent of the package size.
+ * <p>
+ * Not thread-safe (just like the validator).
+ */
+final class ViolationAggregator {
+
+    static final int MAX_SAMPLE_PATHS = 5;
+    private static final Violation.Code[] CODES = Violation.Code.values();
+
+    private final int maxViolationsPerGroup;
+    private final @NotNull RuleSet ruleSet;
+    /** lazily created groups, indexed by rule index * number of codes + code ordinal */
+    private final @Nullable Group[] groups;
+
+    /**
+     * 
+     * @param maxViolationsPerGroup the maximum number of violations emitted per group (must be positive)
+     * @param ruleSet the rule set the rule indices refer to
+     */
+    ViolationAggregator(int maxViolationsPerGroup, @NotNull RuleSet ruleSet) {
+        this.maxViolationsPerGroup = maxViolationsPerGroup;
+        this.ruleSet = ruleSet;
+        this.groups = new Group[ruleSet.size() * CODES.length];
+    }
+
+    /**
+     * 
+     * @param messages all violations of a node
+     * @param ruleIndex the index of the rule which made the node relevant
+     * @return the violations to emit (messages not being a {@link Violation} are always emitted)
+     */
+    @NotNull Collection<ValidationMessage> limit(@NotNull Collection<ValidationMessage> messages, int ruleIndex) {
+        if (messages.isEmpty()) {
+            return messages;
+        }
+        List<ValidationMessage> emittedMessages = new ArrayList<>(messages.size());
+        for (ValidationMessage message : messages) {
+            if (!(message instanceof Violation)) {
+                emittedMessages.add(message);
+                continue;
+            }
+            Violation violation = (Violation) message;
+            int groupIndex = ruleIndex * CODES.length + violation.getCode().ordinal();
+            Group group = groups[groupIndex];
+            if (group == null) {
+                group = new Group();
+                groups[groupIndex] = group;
+            }
+            if (group.emitted < maxViolationsPerGroup) {
+                group.emitted++;
+                emittedMessages.add(message);
+            } else {
+                group.suppress(violation);
+            }
+        }
+        return emittedMessages;
+    }
+
+    /**
+     * 
+     * @param severity the severity of the summaries
+     * @return one summary for each group with suppressed violations
+     */
+    @NotNull List<ValidationMessage> createSummaries(@NotNull ValidationMessageSeverity severity) {
+        List<ValidationMessage> summaries = new ArrayList<>();
+        for (int i = 0; i < groups.length; i++) {
+            Group group = groups[i];
+            if (group == null || group.suppressed == 0) {
+                continue;
+            }
+            TypeSettings rule = ruleSet.getRule(i / CODES.length);
+            StringBuilder summary = new StringBuilder();
+            summary.append("Suppressed ").append(group.suppressed).append(" further violation(s) ").append(CODES[i % CODES.length])
+                .append(" (").append(group.emitted + group.suppressed).append(" in total) for rule ")
+                .append(rule.getPathPattern().pattern()).append('[').append(rule.getType()).append("], e.g. at ")
+                .append(String.join(", ", group.samplePaths));
+            summaries.add(new ValidationMessage(severity, summary.toString()));
+        }
+        return summaries;
+    }
+
+    private static final class Group {
+        private int emitted;
+        private long suppressed;
+        private final @NotNull List<String> samplePaths = new ArrayList<>(MAX_SAMPLE_PATHS);
+
+        void suppress(@NotNull Violation violation) {
+            suppressed++;
+            String nodePath = violation.getNodePath();
+            // the same node is usually reported once per agent
+            if (nodePath != null && samplePaths.size() < MAX_SAMPLE_PATHS && !samplePaths.contains(nodePath)) {
+                samplePaths.add(nodePath);
+            }
+        }
+    }
+}
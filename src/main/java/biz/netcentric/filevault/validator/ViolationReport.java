@@ -0,0 +1,325 @@
+/*-
+ * #%L
+ * AEM Replication Metadata Validator
+ * %%
+ * Copyright (C) 2024 Cognizant Netcentric
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package biz.netcentric.filevault.validator;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessage;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessageSeverity;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Streams violations as they are found into a report file, either in <a href="https://jsonlines.org/">JSON Lines</a> or in
+ * <a href="https://docs.oasis-open.org/sarif/sarif/v2.1.0/sarif-v2.1.0.html">SARIF 2.1.0</a> format.
+ * Each record is written immediately (through a reused buffer per thread), so the memory consumption does not depend on the number of violations.
+ * <p>
+ * All validators (of all packages validated within the same JVM, also concurrently) writing to the same file share one instance,
+ * obtained via {@link #open(Path, Format)} and released via {@link #close()}. The file is overwritten when it is opened for the first time within the JVM
+ * and afterwards only appended to, so that it contains the violations of all packages of one build.
+ * In case of SARIF all violations end up in a single run (with the package id as property of each result)
+ * and the closing brackets are written whenever the last validator releases the file (and removed again once another validator opens it).
+ * <p>
+ * This class is thread-safe. Opening and releasing is atomic per file (without a global lock) and records are serialized outside of any lock,
+ * so concurrent validators only contend while actually appending to the same file.
+ */
+final class ViolationReport {
+
+    enum Format {
+        JSON_LINES,
+        SARIF;
+
+        /**
+         *
+         * @param file the report file
+         * @return {@link #SARIF} for file names ending with {@code .sarif} or {@code .sarif.json}, otherwise {@link #JSON_LINES}
+         */
+        static @NotNull Format fromFileName(@NotNull Path file) {
+            String fileName = file.getFileName().toString().toLowerCase(Locale.ROOT);
+            return fileName.endsWith(".sarif") || fileName.endsWith(".sarif.json") ? SARIF : JSON_LINES;
+        }
+    }
+
+    static final String RULE_ID_OTHER = "OTHER";
+    private static final String SARIF_FOOTER = "\n]}]}\n";
+    /** all reports ever opened within this JVM keyed by their absolute path */
+    private static final ConcurrentMap<Path, ViolationReport> REPORTS = new ConcurrentHashMap<>();
+    /** reused for all records serialized by the same thread */
+    private static final ThreadLocal<StringBuilder> RECORD = ThreadLocal.withInitial(() -> new StringBuilder(512));
+
+    private final @NotNull Path file;
+    private final @NotNull Format format;
+    // the following fields are guarded by this
+    private int openCount;
+    private long records;
+    private boolean isCreated;
+    private @Nullable FileChannel channel;
+    private @Nullable Writer writer;
+
+    private ViolationReport(@NotNull Path file, @NotNull Format format) {
+        this.file = file;
+        this.format = format;
+    }
+
+    /**
+     * Opens the report with the given file. Each call must be followed by exactly one call to {@link #close()}.
+     * @param file the file
+     * @param format the format
+     * @return the report
+     * @throws IOException in case the file cannot be opened
+     */
+    static @NotNull ViolationReport open(@NotNull Path file, @NotNull Format format) throws IOException {
+        Path absoluteFile = file.toAbsolutePath().normalize();
+        try {
+            // compute is atomic per key, i.e. only serializes callers opening or closing the same file
+            return REPORTS.compute(absoluteFile, (key, existingReport) -> {
+                ViolationReport report = existingReport != null ? existingReport : new ViolationReport(key, format);
+                if (report.format != format) {
+                    throw new IllegalArgumentException("The report " + absoluteFile + " is already written in format " + report.format);
+                }
+                try {
+                    report.acquire();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return report;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private synchronized void acquire() throws IOException {
+        if (openCount == 0) {
+            Path parent = file.getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            FileChannel newChannel;
+            if (!isCreated) {
+                newChannel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            } else {
+                newChannel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                long size = newChannel.size();
+                if (format == Format.SARIF) {
+                    // continue in front of the closing brackets
+                    size = Math.max(0, size - SARIF_FOOTER.length());
+                    newChannel.truncate(size);
+                }
+                newChannel.position(size);
+            }
+            channel = newChannel;
+            writer = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(newChannel), StandardCharsets.UTF_8));
+            if (!isCreated && format == Format.SARIF) {
+                writeSarifHeader(writer);
+            }
+            isCreated = true;
+        }
+        openCount++;
+    }
+
+    /**
+     * Releases the report. The file is completed and closed once all validators released it.
+     * @throws IOException in case the file cannot be written
+     */
+    void close() throws IOException {
+        try {
+            REPORTS.computeIfPresent(file, (key, report) -> {
+                try {
+                    report.release();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return report;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private synchronized void release() throws IOException {
+        if (openCount == 0) {
+            throw new IllegalStateException("Report " + file + " is not open");
+        }
+        if (--openCount > 0) {
+            return;
+        }
+        try (FileChannel closedChannel = channel; Writer closedWriter = writer) {
+            if (format == Format.SARIF && closedWriter != null) {
+                closedWriter.write(SARIF_FOOTER);
+            }
+        } finally {
+            channel = null;
+            writer = null;
+        }
+    }
+
+    synchronized long getRecords() {
+        return records;
+    }
+
+    private static void writeSarifHeader(@NotNull Writer writer) throws IOException {
+        StringBuilder header = new StringBuilder();
+        header.append("{\"$schema\":\"https://json.schemastore.org/sarif-2.1.0.json\",\"version\":\"2.1.0\",\"runs\":[{\"tool\":{\"driver\":{")
+            .append("\"name\":\"aem-replication-metadata-validator\",\"informationUri\":\"https://github.com/Netcentric/aem-replication-metadata-validator\",")
+            .append("\"rules\":[");
+        for (Violation.Code code : Violation.Code.values()) {
+            header.append("{\"id\":\"").append(code).append("\"},");
+        }
+        header.append("{\"id\":\"").append(RULE_ID_OTHER).append("\"}]}},\"results\":[");
+        writer.write(header.toString());
+    }
+
+    /**
+     * Writes one record.
+     * @param packageId the id of the package (may be {@code null})
+     * @param message the violation
+     * @param nodePath the path of the node the violation refers to (only used in case the message does not carry a node path itself)
+     * @param filePath the path of the file relative to the {@code jcr_root} directory (may be {@code null})
+     * @param line the line within the file (0 if unknown)
+     * @param column the column within the line (0 if unknown)
+     * @param rule the rule which lead to the violation (may be {@code null})
+     * @throws IOException in case the file cannot be written
+     */
+    void write(@Nullable String packageId, @NotNull ValidationMessage message, @Nullable String nodePath, @Nullable Path filePath,
+            int line, int column, @Nullable TypeSettings rule) throws IOException {
+        StringBuilder record = RECORD.get();
+        record.setLength(0);
+        String effectiveNodePath = message.getNodePath() != null ? message.getNodePath() : nodePath;
+        String uri = filePath != null ? filePath.toString().replace(File.separatorChar, '/') : null;
+        if (format == Format.SARIF) {
+            appendSarifResult(record, packageId, message, effectiveNodePath, uri, line, column, rule);
+        } else {
+            appendJsonLine(record, packageId, message, effectiveNodePath, uri, line, column, rule);
+        }
+        append(record);
+    }
+
+    private synchronized void append(@NotNull CharSequence record) throws IOException {
+        if (writer == null) {
+            throw new IllegalStateException("Report " + file + " is not open");
+        }
+        if (format == Format.SARIF) {
+            writer.write(records > 0 ? ",\n" : "\n");
+        }
+        writer.append(record);
+        records++;
+    }
+
+    private static void appendJsonLine(@NotNull StringBuilder record, @Nullable String packageId, @NotNull ValidationMessage message, @Nullable String nodePath,
+            @Nullable String uri, int line, int column, @Nullable TypeSettings rule) {
+        record.append("{\"package\":");
+        ValidationMetrics.appendJsonString(record, packageId);
+        record.append(",\"file\":");
+        ValidationMetrics.appendJsonString(record, uri);
+        if (line > 0) {
+            record.append(",\"line\":").append(line).append(",\"column\":").append(column);
+        }
+        record.append(",\"nodePath\":");
+        ValidationMetrics.appendJsonString(record, nodePath);
+        record.append(",\"severity\":\"").append(message.getSeverity()).append('"');
+        appendDetails(record, message, rule);
+        record.append(",\"message\":");
+        ValidationMetrics.appendJsonString(record, message.getMessage());
+        record.append('}').append('\n');
+    }
+
+    private static void appendSarifResult(@NotNull StringBuilder record, @Nullable String packageId, @NotNull ValidationMessage message,
+            @Nullable String nodePath, @Nullable String uri, int line, int column, @Nullable TypeSettings rule) {
+        record.append("{\"ruleId\":\"").append(message instanceof Violation ? ((Violation) message).getCode().toString() : RULE_ID_OTHER)
+            .append("\",\"level\":\"").append(toSarifLevel(message.getSeverity())).append("\",\"message\":{\"text\":");
+        ValidationMetrics.appendJsonString(record, message.getMessage());
+        record.append("},\"locations\":[{");
+        if (uri != null) {
+            record.append("\"physicalLocation\":{\"artifactLocation\":{\"uri\":");
+            ValidationMetrics.appendJsonString(record, uri);
+            record.append('}');
+            if (line > 0) {
+                record.append(",\"region\":{\"startLine\":").append(line);
+                if (column > 0) {
+                    record.append(",\"startColumn\":").append(column);
+                }
+                record.append('}');
+            }
+            record.append("},");
+        }
+        record.append("\"logicalLocations\":[{\"fullyQualifiedName\":");
+        ValidationMetrics.appendJsonString(record, nodePath);
+        record.append(",\"kind\":\"element\"}]}],\"properties\":{\"package\":");
+        ValidationMetrics.appendJsonString(record, packageId);
+        appendDetails(record, message, rule);
+        record.append("}}");
+    }
+
+    /**
+     * Appends the code, rule, agent and dates (all prefixed with a comma).
+     */
+    private static void appendDetails(@NotNull StringBuilder record, @NotNull ValidationMessage message, @Nullable TypeSettings rule) {
+        if (rule != null) {
+            record.append(",\"rule\":");
+            ValidationMetrics.appendJsonString(record, rule.getPathPattern().pattern() + "[" + rule.getType() + "]");
+        }
+        if (!(message instanceof Violation)) {
+            return;
+        }
+        Violation violation = (Violation) message;
+        record.append(",\"code\":\"").append(violation.getCode()).append("\",\"agent\":");
+        ValidationMetrics.appendJsonString(record, violation.getAgentPropertyNames().getAgentName());
+        switch (violation.getCode()) {
+            case REPLICATION_DATE_OLDER_THAN_COMPARISON_DATE:
+                // expected: replicated at or after the comparison date
+                record.append(",\"comparisonDate\":\"").append(Instant.ofEpochMilli(violation.getComparisonDate())).append("\",\"comparisonDateProperty\":");
+                ValidationMetrics.appendJsonString(record, violation.getComparisonDateLabel());
+                record.append(",\"replicationDate\":\"").append(Instant.ofEpochMilli(violation.getReplicationDate())).append('"');
+                break;
+            case REPLICATION_DATE_NOT_ALLOWED:
+                if (violation.getReplicationDate() == DateProperty.NO_DATE) {
+                    // invalid date
+                    break;
+                }
+                record.append(",\"replicationDate\":\"").append(Instant.ofEpochMilli(violation.getReplicationDate())).append('"');
+                break;
+            case REPLICATION_DATE_OLDER_THAN_EPOCH:
+                record.append(",\"replicationDate\":\"").append(Instant.ofEpochMilli(violation.getReplicationDate())).append('"');
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static @NotNull String toSarifLevel(@NotNull ValidationMessageSeverity severity) {
+        switch (severity) {
+            case ERROR:
+                return "error";
+            case WARN:
+                return "warning";
+            default:
+                return "note";
+        }
+    }
+}
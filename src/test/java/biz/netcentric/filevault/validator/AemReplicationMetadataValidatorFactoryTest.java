@@ -12,6 +12,15 @@
  */
 package biz.netcentric.filevault.validator;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.jackrabbit.vault.fs.api.PathFilterSet;
+import org.apache.jackrabbit.vault.fs.api.WorkspaceFilter;
+import org.apache.jackrabbit.vault.fs.config.ConfigurationException;
+import org.apache.jackrabbit.vault.fs.config.DefaultWorkspaceFilter;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.Test;
 
@@ -21,8 +30,7 @@ class AemReplicationMetadataValidatorFactoryTest {
     void testParseTypesSettings() {
         Assertions.assertThat(AemReplicationMetadataValidatorFactory.parseTypesSettings("test[cq:Page]"))
             .containsExactly(new TypeSettings("test", "cq:Page"));
-        TypeSettings complexTypeSettings = new TypeSettings("anotherregex", "nt:unstructured");
-        complexTypeSettings.setComparisonDatePropery(DateProperty.MODIFIED_CREATED_OR_CURRENT);
+        TypeSettings complexTypeSettings = new TypeSettings("anotherregex", "nt:unstructured", DateProperty.MODIFIED_CREATED_OR_CURRENT);
         Assertions.assertThat(AemReplicationMetadataValidatorFactory.parseTypesSettings("test[cq:Page],anotherregex[nt:unstructured];comparisonDate=MODIFIED_CREATED_OR_CURRENT"))
             .containsExactly(new TypeSettings("test", "cq:Page"), complexTypeSettings);
         
@@ -31,4 +39,53 @@ class AemReplicationMetadataValidatorFactoryTest {
         .containsExactly(new TypeSettings("test", "cq:Page"), complexTypeSettings);
     }
 
+    @Test
+    void testConfigurationIsCached() {
+        AemReplicationMetadataValidatorFactory factory = new AemReplicationMetadataValidatorFactory();
+        Map<String, String> options = new HashMap<>();
+        options.put("agentNames", "publish,preview");
+        ValidatorConfiguration configuration = factory.getConfiguration(options);
+        Assertions.assertThat(factory.getConfiguration(new HashMap<>(options))).isSameAs(configuration);
+        Assertions.assertThat(configuration.getAgentPropertyNames()).extracting(AgentPropertyNames::getAgentName).containsExactly("publish", "preview");
+        // unrelated options don't matter
+        options.put("unrelatedOption", "value");
+        Assertions.assertThat(factory.getConfiguration(options)).isSameAs(configuration);
+        options.put("strictLastModificationDateCheck", "true");
+        ValidatorConfiguration strictConfiguration = factory.getConfiguration(options);
+        Assertions.assertThat(strictConfiguration).isNotSameAs(configuration);
+        Assertions.assertThat(strictConfiguration.isStrictLastModificationDateCheck()).isTrue();
+    }
+
+    @Test
+    void testRootPaths() {
+        Assertions.assertThat(AemReplicationMetadataValidatorFactory.createConfiguration(Collections.emptyMap()).getRootPaths().getPaths())
+            .containsExactly("/apps", "/conf", "/libs");
+        Map<String, String> options = new HashMap<>();
+        options.put("includedNodePathPatternsAndTypes", "/content/(site1|site2)/.*[cq:Page]");
+        Assertions.assertThat(AemReplicationMetadataValidatorFactory.createConfiguration(options).getRootPaths().getPaths())
+            .containsExactly("/content/site1", "/content/site2", "/apps", "/conf", "/libs");
+        options.put("excludedNodePathPatternsAndTypes", ".*/initial[cq:Page]");
+        Assertions.assertThat(AemReplicationMetadataValidatorFactory.createConfiguration(options).getRootPaths().isUnrestricted()).isTrue();
+        options.put("rootPaths", "/content/site1/, /content/site2");
+        Assertions.assertThat(AemReplicationMetadataValidatorFactory.createConfiguration(options).getRootPaths().getPaths())
+            .containsExactly("/content/site1", "/content/site2");
+    }
+
+    @Test
+    void testIsPackageRelevant() throws ConfigurationException {
+        RootPaths rootPaths = new RootPaths(Arrays.asList("/apps", "/conf"));
+        Assertions.assertThat(AemReplicationMetadataValidatorFactory.isPackageRelevant(createFilter("/content/site", "/content/dam/site"), rootPaths)).isFalse();
+        Assertions.assertThat(AemReplicationMetadataValidatorFactory.isPackageRelevant(createFilter("/content/site", "/conf/site"), rootPaths)).isTrue();
+        Assertions.assertThat(AemReplicationMetadataValidatorFactory.isPackageRelevant(createFilter("/"), rootPaths)).isTrue();
+        Assertions.assertThat(AemReplicationMetadataValidatorFactory.isPackageRelevant(createFilter(), rootPaths)).isTrue();
+        Assertions.assertThat(AemReplicationMetadataValidatorFactory.isPackageRelevant(createFilter("/content/site"), RootPaths.UNRESTRICTED)).isTrue();
+    }
+
+    private static WorkspaceFilter createFilter(String... roots) throws ConfigurationException {
+        DefaultWorkspaceFilter filter = new DefaultWorkspaceFilter();
+        for (String root : roots) {
+            filter.add(new PathFilterSet(root));
+        }
+        return filter;
+    }
 }
@@ -0,0 +1,413 @@
+/*-
+ * #%L
+ * AEM Replication Metadata Validator
+ * %%
+ * Copyright (C) 2024 Cognizant Netcentric
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package biz.netcentric.filevault.validator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.jcr.NamespaceException;
+
+import org.apache.jackrabbit.spi.Name;
+import org.apache.jackrabbit.spi.commons.conversion.IllegalNameException;
+import org.apache.jackrabbit.vault.util.DocViewNode2;
+import org.apache.jackrabbit.vault.util.DocViewProperty2;
+import org.apache.jackrabbit.vault.validation.spi.NodeContext;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessage;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessageSeverity;
+import org.apache.jackrabbit.vault.validation.spi.util.NodeContextImpl;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class AemReplicationMetadataValidatorTest {
+
+    static DocViewNode2 createNode(String name, String... propertyNamesAndValues) {
+        Collection<DocViewProperty2> properties = new ArrayList<>();
+        for (int i = 0; i < propertyNamesAndValues.length; i += 2) {
+            try {
+                properties.add(DocViewProperty2.parse(toName(propertyNamesAndValues[i]), propertyNamesAndValues[i + 1]));
+            } catch (IllegalNameException | NamespaceException e) {
+                throw new IllegalArgumentException("Invalid property value " + propertyNamesAndValues[i + 1], e);
+            }
+        }
+        return new DocViewNode2(toName(name), properties);
+    }
+
+    private static Name toName(String qualifiedName) {
+        String[] prefixAndLocalName = qualifiedName.split(":", 2);
+        if (prefixAndLocalName.length == 1) {
+            return NameConstants.NAME_FACTORY.create("", qualifiedName);
+        }
+        final String namespaceUri;
+        switch (prefixAndLocalName[0]) {
+            case "jcr":
+                namespaceUri = "http://www.jcp.org/jcr/1.0";
+                break;
+            case "sling":
+                namespaceUri = "http://sling.apache.org/jcr/sling/1.0";
+                break;
+            case "cq":
+                namespaceUri = NameConstants.CQ_NAMESPACE_URI;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown prefix in " + qualifiedName);
+        }
+        return NameConstants.NAME_FACTORY.create(namespaceUri, prefixAndLocalName[1]);
+    }
+
+    static NodeContext createNodeContext(String nodePath) {
+        return new NodeContextImpl(nodePath, Paths.get(".content.xml"), Paths.get(""));
+    }
+
+    static AemReplicationMetadataValidator createDefaultValidator() {
+        return new AemReplicationMetadataValidator(ValidationMessageSeverity.ERROR,
+                AemReplicationMetadataValidatorFactory.createConfiguration(Collections.emptyMap()));
+    }
+
+    @Test
+    void testPolicyWithoutReplicationMetadata() {
+        AemReplicationMetadataValidator validator = createDefaultValidator();
+        DocViewNode2 policy = createNode("policy", "jcr:primaryType", "nt:unstructured", "sling:resourceType", "wcm/core/components/policy/policy",
+                "jcr:lastModified", "{Date}" + DatePropertyTest.ISO8601_DATE2);
+        NodeContext policyContext = createNodeContext("/conf/example/settings/wcm/policies/policy");
+        DocViewNode2 content = createNode("jcr:content", "jcr:primaryType", "nt:unstructured",
+                "cq:lastReplicationAction", "Activate", "cq:lastReplicated", "{Date}" + DatePropertyTest.ISO8601_DATE1);
+        NodeContext contentContext = createNodeContext("/conf/example/settings/wcm/policies/policy/jcr:content");
+        assertNull(validator.validate(policy, policyContext, false));
+        assertNull(validator.validate(content, contentContext, false));
+        assertNull(validator.validateEnd(content, contentContext, false));
+        Collection<ValidationMessage> messages = validator.validateEnd(policy, policyContext, false);
+        assertEquals(1, messages.size());
+        assertEquals("The replication date 1970-01-01T00:00:10Z for agent publish is older than the comparison date 2022-01-01T23:00:00Z ({http://www.jcp.org/jcr/1.0}lastModified)",
+                messages.iterator().next().getMessage());
+    }
+
+    @Test
+    void testNestedPolicies() {
+        AemReplicationMetadataValidator validator = createDefaultValidator();
+        DocViewNode2 policy = createNode("policy", "jcr:primaryType", "nt:unstructured", "sling:resourceType", "wcm/core/components/policy/policy",
+                "jcr:lastModified", "{Date}" + DatePropertyTest.ISO8601_DATE2);
+        DocViewNode2 content = createNode("jcr:content", "jcr:primaryType", "nt:unstructured",
+                "cq:lastReplicationAction", "Activate", "cq:lastReplicated", "{Date}" + DatePropertyTest.ISO8601_DATE1);
+        NodeContext outerContext = createNodeContext("/conf/example/settings/wcm/policies/outer");
+        NodeContext outerContentContext = createNodeContext("/conf/example/settings/wcm/policies/outer/jcr:content");
+        NodeContext innerContext = createNodeContext("/conf/example/settings/wcm/policies/outer/inner");
+        NodeContext innerContentContext = createNodeContext("/conf/example/settings/wcm/policies/outer/inner/jcr:content");
+        assertNull(validator.validate(policy, outerContext, false));
+        assertNull(validator.validate(content, outerContentContext, false));
+        assertNull(validator.validateEnd(content, outerContentContext, false));
+        assertNull(validator.validate(policy, innerContext, false));
+        assertNull(validator.validate(content, innerContentContext, false));
+        assertNull(validator.validateEnd(content, innerContentContext, false));
+        // each policy must be completed at its own end
+        assertEquals(1, validator.validateEnd(policy, innerContext, false).size());
+        assertEquals(1, validator.validateEnd(policy, outerContext, false).size());
+    }
+
+    @Test
+    void testSubtreeOutsideRootPaths() {
+        AemReplicationMetadataValidator validator = new AemReplicationMetadataValidator(ValidationMessageSeverity.ERROR,
+                AemReplicationMetadataValidatorFactory.createConfiguration(Collections.singletonMap("rootPaths", "/conf")));
+        DocViewNode2 folder = createNode("content", "jcr:primaryType", "sling:Folder");
+        NodeContext folderContext = createNodeContext("/content");
+        DocViewNode2 policy = createNode("policy", "jcr:primaryType", "nt:unstructured", "sling:resourceType", "wcm/core/components/policy/policy",
+                "jcr:lastModified", "{Date}" + DatePropertyTest.ISO8601_DATE2);
+        NodeContext skippedPolicyContext = createNodeContext("/content/settings/wcm/policies/policy");
+        NodeContext policyContext = createNodeContext("/conf/settings/wcm/policies/policy");
+        // policy outside the root paths is not validated
+        assertNull(validator.validate(folder, folderContext, true));
+        assertNull(validator.validate(policy, skippedPolicyContext, false));
+        assertNull(validator.validateEnd(policy, skippedPolicyContext, false));
+        assertNull(validator.validateEnd(folder, folderContext, true));
+        // but the one inside is (and lacks replication action and date)
+        assertNull(validator.validate(policy, policyContext, true));
+        assertEquals(2, validator.validateEnd(policy, policyContext, true).size());
+    }
+
+    @Test
+    void testMetrics(@TempDir Path tempDir) throws IOException {
+        Path metricsFile = tempDir.resolve("metrics.jsonl");
+        Map<String, String> options = new HashMap<>();
+        options.put("rootPaths", "/conf");
+        options.put("metricsFile", metricsFile.toString());
+        AemReplicationMetadataValidator validator = new AemReplicationMetadataValidator(ValidationMessageSeverity.ERROR,
+                AemReplicationMetadataValidatorFactory.createConfiguration(options), "group:name:1.0");
+        DocViewNode2 folder = createNode("content", "jcr:primaryType", "sling:Folder");
+        NodeContext folderContext = createNodeContext("/content");
+        DocViewNode2 policy = createNode("policy", "jcr:primaryType", "nt:unstructured", "sling:resourceType", "wcm/core/components/policy/policy",
+                "jcr:lastModified", "{Date}" + DatePropertyTest.ISO8601_DATE2);
+        NodeContext policyContext = createNodeContext("/conf/settings/wcm/policies/policy");
+        validator.validate(folder, folderContext, true);
+        validator.validateEnd(folder, folderContext, true);
+        validator.validate(policy, policyContext, true);
+        validator.validateEnd(policy, policyContext, true);
+        assertNull(validator.done());
+
+        ValidationMetrics metrics = validator.getMetrics();
+        assertEquals(2, metrics.nodes);
+        assertEquals(1, metrics.prunedNodes);
+        assertEquals(1, metrics.openedNodeMetadata);
+        assertEquals(1, metrics.closedNodeMetadata);
+        assertEquals(1, metrics.regexEvaluations);
+        assertEquals(2, metrics.getViolations());
+        assertEquals(1, metrics.violationsByCode[Violation.Code.REPLICATION_ACTION_NOT_FOUND.ordinal()]);
+        assertEquals(1, metrics.violationsByCode[Violation.Code.REPLICATION_DATE_NOT_FOUND.ordinal()]);
+        Assertions.assertThat(metrics.toSummary()).startsWith("Visited 2 nodes (1 pruned) in ")
+            .contains("1 regex evaluations", "1/1 relevant nodes opened/closed", "2 violations (REPLICATION_ACTION_NOT_FOUND: 1, REPLICATION_DATE_NOT_FOUND: 1)",
+                    "rule hits: .*/settings/wcm/policies/.*[wcm/core/components/policy/policy]=1");
+
+        List<String> lines = Files.readAllLines(metricsFile, StandardCharsets.UTF_8);
+        assertEquals(1, lines.size());
+        Assertions.assertThat(lines.get(0)).startsWith("{\"package\":\"group:name:1.0\",\"nodes\":2,\"prunedNodes\":1,\"regexEvaluations\":1,")
+            .contains("\"REPLICATION_DATE_NOT_FOUND\":1", "{\"rule\":\".*/settings/wcm/policies/.*[wcm/core/components/policy/policy]\",\"excluded\":false,\"hits\":1}");
+    }
+
+    @Test
+    void testConcurrentValidators(@TempDir Path tempDir) throws Exception {
+        Path metricsFile = tempDir.resolve("metrics.jsonl");
+        Path reportFile = tempDir.resolve("report.jsonl");
+        Map<String, String> options = new HashMap<>();
+        options.put("metricsFile", metricsFile.toString());
+        options.put("reportFile", reportFile.toString());
+        // shared by all validators just like the cached configuration of the factory
+        ValidatorConfiguration configuration = AemReplicationMetadataValidatorFactory.createConfiguration(options);
+
+        final int packages = 200;
+        final int threads = 16;
+        long packagesBefore = AggregatedMetrics.JVM.getPackages();
+        long nodesBefore = AggregatedMetrics.JVM.getNodes();
+        long violationsBefore = AggregatedMetrics.JVM.getViolations();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < packages; i++) {
+                final int packageIndex = i;
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return validateSyntheticPackage(new AemReplicationMetadataValidator(ValidationMessageSeverity.ERROR, configuration,
+                            "group:package-" + packageIndex + ":1.0"), packageIndex);
+                }));
+            }
+            start.countDown();
+            int expectedViolations = 0;
+            for (int i = 0; i < packages; i++) {
+                // every other policy is outdated
+                int expectedPackageViolations = getSyntheticPolicies(i) / 2;
+                assertEquals(expectedPackageViolations, results.get(i).get(1, TimeUnit.MINUTES), "Violations of package " + i);
+                expectedViolations += expectedPackageViolations;
+            }
+
+            assertEquals(packages, AggregatedMetrics.JVM.getPackages() - packagesBefore);
+            assertEquals(expectedViolations, AggregatedMetrics.JVM.getViolations() - violationsBefore);
+            long expectedNodes = 0;
+            for (int i = 0; i < packages; i++) {
+                expectedNodes += 2 + getSyntheticPolicies(i) * 2L;
+            }
+            assertEquals(expectedNodes, AggregatedMetrics.JVM.getNodes() - nodesBefore);
+            // no interleaved lines
+            Assertions.assertThat(Files.readAllLines(metricsFile, StandardCharsets.UTF_8)).hasSize(packages)
+                .allMatch(line -> line.startsWith("{\"package\":\"group:package-") && line.endsWith("]}"));
+            Assertions.assertThat(Files.readAllLines(reportFile, StandardCharsets.UTF_8)).hasSize(expectedViolations)
+                .allMatch(line -> line.startsWith("{\"package\":\"group:package-") && line.endsWith("}")
+                        && line.contains("\"code\":\"REPLICATION_DATE_OLDER_THAN_COMPARISON_DATE\""));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static int getSyntheticPolicies(int packageIndex) {
+        return packageIndex % 10 + 1;
+    }
+
+    /**
+     * Validates a package consisting of a page and a number of policies below /conf, every other policy being replicated before its last modification.
+     * @return the number of violations
+     */
+    private static int validateSyntheticPackage(AemReplicationMetadataValidator validator, int packageIndex) {
+        int violations = 0;
+        DocViewNode2 page = createNode("page", "jcr:primaryType", "cq:Page");
+        NodeContext pageContext = createNodeContext("/content/site/page-" + packageIndex);
+        DocViewNode2 pageContent = createNode("jcr:content", "jcr:primaryType", "cq:PageContent", "sling:resourceType", "site/components/page");
+        NodeContext pageContentContext = createNodeContext("/content/site/page-" + packageIndex + "/jcr:content");
+        assertNull(validator.validate(page, pageContext, true));
+        assertNull(validator.validate(pageContent, pageContentContext, false));
+        assertNull(validator.validateEnd(pageContent, pageContentContext, false));
+        assertNull(validator.validateEnd(page, pageContext, true));
+        for (int i = 0; i < getSyntheticPolicies(packageIndex); i++) {
+            String policyPath = "/conf/site-" + packageIndex + "/settings/wcm/policies/policy-" + i;
+            DocViewNode2 policy = createNode("policy-" + i, "jcr:primaryType", "nt:unstructured", "sling:resourceType", "wcm/core/components/policy/policy",
+                    "jcr:lastModified", "{Date}" + DatePropertyTest.ISO8601_DATE2);
+            DocViewNode2 content = createNode("jcr:content", "jcr:primaryType", "nt:unstructured", "cq:lastReplicationAction", "Activate",
+                    "cq:lastReplicated", "{Date}" + (i % 2 == 0 ? DatePropertyTest.ISO8601_DATE3 : DatePropertyTest.ISO8601_DATE1));
+            NodeContext policyContext = createNodeContext(policyPath);
+            NodeContext contentContext = createNodeContext(policyPath + "/jcr:content");
+            assertNull(validator.validate(policy, policyContext, true));
+            assertNull(validator.validate(content, contentContext, false));
+            assertNull(validator.validateEnd(content, contentContext, false));
+            Collection<ValidationMessage> messages = validator.validateEnd(policy, policyContext, true);
+            if (messages != null) {
+                violations += messages.size();
+            }
+        }
+        assertNull(validator.done());
+        return violations;
+    }
+
+    @Test
+    void testMaxAgents() {
+        Set<String> agentNames = new LinkedHashSet<>();
+        for (int i = 0; i < NodeMetadata.MAX_AGENTS; i++) {
+            agentNames.add("agent" + i);
+        }
+        assertEquals(NodeMetadata.MAX_AGENTS, new ValidatorConfiguration(Collections.emptyList(), Collections.emptyList(), false, agentNames)
+                .getAgentPropertyNames().size());
+        agentNames.add("oneTooMany");
+        assertThrows(IllegalArgumentException.class, () -> new AemReplicationMetadataValidator(ValidationMessageSeverity.ERROR, Collections.emptyList(),
+                Collections.emptyList(), false, agentNames));
+    }
+
+    @Test
+    void testMaxViolationsPerGroup() {
+        Map<String, String> options = new HashMap<>();
+        options.put("maxViolationsPerGroup", "2");
+        AemReplicationMetadataValidator validator = new AemReplicationMetadataValidator(ValidationMessageSeverity.ERROR,
+                AemReplicationMetadataValidatorFactory.createConfiguration(options));
+        int emittedViolations = 0;
+        for (int i = 0; i < 20; i++) {
+            String policyPath = "/conf/site/settings/wcm/policies/policy-" + i;
+            DocViewNode2 policy = createNode("policy-" + i, "jcr:primaryType", "nt:unstructured", "sling:resourceType", "wcm/core/components/policy/policy",
+                    "jcr:lastModified", "{Date}" + DatePropertyTest.ISO8601_DATE2);
+            DocViewNode2 content = createNode("jcr:content", "jcr:primaryType", "nt:unstructured", "cq:lastReplicationAction", "Activate",
+                    "cq:lastReplicated", "{Date}" + (i % 2 == 0 ? DatePropertyTest.ISO8601_DATE3 : DatePropertyTest.ISO8601_DATE1));
+            NodeContext policyContext = createNodeContext(policyPath);
+            NodeContext contentContext = createNodeContext(policyPath + "/jcr:content");
+            assertNull(validator.validate(policy, policyContext, true));
+            assertNull(validator.validate(content, contentContext, false));
+            assertNull(validator.validateEnd(content, contentContext, false));
+            Collection<ValidationMessage> messages = validator.validateEnd(policy, policyContext, true);
+            if (messages != null) {
+                emittedViolations += messages.size();
+            }
+        }
+        assertEquals(2, emittedViolations);
+        Collection<ValidationMessage> summaries = validator.done();
+        Assertions.assertThat(summaries).singleElement().satisfies(summary -> {
+            assertEquals(ValidationMessageSeverity.ERROR, summary.getSeverity());
+            Assertions.assertThat(summary.getMessage()).startsWith("Suppressed 8 further violation(s) REPLICATION_DATE_OLDER_THAN_COMPARISON_DATE (10 in total) for rule ")
+                .endsWith(", e.g. at /conf/site/settings/wcm/policies/policy-5, /conf/site/settings/wcm/policies/policy-7, "
+                        + "/conf/site/settings/wcm/policies/policy-9, /conf/site/settings/wcm/policies/policy-11, /conf/site/settings/wcm/policies/policy-13");
+        });
+    }
+
+    @Test
+    void testPathPatternStepBudgetExceeded() {
+        Map<String, String> options = new HashMap<>();
+        options.put("includedNodePathPatternsAndTypes", "/(.*x){10}y[cq:Page]");
+        options.put("pathPatternStepBudget", "100000");
+        AemReplicationMetadataValidator validator = new AemReplicationMetadataValidator(ValidationMessageSeverity.WARN,
+                AemReplicationMetadataValidatorFactory.createConfiguration(options));
+        DocViewNode2 page = createNode("xxxxxxxxxxxxxxxxxxxxxxxxxxx", "jcr:primaryType", "cq:Page");
+        NodeContext pageContext = createNodeContext("/xxxxxxxxxxxxxxxxxxxxxxxxxxx");
+        Collection<ValidationMessage> messages = validator.validate(page, pageContext, true);
+        assertEquals(1, messages.size());
+        ValidationMessage message = messages.iterator().next();
+        // independent of the configured severity
+        assertEquals(ValidationMessageSeverity.ERROR, message.getSeverity());
+        // the default excluded pattern shares the same type
+        Assertions.assertThat(message.getMessage()).startsWith("Evaluating the path pattern(s) [/(.*x){10}y, .*/settings/wcm/templates/[^/]*/initial] "
+                + "against path /xxxxxxxxxxxxxxxxxxxxxxxxxxx exceeded the budget of 100000 steps.");
+        assertNull(validator.validateEnd(page, pageContext, true));
+    }
+
+    /** maximum number of bytes allocated by {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)} itself */
+    private static final long ALLOCATION_TOLERANCE_BYTES = 1024;
+
+    @Test
+    void testNoAllocationsForIrrelevantNodes() {
+        java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        Assumptions.assumeTrue(threadMXBean instanceof com.sun.management.ThreadMXBean, "Measuring allocations not supported by this JVM");
+        com.sun.management.ThreadMXBean allocationMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+        Assumptions.assumeTrue(allocationMXBean.isThreadAllocatedMemorySupported() && allocationMXBean.isThreadAllocatedMemoryEnabled(), "Measuring allocations not enabled");
+
+        // typical irrelevant nodes: pages, page content, components and assets outside /conf, irrelevant nodes below /conf
+        List<DocViewNode2> nodes = new ArrayList<>();
+        List<NodeContext> nodeContexts = new ArrayList<>();
+        nodes.add(createNode("page", "jcr:primaryType", "cq:Page"));
+        nodeContexts.add(createNodeContext("/content/site/en/page"));
+        nodes.add(createNode("jcr:content", "jcr:primaryType", "cq:PageContent", "sling:resourceType", "site/components/page"));
+        nodeContexts.add(createNodeContext("/content/site/en/page/jcr:content"));
+        nodes.add(createNode("text", "jcr:primaryType", "nt:unstructured", "sling:resourceType", "site/components/text"));
+        nodeContexts.add(createNodeContext("/content/site/en/page/jcr:content/root/text"));
+        nodes.add(createNode("asset.jpg", "jcr:primaryType", "dam:Asset"));
+        nodeContexts.add(createNodeContext("/content/dam/site/asset.jpg"));
+        nodes.add(createNode("folder", "jcr:primaryType", "nt:folder"));
+        nodeContexts.add(createNodeContext("/conf/site/settings/wcm/folder"));
+        nodes.add(createNode("unknown"));
+        nodeContexts.add(createNodeContext("/content/site/unknown"));
+        // irrelevant nodes below /conf whose types are covered by some rules (i.e. the path patterns need to be evaluated)
+        nodes.add(createNode("container", "jcr:primaryType", "nt:unstructured", "sling:resourceType", "wcm/core/components/policy/policy"));
+        nodeContexts.add(createNodeContext("/conf/site/settings/wcm/templates/template/structure/jcr:content/root/container"));
+        nodes.add(createNode("other", "jcr:primaryType", "cq:Page"));
+        nodeContexts.add(createNodeContext("/conf/site/settings/wcm/templates/template/other"));
+        nodes.add(createNode("segment", "jcr:primaryType", "nt:unstructured", "sling:resourceType", "cq/contexthub/components/segment-page"));
+        nodeContexts.add(createNodeContext("/conf/site/settings/wcm/segments/segment"));
+
+        AemReplicationMetadataValidator validator = createDefaultValidator();
+        // warm up (lazy initialization of reusable matchers and JIT compilation, which allocates some objects while switching between compilation tiers)
+        validateNodes(validator, nodes, nodeContexts, 100_000);
+
+        final int iterations = 100_000;
+        long threadId = Thread.currentThread().getId();
+        long allocatedBytesBefore = allocationMXBean.getThreadAllocatedBytes(threadId);
+        validateNodes(validator, nodes, nodeContexts, iterations);
+        long allocatedBytes = allocationMXBean.getThreadAllocatedBytes(threadId) - allocatedBytesBefore;
+        // the tolerance only covers the allocations of the MXBean itself, a single allocation per node would already exceed it by far
+        Assertions.assertThat(allocatedBytes).as("Bytes allocated for %d irrelevant nodes", (long) iterations * nodes.size()).isLessThanOrEqualTo(ALLOCATION_TOLERANCE_BYTES);
+    }
+
+    private static void validateNodes(AemReplicationMetadataValidator validator, List<DocViewNode2> nodes, List<NodeContext> nodeContexts, int iterations) {
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            for (int i = 0; i < nodes.size(); i++) {
+                if (validator.validate(nodes.get(i), nodeContexts.get(i), false) != null) {
+                    throw new AssertionError("Unexpected validation messages for " + nodeContexts.get(i));
+                }
+                if (validator.validateEnd(nodes.get(i), nodeContexts.get(i), false) != null) {
+                    throw new AssertionError("Unexpected validation messages at end of " + nodeContexts.get(i));
+                }
+            }
+        }
+    }
+}
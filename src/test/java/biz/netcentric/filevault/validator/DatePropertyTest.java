@@ -13,16 +13,10 @@
 package biz.netcentric.filevault.validator;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertFalse;
-import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertNull;
 
-import java.time.Duration;
-import java.time.Instant;
 import java.util.Arrays;
-import java.util.Calendar;
 import java.util.Collections;
-import java.util.Map;
-import java.util.Optional;
 
 import javax.jcr.RepositoryException;
 
@@ -36,6 +30,12 @@ public class DatePropertyTest {
     public static final String ISO8601_DATE1 = "1970-01-01T01:00:10.000+01:00";
     public static final String ISO8601_DATE2 = "2022-01-02T00:00:00.000+01:00";
     public static final String ISO8601_DATE3 = "2024-01-02T00:00:00.000+01:00";
+
+    private static final long CURRENT_TIME_MILLIS = 1700000000000L;
+
+    private final JcrDateParser dateParser = new JcrDateParser(CURRENT_TIME_MILLIS);
+
+    private final PropertyNameIndex.PropertyScan propertyScan = new PropertyNameIndex(Collections.emptyList()).createScan();
     
     @Test
     void testExtractDateModified() throws IllegalStateException, RepositoryException {
@@ -43,28 +43,22 @@ public class DatePropertyTest {
         DocViewProperty2 lastModificationProperty2 = DocViewProperty2.parse(NameConstants.CQ_LAST_MODIFIED, "{Date}"+ISO8601_DATE2);
         DocViewNode2 node = new DocViewNode2(org.apache.jackrabbit.spi.commons.name.NameConstants.JCR_ROOT, Arrays.asList(lastModificationProperty, lastModificationProperty2));
 
-        Optional<Map.Entry<Calendar, String>> result = DateProperty.MODIFIED.extractDate(node);
-        assertTrue(result.isPresent());
-        assertEquals(ISO8601.parse(ISO8601_DATE2).toInstant(), result.get().getKey().toInstant());
-        assertEquals("{http://www.day.com/jcr/cq/1.0}lastModified", result.get().getValue());
+        assertEquals(ISO8601.parse(ISO8601_DATE2).getTimeInMillis(), DateProperty.MODIFIED.extractDate(node, propertyScan.scan(node), dateParser));
+        assertEquals("{http://www.day.com/jcr/cq/1.0}lastModified", propertyScan.getDateLabel());
 
         node = new DocViewNode2(org.apache.jackrabbit.spi.commons.name.NameConstants.JCR_ROOT, Collections.singleton(lastModificationProperty));
-        result = DateProperty.MODIFIED.extractDate(node);
-        assertTrue(result.isPresent());
-        assertEquals(ISO8601.parse(ISO8601_DATE1).toInstant(), result.get().getKey().toInstant());
-        assertEquals("{http://www.jcp.org/jcr/1.0}lastModified", result.get().getValue());
+        assertEquals(ISO8601.parse(ISO8601_DATE1).getTimeInMillis(), DateProperty.MODIFIED.extractDate(node, propertyScan.scan(node), dateParser));
+        assertEquals("{http://www.jcp.org/jcr/1.0}lastModified", propertyScan.getDateLabel());
 
         node = new DocViewNode2(org.apache.jackrabbit.spi.commons.name.NameConstants.JCR_ROOT, Collections.emptySet());
-        assertFalse(DateProperty.MODIFIED.extractDate(node).isPresent());
+        assertEquals(DateProperty.NO_DATE, DateProperty.MODIFIED.extractDate(node, propertyScan.scan(node), dateParser));
+        assertNull(propertyScan.getDateLabel());
 
         // check auto-created property
         DocViewProperty2 primaryTypeProperty = DocViewProperty2.parse(org.apache.jackrabbit.spi.commons.name.NameConstants.JCR_PRIMARYTYPE, "nt:resource");
         node = new DocViewNode2(org.apache.jackrabbit.spi.commons.name.NameConstants.JCR_ROOT, Collections.singleton(primaryTypeProperty));
-        result = DateProperty.MODIFIED.extractDate(node);
-        assertTrue(result.isPresent());
-        long delta = Duration.between(Instant.now(), result.get().getKey().toInstant()).toMillis();
-        assertTrue(delta < 100);
-        assertEquals("auto created {http://www.jcp.org/jcr/1.0}lastModified", result.get().getValue());
+        assertEquals(CURRENT_TIME_MILLIS, DateProperty.MODIFIED.extractDate(node, propertyScan.scan(node), dateParser));
+        assertEquals("auto created {http://www.jcp.org/jcr/1.0}lastModified", propertyScan.getDateLabel());
     }
 
     @Test
@@ -74,37 +68,25 @@ public class DatePropertyTest {
         DocViewProperty2 createdProperty = DocViewProperty2.parse(NameConstants.JCR_CREATED, "{Date}"+ISO8601_DATE3);
         DocViewNode2 node = new DocViewNode2(org.apache.jackrabbit.spi.commons.name.NameConstants.JCR_ROOT, Arrays.asList(createdProperty, lastModificationProperty, lastModificationProperty2));
 
-        Optional<Map.Entry<Calendar, String>> result = DateProperty.MODIFIED_CREATED_OR_CURRENT.extractDate(node);
-        assertTrue(result.isPresent());
-        assertEquals(ISO8601.parse(ISO8601_DATE2).toInstant(), result.get().getKey().toInstant());
-        assertEquals("{http://www.day.com/jcr/cq/1.0}lastModified", result.get().getValue());
+        assertEquals(ISO8601.parse(ISO8601_DATE2).getTimeInMillis(), DateProperty.MODIFIED_CREATED_OR_CURRENT.extractDate(node, propertyScan.scan(node), dateParser));
+        assertEquals("{http://www.day.com/jcr/cq/1.0}lastModified", propertyScan.getDateLabel());
 
         node = new DocViewNode2(org.apache.jackrabbit.spi.commons.name.NameConstants.JCR_ROOT, Collections.singleton(lastModificationProperty));
-        result = DateProperty.MODIFIED_CREATED_OR_CURRENT.extractDate(node);
-        assertTrue(result.isPresent());
-        assertEquals(ISO8601.parse(ISO8601_DATE1).toInstant(), result.get().getKey().toInstant());
-        assertEquals("{http://www.jcp.org/jcr/1.0}lastModified", result.get().getValue());
+        assertEquals(ISO8601.parse(ISO8601_DATE1).getTimeInMillis(), DateProperty.MODIFIED_CREATED_OR_CURRENT.extractDate(node, propertyScan.scan(node), dateParser));
+        assertEquals("{http://www.jcp.org/jcr/1.0}lastModified", propertyScan.getDateLabel());
 
         node = new DocViewNode2(org.apache.jackrabbit.spi.commons.name.NameConstants.JCR_ROOT, Collections.singleton(createdProperty));
-        result = DateProperty.MODIFIED_CREATED_OR_CURRENT.extractDate(node);
-        assertTrue(result.isPresent());
-        assertEquals(ISO8601.parse(ISO8601_DATE3).toInstant(), result.get().getKey().toInstant());
-        assertEquals("{http://www.jcp.org/jcr/1.0}created", result.get().getValue());
+        assertEquals(ISO8601.parse(ISO8601_DATE3).getTimeInMillis(), DateProperty.MODIFIED_CREATED_OR_CURRENT.extractDate(node, propertyScan.scan(node), dateParser));
+        assertEquals("{http://www.jcp.org/jcr/1.0}created", propertyScan.getDateLabel());
 
         node = new DocViewNode2(org.apache.jackrabbit.spi.commons.name.NameConstants.JCR_ROOT, Collections.emptySet());
-        result = DateProperty.MODIFIED_CREATED_OR_CURRENT.extractDate(node);
-        assertTrue(result.isPresent());
-        long delta = Duration.between(Instant.now(), result.get().getKey().toInstant()).toMillis();
-        assertTrue(delta < 100);
-        assertEquals("current date", result.get().getValue());
+        assertEquals(CURRENT_TIME_MILLIS, DateProperty.MODIFIED_CREATED_OR_CURRENT.extractDate(node, propertyScan.scan(node), dateParser));
+        assertEquals("current date", propertyScan.getDateLabel());
 
         // check auto-created property
         DocViewProperty2 primaryTypeProperty = DocViewProperty2.parse(org.apache.jackrabbit.spi.commons.name.NameConstants.JCR_PRIMARYTYPE, "cq:PageContent");
         node = new DocViewNode2(org.apache.jackrabbit.spi.commons.name.NameConstants.JCR_ROOT, Collections.singleton(primaryTypeProperty));
-        result = DateProperty.MODIFIED_CREATED_OR_CURRENT.extractDate(node);
-        assertTrue(result.isPresent());
-        delta = Duration.between(Instant.now(), result.get().getKey().toInstant()).toMillis();
-        assertTrue(delta < 100);
-        assertEquals("auto created {http://www.jcp.org/jcr/1.0}created", result.get().getValue());
+        assertEquals(CURRENT_TIME_MILLIS, DateProperty.MODIFIED_CREATED_OR_CURRENT.extractDate(node, propertyScan.scan(node), dateParser));
+        assertEquals("auto created {http://www.jcp.org/jcr/1.0}created", propertyScan.getDateLabel());
     }
 }
@@ -0,0 +1,136 @@
+/*-
+ * #%L
+ * AEM Replication Metadata Validator
+ * %%
+ * Copyright (C) 2024 Cognizant Netcentric
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package biz.netcentric.filevault.validator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DocViewFixerTest {
+
+    private static final AgentPropertyNames PUBLISH = new AgentPropertyNames("publish");
+    private static final AgentPropertyNames PREVIEW = new AgentPropertyNames("preview");
+    private static final long FIX_DATE = 1_641_078_000_000L;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testFix() throws IOException {
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\r\n"
+                + "<!-- some <jcr:content> comment -->\r\n"
+                + "<jcr:root xmlns:cq=\"http://www.day.com/jcr/cq/1.0\" xmlns:jcr=\"http://www.jcp.org/jcr/1.0\"\r\n"
+                + "    jcr:primaryType=\"cq:Page\">\r\n"
+                + "    <jcr:content\r\n"
+                + "        cq:lastReplicated=\"{Date}2020-01-01T00:00:00.000+01:00\"\r\n"
+                + "        jcr:primaryType=\"cq:PageContent\"\r\n"
+                + "        jcr:title=\"a &gt; b > c ä\"/>\r\n"
+                + "    <child jcr:primaryType=\"cq:Page\"><jcr:content jcr:primaryType=\"cq:PageContent\" cq:lastReplicationAction='Activate' "
+                + "cq:lastReplicated_preview=\"{Date}2020-01-01T00:00:00.000+01:00\" cq:lastPublished_preview=\"{Date}2020-01-01T00:00:00.000+01:00\">"
+                + "<![CDATA[<jcr:content>]]></jcr:content></child>\r\n"
+                + "</jcr:root>\r\n";
+        Path file = writeFile(xml);
+        ReplicationMetadataFix activate = new ReplicationMetadataFix("/conf/page/jcr:content");
+        activate.activate(PUBLISH);
+        activate.setReplicationDate(PUBLISH, FIX_DATE);
+        ReplicationMetadataFix remove = new ReplicationMetadataFix("/conf/page/child/jcr:content");
+        remove.removeReplicationAction(PUBLISH);
+        remove.removeReplicationDates(PREVIEW);
+        ReplicationMetadataFix missing = new ReplicationMetadataFix("/conf/page/missing/jcr:content");
+        missing.activate(PUBLISH);
+        assertEquals(2, DocViewFixer.fix(file, "/conf/page", Arrays.asList(activate, remove, missing)));
+
+        String expectedXml = xml.replace("{Date}2020-01-01T00:00:00.000+01:00\"\r\n", "{Date}2022-01-01T23:00:00.000Z\"\r\n")
+                .replace("c ä\"/>", "c ä\"\r\n        cq:lastReplicationAction=\"Activate\"/>")
+                .replace(" cq:lastReplicationAction='Activate' cq:lastReplicated_preview=\"{Date}2020-01-01T00:00:00.000+01:00\" cq:lastPublished_preview=\"{Date}2020-01-01T00:00:00.000+01:00\">",
+                        ">");
+        assertEquals(expectedXml, new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+        assertNoTemporaryFiles();
+    }
+
+    @Test
+    void testFixWithUndeclaredNamespace() throws IOException {
+        Path file = writeFile("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<jcr:root xmlns:jcr=\"http://www.jcp.org/jcr/1.0\" xmlns:cq=\"http://example.com/other\" jcr:primaryType=\"sling:Folder\">\n"
+                + "    <policy jcr:primaryType=\"nt:unstructured\"/>\n"
+                + "</jcr:root>\n");
+        ReplicationMetadataFix fix = new ReplicationMetadataFix("/conf/policies/policy");
+        fix.activate(PREVIEW);
+        assertEquals(1, DocViewFixer.fix(file, "/conf/policies", Collections.singletonList(fix)));
+        Assertions.assertThat(new String(Files.readAllBytes(file), StandardCharsets.UTF_8))
+            .contains("<policy jcr:primaryType=\"nt:unstructured\" xmlns:cq1=\"http://www.day.com/jcr/cq/1.0\" cq1:lastReplicationAction_preview=\"Activate\"/>");
+    }
+
+    @Test
+    void testPermissionsArePreserved() throws IOException {
+        Path file = writeFile("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<jcr:root xmlns:jcr=\"http://www.jcp.org/jcr/1.0\" jcr:primaryType=\"nt:unstructured\"/>\n");
+        Assumptions.assumeTrue(Files.getFileAttributeView(file, PosixFileAttributeView.class) != null, "POSIX file permissions not supported");
+        Set<PosixFilePermission> permissions = PosixFilePermissions.fromString("rw-rw-r--");
+        Files.setPosixFilePermissions(file, permissions);
+        ReplicationMetadataFix fix = new ReplicationMetadataFix("/conf/policy");
+        fix.activate(PUBLISH);
+        assertEquals(1, DocViewFixer.fix(file, "/conf/policy", Collections.singletonList(fix)));
+        assertEquals(permissions, Files.getPosixFilePermissions(file));
+    }
+
+    @Test
+    void testNothingToFix() throws IOException {
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<jcr:root xmlns:jcr=\"http://www.jcp.org/jcr/1.0\" jcr:primaryType=\"sling:Folder\"/>\n";
+        Path file = writeFile(xml);
+        ReplicationMetadataFix fix = new ReplicationMetadataFix("/conf/other");
+        fix.activate(PUBLISH);
+        assertEquals(0, DocViewFixer.fix(file, "/conf/policies", Collections.singletonList(fix)));
+        assertEquals(xml, new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+        assertNoTemporaryFiles();
+    }
+
+    @Test
+    void testMalformedInput() throws IOException {
+        Path file = tempDir.resolve(".content.xml");
+        byte[] content = new byte[] { '<', 'a', ' ', 'b', '=', '"', (byte) 0xC3, '"', '/', '>' };
+        Files.write(file, content);
+        ReplicationMetadataFix fix = new ReplicationMetadataFix("/a");
+        fix.activate(PUBLISH);
+        Assertions.assertThatIOException().isThrownBy(() -> DocViewFixer.fix(file, "/a", Collections.singletonList(fix)));
+        assertEquals(Arrays.toString(content), Arrays.toString(Files.readAllBytes(file)));
+        assertNoTemporaryFiles();
+    }
+
+    private Path writeFile(String xml) throws IOException {
+        Path file = tempDir.resolve(".content.xml");
+        Files.write(file, xml.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private void assertNoTemporaryFiles() throws IOException {
+        try (Stream<Path> files = Files.list(tempDir)) {
+            Assertions.assertThat(files).containsExactly(tempDir.resolve(".content.xml"));
+        }
+    }
+}
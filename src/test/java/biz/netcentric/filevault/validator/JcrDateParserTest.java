@@ -0,0 +1,90 @@
+/*-
+ * #%L
+ * AEM Replication Metadata Validator
+ * %%
+ * Copyright (C) 2024 Cognizant Netcentric
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package biz.netcentric.filevault.validator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Calendar;
+import java.util.Random;
+import java.util.TimeZone;
+
+import javax.jcr.ValueFormatException;
+
+import org.apache.jackrabbit.util.ISO8601;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class JcrDateParserTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            DatePropertyTest.ISO8601_DATE1,
+            DatePropertyTest.ISO8601_DATE2,
+            DatePropertyTest.ISO8601_DATE3,
+            "2022-01-02T00:00:00.000Z",
+            "2024-02-29T23:59:59.999-11:30",
+            "2000-02-29T12:00:00.000+14:00",
+            "1583-01-01T00:00:00.000Z",
+            "9999-12-31T23:59:59.999Z",
+            // the following are not handled by the fast path
+            "1500-01-02T00:00:00.000Z",
+            "+2022-01-02T00:00:00.000Z",
+            "-0001-01-02T00:00:00.000Z",
+            "2022-01-02T00:00:00.000-00:00" })
+    void testParseValidDate(String value) throws ValueFormatException {
+        JcrDateParser dateParser = new JcrDateParser();
+        assertEquals(ISO8601.parse(value).getTimeInMillis(), dateParser.parse(value));
+        // once more from cache
+        assertEquals(ISO8601.parse(value).getTimeInMillis(), dateParser.parse(value));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "",
+            "2022-01-02",
+            "2022-01-02T00:00:00Z",
+            "2022-01-02T00:00:00.00Z",
+            "2022-02-29T00:00:00.000Z",
+            "2022-13-02T00:00:00.000Z",
+            "2022-01-02T24:00:00.000Z",
+            "2022-01-02T00:00:60.000Z",
+            "2022-01-02T00:00:00.000+0100",
+            "2022-01-02T00:00:00.000GMT+01:00",
+            "2022-01-02 00:00:00.000Z",
+            "2022-0a-02T00:00:00.000Z" })
+    void testParseInvalidDate(String value) {
+        JcrDateParser dateParser = new JcrDateParser();
+        assertThrows(ValueFormatException.class, () -> dateParser.parse(value));
+    }
+
+    @Test
+    void testParseFastMatchesISO8601() {
+        Random random = new Random(42);
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        for (int i = 0; i < 10_000; i++) {
+            calendar.setTimeInMillis(-11_000_000_000_000L + (long) (random.nextDouble() * 260_000_000_000_000L));
+            String[] timeZoneIds = TimeZone.getAvailableIDs();
+            calendar.setTimeZone(TimeZone.getTimeZone(timeZoneIds[random.nextInt(timeZoneIds.length)]));
+            String value = ISO8601.format(calendar);
+            // the formatted value may lose precision for historical time zone offsets with seconds
+            assertEquals(ISO8601.parse(value).getTimeInMillis(), JcrDateParser.parseFast(value), "Unexpected result for " + value);
+        }
+    }
+
+    @Test
+    void testCurrentTimeMillis() {
+        assertEquals(1234L, new JcrDateParser(1234L).getCurrentTimeMillis());
+    }
+}
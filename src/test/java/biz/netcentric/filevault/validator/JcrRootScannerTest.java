@@ -0,0 +1,227 @@
+/*-
+ * #%L
+ * AEM Replication Metadata Validator
+ * %%
+ * Copyright (C) 2024 Cognizant Netcentric
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package biz.netcentric.filevault.validator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.jackrabbit.vault.fs.io.DocViewParser;
+import org.apache.jackrabbit.vault.fs.io.DocViewParser.XmlParseException;
+import org.apache.jackrabbit.vault.fs.io.DocViewParserHandler;
+import org.apache.jackrabbit.vault.util.DocViewNode2;
+import org.apache.jackrabbit.vault.validation.ValidationViolation;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessage;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessageSeverity;
+import org.apache.jackrabbit.vault.validation.spi.util.NodeContextImpl;
+import org.assertj.core.api.Assertions;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.xml.sax.InputSource;
+
+class JcrRootScannerTest {
+
+    @TempDir
+    Path tempDir;
+
+    @ParameterizedTest
+    @ValueSource(strings = { "src/it/project1/application-package/src/main/jcr_root", "src/it/project1/content-package/src/main/jcr_root",
+            "src/it/project2/application-package/src/main/jcr_root", "src/it/project2/content-package/src/main/jcr_root" })
+    void testSameViolationsAsDocViewParser(String jcrRoot) throws IOException, XmlParseException {
+        JcrRootScanner scanner = new JcrRootScanner(ValidationMessageSeverity.ERROR, Collections.emptyMap(), 4);
+        List<String> expectedViolations = validateWithDocViewParser(Paths.get(jcrRoot));
+        List<String> actualViolations = toStrings(scanner.scan(Paths.get(jcrRoot)).getViolations());
+        assertEquals(expectedViolations, actualViolations);
+    }
+
+    @Test
+    void testNumberOfViolations() throws IOException {
+        JcrRootScanner scanner = new JcrRootScanner(ValidationMessageSeverity.ERROR, Collections.emptyMap(), 1);
+        List<ValidationViolation> violations = scanner.scan(Paths.get("src/it/project1/content-package/src/main/jcr_root")).getViolations();
+        assertEquals(8, violations.size());
+        Assertions.assertThat(violations).extracting(ValidationViolation::getNodePath, ValidationViolation::getLine, ValidationViolation::getColumn)
+            .contains(Assertions.tuple("/conf/example/settings/wcm/templates/template1/jcr:content", 8, 27),
+                    Assertions.tuple("/conf/example/my-segment/jcr:content", 19, 19));
+    }
+
+    @Test
+    void testCache() throws IOException {
+        Path jcrRoot = Paths.get("src/it/project1/content-package/src/main/jcr_root");
+        Path cacheFile = tempDir.resolve("validation.cache");
+        JcrRootScanner scanner = new JcrRootScanner(ValidationMessageSeverity.ERROR, Collections.emptyMap(), 2, cacheFile);
+        List<String> violations = toStrings(scanner.scan(jcrRoot).getViolations());
+        Assertions.assertThat(cacheFile).exists();
+        assertEquals(violations, toStrings(scanner.scan(jcrRoot).getViolations()));
+        // a different configuration invalidates the cache
+        JcrRootScanner previewScanner = new JcrRootScanner(ValidationMessageSeverity.ERROR, Collections.singletonMap("agentNames", "preview"), 2, cacheFile);
+        Assertions.assertThat(toStrings(previewScanner.scan(jcrRoot).getViolations())).isNotEqualTo(violations);
+    }
+
+    @Test
+    void testReport() throws IOException {
+        Path jcrRoot = Paths.get("src/it/project1/content-package/src/main/jcr_root");
+        Path reportFile = tempDir.resolve("report.jsonl");
+        JcrRootScanner scanner = new JcrRootScanner(ValidationMessageSeverity.ERROR, Collections.singletonMap("reportFile", reportFile.toString()), 2,
+                tempDir.resolve("validation.cache"));
+        scanner.scan(jcrRoot);
+        List<String> lines = Files.readAllLines(reportFile, StandardCharsets.UTF_8);
+        Assertions.assertThat(lines).hasSize(8)
+            .anySatisfy(line -> Assertions.assertThat(line).contains("\"line\":19,\"column\":19,\"nodePath\":\"/conf/example/my-segment/jcr:content\""));
+        // violations replayed from the cache are reported as well (with their position but without details)
+        scanner.scan(jcrRoot);
+        Assertions.assertThat(Files.readAllLines(reportFile, StandardCharsets.UTF_8)).hasSize(16).last().asString()
+            .contains("\"line\":", "\"severity\":\"ERROR\",\"message\":");
+    }
+
+    @Test
+    void testFix() throws IOException {
+        Path sourceJcrRoot = Paths.get("src/it/project1/content-package/src/main/jcr_root");
+        Path jcrRoot = tempDir.resolve("jcr_root");
+        try (Stream<Path> paths = Files.walk(sourceJcrRoot)) {
+            for (Path path : paths.collect(Collectors.toList())) {
+                Files.copy(path, jcrRoot.resolve(sourceJcrRoot.relativize(path).toString()));
+            }
+        }
+        Map<String, String> options = Collections.singletonMap("agentNames", "publish,preview");
+        Assertions.assertThat(new JcrRootScanner(ValidationMessageSeverity.ERROR, options, 2).scan(jcrRoot).getViolations()).hasSize(18);
+        assertEquals(Collections.emptyList(), new JcrRootScanner(ValidationMessageSeverity.ERROR, options, 2, null, true).scan(jcrRoot).getViolations());
+        assertEquals(Collections.emptyList(), new JcrRootScanner(ValidationMessageSeverity.ERROR, options, 2).scan(jcrRoot).getViolations());
+        String initial = new String(Files.readAllBytes(jcrRoot.resolve("conf/example/settings/wcm/templates/template1/initial/.content.xml")), StandardCharsets.UTF_8);
+        Assertions.assertThat(initial).doesNotContain("cq:lastReplicated=", "cq:lastReplicated_preview=", "cq:lastReplicationAction=")
+            // not used by any of the configured agents
+            .contains("        jcr:primaryType=\"cq:PageContent\"\n        cq:lastReplicated_publish=");
+        String segment = new String(Files.readAllBytes(jcrRoot.resolve("conf/example/my-segment/.content.xml")), StandardCharsets.UTF_8);
+        Assertions.assertThat(segment).contains("        segmentName=\"new-segment\"\n        cq:lastReplicationAction=\"Activate\"\n        cq:lastReplicated=\"{Date}",
+                "cq:lastReplicationAction_preview=\"Activate\"");
+    }
+
+    @Test
+    void testCli() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int exitCode = PackageScannerCli.run(new String[] { "--jcr-root", "src/it/project1/content-package/src/main/jcr_root" },
+                new PrintStream(out, true, StandardCharsets.UTF_8.name()), System.err);
+        assertEquals(PackageScannerCli.EXIT_CODE_VIOLATIONS, exitCode);
+        List<String> lines = Arrays.asList(new String(out.toByteArray(), StandardCharsets.UTF_8).split("\\r?\\n"));
+        Assertions.assertThat(lines).hasSize(9);
+        Assertions.assertThat(lines.get(8)).isEqualTo("Validated 0 package(s) and 1 jcr_root directory, found 8 violation(s)");
+    }
+
+    @Test
+    void testFixFailure() throws IOException {
+        Path jcrRoot = tempDir.resolve("jcr_root");
+        Path policies = jcrRoot.resolve("conf/example/settings/wcm/policies");
+        Files.createDirectories(policies.resolve("policy1"));
+        Files.createDirectories(policies.resolve("policy2"));
+        String policy = "<?xml version=\"1.0\" encoding=\"%s\"?>\n<jcr:root xmlns:jcr=\"http://www.jcp.org/jcr/1.0\" xmlns:sling=\"http://sling.apache.org/jcr/sling/1.0\"\n"
+                + "    jcr:primaryType=\"nt:unstructured\"\n    jcr:title=\"Gr\u00fc\u00dfe\"\n    sling:resourceType=\"wcm/core/components/policy/policy\"/>\n";
+        // only UTF-8 encoded files can be fixed
+        Files.write(policies.resolve("policy1/.content.xml"), String.format(policy, "ISO-8859-1").getBytes(StandardCharsets.ISO_8859_1));
+        Files.write(policies.resolve("policy2/.content.xml"), String.format(policy, "UTF-8").getBytes(StandardCharsets.UTF_8));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int exitCode = PackageScannerCli.run(new String[] { "--fix", "--jcr-root", jcrRoot.toString() },
+                new PrintStream(out, true, StandardCharsets.UTF_8.name()), System.err);
+        assertEquals(PackageScannerCli.EXIT_CODE_VIOLATIONS, exitCode);
+        List<String> lines = Arrays.asList(new String(out.toByteArray(), StandardCharsets.UTF_8).split("\\r?\\n"));
+        Assertions.assertThat(lines).hasSize(2);
+        Assertions.assertThat(lines.get(0)).startsWith("[ERROR] " + jcrRoot + ": conf/example/settings/wcm/policies/policy1/.content.xml: Could not validate file: ");
+        // the other file is still fixed
+        Assertions.assertThat(new String(Files.readAllBytes(policies.resolve("policy2/.content.xml")), StandardCharsets.UTF_8)).contains("cq:lastReplicationAction=\"Activate\"");
+    }
+
+    @Test
+    void testInvalidXmlAndIrrelevantFilter() throws IOException {
+        Path jcrRoot = tempDir.resolve("jcr_root");
+        Path policies = jcrRoot.resolve("conf/example/settings/wcm/policies");
+        Files.createDirectories(policies);
+        Files.write(policies.resolve(".content.xml"), "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<jcr:root xmlns:jcr=\"http://www.jcp.org/jcr/1.0\">"
+                .getBytes(StandardCharsets.UTF_8));
+        JcrRootScanner scanner = new JcrRootScanner(ValidationMessageSeverity.ERROR, Collections.emptyMap(), 1);
+        List<ValidationViolation> violations = scanner.scan(jcrRoot).getViolations();
+        assertEquals(1, violations.size());
+        Assertions.assertThat(violations.get(0).getMessage()).contains("Invalid XML found");
+
+        // a filter which doesn't cover any of the root paths
+        Path vaultDirectory = tempDir.resolve("META-INF/vault");
+        Files.createDirectories(vaultDirectory);
+        Files.write(vaultDirectory.resolve("filter.xml"), "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<workspaceFilter version=\"1.0\"><filter root=\"/content/example\"/></workspaceFilter>"
+                .getBytes(StandardCharsets.UTF_8));
+        assertEquals(Collections.emptyList(), scanner.scan(jcrRoot).getViolations());
+    }
+
+    /**
+     * Reference implementation using the {@link DocViewParser} with fully materialized nodes.
+     */
+    private static @NotNull List<String> validateWithDocViewParser(@NotNull Path jcrRoot) throws IOException, XmlParseException {
+        ValidatorConfiguration configuration = new AemReplicationMetadataValidatorFactory().getConfiguration(Collections.emptyMap());
+        List<ValidationViolation> violations = new ArrayList<>();
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(jcrRoot)) {
+            files = paths.filter(path -> path.toString().endsWith(".xml")).sorted().collect(Collectors.toList());
+        }
+        for (Path file : files) {
+            Path filePath = jcrRoot.relativize(file);
+            AemReplicationMetadataValidator validator = new AemReplicationMetadataValidator(ValidationMessageSeverity.ERROR, configuration);
+            try (InputStream input = new BufferedInputStream(Files.newInputStream(file))) {
+                String rootNodePath = DocViewParser.getDocumentViewXmlRootNodePath(input, filePath);
+                if (rootNodePath == null) {
+                    continue;
+                }
+                new DocViewParser().parse(rootNodePath, new InputSource(input), new DocViewParserHandler() {
+                    @Override
+                    public void startDocViewNode(@NotNull String nodePath, @NotNull DocViewNode2 docViewNode, @NotNull Optional<DocViewNode2> parentDocViewNode, int line, int column) {
+                        addViolations(validator.validate(docViewNode, new NodeContextImpl(nodePath, filePath, jcrRoot), !parentDocViewNode.isPresent()), nodePath, line, column);
+                    }
+
+                    @Override
+                    public void endDocViewNode(@NotNull String nodePath, @NotNull DocViewNode2 docViewNode, @NotNull Optional<DocViewNode2> parentDocViewNode, int line, int column) {
+                        addViolations(validator.validateEnd(docViewNode, new NodeContextImpl(nodePath, filePath, jcrRoot), !parentDocViewNode.isPresent()), nodePath, line, column);
+                    }
+
+                    private void addViolations(Collection<ValidationMessage> messages, String nodePath, int line, int column) {
+                        if (messages != null) {
+                            violations.addAll(ValidationViolation.wrapMessages("netcentric-aem-replication-metadata", messages, filePath, jcrRoot, nodePath, line, column));
+                        }
+                    }
+                });
+            }
+        }
+        return toStrings(violations);
+    }
+
+    private static @NotNull List<String> toStrings(@NotNull List<ValidationViolation> violations) {
+        return violations.stream()
+                .map(violation -> violation.getSeverity() + " " + violation.getFilePath() + ":" + violation.getLine() + ":" + violation.getColumn() + " "
+                        + violation.getNodePath() + " " + violation.getMessage())
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,87 @@
+/*-
+ * #%L
+ * AEM Replication Metadata Validator
+ * %%
+ * Copyright (C) 2024 Cognizant Netcentric
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package biz.netcentric.filevault.validator;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class LiteralPrefilterTest {
+
+    @Test
+    void testGetRequiredLiterals() {
+        Assertions.assertThat(LiteralPrefilter.getRequiredLiterals(".*/settings/wcm/templates/[^/]*")).containsExactly("/settings/wcm/templates/");
+        Assertions.assertThat(LiteralPrefilter.getRequiredLiterals("/(apps|conf)/.*/(sling:configs|settings/cloudconfigs)/.*")).isEmpty();
+        Assertions.assertThat(LiteralPrefilter.getRequiredLiterals("/(apps|conf)/.*/jcr:content")).containsExactly("/jcr:content");
+        Assertions.assertThat(LiteralPrefilter.getRequiredLiterals(".*/settings/wcm/templates/[^/]*/initial")).containsExactly("/settings/wcm/templates/", "/initial");
+        // optional atoms and quantifiers
+        Assertions.assertThat(LiteralPrefilter.getRequiredLiterals("/conf/sites?/.*")).containsExactly("/conf/site");
+        Assertions.assertThat(LiteralPrefilter.getRequiredLiterals("/conf/ab+c/x{2,3}yz")).containsExactly("/conf/ab", "c/", "yz");
+        Assertions.assertThat(LiteralPrefilter.getRequiredLiterals("/conf/(a|b)*?test")).containsExactly("/conf/", "test");
+        // character classes containing brackets and escaped meta characters
+        Assertions.assertThat(LiteralPrefilter.getRequiredLiterals("[]a]/ab\\.c[^]]x\\dyz")).containsExactly("/ab.c", "yz");
+        // unsupported constructs
+        Assertions.assertThat(LiteralPrefilter.getRequiredLiterals("/conf/.*|/apps/.*")).isEmpty();
+        Assertions.assertThat(LiteralPrefilter.getRequiredLiterals("(?i)/conf/.*")).isEmpty();
+        Assertions.assertThat(LiteralPrefilter.getRequiredLiterals("\\Q/conf\\E/.*")).isEmpty();
+        Assertions.assertThat(LiteralPrefilter.getRequiredLiterals("/conf/\\u0041bc")).containsExactly("/conf/");
+    }
+
+    @Test
+    void testFind() {
+        LiteralPrefilter prefilter = new LiteralPrefilter(Arrays.asList("/settings/wcm/templates/", "/initial", "/jcr:content", "content", "ü/ä"));
+        long[] foundLiterals = prefilter.createBitSet();
+        prefilter.find("/conf/site/settings/wcm/templates/page/initial/jcr:content", foundLiterals);
+        assertTrue(LiteralPrefilter.containsAll(foundLiterals, prefilter.createBitSet(Arrays.asList(0, 1, 2, 3))));
+        assertFalse(LiteralPrefilter.containsAll(foundLiterals, prefilter.createBitSet(Arrays.asList(0, 4))));
+        // overlapping literals (found via failure links)
+        prefilter.find("/conf/settings/wcm/template/settings/wcm/templates/x", foundLiterals);
+        assertTrue(LiteralPrefilter.containsAll(foundLiterals, prefilter.createBitSet(Arrays.asList(0))));
+        assertFalse(LiteralPrefilter.containsAll(foundLiterals, prefilter.createBitSet(Arrays.asList(1))));
+        prefilter.find("/content/dam/ü/ä", foundLiterals);
+        assertTrue(LiteralPrefilter.containsAll(foundLiterals, prefilter.createBitSet(Arrays.asList(3, 4))));
+        assertFalse(LiteralPrefilter.containsAll(foundLiterals, prefilter.createBitSet(Arrays.asList(2))));
+        // no literals required
+        assertTrue(LiteralPrefilter.containsAll(foundLiterals, prefilter.createBitSet()));
+    }
+
+    @Test
+    void testNoFalseNegatives() {
+        List<String> regexes = Arrays.asList(".*/settings/wcm/templates/[^/]*", ".*/settings/wcm/templates/[^/]*/initial", "/(apps|conf)/.*/jcr:content",
+                ".*/a+b/c?d/.*", ".*/x[/y]z\\.json", ".*/(?:foo|bar)baz/.*");
+        Map<String, Set<Integer>> requiredLiteralIds = new HashMap<>();
+        LiteralPrefilter prefilter = LiteralPrefilter.create(regexes, requiredLiteralIds);
+        List<String> paths = Arrays.asList("/conf/site/settings/wcm/templates/page", "/conf/site/settings/wcm/templates/page/initial", "/apps/site/jcr:content",
+                "/content/aaab/d/e", "/content/ab/cd/e", "/content/x/z.json", "/content/xyz.json", "/content/foobaz/x", "/content/barbaz/x");
+        long[] foundLiterals = prefilter.createBitSet();
+        for (String regex : regexes) {
+            Pattern pattern = Pattern.compile(regex);
+            long[] requiredLiterals = prefilter.createBitSet(requiredLiteralIds.get(regex));
+            for (String path : paths) {
+                prefilter.find(path, foundLiterals);
+                if (pattern.matcher(path).matches()) {
+                    assertTrue(LiteralPrefilter.containsAll(foundLiterals, requiredLiterals), "Prefilter rejects path " + path + " matching " + regex);
+                }
+            }
+        }
+    }
+}
@@ -13,17 +13,148 @@
 package biz.netcentric.filevault.validator;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import javax.jcr.RepositoryException;
+
+import org.apache.jackrabbit.vault.util.DocViewNode2;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessage;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessageSeverity;
+import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.Test;
 
 class NodeMetadataTest {
 
+    private static final List<AgentPropertyNames> AGENT_PROPERTY_NAMES = Collections.singletonList(new AgentPropertyNames(ReplicationMetadata.DEFAULT_AGENT_NAME));
+    private static final PropertyNameIndex PROPERTY_NAME_INDEX = new PropertyNameIndex(AGENT_PROPERTY_NAMES);
+
     @Test
     void testGetPath() {
-        NodeMetadata nodeMetadata = new NodeMetadata(true, "my/path", false, DateProperty.MODIFIED);
+        NodeMetadata nodeMetadata = new NodeMetadata(true, "my/path", 1, DateProperty.MODIFIED);
         assertEquals("my/path", nodeMetadata.getPath());
         assertTrue(nodeMetadata.isExcluded);
     }
 
+    @Test
+    void testInvalidReplicationMetadata() {
+        NodeMetadata nodeMetadata = new NodeMetadata(false, "my/path", 1, DateProperty.MODIFIED);
+        DocViewNode2 node = AemReplicationMetadataValidatorTest.createNode("jcr:content", "cq:lastReplicationAction", "Unknown", "cq:lastReplicated", "invalid");
+        nodeMetadata.captureReplicationMetadata(PROPERTY_NAME_INDEX.createScan().scan(node), new JcrDateParser());
+        Collection<ValidationMessage> messages = nodeMetadata.validate(ValidationMessageSeverity.ERROR, AGENT_PROPERTY_NAMES, false);
+        List<String> texts = new ArrayList<>();
+        messages.forEach(m -> texts.add(m.getMessage()));
+        assertEquals(2, texts.size());
+        assertEquals("No replication action set for agent publish: No replication property found with name {http://www.day.com/jcr/cq/1.0}lastReplicationAction", texts.get(0));
+        assertEquals("No replication date set for agent publish: No replication property found with name {http://www.day.com/jcr/cq/1.0}lastReplicated", texts.get(1));
+
+        // invalid replication actions are no replication metadata for excluded paths
+        nodeMetadata = new NodeMetadata(true, "my/path", 1, DateProperty.MODIFIED);
+        nodeMetadata.captureReplicationMetadata(PROPERTY_NAME_INDEX.createScan()
+                .scan(AemReplicationMetadataValidatorTest.createNode("jcr:content", "cq:lastReplicationAction", "Unknown")), new JcrDateParser());
+        assertTrue(nodeMetadata.validate(ValidationMessageSeverity.ERROR, AGENT_PROPERTY_NAMES, false).isEmpty());
+    }
+
+    @Test
+    void testExcludedNodeWithInvalidReplicationDate() {
+        NodeMetadata nodeMetadata = new NodeMetadata(true, "my/path", 1, DateProperty.MODIFIED);
+        nodeMetadata.captureReplicationMetadata(PROPERTY_NAME_INDEX.createScan()
+                .scan(AemReplicationMetadataValidatorTest.createNode("jcr:content", "cq:lastPublished", "invalid")), new JcrDateParser());
+        Collection<ValidationMessage> messages = nodeMetadata.validate(ValidationMessageSeverity.ERROR, AGENT_PROPERTY_NAMES, false);
+        Assertions.assertThat(messages).singleElement().satisfies(m -> {
+            assertEquals(Violation.Code.REPLICATION_DATE_NOT_ALLOWED, ((Violation) m).getCode());
+            assertEquals("Last replication date not allowed for this path but is set to an invalid value in {http://www.day.com/jcr/cq/1.0}lastPublished",
+                    m.getMessage());
+        });
+        // the fix removes the invalid date
+        ReplicationMetadataFix fix = nodeMetadata.createFix(messages, 0L);
+        assertNotNull(fix);
+        Assertions.assertThat(fix.getPropertiesToRemove()).containsAll(AGENT_PROPERTY_NAMES.get(0).getLastReplicationDateNames());
+    }
+
+    @Test
+    void testMultipleAgents() {
+        List<AgentPropertyNames> agentPropertyNames = new ArrayList<>();
+        for (String agentName : new String[] { "publish", "preview", "agent1", "agent2", "agent3", "agent4" }) {
+            agentPropertyNames.add(new AgentPropertyNames(agentName));
+        }
+        PropertyNameIndex propertyNameIndex = new PropertyNameIndex(agentPropertyNames);
+        List<String> propertyNamesAndValues = new ArrayList<>();
+        for (String suffix : new String[] { "", "_preview", "_agent1", "_agent2", "_agent3", "_agent4" }) {
+            propertyNamesAndValues.add("cq:lastReplicationAction" + suffix);
+            propertyNamesAndValues.add("Activate");
+            propertyNamesAndValues.add("cq:lastReplicated" + suffix);
+            propertyNamesAndValues.add("{Date}" + DatePropertyTest.ISO8601_DATE2);
+        }
+        NodeMetadata nodeMetadata = new NodeMetadata(false, "my/path", 1, DateProperty.MODIFIED);
+        nodeMetadata.captureReplicationMetadata(propertyNameIndex.createScan()
+                .scan(AemReplicationMetadataValidatorTest.createNode("jcr:content", propertyNamesAndValues.toArray(new String[0]))), new JcrDateParser());
+        assertTrue(nodeMetadata.validate(ValidationMessageSeverity.ERROR, agentPropertyNames, false).isEmpty());
+
+        // deactivated for agent3 and no replication date for agent4
+        propertyNamesAndValues.set(17, "Deactivate");
+        List<String> incompletePropertyNamesAndValues = new ArrayList<>(propertyNamesAndValues.subList(0, 22));
+        nodeMetadata.captureReplicationMetadata(propertyNameIndex.createScan()
+                .scan(AemReplicationMetadataValidatorTest.createNode("jcr:content", incompletePropertyNamesAndValues.toArray(new String[0]))), new JcrDateParser());
+        List<String> texts = new ArrayList<>();
+        nodeMetadata.validate(ValidationMessageSeverity.ERROR, agentPropertyNames, false).forEach(m -> texts.add(m.getMessage()));
+        assertEquals(2, texts.size());
+        Assertions.assertThat(texts.get(0)).contains("agent3");
+        Assertions.assertThat(texts.get(1)).contains("agent4");
+
+        // excluded nodes must not have replication metadata for any agent
+        NodeMetadata excludedNodeMetadata = new NodeMetadata(true, "my/path", 1, DateProperty.MODIFIED);
+        excludedNodeMetadata.captureReplicationMetadata(propertyNameIndex.createScan()
+                .scan(AemReplicationMetadataValidatorTest.createNode("jcr:content", "cq:lastReplicated_agent2", "{Date}" + DatePropertyTest.ISO8601_DATE2)), new JcrDateParser());
+        Assertions.assertThat(excludedNodeMetadata.validate(ValidationMessageSeverity.ERROR, agentPropertyNames, false)).singleElement()
+            .satisfies(m -> assertEquals("agent2", ((Violation) m).getAgentPropertyNames().getAgentName()));
+    }
+
+    @Test
+    void testGetAllAgents() {
+        assertEquals(0L, NodeMetadata.getAllAgents(0));
+        assertEquals(0b111111L, NodeMetadata.getAllAgents(6));
+        assertEquals(-1L, NodeMetadata.getAllAgents(Long.SIZE));
+    }
+
+    @Test
+    void testNodeIsNotRetained() throws InterruptedException, RepositoryException {
+        NodeMetadata nodeMetadata = new NodeMetadata(false, "my/path", 1, DateProperty.MODIFIED);
+        WeakReference<DocViewNode2> nodeReference = captureFromLargeNode(nodeMetadata);
+        for (int i = 0; i < 10 && nodeReference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(nodeReference.get(), "Node is still strongly referenced after capturing its metadata");
+        assertTrue(nodeMetadata.validate(ValidationMessageSeverity.ERROR, AGENT_PROPERTY_NAMES, false).isEmpty());
+    }
+
+    private static WeakReference<DocViewNode2> captureFromLargeNode(NodeMetadata nodeMetadata) throws RepositoryException {
+        List<String> propertyNamesAndValues = new ArrayList<>();
+        for (String property : new String[] { "jcr:primaryType", "cq:PageContent", "jcr:lastModified", "{Date}" + DatePropertyTest.ISO8601_DATE1,
+                "cq:lastReplicationAction", "Activate", "cq:lastReplicated", "{Date}" + DatePropertyTest.ISO8601_DATE2 }) {
+            propertyNamesAndValues.add(property);
+        }
+        StringBuilder largeValue = new StringBuilder();
+        for (int i = 0; i < 10_000; i++) {
+            largeValue.append("Lorem ipsum dolor sit amet ");
+        }
+        for (int i = 0; i < 100; i++) {
+            propertyNamesAndValues.add("text" + i);
+            propertyNamesAndValues.add(largeValue.toString());
+        }
+        DocViewNode2 node = AemReplicationMetadataValidatorTest.createNode("jcr:content", propertyNamesAndValues.toArray(new String[0]));
+        JcrDateParser dateParser = new JcrDateParser();
+        PropertyNameIndex.PropertyScan propertyScan = PROPERTY_NAME_INDEX.createScan().scan(node);
+        nodeMetadata.captureComparisonDate(node, propertyScan, dateParser);
+        nodeMetadata.captureReplicationMetadata(propertyScan, dateParser);
+        return new WeakReference<>(node);
+    }
 }
@@ -0,0 +1,186 @@
+/*-
+ * #%L
+ * AEM Replication Metadata Validator
+ * %%
+ * Copyright (C) 2024 Cognizant Netcentric
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package biz.netcentric.filevault.validator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.jackrabbit.vault.validation.ValidationViolation;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessageSeverity;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import biz.netcentric.filevault.validator.PackageScanner.PackageResult;
+
+class PackageScannerTest {
+
+    private static final String POLICY_WITHOUT_REPLICATION_METADATA = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<jcr:root xmlns:jcr=\"http://www.jcp.org/jcr/1.0\" xmlns:sling=\"http://sling.apache.org/jcr/sling/1.0\" xmlns:nt=\"http://www.jcp.org/jcr/nt/1.0\"\n"
+            + "    jcr:primaryType=\"nt:unstructured\">\n"
+            + "    <policy jcr:primaryType=\"nt:unstructured\" sling:resourceType=\"wcm/core/components/policy/policy\">\n"
+            + "        <jcr:content jcr:primaryType=\"nt:unstructured\"/>\n"
+            + "    </policy>\n"
+            + "</jcr:root>\n";
+
+    @TempDir
+    Path tempDir;
+
+    static byte[] createPackage(String group, String name, String filterRoot, Map<String, byte[]> jcrRootEntries) throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("META-INF/vault/filter.xml", ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<workspaceFilter version=\"1.0\"><filter root=\"" + filterRoot + "\"/></workspaceFilter>")
+                .getBytes(StandardCharsets.UTF_8));
+        entries.put("META-INF/vault/properties.xml", ("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n"
+                + "<!DOCTYPE properties SYSTEM \"http://java.sun.com/dtd/properties.dtd\">\n"
+                + "<properties><entry key=\"group\">" + group + "</entry><entry key=\"name\">" + name + "</entry><entry key=\"version\">1.0</entry></properties>")
+                .getBytes(StandardCharsets.UTF_8));
+        for (Map.Entry<String, byte[]> entry : jcrRootEntries.entrySet()) {
+            entries.put("jcr_root/" + entry.getKey(), entry.getValue());
+        }
+        java.io.ByteArrayOutputStream output = new java.io.ByteArrayOutputStream();
+        try (ZipOutputStream zipOutput = new ZipOutputStream(output)) {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                zipOutput.putNextEntry(new ZipEntry(entry.getKey()));
+                zipOutput.write(entry.getValue());
+                zipOutput.closeEntry();
+            }
+        }
+        return output.toByteArray();
+    }
+
+    private Path createPackages() throws IOException {
+        byte[] subPackage = createPackage("test", "sub", "/conf/sub",
+                Collections.singletonMap("conf/sub/settings/wcm/policies/.content.xml", POLICY_WITHOUT_REPLICATION_METADATA.getBytes(StandardCharsets.UTF_8)));
+        Map<String, byte[]> containerEntries = new LinkedHashMap<>();
+        containerEntries.put("conf/container/settings/wcm/policies/.content.xml", POLICY_WITHOUT_REPLICATION_METADATA.getBytes(StandardCharsets.UTF_8));
+        containerEntries.put("etc/packages/test/sub-1.0.zip", subPackage);
+        Files.write(tempDir.resolve("container.zip"), createPackage("test", "container", "/conf/container", containerEntries));
+        // package without relevant content
+        Files.write(tempDir.resolve("content.zip"), createPackage("test", "content", "/content/site",
+                Collections.singletonMap("content/site/settings/wcm/policies/.content.xml", POLICY_WITHOUT_REPLICATION_METADATA.getBytes(StandardCharsets.UTF_8))));
+        return tempDir;
+    }
+
+    @Test
+    void testScan() throws IOException {
+        Path directory = createPackages();
+        List<Path> packageFiles = Arrays.asList(directory.resolve("content.zip"), directory.resolve("container.zip"));
+        for (int parallelism : new int[] { 1, 4 }) {
+            PackageScanner scanner = new PackageScanner(ValidationMessageSeverity.ERROR, Collections.emptyMap(), parallelism);
+            List<PackageResult> results = scanner.scan(packageFiles);
+            Assertions.assertThat(results).extracting(PackageResult::getPackageName).containsExactly(
+                    directory.resolve("content.zip").toString(),
+                    directory.resolve("container.zip").toString(),
+                    directory.resolve("container.zip") + "!/jcr_root/etc/packages/test/sub-1.0.zip");
+            Assertions.assertThat(results.get(0).getViolations()).isEmpty();
+            Assertions.assertThat(results.get(1).getViolations()).extracting(ValidationViolation::getNodePath)
+                .containsExactly("/conf/container/settings/wcm/policies/policy", "/conf/container/settings/wcm/policies/policy");
+            Assertions.assertThat(results.get(1).getViolations()).extracting(ValidationViolation::getLine)
+                .containsOnly(6);
+            Assertions.assertThat(results.get(2).getViolations()).extracting(ValidationViolation::getNodePath)
+                .containsExactly("/conf/sub/settings/wcm/policies/policy", "/conf/sub/settings/wcm/policies/policy");
+        }
+    }
+
+    @Test
+    void testScanIgnoresZipFilesOutsideOfPackagesFolder() throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("apps/site/downloads/archive.zip", "no package".getBytes(StandardCharsets.UTF_8));
+        entries.put("etc/packages/test/sub-1.0.zip", createPackage("test", "sub", "/conf/sub", Collections.emptyMap()));
+        Files.write(tempDir.resolve("container.zip"), createPackage("test", "container", "/apps/site", entries));
+        PackageScanner scanner = new PackageScanner(ValidationMessageSeverity.ERROR, Collections.emptyMap(), 1);
+        List<PackageResult> results = scanner.scan(Collections.singletonList(tempDir.resolve("container.zip")));
+        Assertions.assertThat(results).extracting(PackageResult::getPackageName).containsExactly(
+                tempDir.resolve("container.zip").toString(),
+                tempDir.resolve("container.zip") + "!/jcr_root/etc/packages/test/sub-1.0.zip");
+        Assertions.assertThat(results).flatExtracting(PackageResult::getViolations).isEmpty();
+    }
+
+    @Test
+    void testScanDeduplicatesSubpackages() throws IOException {
+        byte[] subPackage = createPackage("test", "shared", "/conf/shared",
+                Collections.singletonMap("conf/shared/settings/wcm/policies/.content.xml", POLICY_WITHOUT_REPLICATION_METADATA.getBytes(StandardCharsets.UTF_8)));
+        for (String containerName : new String[] { "container1", "container2" }) {
+            Files.write(tempDir.resolve(containerName + ".zip"), createPackage("test", containerName, "/conf/" + containerName,
+                    Collections.singletonMap("etc/packages/test/shared-1.0.zip", subPackage)));
+        }
+        long validatedPackagesBefore = AggregatedMetrics.JVM.getPackages();
+        Map<String, String> options = new LinkedHashMap<>();
+        options.put("reportFile", tempDir.resolve("report.jsonl").toString());
+        options.put("metricsFile", tempDir.resolve("metrics.jsonl").toString());
+        PackageScanner scanner = new PackageScanner(ValidationMessageSeverity.ERROR, options, 1);
+        List<PackageResult> results = scanner.scan(Arrays.asList(tempDir.resolve("container1.zip"), tempDir.resolve("container2.zip")));
+        Assertions.assertThat(results).extracting(PackageResult::getPackageName).containsExactly(
+                tempDir.resolve("container1.zip").toString(),
+                tempDir.resolve("container1.zip") + "!/jcr_root/etc/packages/test/shared-1.0.zip",
+                tempDir.resolve("container2.zip").toString(),
+                tempDir.resolve("container2.zip") + "!/jcr_root/etc/packages/test/shared-1.0.zip");
+        // the sub package embedded in the second container is not validated again but its violations are replayed (also into the metrics and the report)
+        assertEquals(4, AggregatedMetrics.JVM.getPackages() - validatedPackagesBefore);
+        List<String> metricsLines = Files.readAllLines(tempDir.resolve("metrics.jsonl"));
+        Assertions.assertThat(metricsLines).hasSize(4);
+        Assertions.assertThat(metricsLines).filteredOn(line -> line.contains("test:shared:1.0")).hasSize(2)
+            .filteredOn(line -> line.contains("\"nodes\":0,")).hasSize(1);
+        List<String> reportLines = Files.readAllLines(tempDir.resolve("report.jsonl"));
+        Assertions.assertThat(reportLines).hasSize(4);
+        Assertions.assertThat(reportLines.subList(2, 4)).containsExactlyElementsOf(reportLines.subList(0, 2));
+        for (int i : new int[] { 1, 3 }) {
+            Assertions.assertThat(results.get(i).getViolations()).extracting(ValidationViolation::getNodePath)
+                .containsExactly("/conf/shared/settings/wcm/policies/policy", "/conf/shared/settings/wcm/policies/policy");
+        }
+        Assertions.assertThat(results.get(3).getViolations()).extracting(ValidationViolation::getMessage, ValidationViolation::getFilePath, ValidationViolation::getLine)
+            .containsExactlyElementsOf(results.get(1).getViolations().stream()
+                    .map(violation -> Assertions.tuple(violation.getMessage(), violation.getFilePath(), violation.getLine()))
+                    .collect(Collectors.toList()));
+    }
+
+    @Test
+    void testCli() throws IOException {
+        Path directory = createPackages();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int exitCode = PackageScannerCli.run(new String[] { "-o", "agentNames=publish", "--threads", "2", directory.toString() },
+                new PrintStream(out, true, "UTF-8"), new PrintStream(new NullOutputStream()));
+        assertEquals(PackageScannerCli.EXIT_CODE_VIOLATIONS, exitCode);
+        List<String> lines = Arrays.stream(new String(out.toByteArray(), StandardCharsets.UTF_8).split("\\R")).collect(Collectors.toList());
+        Assertions.assertThat(lines).hasSize(5);
+        Assertions.assertThat(lines.get(0)).startsWith("[ERROR] " + directory.resolve("container.zip") + ": conf/container/settings/wcm/policies/.content.xml:6:");
+        Assertions.assertThat(lines.get(4)).isEqualTo("Validated 3 package(s), found 4 violation(s)");
+
+        assertEquals(PackageScannerCli.EXIT_CODE_INVALID_ARGUMENTS, PackageScannerCli.run(new String[] { "--unknown" },
+                new PrintStream(new NullOutputStream()), new PrintStream(new NullOutputStream())));
+        assertEquals(PackageScannerCli.EXIT_CODE_INVALID_ARGUMENTS, PackageScannerCli.run(new String[] { directory.resolve("missing.zip").toString() },
+                new PrintStream(new NullOutputStream()), new PrintStream(new NullOutputStream())));
+    }
+
+    private static final class NullOutputStream extends OutputStream {
+        @Override
+        public void write(int b) {
+            // discard
+        }
+    }
+}
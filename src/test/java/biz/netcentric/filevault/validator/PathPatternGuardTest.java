@@ -0,0 +1,96 @@
+/*-
+ * #%L
+ * AEM Replication Metadata Validator
+ * %%
+ * Copyright (C) 2024 Cognizant Netcentric
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package biz.netcentric.filevault.validator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+
+class PathPatternGuardTest {
+
+    @Test
+    void testHarden() {
+        assertEquals(".*+", PathPatternGuard.harden(".*.*"));
+        assertEquals("/content/.++", PathPatternGuard.harden("/content/.*.+"));
+        assertEquals("/a/.+/b", PathPatternGuard.harden("/a/.+.*/b"));
+        // at least two characters
+        assertEquals("/a/.+.+/b", PathPatternGuard.harden("/a/.+.+/b"));
+        assertEquals(".*/settings/wcm/templates/[^/]*+/structure", PathPatternGuard.harden(".*/settings/wcm/templates/[^/]*/structure"));
+        assertEquals(".*/settings/wcm/templates/[^/]*+", PathPatternGuard.harden(".*/settings/wcm/templates/[^/]*"));
+        assertEquals("/content/(a+)b", PathPatternGuard.harden("/content/(a+)+b"));
+        assertEquals("/content/(?:[^/]*)/x", PathPatternGuard.harden("/content/(?:[^/]*)+/x"));
+        assertEquals("/content/(a*)b", PathPatternGuard.harden("/content/(a+)*b"));
+        assertEquals("/content/\\d++/x", PathPatternGuard.harden("/content/\\d+/x"));
+        assertEquals("/content/a*+b", PathPatternGuard.harden("/content/a*b"));
+        // not safe or not supported
+        assertEquals("(a+)+\\1", PathPatternGuard.harden("(a+)+\\1"));
+        assertEquals("[^/]*/?x", PathPatternGuard.harden("[^/]*/?x"));
+        assertEquals("(?i)/content/[^/]*/x", PathPatternGuard.harden("(?i)/content/[^/]*/x"));
+        assertEquals("/content/\\Q.*\\E", PathPatternGuard.harden("/content/\\Q.*\\E"));
+        assertEquals("/content/(.*)", PathPatternGuard.harden("/content/(.*)"));
+        assertEquals("/content/[a-z]*/x", PathPatternGuard.harden("/content/[a-z]*/x"));
+        assertEquals("/content/.*?", PathPatternGuard.harden("/content/.*?"));
+    }
+
+    @Test
+    void testHardenedPatternsMatchTheSamePaths() {
+        List<String> regexes = Arrays.asList(".*.*", "/a/.*.+", "/a/.+.*/b", "/a/.+.+/b", ".*/templates/[^/]*/structure", ".*/templates/[^/]*",
+                "/(a+)+b", "/(?:[^/]*)+/x", "/(a+)*b", "/(a*)+", "/\\d+/x", "/a*b", "[^/]*/?x", "/[^/]+/[^/]*", "/\\w*\\.html", "/[^]]*]", "/a|/b*",
+                "/(x|[^/]*)/c");
+        List<String> paths = Arrays.asList("", "/", "/a", "/a/", "/a/b", "/a//b", "/a/x/b", "/a/xx/b", "/conf/settings/wcm/templates/t/structure",
+                "/conf/settings/wcm/templates/t", "/conf/templates/t/x/structure", "/b", "/aab", "/ab", "/aaa", "//x", "/x/x", "x", "/x", "/123/x",
+                "/12a/x", "/a/b/c", "/b/", "/bbb", "/in]", "/in]x]", "/page.html", "/pa-ge.html", "/a\n/b", "/c", "/x/c", "/y/c", "/y/y/c");
+        for (String regex : regexes) {
+            Pattern original = Pattern.compile(regex);
+            Pattern hardened = Pattern.compile(PathPatternGuard.harden(regex));
+            for (String path : paths) {
+                assertEquals(original.matcher(path).matches(), hardened.matcher(path).matches(),
+                        "Different result of " + regex + " and " + hardened + " for " + path);
+            }
+        }
+    }
+
+    @Test
+    void testFindRisks() {
+        assertEquals(Collections.singletonList("contains a repeated group with unbounded quantifiers (.*/)*"), PathPatternGuard.findRisks("/content(.*/)*x"));
+        assertEquals(Collections.singletonList("contains a repeated group with unbounded quantifiers ((a+)b)+"), PathPatternGuard.findRisks("/((a+)b)+"));
+        assertEquals(Collections.singletonList("contains 3 unbounded wildcards whose matches may overlap"), PathPatternGuard.findRisks("/a/.*/b/.*/c/.*"));
+        assertEquals(Collections.emptyList(), PathPatternGuard.findRisks(PathPatternGuard.harden("/content/(a+)+b")));
+        assertEquals(Collections.emptyList(), PathPatternGuard.findRisks("/(?>a+)+"));
+        assertEquals(Collections.emptyList(), PathPatternGuard.findRisks("/(a++)+"));
+        assertEquals(Collections.singletonList("contains a repeated group with unbounded quantifiers (.*x){10}"), PathPatternGuard.findRisks("/(.*x){10}y"));
+        assertEquals(Collections.emptyList(), PathPatternGuard.findRisks("/(a+){1}"));
+        assertEquals(Collections.emptyList(), PathPatternGuard.findRisks("/(a+)?"));
+        assertEquals(Collections.emptyList(), PathPatternGuard.findRisks(".*/settings/wcm/templates/[^/]*/structure"));
+    }
+
+    @Test
+    void testBudgetedPath() {
+        Pattern pattern = Pattern.compile("/(.*x){10}y");
+        String path = "/xxxxxxxxxxxxxxxxxxxxxxxxxxxx";
+        PathPatternGuard.BudgetedPath budgetedPath = new PathPatternGuard.BudgetedPath(100_000);
+        PathPatternGuard.StepBudgetExceededException e = assertThrows(PathPatternGuard.StepBudgetExceededException.class,
+                () -> pattern.matcher(budgetedPath.reset(path)).matches());
+        assertEquals(100_000, e.getStepBudget());
+        // the budget is restored for every evaluation
+        assertTrue(pattern.matcher(budgetedPath.reset("/xxxxxxxxxxy")).matches());
+        assertTrue(pattern.matcher(budgetedPath.reset("/xxxxxxxxxxxxy")).matches());
+    }
+}
@@ -0,0 +1,53 @@
+/*-
+ * #%L
+ * AEM Replication Metadata Validator
+ * %%
+ * Copyright (C) 2024 Cognizant Netcentric
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package biz.netcentric.filevault.validator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.Arrays;
+
+import org.apache.jackrabbit.vault.util.DocViewNode2;
+import org.junit.jupiter.api.Test;
+
+class PropertyNameIndexTest {
+
+    @Test
+    void testScan() {
+        PropertyNameIndex index = new PropertyNameIndex(Arrays.asList(new AgentPropertyNames("publish"), new AgentPropertyNames("preview")));
+        PropertyNameIndex.PropertyScan scan = index.createScan();
+        DocViewNode2 node = AemReplicationMetadataValidatorTest.createNode("jcr:content", "jcr:primaryType", "cq:PageContent",
+                "cq:lastReplicationAction", "Activate", "cq:lastPublished", "{Date}" + DatePropertyTest.ISO8601_DATE1,
+                "cq:lastReplicationAction_preview", "Deactivate", "cq:lastReplicated_preview", "{Date}" + DatePropertyTest.ISO8601_DATE2,
+                "cq:lastPublished_preview", "{Date}" + DatePropertyTest.ISO8601_DATE3, "jcr:created", "{Date}" + DatePropertyTest.ISO8601_DATE3);
+        assertEquals(2, scan.scan(node).getAgentCount());
+
+        assertEquals("Activate", scan.getLastReplicationAction(0).getStringValue().get());
+        assertEquals(1, scan.getLastReplicationDatePropertyIndex(0));
+        assertEquals(DatePropertyTest.ISO8601_DATE1, scan.getLastReplicationDate(0, 1).getStringValue().get());
+
+        assertEquals("Deactivate", scan.getLastReplicationAction(1).getStringValue().get());
+        // lastReplicated takes precedence over lastPublished
+        assertEquals(0, scan.getLastReplicationDatePropertyIndex(1));
+        assertEquals(DatePropertyTest.ISO8601_DATE2, scan.getLastReplicationDate(1, 0).getStringValue().get());
+
+        assertEquals(DatePropertyTest.ISO8601_DATE3, scan.getProperty(PropertyName.PROPERTY_JCR_CREATED).getStringValue().get());
+        assertNull(scan.getProperty(PropertyName.PROPERTY_CQ_CREATED));
+
+        // properties from the previous node are no longer visible
+        scan.scan(AemReplicationMetadataValidatorTest.createNode("jcr:content", "jcr:primaryType", "cq:PageContent"));
+        assertNull(scan.getLastReplicationAction(0));
+        assertEquals(ReplicationMetadata.DATE_NOT_FOUND, scan.getLastReplicationDatePropertyIndex(1));
+        assertNull(scan.getProperty(PropertyName.PROPERTY_JCR_CREATED));
+    }
+}
@@ -0,0 +1,72 @@
+/*-
+ * #%L
+ * AEM Replication Metadata Validator
+ * %%
+ * Copyright (C) 2024 Cognizant Netcentric
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package biz.netcentric.filevault.validator;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class RootPathsTest {
+
+    @Test
+    void testGetRootPaths() {
+        Assertions.assertThat(RootPaths.getRootPaths(".*/settings/wcm/templates/[^/]*")).containsExactly("/");
+        Assertions.assertThat(RootPaths.getRootPaths("/(apps|conf)/.*/jcr:content")).containsExactly("/apps", "/conf");
+        Assertions.assertThat(RootPaths.getRootPaths("/(?:apps|conf)/.*/jcr:content")).containsExactly("/apps", "/conf");
+        Assertions.assertThat(RootPaths.getRootPaths("^/conf/site/.*")).containsExactly("/conf/site");
+        // prefix ending within a path segment
+        Assertions.assertThat(RootPaths.getRootPaths("/conf/site.*")).containsExactly("/conf");
+        Assertions.assertThat(RootPaths.getRootPaths("/conf/site\\.com/.*")).containsExactly("/conf/site.com");
+        // completely literal
+        Assertions.assertThat(RootPaths.getRootPaths("/conf/site/jcr:content")).containsExactly("/conf/site/jcr:content");
+        // optional atoms
+        Assertions.assertThat(RootPaths.getRootPaths("/conf/sites?/.*")).containsExactly("/conf");
+        Assertions.assertThat(RootPaths.getRootPaths("/conf/(site)?/.*")).containsExactly("/conf");
+        Assertions.assertThat(RootPaths.getRootPaths("/conf/(site)+/.*")).containsExactly("/conf");
+        // unsupported constructs
+        Assertions.assertThat(RootPaths.getRootPaths("/conf/.*|/apps/.*")).containsExactly("/");
+        Assertions.assertThat(RootPaths.getRootPaths("(?i)/conf/.*")).containsExactly("/");
+        Assertions.assertThat(RootPaths.getRootPaths("/(conf|ap(p)s)/.*")).containsExactly("/");
+        Assertions.assertThat(RootPaths.getRootPaths("conf/.*")).containsExactly("/");
+    }
+
+    @Test
+    void testNormalization() {
+        Assertions.assertThat(new RootPaths(Arrays.asList("/conf/", "/apps", "/conf/site", "/apps")).getPaths()).containsExactly("/conf", "/apps");
+        assertTrue(new RootPaths(Arrays.asList("/conf", "/")).isUnrestricted());
+        assertThrows(IllegalArgumentException.class, () -> new RootPaths(Collections.singleton("conf")));
+    }
+
+    @Test
+    void testIntersects() {
+        RootPaths rootPaths = new RootPaths(Arrays.asList("/conf", "/apps/site"));
+        assertTrue(rootPaths.contains("/conf"));
+        assertTrue(rootPaths.contains("/conf/site"));
+        assertFalse(rootPaths.contains("/config"));
+        assertFalse(rootPaths.contains("/apps"));
+        assertTrue(rootPaths.isAncestor("/"));
+        assertTrue(rootPaths.isAncestor("/apps"));
+        assertFalse(rootPaths.isAncestor("/apps/site"));
+        assertFalse(rootPaths.isAncestor("/app"));
+        assertTrue(rootPaths.intersects("/apps"));
+        assertFalse(rootPaths.intersects("/apps/other"));
+        assertFalse(rootPaths.intersects("/content"));
+        assertTrue(RootPaths.UNRESTRICTED.intersects("/content"));
+    }
+}
@@ -0,0 +1,181 @@
+/*-
+ * #%L
+ * AEM Replication Metadata Validator
+ * %%
+ * Copyright (C) 2024 Cognizant Netcentric
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package biz.netcentric.filevault.validator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+import org.apache.jackrabbit.vault.util.DocViewNode2;
+import org.apache.jackrabbit.vault.util.DocViewProperty2;
+import org.junit.jupiter.api.Test;
+
+class RuleSetTest {
+
+    static DocViewNode2 createNode(String primaryType, String resourceType) {
+        Collection<DocViewProperty2> properties = new ArrayList<>();
+        properties.add(new DocViewProperty2(org.apache.jackrabbit.spi.commons.name.NameConstants.JCR_PRIMARYTYPE, primaryType));
+        if (resourceType != null) {
+            properties.add(new DocViewProperty2(NameConstants.SLING_RESOURCETYPE, resourceType));
+        }
+        return new DocViewNode2(org.apache.jackrabbit.spi.commons.name.NameConstants.JCR_ROOT, properties);
+    }
+
+    @Test
+    void testFirstIncludeWinsThenExclude() {
+        RuleSet ruleSet = new RuleSet(
+                Arrays.asList(new TypeSettings("/conf/.*", "cq:Page"), new TypeSettings("/(apps|conf)/.*/test", "cq:Page")),
+                Collections.singletonList(new TypeSettings(".*/initial", "cq:Page")));
+        DocViewNode2 page = createNode("cq:Page", null);
+        assertEquals(0, ruleSet.match("/conf/test", page));
+        assertEquals(1, ruleSet.match("/apps/x/test", page));
+        // include wins over exclude
+        assertEquals(0, ruleSet.match("/conf/initial", page));
+        assertEquals(2, ruleSet.match("/apps/initial", page));
+        assertTrue(ruleSet.isExcluded(2));
+        assertFalse(ruleSet.isExcluded(1));
+        assertEquals(RuleSet.NO_MATCH, ruleSet.match("/content/test", page));
+    }
+
+    @Test
+    void testTypeMismatchOfFirstPathMatch() {
+        RuleSet ruleSet = new RuleSet(
+                Arrays.asList(new TypeSettings("/conf/.*", "cq:Template"), new TypeSettings("/conf/(a|b)", "my/resourcetype")),
+                Collections.singletonList(new TypeSettings("/conf/.*", "cq:Page")));
+        assertEquals(1, ruleSet.match("/conf/a", createNode("nt:unstructured", "my/resourcetype")));
+        assertEquals(2, ruleSet.match("/conf/a", createNode("cq:Page", null)));
+        assertEquals(RuleSet.NO_MATCH, ruleSet.match("/conf/a", createNode("nt:unstructured", "other/resourcetype")));
+        assertEquals(RuleSet.NO_MATCH, ruleSet.match("/conf/c", createNode("nt:unstructured", "my/resourcetype")));
+    }
+
+    @Test
+    void testRulesWithoutRequiredLiterals() {
+        RuleSet ruleSet = new RuleSet(
+                Arrays.asList(new TypeSettings(".*/settings/wcm/templates/[^/]*", "cq:Page"), new TypeSettings("/(?:apps|conf)/[^/]+", "cq:Page")),
+                Collections.singletonList(new TypeSettings(".*/settings/wcm/templates/[^/]*/initial", "cq:Page")));
+        DocViewNode2 page = createNode("cq:Page", null);
+        assertEquals(0, ruleSet.match("/conf/site/settings/wcm/templates/test", page));
+        assertEquals(1, ruleSet.match("/conf/site", page));
+        assertEquals(2, ruleSet.match("/conf/site/settings/wcm/templates/test/initial", page));
+        assertEquals(RuleSet.NO_MATCH, ruleSet.match("/conf/site/settings/wcm/template/test", page));
+    }
+
+    @Test
+    void testPatternsWithBackReferences() {
+        RuleSet ruleSet = new RuleSet(
+                Arrays.asList(new TypeSettings("/(a|b)/\\1", "cq:Page"), new TypeSettings("/(c)/.*", "cq:Page")),
+                Collections.emptyList());
+        DocViewNode2 page = createNode("cq:Page", null);
+        assertEquals(0, ruleSet.match("/a/a", page));
+        assertEquals(RuleSet.NO_MATCH, ruleSet.match("/a/b", page));
+        assertEquals(1, ruleSet.match("/c/b", page));
+    }
+
+    @Test
+    void testRuleGroupsByType() {
+        RuleSet ruleSet = new RuleSet(
+                Arrays.asList(new TypeSettings("/conf/.*", "my/resourcetype"), new TypeSettings("/conf/a", "nt:unstructured"), new TypeSettings("/conf/.*", "cq:Page")),
+                Collections.emptyList());
+        assertNull(ruleSet.getRuleGroup(createNode("dam:Asset", null)));
+        assertNull(ruleSet.getRuleGroup(createNode("cq:PageContent", "other/resourcetype")));
+        // resource type not used in any rule but primary type is
+        assertEquals(1, ruleSet.match("/conf/a", createNode("nt:unstructured", "other/resourcetype")));
+        assertEquals(RuleSet.NO_MATCH, ruleSet.match("/conf/b", createNode("nt:unstructured", "other/resourcetype")));
+        // both resource type and primary type are used
+        assertEquals(0, ruleSet.match("/conf/a", createNode("nt:unstructured", "my/resourcetype")));
+        assertEquals(0, ruleSet.match("/conf/b", createNode("cq:PageContent", "my/resourcetype")));
+        assertEquals(2, ruleSet.match("/conf/b", createNode("cq:Page", "my/resourcetype")));
+    }
+
+    @Test
+    void testProfiledMatching() {
+        RuleSet ruleSet = new RuleSet(
+                Arrays.asList(new TypeSettings("/conf/.*/settings/wcm/templates/.*", "cq:Page"), new TypeSettings("/(a|b)/\\1", "cq:Page"), new TypeSettings("/conf/.*", "cq:Page")),
+                Collections.singletonList(new TypeSettings("/conf/excluded", "cq:Page")));
+        RuleProfiler profiler = new RuleProfiler(ruleSet);
+        RuleSet.RuleMatcher ruleMatcher = ruleSet.createMatcher(profiler);
+        DocViewNode2 page = createNode("cq:Page", null);
+        for (String path : Arrays.asList("/conf/site/settings/wcm/templates/test", "/a/a", "/a/b", "/conf/other", "/conf/excluded", "/content/test")) {
+            assertEquals(ruleSet.match(path, page), ruleMatcher.match(path, page), "Different result for " + path);
+        }
+        // literal prefilter skips most of the evaluations
+        assertEquals(1, profiler.getEvaluations(0));
+        assertEquals(1, profiler.getMatches(0));
+        // no literals required by back reference pattern
+        assertEquals(5, profiler.getEvaluations(1));
+        assertEquals(1, profiler.getMatches(1));
+        assertEquals(2, profiler.getEvaluations(2));
+        assertEquals(2, profiler.getMatches(2));
+        // exclude is only evaluated if no include matches
+        assertEquals(0, profiler.getEvaluations(3));
+        String report = profiler.toReport();
+        assertTrue(report.startsWith("Path pattern profile (ranked by total evaluation time):"), report);
+        assertTrue(report.contains("/conf/.*[cq:Page]: 2 evaluations, 2 matches"), report);
+        assertFalse(report.contains("SUPERLINEAR"), report);
+    }
+
+    @Test
+    void testSuperlinearDetection() {
+        RuleSet ruleSet = new RuleSet(
+                Arrays.asList(new TypeSettings("/conf/.*", "cq:Page"), new TypeSettings("/(a+)+b", "cq:Page"), new TypeSettings("/content/.*", "cq:Page")),
+                Collections.emptyList());
+        RuleProfiler profiler = new RuleProfiler(ruleSet);
+        for (int i = 0; i < 10; i++) {
+            // linear
+            profiler.record(0, 10, 1000, true);
+            profiler.record(0, 100, 10000, true);
+            // quadratic
+            profiler.record(1, 10, 1000, false);
+            profiler.record(1, 100, 100000, false);
+            // too fast to tell
+            profiler.record(2, 10, 10, false);
+            profiler.record(2, 100, 900, false);
+        }
+        assertEquals(1.0, profiler.getGrowthExponent(0), 0.01);
+        assertFalse(profiler.isSuperlinear(0));
+        assertEquals(2.0, profiler.getGrowthExponent(1), 0.01);
+        assertTrue(profiler.isSuperlinear(1));
+        assertTrue(Double.isNaN(profiler.getGrowthExponent(2)));
+        assertFalse(profiler.isSuperlinear(2));
+        assertEquals(100000, profiler.getMaxNanos(1));
+        assertEquals(1010000, profiler.getTotalNanos(1));
+        String[] lines = profiler.toReport().split(System.lineSeparator());
+        assertEquals(4, lines.length);
+        assertTrue(lines[1].startsWith("  1. /(a+)+b[cq:Page]: 20 evaluations, 0 matches"), lines[1]);
+        assertTrue(lines[1].endsWith("SUPERLINEAR: cost grows with path length^2.0"), lines[1]);
+    }
+
+    @Test
+    void testStepBudget() {
+        RuleSet ruleSet = new RuleSet(Arrays.asList(new TypeSettings("/(.*x){10}y", "cq:Page"), new TypeSettings("/content/.*", "cq:Page")),
+                Collections.emptyList(), 100_000);
+        DocViewNode2 page = createNode("cq:Page", null);
+        assertEquals(0, ruleSet.match("/xxxxxxxxxxy", page));
+        assertEquals(1, ruleSet.match("/content/page", page));
+        PathPatternGuard.StepBudgetExceededException e = assertThrows(PathPatternGuard.StepBudgetExceededException.class,
+                () -> ruleSet.match("/xxxxxxxxxxxxxxxxxxxxxxxxxxxx", page));
+        assertEquals("Evaluating the path pattern(s) [/(.*x){10}y, /content/.*] against path /xxxxxxxxxxxxxxxxxxxxxxxxxxxx exceeded the budget of 100000 steps. "
+                + "This is usually caused by excessive backtracking (e.g. due to nested quantifiers), simplify the path pattern(s) or increase the option \"pathPatternStepBudget\"",
+                e.getMessage());
+        // unlimited budget
+        assertEquals(RuleSet.NO_MATCH, new RuleSet(Collections.singletonList(new TypeSettings("/(.*x){10}y", "cq:Page")), Collections.emptyList(), 0)
+                .match("/xxxxxxxxxxxxxxxxx", page));
+    }
+}
@@ -0,0 +1,135 @@
+/*-
+ * #%L
+ * AEM Replication Metadata Validator
+ * %%
+ * Copyright (C) 2024 Cognizant Netcentric
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package biz.netcentric.filevault.validator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessage;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessageSeverity;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SubpackageResultCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path writePackage(String fileName, String version, String created) throws IOException {
+        StringBuilder properties = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n"
+                + "<!DOCTYPE properties SYSTEM \"http://java.sun.com/dtd/properties.dtd\">\n"
+                + "<properties><entry key=\"group\">test</entry><entry key=\"name\">sub</entry><entry key=\"version\">" + version + "</entry>");
+        if (created != null) {
+            properties.append("<entry key=\"created\">").append(created).append("</entry>");
+        }
+        properties.append("</properties>");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (ZipOutputStream zipOutput = new ZipOutputStream(output)) {
+            zipOutput.putNextEntry(new ZipEntry("META-INF/vault/filter.xml"));
+            zipOutput.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<workspaceFilter version=\"1.0\"><filter root=\"/conf/sub\"/></workspaceFilter>"
+                    .getBytes(StandardCharsets.UTF_8));
+            zipOutput.closeEntry();
+            zipOutput.putNextEntry(new ZipEntry("META-INF/vault/properties.xml"));
+            zipOutput.write(properties.toString().getBytes(StandardCharsets.UTF_8));
+            zipOutput.closeEntry();
+        }
+        Path file = tempDir.resolve(fileName);
+        Files.write(file, output.toByteArray());
+        return file;
+    }
+
+    @Test
+    void testFingerprint() throws IOException {
+        Path snapshot1 = writePackage("snapshot1.zip", "1.0-SNAPSHOT", null);
+        Path snapshot2 = writePackage("snapshot2.zip", "1.0-SNAPSHOT", null);
+        String fingerprint = SubpackageResultCache.createFingerprint(snapshot1, "config1");
+        // same bytes
+        assertEquals(fingerprint, SubpackageResultCache.createFingerprint(snapshot2, "config1"));
+        Path modifiedSnapshot = writePackage("snapshot2.zip", "1.0-SNAPSHOT", "2024-01-02T00:00:00.000+01:00");
+        assertNotEquals(fingerprint, SubpackageResultCache.createFingerprint(modifiedSnapshot, "config1"));
+        assertNotEquals(fingerprint, SubpackageResultCache.createFingerprint(snapshot1, "config2"));
+    }
+
+    @Test
+    void testPersistence() throws IOException {
+        Path cacheFile = tempDir.resolve("cache").resolve("subpackages.bin");
+        SubpackageResultCache cache = SubpackageResultCache.load(cacheFile);
+        assertNull(cache.get("fingerprint1"));
+        AgentPropertyNames agent = new AgentPropertyNames("publish");
+        List<SubpackageResultCache.CachedMessage> messages = new ArrayList<>();
+        SubpackageResultCache.record(messages, Collections.singletonList(new ValidationMessage(ValidationMessageSeverity.ERROR, "some violation")),
+                AemReplicationMetadataValidatorTest.createNodeContext("/conf/sub/policy"), RuleSet.NO_MATCH);
+        Violation violation = new Violation(ValidationMessageSeverity.WARN, Violation.Code.REPLICATION_DATE_OLDER_THAN_COMPARISON_DATE, "/conf/sub/page", agent,
+                0, 1000L, 2000L, "jcr:lastModified");
+        SubpackageResultCache.record(messages, Collections.singletonList(violation),
+                new PositionedNodeContext("/conf/sub/page/jcr:content", Paths.get("page", ".content.xml"), Paths.get("jcr_root"), 5, 7), 2);
+        cache.put("fingerprint1", messages);
+        cache.put("fingerprint2", Collections.emptyList());
+        assertNotNull(cache.get("fingerprint1"));
+
+        SubpackageResultCache loadedCache = SubpackageResultCache.load(cacheFile);
+        List<SubpackageResultCache.CachedMessage> loadedMessages = loadedCache.get("fingerprint1");
+        assertNotNull(loadedMessages);
+        assertEquals(2, loadedMessages.size());
+        List<AgentPropertyNames> agents = Collections.singletonList(agent);
+        ValidationMessage message = loadedMessages.get(0).toValidationMessage(agents);
+        assertEquals(ValidationMessageSeverity.ERROR, message.getSeverity());
+        assertEquals("some violation", message.getMessage());
+        assertEquals("/conf/sub/policy", message.getNodePath());
+        assertEquals(Paths.get(".content.xml"), message.getFilePath());
+        assertEquals(RuleSet.NO_MATCH, loadedMessages.get(0).getRuleIndex());
+
+        // violations keep their structured data and position
+        Violation loadedViolation = (Violation) loadedMessages.get(1).toValidationMessage(agents);
+        assertEquals(Violation.Code.REPLICATION_DATE_OLDER_THAN_COMPARISON_DATE, loadedViolation.getCode());
+        assertEquals(ValidationMessageSeverity.WARN, loadedViolation.getSeverity());
+        assertEquals("/conf/sub/page", loadedViolation.getNodePath());
+        assertEquals(agent, loadedViolation.getAgentPropertyNames());
+        assertEquals(violation.getMessage(), loadedViolation.getMessage());
+        assertEquals(Paths.get("page", ".content.xml"), loadedViolation.getFilePath());
+        assertEquals(5, loadedViolation.getLine());
+        assertEquals(7, loadedViolation.getColumn());
+        assertEquals(2, loadedMessages.get(1).getRuleIndex());
+        PositionedNodeContext nodeContext = (PositionedNodeContext) loadedMessages.get(1).toNodeContext();
+        assertEquals("/conf/sub/page/jcr:content", nodeContext.getNodePath());
+        assertEquals(5, nodeContext.getLine());
+
+        Assertions.assertThat(loadedCache.get("fingerprint2")).isEmpty();
+        assertNull(loadedCache.get("fingerprint3"));
+    }
+
+    @Test
+    void testCorruptFileIsDiscarded() throws IOException {
+        Path cacheFile = tempDir.resolve("subpackages.bin");
+        Files.write(cacheFile, new byte[] { 0, 0, 0, 2, 0, 5, 'a' });
+        SubpackageResultCache cache = SubpackageResultCache.load(cacheFile);
+        assertNull(cache.get("a"));
+        assertFalse(Files.exists(cacheFile));
+    }
+}
@@ -0,0 +1,113 @@
+/*-
+ * #%L
+ * AEM Replication Metadata Validator
+ * %%
+ * Copyright (C) 2024 Cognizant Netcentric
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package biz.netcentric.filevault.validator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.jackrabbit.vault.validation.ValidationViolation;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessageSeverity;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ValidationCacheTest {
+
+    private static final String FINGERPRINT = ValidationCache.createFingerprint(Collections.emptyMap(), ValidationMessageSeverity.ERROR);
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testFingerprint() {
+        assertEquals(FINGERPRINT, ValidationCache.createFingerprint(Collections.emptyMap(), ValidationMessageSeverity.ERROR));
+        assertNotEquals(FINGERPRINT, ValidationCache.createFingerprint(Collections.emptyMap(), ValidationMessageSeverity.WARN));
+        assertNotEquals(FINGERPRINT, ValidationCache.createFingerprint(Collections.singletonMap("agentNames", "preview"), ValidationMessageSeverity.ERROR));
+        assertNotEquals(ValidationCache.createFingerprint(Collections.singletonMap("strictLastModificationDateCheck", "true"), ValidationMessageSeverity.ERROR),
+                ValidationCache.createFingerprint(Collections.singletonMap("strictLastModificationDateCheck", "false"), ValidationMessageSeverity.ERROR));
+    }
+
+    @Test
+    void testFingerprintContainsValidatorVersion() {
+        assertNotNull(ValidationCache.VALIDATOR_VERSION);
+        Assertions.assertThat(ValidationCache.VALIDATOR_VERSION).matches("\\d+\\.\\d+\\.\\d+.*");
+        assertEquals(FINGERPRINT, ValidationCache.createFingerprint(Collections.emptyMap(), ValidationMessageSeverity.ERROR, ValidationCache.VALIDATOR_VERSION));
+        // a cache written by another version is discarded
+        assertNotEquals(FINGERPRINT, ValidationCache.createFingerprint(Collections.emptyMap(), ValidationMessageSeverity.ERROR, "0.0.1"));
+    }
+
+    @Test
+    void testLookupAndSave() throws IOException {
+        Path cacheFile = tempDir.resolve("cache/validation.cache");
+        Path jcrRoot = tempDir.resolve("jcr_root");
+        Path file = jcrRoot.resolve("test.xml");
+        Files.createDirectories(jcrRoot);
+        Files.write(file, "content".getBytes(StandardCharsets.UTF_8));
+        // a modification time before the cache is written to allow the fast path
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - 10000));
+        List<ValidationViolation> violations = Collections.singletonList(new ValidationViolation(ValidationMessageSeverity.ERROR, "message",
+                Paths.get("test.xml"), jcrRoot, "/test", 2, 3, null));
+
+        ValidationCache cache = ValidationCache.load(cacheFile, FINGERPRINT);
+        ValidationCache.Lookup lookup = cache.lookup(file);
+        assertFalse(lookup.isHit());
+        cache.put(lookup, violations);
+        cache.save(jcrRoot);
+
+        cache = ValidationCache.load(cacheFile, FINGERPRINT);
+        lookup = cache.lookup(file);
+        assertTrue(lookup.isHit());
+        List<ValidationViolation> cachedViolations = lookup.getViolations("id", Paths.get("test.xml"), jcrRoot);
+        assertEquals(1, cachedViolations.size());
+        assertEquals("message", cachedViolations.get(0).getMessage());
+        assertEquals("/test", cachedViolations.get(0).getNodePath());
+        assertEquals(2, cachedViolations.get(0).getLine());
+        assertEquals(3, cachedViolations.get(0).getColumn());
+        assertEquals(1, cache.getHits());
+
+        // same content with a different modification time is still a hit
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - 5000));
+        assertTrue(ValidationCache.load(cacheFile, FINGERPRINT).lookup(file).isHit());
+
+        // different content with same size and modification time close to the cache modification is detected via the hash
+        Files.write(file, "CONTENT".getBytes(StandardCharsets.UTF_8));
+        assertFalse(ValidationCache.load(cacheFile, FINGERPRINT).lookup(file).isHit());
+
+        // different configuration
+        Files.write(file, "content".getBytes(StandardCharsets.UTF_8));
+        assertTrue(ValidationCache.load(cacheFile, FINGERPRINT).lookup(file).isHit());
+        assertFalse(ValidationCache.load(cacheFile, ValidationCache.createFingerprint(Collections.singletonMap("agentNames", "preview"),
+                ValidationMessageSeverity.ERROR)).lookup(file).isHit());
+    }
+
+    @Test
+    void testCorruptCache() throws IOException {
+        Path cacheFile = tempDir.resolve("validation.cache");
+        Files.write(cacheFile, new byte[] { 0, 0, 0, 1, 0 });
+        Path file = tempDir.resolve("test.xml");
+        Files.write(file, "content".getBytes(StandardCharsets.UTF_8));
+        assertFalse(ValidationCache.load(cacheFile, FINGERPRINT).lookup(file).isHit());
+    }
+}
@@ -0,0 +1,160 @@
+/*-
+ * #%L
+ * AEM Replication Metadata Validator
+ * %%
+ * Copyright (C) 2024 Cognizant Netcentric
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package biz.netcentric.filevault.validator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessage;
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessageSeverity;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import biz.netcentric.filevault.validator.Violation.Code;
+
+class ViolationReportTest {
+
+    private static final AgentPropertyNames PUBLISH = new AgentPropertyNames("publish");
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testFormatFromFileName() {
+        assertEquals(ViolationReport.Format.SARIF, ViolationReport.Format.fromFileName(Paths.get("target", "report.sarif")));
+        assertEquals(ViolationReport.Format.SARIF, ViolationReport.Format.fromFileName(Paths.get("target", "Report.SARIF.json")));
+        assertEquals(ViolationReport.Format.JSON_LINES, ViolationReport.Format.fromFileName(Paths.get("target", "report.json")));
+    }
+
+    @Test
+    void testJsonLines() throws IOException {
+        Path file = tempDir.resolve("report.jsonl");
+        Files.write(file, "outdated content\n".getBytes(StandardCharsets.UTF_8));
+        ViolationReport report = ViolationReport.open(file, ViolationReport.Format.JSON_LINES);
+        report.write("group:name:1.0", new Violation(ValidationMessageSeverity.ERROR, Code.REPLICATION_DATE_OLDER_THAN_COMPARISON_DATE, "/conf/policy", PUBLISH,
+                0, 10_000L, 1_641_078_000_000L, "jcr:lastModified"), null, Paths.get("conf", ".content.xml"), 3, 7,
+                new TypeSettings(".*/settings/wcm/policies/.*", "wcm/core/components/policy/policy"));
+        report.write(null, new ValidationMessage(ValidationMessageSeverity.WARN, "Some \"quoted\" message"), "/conf/other", null, 0, 0, null);
+        assertEquals(2, report.getRecords());
+        report.close();
+        assertThrows(IllegalStateException.class, report::close);
+
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertEquals(2, lines.size());
+        assertEquals("{\"package\":\"group:name:1.0\",\"file\":\"conf/.content.xml\",\"line\":3,\"column\":7,\"nodePath\":\"/conf/policy\",\"severity\":\"ERROR\","
+                + "\"rule\":\".*/settings/wcm/policies/.*[wcm/core/components/policy/policy]\",\"code\":\"REPLICATION_DATE_OLDER_THAN_COMPARISON_DATE\","
+                + "\"agent\":\"publish\",\"comparisonDate\":\"2022-01-01T23:00:00Z\",\"comparisonDateProperty\":\"jcr:lastModified\","
+                + "\"replicationDate\":\"1970-01-01T00:00:10Z\",\"message\":\"The replication date 1970-01-01T00:00:10Z for agent publish is older than "
+                + "the comparison date 2022-01-01T23:00:00Z (jcr:lastModified)\"}", lines.get(0));
+        assertEquals("{\"package\":null,\"file\":null,\"nodePath\":\"/conf/other\",\"severity\":\"WARN\",\"message\":\"Some \\\"quoted\\\" message\"}", lines.get(1));
+
+        // reopening within the same JVM appends
+        report = ViolationReport.open(file, ViolationReport.Format.JSON_LINES);
+        report.write(null, new Violation(ValidationMessageSeverity.ERROR, Code.REPLICATION_DATE_NOT_FOUND, "/conf/third", PUBLISH), null, null, 0, 0, null);
+        report.close();
+        Assertions.assertThat(Files.readAllLines(file, StandardCharsets.UTF_8)).hasSize(3).last().asString()
+            .contains("\"code\":\"REPLICATION_DATE_NOT_FOUND\",\"agent\":\"publish\",\"message\"");
+    }
+
+    @Test
+    void testSarifSharedAndReopened() throws IOException {
+        Path file = tempDir.resolve("report.sarif");
+        ViolationReport report1 = ViolationReport.open(file, ViolationReport.Format.SARIF);
+        ViolationReport report2 = ViolationReport.open(file, ViolationReport.Format.SARIF);
+        assertSame(report1, report2);
+        assertThrows(IllegalArgumentException.class, () -> ViolationReport.open(file, ViolationReport.Format.JSON_LINES));
+        report1.write("package1", new Violation(ValidationMessageSeverity.WARN, Code.REPLICATION_DATE_NOT_FOUND, "/conf/policy", PUBLISH), null,
+                Paths.get("conf", ".content.xml"), 3, 7, null);
+        report1.close();
+        // still open for the second validator
+        report2.write("package2", new ValidationMessage(ValidationMessageSeverity.INFO, "info"), "/conf/other", null, 0, 0, null);
+        report2.close();
+        String content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        Assertions.assertThat(content).startsWith("{\"$schema\":\"https://json.schemastore.org/sarif-2.1.0.json\",\"version\":\"2.1.0\"")
+            .contains("{\"id\":\"REPLICATION_DATE_NOT_FOUND\"}", "{\"id\":\"OTHER\"}",
+                "{\"ruleId\":\"REPLICATION_DATE_NOT_FOUND\",\"level\":\"warning\",\"message\":{\"text\":\"No replication date set for agent publish",
+                "\"locations\":[{\"physicalLocation\":{\"artifactLocation\":{\"uri\":\"conf/.content.xml\"},\"region\":{\"startLine\":3,\"startColumn\":7}},"
+                        + "\"logicalLocations\":[{\"fullyQualifiedName\":\"/conf/policy\",\"kind\":\"element\"}]}],\"properties\":{\"package\":\"package1\","
+                        + "\"code\":\"REPLICATION_DATE_NOT_FOUND\",\"agent\":\"publish\"}}",
+                ",\n{\"ruleId\":\"OTHER\",\"level\":\"note\",\"message\":{\"text\":\"info\"},\"locations\":[{\"logicalLocations\":[{\"fullyQualifiedName\":\"/conf/other\"")
+            .endsWith("}}\n]}]}\n");
+
+        // reopening continues in front of the closing brackets
+        ViolationReport report3 = ViolationReport.open(file, ViolationReport.Format.SARIF);
+        report3.write("package3", new ValidationMessage(ValidationMessageSeverity.ERROR, "error"), "/conf/third", null, 0, 0, null);
+        report3.close();
+        String extendedContent = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        Assertions.assertThat(extendedContent).startsWith(content.substring(0, content.length() - "\n]}]}\n".length()))
+            .contains(",\n{\"ruleId\":\"OTHER\",\"level\":\"error\",\"message\":{\"text\":\"error\"}").endsWith("}}\n]}]}\n");
+    }
+
+    @Test
+    void testConcurrentWriters() throws Exception {
+        Path file = tempDir.resolve("concurrent.sarif");
+        final int threads = 8;
+        final int validatorsPerThread = 50;
+        final int recordsPerValidator = 20;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < threads; thread++) {
+                final String packageId = "package" + thread;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    // the file is repeatedly completed and reopened while other threads are still writing
+                    for (int validator = 0; validator < validatorsPerThread; validator++) {
+                        ViolationReport report = ViolationReport.open(file, ViolationReport.Format.SARIF);
+                        for (int i = 0; i < recordsPerValidator; i++) {
+                            report.write(packageId, new Violation(ValidationMessageSeverity.ERROR, Code.REPLICATION_DATE_NOT_FOUND, "/conf/policy" + i, PUBLISH),
+                                    null, null, 0, 0, null);
+                        }
+                        report.close();
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(1, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        String content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        Assertions.assertThat(content).startsWith("{\"$schema\":").endsWith("}}\n]}]}\n");
+        String[] results = content.substring(content.indexOf("\"results\":[") + "\"results\":[".length(), content.length() - "\n]}]}\n".length())
+                .split("\n", -1);
+        // an empty first element followed by one line per record, all but the last one followed by a comma
+        assertEquals(threads * validatorsPerThread * recordsPerValidator + 1, results.length);
+        assertEquals("", results[0]);
+        for (int i = 1; i < results.length; i++) {
+            Assertions.assertThat(results[i]).startsWith("{\"ruleId\":\"REPLICATION_DATE_NOT_FOUND\"").endsWith(i < results.length - 1 ? "}}," : "}}");
+        }
+    }
+}
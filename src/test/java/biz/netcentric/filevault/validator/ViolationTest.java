@@ -0,0 +1,57 @@
+/*-
+ * #%L
+ * AEM Replication Metadata Validator
+ * %%
+ * Copyright (C) 2024 Cognizant Netcentric
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package biz.netcentric.filevault.validator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.apache.jackrabbit.vault.validation.spi.ValidationMessageSeverity;
+import org.junit.jupiter.api.Test;
+
+import biz.netcentric.filevault.validator.Violation.Code;
+
+class ViolationTest {
+
+    private static final AgentPropertyNames PREVIEW = new AgentPropertyNames("preview");
+
+    @Test
+    void testGetMessage() {
+        Violation violation = new Violation(ValidationMessageSeverity.WARN, Code.REPLICATION_DATE_OLDER_THAN_COMPARISON_DATE, "/my/path", PREVIEW,
+                0, 10_000L, 1_641_078_000_000L, "{http://www.jcp.org/jcr/1.0}lastModified");
+        String message = violation.getMessage();
+        assertEquals("The replication date 1970-01-01T00:00:10Z for agent preview is older than the comparison date 2022-01-01T23:00:00Z ({http://www.jcp.org/jcr/1.0}lastModified)",
+                message);
+        // only rendered once
+        assertSame(message, violation.getMessage());
+        assertEquals(ValidationMessageSeverity.WARN, violation.getSeverity());
+        assertEquals("/my/path", violation.getNodePath());
+
+        assertEquals("No replication date set for agent preview: Replication properties {http://www.day.com/jcr/cq/1.0}lastReplicated_preview or {http://www.day.com/jcr/cq/1.0}lastPublished_preview not found",
+                new Violation(ValidationMessageSeverity.WARN, Code.REPLICATION_DATE_NOT_FOUND, "/my/path", PREVIEW).getMessage());
+        assertEquals("No replication date set for agent preview: No replication property found with name {http://www.day.com/jcr/cq/1.0}lastPublished_preview",
+                new Violation(ValidationMessageSeverity.WARN, Code.REPLICATION_DATE_INVALID, "/my/path", PREVIEW, 1, 0L, 0L, null).getMessage());
+        assertEquals("The last replication action must be 'Activate' but was 'DEACTIVATE' for agent preview",
+                new Violation(ValidationMessageSeverity.WARN, Code.REPLICATION_ACTION_NOT_ACTIVATE, "/my/path", PREVIEW,
+                        ReplicationMetadata.ReplicationActionType.DEACTIVATE.ordinal(), 0L, 0L, null).getMessage());
+    }
+
+    @Test
+    void testEquals() {
+        Violation violation = new Violation(ValidationMessageSeverity.WARN, Code.REPLICATION_DATE_OLDER_THAN_EPOCH, "/my/path", PREVIEW, 0, -1L, 0L, null);
+        assertEquals(violation, new Violation(ValidationMessageSeverity.WARN, Code.REPLICATION_DATE_OLDER_THAN_EPOCH, "/my/path", PREVIEW, 0, -1L, 0L, null));
+        assertEquals(violation.hashCode(), new Violation(ValidationMessageSeverity.WARN, Code.REPLICATION_DATE_OLDER_THAN_EPOCH, "/my/path", PREVIEW, 0, -1L, 0L, null).hashCode());
+        assertNotEquals(violation, new Violation(ValidationMessageSeverity.WARN, Code.REPLICATION_DATE_OLDER_THAN_EPOCH, "/my/path", PREVIEW, 0, -2L, 0L, null));
+        assertNotEquals(violation, new Violation(ValidationMessageSeverity.WARN, Code.REPLICATION_DATE_NOT_FOUND, "/my/path", PREVIEW));
+    }
+}